@@ -9,6 +9,9 @@ import java.awt.image.DataBufferInt;
 
 import java.io.*;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Field;
@@ -21,13 +24,34 @@ import java.net.MalformedURLException;
 import java.net.URLClassLoader;
 import java.net.URL;
 
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
 import java.util.Comparator;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Set;
 import java.util.Stack;
 
 import java.util.regex.Matcher;
@@ -41,33 +65,144 @@ import net.elena.murat.material.*;
 import net.elena.murat.material.pbr.*;
 import net.elena.murat.shape.*;
 import net.elena.murat.shape.letters.*;
+import net.elena.murat.util.ImageCache;
+import net.elena.murat.util.TextAtlas;
+import net.elena.murat.util.TileCache;
+import net.elena.murat.util.TiledTexture;
 
 public class ElenaParser {
   
   private static final Pattern COMMENT_PATTERN = Pattern.compile("#.*");
-  private static final Pattern BLOCK_START = Pattern.compile("(\\w+)\\s+(\\w+)\\s*\\{");
-  private static final Pattern ASSIGNMENT = Pattern.compile("^\\s*(\\w+)\\s*=\\s*([^;]*#?[^;]+?)\\s*;\\s*$");
   private static final Pattern COLOR_HEX = Pattern.compile("#([0-9A-Fa-f]{6})");
   private static final Pattern COLOR_RGB = Pattern.compile("rgb\\((\\d+),\\s*(\\d+),\\s*(\\d+)\\)");
-  private static final Pattern POINT3 = Pattern.compile("P\\(([^)]+)\\)");
-  private static final Pattern VECTOR3 = Pattern.compile("V\\(([^)]+)\\)");
-  private static final Pattern TRANSFORM_OP = Pattern.compile("(translate|rotate|scale)\\s*\\(([^)]*)\\)");
+  private static final Pattern GLOBAL_COLOR = Pattern.compile("color\\s*=\\s*(.+?);?");
+  private static final Pattern GLOBAL_WIDTH = Pattern.compile("width\\s*=\\s*(\\d+)");
+  private static final Pattern GLOBAL_HEIGHT = Pattern.compile("height\\s*=\\s*(\\d+)");
   private static final Map<String, Material> materialCache = new ConcurrentHashMap<>();
-  private static final Map<String, BufferedImage> IMAGE_CACHE = new ConcurrentHashMap<>();
+  // Decoded images by path, bounded by imageCacheMB
+  private static final ImageCache IMAGE_CACHE = ImageCache.shared();
+  // Image decodes in flight or waiting to be picked up, one per path, on a small
+  // daemon pool; entries leave when read, or when the parse that started them ends
+  private static final Map<String, FutureTask<BufferedImage>> IMAGE_LOADS = new ConcurrentHashMap<>();
+  private static final ExecutorService IMAGE_LOADER = Executors.newFixedThreadPool(
+    Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())), r -> {
+      Thread thread = new Thread(r, "image-loader");
+      thread.setDaemon(true);
+      return thread;
+  });
     
   private static final BufferedImage DEFAULT_IMAGE = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
   
+  // Images above this many pixels are read through the memory-mapped tile cache
+  private static final long LARGE_IMAGE_PIXELS = 4096L * 4096L;
+  // Fields naming an image that a block's build loads with loadImage
+  private static final List<String> IMAGE_KEYS = Arrays.asList("imagePath", "imageObject", "wordImage");
+  
   private Map<String, Object> objects = new HashMap<>();
+  // Decodes this parse started ahead of its blocks, see prefetchImages
+  private final Map<String, FutureTask<BufferedImage>> prefetched = new ConcurrentHashMap<>();
+  private Future<?> prefetchScan;
   private final Scene scene = new Scene();
   private Color backgroundColor = Color.BLACK;
   private int imageWidth = 800;
   private int imageHeight = 600;
+  // Rows per band when streaming the PNG while rendering; 0 renders the whole frame first
+  private int streamBandHeight = 0;
+  // Float output written next to the PNG (.pfm, .hdr or .exr), and how the PNG is tone mapped from it
+  private String hdrOutput = null;
+  private ToneMapper.Operator toneMapOperator = ToneMapper.Operator.CLAMP;
+  private double exposure = 1.0;
+  private double gamma = 1.0;
+  // Tile checkpointing of long renders, resumed from <output>.ckpt after a restart
+  private boolean checkpoint = false;
+  private int checkpointTileSize = 64;
+  private double checkpointInterval = 30.0;
+  // Tile edge for --farm renders
+  private int farmTileSize = 64;
+  
+  private int frames = 0;
+  private int firstFrame = 0;
+  private double frameRate = 24.0;
+  private double cameraOrbit = 0.0;
+  private Vector3 cameraVelocity = null;
+  private boolean temporalReuse = false;
+  private double temporalMaxAngle = 4.0;
   
   private ElenaMuratRayTracer tracer = new ElenaMuratRayTracer(scene, imageWidth, imageHeight, backgroundColor);
   
+  // Blocks opened and not yet closed while parsing
+  private final Stack<ObjectBuilder> blocks = new Stack<ObjectBuilder>();
+  // Compiled scene being written, or the one being replayed; see CompiledScene
+  private CompiledScene recording = null;
+  private CompiledScene restored = null;
+  // Blocks by id and global lines in file order, kept by --watch to find what an edit changed
+  private Map<String, ObjectBuilder> parsedBlocks = null;
+  private List<String> parsedGlobals = null;
+  // Set on a parser that only collects blocks and globals, building nothing
+  private boolean scanOnly = false;
+  
+  // Measured runs per benchmark scene, after one warm-up run; the median is reported
+  private static final int BENCHMARK_RUNS = 3;
+  private static final double BENCHMARK_THRESHOLD_PERCENT = 10.0;
+  // Synthetic tiled texture of benchmarks/largeTexture.txt, made in the scene directory on first use.
+  // Larger than LARGE_IMAGE_PIXELS, so it exercises the memory-mapped path and the tile cache.
+  private static final String BENCHMARK_TEXTURE = "generated" + File.separator + "large" + TiledTexture.EXTENSION;
+  private static final int BENCHMARK_TEXTURE_SIZE = 6144;
+  
+  private static final int WATCH_TILE_SIZE = 32;
+  // Editors often save a file in several writes; changes are read once it is quiet this long
+  private static final long WATCH_SETTLE_MS = 150;
+  
   public static void main(String[] args) {
+    if (args.length == 3 && "--worker".equals(args[0])) {
+      runFarmWorker(Integer.parseInt(args[1]), args[2]);
+      return;
+    }
+    if (args.length == 2 && "--compile".equals(args[0])) {
+      try {
+        new ElenaParser().compile(args[1]);
+        } catch (Exception e) {
+        System.err.println("Error: " + e.getMessage());
+        System.exit(-1);
+      }
+      return;
+    }
+    if ((args.length == 2 || args.length == 3) && "--analyze".equals(args[0])) {
+      analyze(args[1], args.length == 3 ? Double.parseDouble(args[2]) : 0.02);
+      return;
+    }
+    if (args.length >= 3 && args.length <= 5 && "--benchmark".equals(args[0])) {
+      try {
+        boolean passed = benchmark(new File(args[1]), new File(args[2]),
+          args.length >= 4 ? new File(args[3]) : null,
+          args.length == 5 ? Double.parseDouble(args[4]) : BENCHMARK_THRESHOLD_PERCENT);
+        if (!passed) System.exit(2);
+        } catch (Exception e) {
+        System.err.println("Error: " + e.getMessage());
+        System.exit(-1);
+      }
+      return;
+    }
+    if (args.length == 3 && "--watch".equals(args[0])) {
+      try {
+        watch(args[1], args[2]);
+        } catch (Exception e) {
+        System.err.println("Error: " + e.getMessage());
+        System.exit(-1);
+      }
+      return;
+    }
+    int farmWorkers = 0;
+    if (args.length == 4 && "--farm".equals(args[0])) {
+      farmWorkers = Integer.parseInt(args[1]);
+      args = new String[] { args[2], args[3] };
+    }
     if (args.length != 2) {
-      System.err.println("Usage: java ElenaParser <scene.txt> <output.png>");
+      System.err.println("Usage: java ElenaParser [--farm <workers>] <scene.txt> <output.png>");
+      System.err.println("       java ElenaParser --compile <scene.txt>");
+      System.err.println("       java ElenaParser --watch <scene.txt> <output.png>");
+      System.err.println("       java ElenaParser --analyze <scene.txt> [probeFraction]");
+      System.err.println("       java ElenaParser --benchmark <sceneDir> <results.csv|.json> [baseline.csv|.json] [thresholdPercent]");
       System.exit(1);
     }
     String sceneFile = args[0];
@@ -75,11 +210,58 @@ public class ElenaParser {
     ElenaParser parser = new ElenaParser();
     try {
       parser.parse(sceneFile);
-      BufferedImage image = parser.render();
       File out = new File(outputFile);
       if (!out.getParentFile().exists()) out.getParentFile().mkdirs();
-      ImageIO.write(image, "png", out);
+      if (parser.frames > 0) {
+        if (farmWorkers > 0 || parser.checkpoint || parser.hdrOutput != null) {
+          System.err.println("frames renders plain PNG frames; farm, checkpoint and hdrOutput are ignored");
+        }
+        parser.renderSequence(outputFile);
+        } else if (farmWorkers > 0) {
+        ImageIO.write(parser.renderFarm(sceneFile, farmWorkers), "png", out);
+        } else if (parser.hdrOutput != null) {
+        if (parser.checkpoint) System.err.println("checkpoint is not supported with hdrOutput; rendering without it");
+        HdrFramebuffer frame = parser.renderHdr();
+        HdrImageIO.write(frame, new File(parser.hdrOutput));
+        System.out.println("HDR written: " + parser.hdrOutput);
+        ToneMapper toneMapper = new ToneMapper(parser.toneMapOperator, parser.exposure, parser.gamma);
+        if (parser.streamBandHeight > 0) {
+          try (PngStreamWriter writer = new PngStreamWriter(out)) {
+            toneMapper.writeTo(frame, writer, parser.streamBandHeight);
+          }
+          } else {
+          ImageIO.write(toneMapper.toImage(frame), "png", out);
+        }
+        } else if (parser.checkpoint) {
+        RenderCheckpoint checkpoint = new RenderCheckpoint(new File(outputFile + ".ckpt"),
+          parser.imageWidth, parser.imageHeight, parser.checkpointTileSize,
+          RenderCheckpoint.hashFile(new File(sceneFile)), parser.checkpointSettings(), parser.checkpointInterval);
+        try {
+          if (checkpoint.isResumed()) {
+            System.out.println("Resuming checkpoint: " + checkpoint.getCompletedTiles() + "/" + checkpoint.getTileCount() + " tiles done");
+          }
+          parser.renderTo(checkpoint);
+          if (parser.streamBandHeight > 0) {
+            try (PngStreamWriter writer = new PngStreamWriter(out)) {
+              checkpoint.writeTo(writer, parser.streamBandHeight);
+            }
+            } else {
+            ImageIO.write(checkpoint.toImage(), "png", out);
+          }
+          } finally {
+          checkpoint.close();
+        }
+        checkpoint.delete();
+        } else if (parser.streamBandHeight > 0) {
+        try (PngStreamWriter writer = new PngStreamWriter(out)) {
+          parser.renderTo(writer, parser.streamBandHeight);
+        }
+        } else {
+        BufferedImage image = parser.render();
+        ImageIO.write(image, "png", out);
+      }
       System.out.println("Render completed: " + outputFile);
+      System.out.println(parser.tracer.getStatistics());
       } catch (Exception e) {
       System.err.println("Error: " + e.getMessage());
       e.printStackTrace();
@@ -87,6 +269,347 @@ public class ElenaParser {
     }
   }
   
+  /**
+   * Renders the scene, then renders it again each time the scene file is
+   * saved, until the process is stopped. An edit of shapes and materials
+   * only rebuilds the blocks it touched and re-traces the tiles they can
+   * have changed, see IncrementalRenderer; any other edit reloads the
+   * scene. A scene that fails to load leaves the last image in place.
+   */
+  private static void watch(String sceneFile, String outputFile) throws IOException, InterruptedException {
+    Path scenePath = Paths.get(sceneFile).toAbsolutePath();
+    File out = new File(outputFile);
+    File parent = out.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists()) parent.mkdirs();
+    
+    long start = System.currentTimeMillis();
+    ElenaParser parser = loadWatched(sceneFile);
+    IncrementalRenderer renderer = new IncrementalRenderer(parser.tracer, WATCH_TILE_SIZE);
+    ImageIO.write(renderer.render(), "png", out);
+    System.out.println("Render completed: " + outputFile + " (" + (System.currentTimeMillis() - start) + " ms)");
+    
+    try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+      scenePath.getParent().register(watcher,
+        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+      System.out.println("Watching " + scenePath + " for changes");
+      boolean reload = false;
+      while (true) {
+        WatchKey key = watcher.take();
+        boolean changed = false;
+        do {
+          for (WatchEvent<?> event : key.pollEvents()) {
+            if (scenePath.getFileName().equals(event.context())) changed = true;
+          }
+          key.reset();
+        } while ((key = watcher.poll(WATCH_SETTLE_MS, TimeUnit.MILLISECONDS)) != null);
+        if (!changed) continue;
+        
+        start = System.currentTimeMillis();
+        try {
+          if (reload || !parser.applyEdit(scanBlocks(sceneFile), renderer)) {
+            reload = true;
+            parser = loadWatched(sceneFile);
+            renderer = new IncrementalRenderer(parser.tracer, WATCH_TILE_SIZE);
+            renderer.render();
+            reload = false;
+            System.out.println("Scene reloaded");
+          }
+          ImageIO.write(renderer.getImage(), "png", out);
+          System.out.println("Updated " + outputFile + ": " + renderer.getLastTileCount() + "/"
+            + renderer.getTileCount() + " tiles traced in " + (System.currentTimeMillis() - start) + " ms");
+          } catch (Exception e) {
+          // A half-applied edit leaves the scene inconsistent; load it in full next time
+          reload = true;
+          System.err.println("Scene not updated: " + e.getMessage());
+        }
+      }
+    }
+  }
+  
+  private static ElenaParser loadWatched(String sceneFile) throws IOException {
+    ElenaParser parser = new ElenaParser();
+    parser.parsedBlocks = new LinkedHashMap<String, ObjectBuilder>();
+    parser.parsedGlobals = new ArrayList<String>();
+    parser.parse(sceneFile);
+    parser.populateScene();
+    return parser;
+  }
+  
+  /**
+   * Reads the blocks and globals of a scene file without building anything.
+   */
+  private static ElenaParser scanBlocks(String sceneFile) throws IOException {
+    ElenaParser scan = new ElenaParser();
+    scan.scanOnly = true;
+    scan.parsedBlocks = new LinkedHashMap<String, ObjectBuilder>();
+    scan.parsedGlobals = new ArrayList<String>();
+    scan.parseText(sceneFile);
+    return scan;
+  }
+  
+  /**
+   * Applies the edit between this parser's blocks and a scan of the saved
+   * file: rebuilds the changed blocks and every block that refers to one
+   * of them, in file order, puts the new shapes in place of the old ones
+   * and updates the renderer's frame. Returns false if the edit needs a
+   * full reload instead: changed globals, blocks added, removed or
+   * retyped, or a changed block that is not a shape or a material. After
+   * false this parser may be partly updated and must be dropped.
+   */
+  private boolean applyEdit(ElenaParser scan, IncrementalRenderer renderer) {
+    if (!scan.parsedGlobals.equals(parsedGlobals) || !scan.parsedBlocks.keySet().equals(parsedBlocks.keySet())) {
+      return false;
+    }
+    Set<String> dirty = new HashSet<String>();
+    for (ObjectBuilder builder : scan.parsedBlocks.values()) {
+      ObjectBuilder old = parsedBlocks.get(builder.id);
+      if (!old.type.equals(builder.type)) return false;
+      if (!old.fields.equals(builder.fields)) dirty.add(builder.id);
+    }
+    
+    // Blocks built from a changed block change with it, e.g. a shape
+    // using a changed material or a CSG using a changed shape
+    boolean grown = !dirty.isEmpty();
+    while (grown) {
+      grown = false;
+      for (ObjectBuilder builder : scan.parsedBlocks.values()) {
+        if (!dirty.contains(builder.id) && builder.refersTo(dirty, null)) {
+          dirty.add(builder.id);
+          grown = true;
+        }
+      }
+    }
+    for (String id : dirty) {
+      Object obj = objects.get(id);
+      if (!(obj instanceof EMShape) && !(obj instanceof Material)) return false;
+    }
+    
+    List<EMShape> changed = new ArrayList<EMShape>();
+    Map<EMShape, EMShape> moved = new IdentityHashMap<EMShape, EMShape>();
+    for (ObjectBuilder builder : scan.parsedBlocks.values()) {
+      if (!dirty.contains(builder.id)) continue;
+      ObjectBuilder oldBuilder = parsedBlocks.get(builder.id);
+      Object old = objects.get(builder.id);
+      Object obj = builder.build(this);
+      if (obj == null || (old instanceof EMShape) != (obj instanceof EMShape)) return false;
+      objects.put(builder.id, obj);
+      parsedBlocks.put(builder.id, builder);
+      if (old instanceof EMShape) {
+        if (!scene.replaceShape((EMShape) old, (EMShape) obj)) return false;
+        changed.add((EMShape) old);
+        if (!builder.onlyMaterialChanged(oldBuilder, dirty)) moved.put((EMShape) old, (EMShape) obj);
+      }
+    }
+    if (!dirty.isEmpty()) {
+      System.out.println("Rebuilt " + dirty.size() + " blocks: " + changed.size() + " shapes changed, "
+        + moved.size() + " of them moved or reshaped");
+    }
+    renderer.update(changed, moved);
+    return true;
+  }
+  
+  /**
+   * Prints a JSON report of the scene's size and expected render cost for
+   * job schedulers, see SceneAnalysis. Only the report goes to standard
+   * output; the probe traces the given share of the frame's pixels.
+   */
+  private static void analyze(String sceneFile, double probeFraction) {
+    PrintStream console = System.out;
+    System.setOut(discardingStream());
+    try {
+      ElenaParser parser = new ElenaParser();
+      parser.parse(sceneFile);
+      parser.populateScene();
+      SceneAnalysis analysis = SceneAnalysis.analyze(sceneFile, parser.tracer, parser.scene,
+        parser.objects.values(), probeFraction);
+      System.setOut(console);
+      console.println(analysis.toJson());
+      } catch (Exception e) {
+      System.setOut(console);
+      System.err.println("Error: " + e.getMessage());
+      System.exit(-1);
+    }
+  }
+  
+  /**
+   * Renders every .txt scene of sceneDir, in name order, at the scene's own
+   * resolution and writes the timings to results, see BenchmarkReport.
+   * Each scene is parsed and rendered once to warm up the JIT, then
+   * BENCHMARK_RUNS times for the median. Every run starts from cold
+   * caches, as a fresh process does: images and texture tiles are decoded
+   * again and text is rasterized again. Scenes are always parsed from
+   * their text, even if a compiled form lies next to them. The generated
+   * texture the scenes use is written first if it is missing.
+   * @return false if a scene is slower than in the baseline by more than
+   *         thresholdPercent
+   */
+  private static boolean benchmark(File sceneDir, File results, File baselineFile, double thresholdPercent)
+  throws IOException {
+    File[] scenes = sceneDir.listFiles((dir, name) -> name.endsWith(".txt"));
+    if (scenes == null || scenes.length == 0) {
+      throw new IOException("No .txt scenes in " + sceneDir);
+    }
+    Arrays.sort(scenes);
+    prepareBenchmarkTexture(sceneDir);
+    Map<String, BenchmarkReport.Result> baseline = baselineFile != null ? BenchmarkReport.read(baselineFile) : null;
+    
+    PrintStream console = System.out;
+    BenchmarkReport report = new BenchmarkReport();
+    for (File scene : scenes) {
+      String name = scene.getName().substring(0, scene.getName().length() - 4);
+      console.print(name + ":");
+      console.flush();
+      List<BenchmarkReport.Result> runs = new ArrayList<BenchmarkReport.Result>();
+      for (int run = 0; run <= BENCHMARK_RUNS; run++) {
+        System.setOut(discardingStream());
+        BenchmarkReport.Result result;
+        try {
+          result = benchmarkRun(name, scene);
+          } finally {
+          System.setOut(console);
+        }
+        console.print(String.format(Locale.ROOT, run == 0 ? " warm-up %.2fs" : " %.2fs", result.getWallSeconds()));
+        console.flush();
+        if (run > 0) runs.add(result);
+      }
+      console.println();
+      report.add(BenchmarkReport.median(runs));
+    }
+    
+    report.write(results);
+    console.println();
+    console.print(report.summary(baseline));
+    console.println("Results written: " + results);
+    if (baseline == null) return true;
+    
+    List<String> regressions = report.findRegressions(baseline, thresholdPercent);
+    for (String regression : regressions) {
+      System.err.println("Regression: " + regression);
+    }
+    return regressions.isEmpty();
+  }
+  
+  /**
+   * Writes the generated texture the benchmark scenes sample, unless the
+   * scene directory has it already: a color gradient over the whole image
+   * with a pattern that changes from texel to texel.
+   */
+  private static void prepareBenchmarkTexture(File sceneDir) throws IOException {
+    File texture = new File(sceneDir, BENCHMARK_TEXTURE);
+    if (texture.isFile()) return;
+    File directory = texture.getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create " + directory);
+    }
+    System.out.println("Generating benchmark texture " + texture);
+    final int size = BENCHMARK_TEXTURE_SIZE;
+    TiledTexture.generate(texture, size, size, TiledTexture.DEFAULT_TILE_SIZE,
+      (x, y) -> 0xFF000000 | (int) (255L * x / size) << 16 | (int) (255L * y / size) << 8 | ((x ^ y) & 0xFF));
+  }
+  
+  private static BenchmarkReport.Result benchmarkRun(String name, File scene) throws IOException {
+    clearImageCaches();
+    materialCache.clear();
+    TextAtlas.clear();
+    System.gc();
+    BenchmarkReport.resetPeakHeap();
+    long allocatedBefore = BenchmarkReport.allocatedBytes();
+    
+    long start = System.nanoTime();
+    ElenaParser parser = new ElenaParser();
+    // A compiled scene would skip the parse and any image decoding
+    parser.parseText(scene.getPath());
+    long parsed = System.nanoTime();
+    parser.render();
+    long rendered = System.nanoTime();
+    
+    long allocatedAfter = BenchmarkReport.allocatedBytes();
+    parser.dispose();
+    RenderStatistics stats = parser.tracer.getStatistics();
+    return new BenchmarkReport.Result(name, parser.imageWidth, parser.imageHeight,
+      (parsed - start) / 1e9, (rendered - parsed) / 1e9,
+      stats.getTracedRays() + stats.getShadowRays(),
+      allocatedBefore >= 0 ? allocatedAfter - allocatedBefore : -1,
+      BenchmarkReport.peakHeapBytes());
+  }
+  
+  /**
+   * Forgets every decoded image and texture tile, including decodes still
+   * in flight.
+   */
+  private static void clearImageCaches() {
+    IMAGE_CACHE.clear();
+    TileCache.shared().clear();
+    for (FutureTask<BufferedImage> load : IMAGE_LOADS.values()) {
+      load.cancel(false);
+    }
+    IMAGE_LOADS.clear();
+  }
+  
+  private static PrintStream discardingStream() {
+    return new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+    });
+  }
+  
+  /**
+   * Renders the frame in worker processes started from the same JVM and
+   * classpath, see RenderFarm.
+   */
+  private BufferedImage renderFarm(String sceneFile, int workers) throws IOException {
+    final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    final String classPath = System.getProperty("java.class.path");
+    final String scenePath = new File(sceneFile).getAbsolutePath();
+    RenderFarm farm = new RenderFarm(imageWidth, imageHeight, farmTileSize, workers, port -> {
+        ProcessBuilder pb = new ProcessBuilder(java, "-Djava.awt.headless=true", "-cp", classPath,
+          "ElenaParser", "--worker", Integer.toString(port), scenePath);
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        return pb.start();
+    });
+    System.out.println("Rendering with " + workers + " worker processes");
+    return farm.render();
+  }
+  
+  /**
+   * Worker process of a render farm: parses the scene and renders tiles
+   * for the coordinator until it is told to stop.
+   */
+  private static void runFarmWorker(int port, String sceneFile) {
+    // Scene loading chatter would be repeated by every worker
+    PrintStream console = System.out;
+    System.setOut(discardingStream());
+    try {
+      final ElenaParser parser = new ElenaParser();
+      parser.parse(sceneFile);
+      parser.populateScene();
+      parser.tracer.beginTiles();
+      RenderFarm.runWorker(port, new RenderFarm.TileRenderer() {
+          @Override
+          public int getWidth() {
+            return parser.imageWidth;
+          }
+          
+          @Override
+          public int getHeight() {
+            return parser.imageHeight;
+          }
+          
+          @Override
+          public void renderTile(int x0, int y0, int tileWidth, int tileHeight, int[] out) {
+            parser.tracer.renderTile(x0, y0, tileWidth, tileHeight, out);
+          }
+      });
+      parser.tracer.endTiles();
+      } catch (Exception e) {
+      System.setOut(console);
+      System.err.println("Worker error: " + e.getMessage());
+      System.exit(-1);
+    }
+  }
+  
   ////////////// START SHAPE MATERAL EXTERNAL //////////
   public Material loadExternalMaterial(String classNameWithExtension, Map<String, String> params) {
     final Material defaultMaterial = new DiffuseMaterial(Color.BLUE);
@@ -96,72 +619,37 @@ public class ElenaParser {
       return defaultMaterial;
     }
     
-    System.out.println("================\nLoading material: " + classNameWithExtension);
-    System.out.println("Parameters: " + params);
-    
     String className = classNameWithExtension.replace(".class", "").trim();
-    String pathPart = "";
-    String classPart = className;
-    
-    if (className.contains(File.separator) || className.contains("/") || className.contains("\\")) {
-      File fullPath = new File(className);
-      classPart = fullPath.getName().replace(".class", "");
-      pathPart = fullPath.getParent();
-      if (pathPart == null) pathPart = "";
-    }
-    
     try {
-      File searchDir = !pathPart.isEmpty() ? new File(pathPart) : new File(".");
-      URLClassLoader classLoader = new URLClassLoader(
-        new URL[]{searchDir.toURI().toURL()},
-        this.getClass().getClassLoader()
-      );
-      
-      Class<?> loadedClass = classLoader.loadClass(classPart);
-      
-      if (!Material.class.isAssignableFrom(loadedClass)) {
-        System.err.println("Class " + classPart + " does not implement Material interface");
-        classLoader.close();
-        return defaultMaterial;
+      ExternalClass external = loadExternalClass(className);
+      if (external.verbose) {
+        System.out.println("================\nLoading material: " + classNameWithExtension);
+        System.out.println("Parameters: " + params);
       }
       
-      Material material = null;
-      
-      System.out.println("Available constructors for " + classPart + ":");
-      for (Constructor<?> ctor : loadedClass.getConstructors()) {
-        System.out.println("  " + ctor);
-      }
-      
-      // Convert Map to List<ParameterEntry> (type will be determined by constructor parameter types)
-      List<ParameterEntry> paramEntries = new ArrayList<ParameterEntry>();
-      for (Map.Entry<String, String> entry : params.entrySet()) {
-        paramEntries.add(new ParameterEntry(entry.getKey(), entry.getValue(), null));
+      if (!Material.class.isAssignableFrom(external.type)) {
+        System.err.println("Class " + external.type.getName() + " does not implement Material interface");
+        return defaultMaterial;
       }
+      printConstructors(external);
       
       // Try to find matching constructor
-      material = findMatchingConstructor(loadedClass, paramEntries);
+      Material material = (Material) constructExternal(external, params);
       if (material != null) {
-        System.out.println("✓ Successfully created material using parameterized constructor");
-        classLoader.close();
+        if (external.verbose) System.out.println("✓ Successfully created material using parameterized constructor");
         return material;
       }
       
       // Try with default constructor
-      try {
-        Constructor<?> defaultConstructor = loadedClass.getConstructor();
-        material = (Material) defaultConstructor.newInstance();
-        System.out.println("✓ Using default constructor");
-        
-        // Set properties via setters
-        setPropertiesViaReflection(material, params);
-        
-        } catch (NoSuchMethodException e) {
-        System.err.println("No default constructor found for " + classPart);
-        classLoader.close();
+      if (external.defaultConstructor == null) {
+        System.err.println("No default constructor found for " + external.type.getName());
         return defaultMaterial;
       }
+      material = (Material) external.defaultConstructor.newInstance();
+      if (external.verbose) System.out.println("✓ Using default constructor");
       
-      classLoader.close();
+      // Set properties via setters
+      setPropertiesViaReflection(external, material, params);
       return material;
       
       } catch (Exception e) {
@@ -173,71 +661,42 @@ public class ElenaParser {
   }
   
   public EMShape loadExternalShape(String classNameWithExtension, Map<String, String> params) {
-    System.out.println("=== LOADING SHAPE ===");
-    System.out.println("Class: " + classNameWithExtension);
-    System.out.println("Parameters: " + params);
-    
     if (classNameWithExtension == null || classNameWithExtension.trim().isEmpty()) {
       System.err.println("Class name cannot be null or empty");
       return null;
     }
     
     String className = classNameWithExtension.replace(".class", "").trim();
-    String pathPart = "";
-    String classPart = className;
-    
-    if (className.contains(File.separator) || className.contains("/") || className.contains("\\")) {
-      File fullPath = new File(className);
-      classPart = fullPath.getName().replace(".class", "");
-      pathPart = fullPath.getParent();
-      if (pathPart == null) pathPart = "";
-    }
-    
     try {
-      File searchDir = !pathPart.isEmpty() ? new File(pathPart) : new File(".");
-      URLClassLoader classLoader = new URLClassLoader(
-        new URL[]{searchDir.toURI().toURL()},
-        this.getClass().getClassLoader()
-      );
-      
-      Class<?> loadedClass = classLoader.loadClass(classPart);
-      
-      if (!EMShape.class.isAssignableFrom(loadedClass)) {
-        System.err.println("Class " + classPart + " does not extend EMShape");
-        classLoader.close();
-        return null;
+      ExternalClass external = loadExternalClass(className);
+      if (external.verbose) {
+        System.out.println("=== LOADING SHAPE ===");
+        System.out.println("Class: " + classNameWithExtension);
+        System.out.println("Parameters: " + params);
       }
       
-      EMShape shape = null;
-      
-      System.out.println("Available constructors for " + classPart + ":");
-      for (Constructor<?> ctor : loadedClass.getConstructors()) {
-        System.out.println("  " + ctor);
-      }
-      
-      // Convert Map to List<ParameterEntry> (type will be determined by constructor parameter types)
-      List<ParameterEntry> paramList = new ArrayList<ParameterEntry>();
-      for (Map.Entry<String, String> entry : params.entrySet()) {
-        paramList.add(new ParameterEntry(entry.getKey(), entry.getValue(), null));
+      if (!EMShape.class.isAssignableFrom(external.type)) {
+        System.err.println("Class " + external.type.getName() + " does not extend EMShape");
+        return null;
       }
+      printConstructors(external);
       
       // Find matching constructor
-      shape = findMatchingConstructor(loadedClass, paramList);
+      EMShape shape = (EMShape) constructExternal(external, params);
       if (shape != null) {
-        System.out.println("✓ Successfully created shape using parameterized constructor");
-        classLoader.close();
+        if (external.verbose) System.out.println("✓ Successfully created shape using parameterized constructor");
         return shape;
       }
       
       // Try with default constructor
-      Constructor<?> defaultConstructor = loadedClass.getConstructor();
-      shape = (EMShape) defaultConstructor.newInstance();
-      System.out.println("✓ Using default constructor");
+      if (external.defaultConstructor == null) {
+        throw new NoSuchMethodException(external.type.getName() + ".<init>()");
+      }
+      shape = (EMShape) external.defaultConstructor.newInstance();
+      if (external.verbose) System.out.println("✓ Using default constructor");
       
       // Set properties via setters
-      setPropertiesViaReflection(shape, params);
-      
-      classLoader.close();
+      setPropertiesViaReflection(external, shape, params);
       return shape;
       
       } catch (Exception e) {
@@ -248,11 +707,250 @@ public class ElenaParser {
     return null;
   }
   
+  /**
+   * An external material or shape class, loaded once per class file and
+   * modification time, with its constructors in the order they are tried,
+   * the constructor matches found so far and its settable fields.
+   * Used from the parsing thread only.
+   */
+  private static final class ExternalClass {
+    final long lastModified;
+    final URLClassLoader loader;
+    final Class<?> type;
+    final Constructor<?>[] constructors;
+    // Distinct parameter types over all constructors
+    final List<Class<?>> parameterTypes = new ArrayList<Class<?>>();
+    // Last constructor match by parameter names, see constructExternal()
+    final Map<String, ConstructorPlan> plans = new HashMap<String, ConstructorPlan>();
+    final Map<String, Field> fields = new HashMap<String, Field>();
+    final Constructor<?> defaultConstructor;
+    // Full logging for the first object built from the class only
+    boolean verbose = true;
+    
+    ExternalClass(long lastModified, URLClassLoader loader, Class<?> type) {
+      this.lastModified = lastModified;
+      this.loader = loader;
+      this.type = type;
+      this.constructors = type.getConstructors();
+      Arrays.sort(constructors, new Comparator<Constructor<?>>() {
+          @Override
+          public int compare(Constructor<?> c1, Constructor<?> c2) {
+            return Integer.compare(c2.getParameterTypes().length, c1.getParameterTypes().length);
+          }
+      });
+      Constructor<?> noArgs = null;
+      for (Constructor<?> constructor : constructors) {
+        for (Class<?> parameterType : constructor.getParameterTypes()) {
+          if (!parameterTypes.contains(parameterType)) parameterTypes.add(parameterType);
+        }
+        if (constructor.getParameterCount() == 0) noArgs = constructor;
+      }
+      this.defaultConstructor = noArgs;
+    }
+  }
+  
+  /**
+   * The constructor chosen for one pattern of parameters, and for each of
+   * its arguments the index of the parameter that supplies it; a null
+   * handle means no constructor matched.
+   */
+  private static final class ConstructorPlan {
+    final MethodHandle handle;
+    final int[] parameters;
+    final int[] typeIndices;
+    
+    ConstructorPlan(MethodHandle handle, int[] parameters, int[] typeIndices) {
+      this.handle = handle;
+      this.parameters = parameters;
+      this.typeIndices = typeIndices;
+    }
+  }
+  
+  private static void printConstructors(ExternalClass external) {
+    if (!external.verbose) return;
+    System.out.println("Available constructors for " + external.type.getName() + ":");
+    for (Constructor<?> ctor : external.constructors) {
+      System.out.println("  " + ctor);
+    }
+  }
+  
+  private static final Map<String, ExternalClass> EXTERNAL_CLASSES = new HashMap<String, ExternalClass>();
+  
+  /**
+   * Loads "dir/ClassName" (or a class on the class path) through a class
+   * loader kept for that class file until the file changes.
+   */
+  private ExternalClass loadExternalClass(String className) throws Exception {
+    String pathPart = "";
+    String classPart = className;
+    
+    if (className.contains(File.separator) || className.contains("/") || className.contains("\\")) {
+      File fullPath = new File(className);
+      classPart = fullPath.getName().replace(".class", "");
+      pathPart = fullPath.getParent();
+      if (pathPart == null) pathPart = "";
+    }
+    
+    File searchDir = !pathPart.isEmpty() ? new File(pathPart) : new File(".");
+    File classFile = new File(searchDir, classPart + ".class");
+    recordAsset(classFile);
+    String key = classFile.getAbsolutePath();
+    long lastModified = classFile.lastModified();
+    
+    ExternalClass external = EXTERNAL_CLASSES.get(key);
+    if (external != null && external.lastModified == lastModified) {
+      external.verbose = false;
+      return external;
+    }
+    if (external != null) {
+      external.loader.close();
+    }
+    
+    URLClassLoader classLoader = new URLClassLoader(
+      new URL[]{searchDir.toURI().toURL()},
+      this.getClass().getClassLoader()
+    );
+    try {
+      external = new ExternalClass(lastModified, classLoader, classLoader.loadClass(classPart));
+      } catch (Exception | LinkageError e) {
+      classLoader.close();
+      throw e;
+    }
+    EXTERNAL_CLASSES.put(key, external);
+    return external;
+  }
+  
+  /**
+   * Builds an object with the first constructor, most arguments first, for
+   * which every argument can be taken from a distinct parameter, trying
+   * the parameters in order. The match is kept per list of parameter names:
+   * later objects with the same names only convert the values the kept
+   * constructor takes, and are matched again from scratch only when one of
+   * those values does not convert. Returns null if no constructor matches
+   * or construction fails.
+   */
+  private Object constructExternal(ExternalClass external, Map<String, String> params) {
+    List<ParameterEntry> entries = new ArrayList<ParameterEntry>();
+    StringBuilder names = new StringBuilder();
+    for (Map.Entry<String, String> entry : params.entrySet()) {
+      entries.add(new ParameterEntry(entry.getKey(), entry.getValue(), null));
+      names.append(entry.getKey()).append(';');
+    }
+    String key = names.toString();
+    
+    ConstructorPlan plan = external.plans.get(key);
+    Object[] arguments = plan != null ? convertArguments(external, plan, entries) : null;
+    if (arguments == null) {
+      int typeCount = external.parameterTypes.size();
+      Object[][] converted = new Object[entries.size()][typeCount];
+      for (int j = 0; j < entries.size(); j++) {
+        for (int k = 0; k < typeCount; k++) {
+          converted[j][k] = convertStringToType(entries.get(j).value, external.parameterTypes.get(k));
+        }
+      }
+      plan = findMatchingConstructor(external, entries, converted);
+      external.plans.put(key, plan);
+      if (plan.handle == null) return null;
+      
+      arguments = new Object[plan.parameters.length];
+      for (int i = 0; i < arguments.length; i++) {
+        arguments[i] = converted[plan.parameters[i]][plan.typeIndices[i]];
+      }
+    }
+    try {
+      return plan.handle.invoke(arguments);
+      } catch (Error e) {
+      throw e;
+      } catch (Throwable e) {
+      System.err.println("Error in constructor matching: " + e);
+      e.printStackTrace();
+      return null;
+    }
+  }
+  
+  /**
+   * The arguments of a kept constructor match converted from the
+   * parameters, or null if the match has no constructor or any value does
+   * not convert to its argument type.
+   */
+  private Object[] convertArguments(ExternalClass external, ConstructorPlan plan, List<ParameterEntry> params) {
+    if (plan.handle == null) return null;
+    Object[] arguments = new Object[plan.parameters.length];
+    for (int i = 0; i < arguments.length; i++) {
+      arguments[i] = convertStringToType(params.get(plan.parameters[i]).value,
+        external.parameterTypes.get(plan.typeIndices[i]));
+      if (arguments[i] == null) return null;
+    }
+    return arguments;
+  }
+  
+  private ConstructorPlan findMatchingConstructor(ExternalClass external, List<ParameterEntry> params,
+    Object[][] converted) {
+    System.out.println("=== FINDING MATCHING CONSTRUCTOR ===");
+    System.out.println("Parameter count: " + params.size());
+    
+    // Tüm constructor'ları dene
+    for (Constructor<?> constructor : external.constructors) {
+      Class<?>[] constructorParamTypes = constructor.getParameterTypes();
+      System.out.println("Testing constructor: " + constructor);
+      
+      // Kullanılacak parametreleri takip etmek için
+      List<Integer> availableParams = new ArrayList<Integer>();
+      for (int j = 0; j < params.size(); j++) {
+        availableParams.add(j);
+      }
+      int[] parameters = new int[constructorParamTypes.length];
+      int[] typeIndices = new int[constructorParamTypes.length];
+      boolean allParamsConverted = true;
+      
+      for (int i = 0; i < constructorParamTypes.length; i++) {
+        boolean paramConverted = false;
+        int k = external.parameterTypes.indexOf(constructorParamTypes[i]);
+        
+        // Mevcut parametreler arasında uygun olanı ara
+        for (int a = 0; a < availableParams.size(); a++) {
+          int j = availableParams.get(a);
+          if (converted[j][k] != null) {
+            parameters[i] = j;
+            typeIndices[i] = k;
+            paramConverted = true;
+            System.out.println("  Using parameter '" + params.get(j).name + "' = " + params.get(j).value +
+            " -> " + converted[j][k] + " (" + constructorParamTypes[i].getSimpleName() + ")");
+            // Bu parametreyi kullanıldı olarak işaretle (bir daha kullanılmasın)
+            availableParams.remove(a);
+            break;
+          }
+        }
+        
+        if (!paramConverted) {
+          System.out.println("  No suitable parameter found for type: " +
+          constructorParamTypes[i].getSimpleName());
+          allParamsConverted = false;
+          break;
+        }
+      }
+      
+      if (allParamsConverted) {
+        System.out.println("Constructor matched: " + constructor);
+        try {
+          MethodHandle handle = MethodHandles.lookup().unreflectConstructor(constructor)
+          .asSpreader(Object[].class, constructorParamTypes.length);
+          return new ConstructorPlan(handle, parameters, typeIndices);
+          } catch (IllegalAccessException e) {
+          System.err.println("Error in constructor matching: " + e.getMessage());
+          return new ConstructorPlan(null, null, null);
+        }
+      }
+    }
+    
+    System.out.println("No suitable constructor found");
+    return new ConstructorPlan(null, null, null);
+  }
+  
   /**
    * Reflection ile property'leri set et
    */
-  private void setPropertiesViaReflection(Object obj, Map<String, String> params) {
-    Class<?> clazz = obj.getClass();
+  private void setPropertiesViaReflection(ExternalClass external, Object obj, Map<String, String> params) {
     boolean anyPropertySet = false;
     
     for (Map.Entry<String, String> entry : params.entrySet()) {
@@ -260,23 +958,28 @@ public class ElenaParser {
       String value = entry.getValue();
       
       try {
-        // Field'ı bul
-        Field field;
-        try {
-          field = clazz.getDeclaredField(fieldName);
-          } catch (NoSuchFieldException e) {
-          System.out.println("Field not found: " + fieldName);
+        // Field'ı bul, erişimi aç; sınıf başına bir kez
+        if (!external.fields.containsKey(fieldName)) {
+          Field found = null;
+          try {
+            found = external.type.getDeclaredField(fieldName);
+            found.setAccessible(true);
+            } catch (NoSuchFieldException e) {
+            // remembered as null
+          }
+          external.fields.put(fieldName, found);
+        }
+        Field field = external.fields.get(fieldName);
+        if (field == null) {
+          if (external.verbose) System.out.println("Field not found: " + fieldName);
           continue;
         }
         
-        // Erişimi aç
-        field.setAccessible(true);
-        
         // Değeri dönüştür ve set et
         Object convertedValue = convertStringToType(value, field.getType());
         if (convertedValue != null) {
           field.set(obj, convertedValue);
-          System.out.println("✓ Set field: " + fieldName + " = " + convertedValue);
+          if (external.verbose) System.out.println("✓ Set field: " + fieldName + " = " + convertedValue);
           anyPropertySet = true;
         }
         
@@ -285,10 +988,11 @@ public class ElenaParser {
       }
     }
     
-    if (!anyPropertySet) {
+    if (!anyPropertySet && external.verbose) {
       System.out.println("No fields were set via reflection");
     }
   }
+
   
   /**
    * String'i primitive tiplere dönüştür (sadece geçerlilik kontrolü için)
@@ -397,9 +1101,14 @@ public class ElenaParser {
   private Color parseColor(String s) {
     if (s == null) return Color.WHITE;
     
-    s = s.trim()
-    .replaceAll(";", "")  // Remove any semicolons
-    .replaceAll("\\s+", ""); // Remove whitespace
+    // Remove any semicolons and whitespace
+    s = s.trim();
+    StringBuilder sb = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c != ';' && !isSpace(c)) sb.append(c);
+    }
+    s = sb.toString();
     
     Color cc=parseColorForExternal (s);
     
@@ -607,178 +1316,379 @@ public class ElenaParser {
     }
   }
   
+  /**
+   * Parses a scene file. If a compiled form (see CompiledScene) exists next
+   * to it, a current one is replayed instead and a stale one is rebuilt.
+   */
   private void parse(String filename) throws IOException {
-    List<String> lines = readLines(filename);
-    Stack<ObjectBuilder> stack = new Stack<ObjectBuilder>();
-    int lineNumber = 0;
+    File compiledFile = CompiledScene.compiledFileFor(filename);
+    if (!compiledFile.isFile()) {
+      parseText(filename);
+      return;
+    }
     
-    for (String rawLine : lines) {
-      lineNumber++;
-      String line = rawLine.trim();
-      
-      // Skip empty lines and comment lines
-      if (line.isEmpty() || line.startsWith("#") || line.startsWith ("//")) {
-        continue;
-      }
-      
-      int indo=line.lastIndexOf (";");
-      if (indo >= 0x0000) {
-        line = line.substring (0, indo+1);
-        line = line.trim ();
-      }
-      
-      // Handle block start (e.g., "Material matName {")
-      Matcher blockStart = BLOCK_START.matcher(line);
-      if (blockStart.matches()) {
-        String type = blockStart.group(1);
-        String id = blockStart.group(2);
-        stack.push(new ObjectBuilder(type, id));
-        continue;
+    long start = System.currentTimeMillis();
+    CompiledScene compiled = CompiledScene.load(compiledFile, new File(filename));
+    if (compiled == null) {
+      compile(filename);
+      return;
+    }
+    restored = compiled;
+    try {
+      replay(compiled);
+      } finally {
+      restored = null;
+    }
+    System.out.println("Compiled scene loaded in " + (System.currentTimeMillis() - start) + " ms: " + compiledFile);
+  }
+  
+  /**
+   * Parses the scene text and writes its compiled form next to it.
+   */
+  private void compile(String filename) throws IOException {
+    File compiledFile = CompiledScene.compiledFileFor(filename);
+    recording = new CompiledScene(new File(filename));
+    try {
+      parseText(filename);
+      recording.write(compiledFile);
+      } finally {
+      recording = null;
+    }
+    System.out.println("Compiled scene written: " + compiledFile);
+  }
+  
+  private void replay(CompiledScene compiled) throws IOException {
+    for (Map.Entry<String, BufferedImage> image : compiled.getImages().entrySet()) {
+      IMAGE_CACHE.putIfAbsent(image.getKey(), image.getValue());
+    }
+    blocks.clear();
+    for (CompiledScene.Statement statement : compiled.getStatements()) {
+      switch (statement.kind) {
+        case CompiledScene.BEGIN:
+        beginBlock(statement.first, statement.second, statement.line, statement.column);
+        break;
+        case CompiledScene.FIELD:
+        blocks.peek().fields.put(statement.first, statement.second);
+        break;
+        case CompiledScene.END:
+        endBlock(statement.line, statement.column);
+        break;
+        default:
+        global(statement.first);
+        break;
       }
-      
-      // Handle block end
-      if (line.equals("}")) {
-        if (stack.isEmpty()) {
-          throw new IOException("Line " + lineNumber + ": Unmatched '}' character. Attempting to close a block that wasn't opened.");
+    }
+  }
+  
+  private void record(byte kind, String first, String second, int line, int column) {
+    if (recording != null) recording.addStatement(kind, first, second, line, column);
+  }
+  
+  /**
+   * Reads the scene in one streaming pass: each line is matched by hand
+   * (no regular expressions) and every block is built as soon as it
+   * closes. Accepts exactly the line syntax below; errors name the line
+   * and column.
+   * <ul>
+   *   <li>{@code Type id {} opens a block, {@code }} on its own closes it</li>
+   *   <li>{@code key = value;} inside a block sets a field</li>
+   *   <li>empty lines and lines starting with # or // are skipped; text
+   *       after the last ; of a line is ignored</li>
+   * </ul>
+   */
+  private void parseText(String filename) throws IOException {
+    int lineNumber = 0;
+    blocks.clear();
+    if (!scanOnly) prefetchImages(filename);
+    
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(filename), "UTF-8"), 1 << 16)) {
+      String rawLine;
+      while ((rawLine = reader.readLine()) != null) {
+        lineNumber++;
+        String line = rawLine.trim();
+        
+        // Skip empty lines and comment lines
+        if (line.isEmpty() || line.startsWith("#") || line.startsWith ("//")) {
+          continue;
         }
-        ObjectBuilder builder = stack.pop();
-        Object obj = builder.build(this);
-        if (obj != null) {
-          objects.put(builder.id, obj);
+        
+        int indo=line.lastIndexOf (';');
+        if (indo >= 0x0000) {
+          line = line.substring (0, indo+1);
+          line = line.trim ();
         }
-        continue;
-      }
-      
-      // Handle property assignments (e.g., "width = 800;")
-      if (!stack.isEmpty()) {
-        Matcher assign = ASSIGNMENT.matcher(line);
-        if (assign.matches()) {
-          String key = assign.group(1).trim();
-          String value = assign.group(2).trim();
-          stack.peek().fields.put(key, value);
-          } else {
-          // Handle special cases like Renderer settings that aren't in blocks
-          parseGlobal(line);
+        int column = rawLine.indexOf(line.charAt(0)) + 1;
+        
+        // Handle block start (e.g., "Material matName {")
+        int typeEnd = wordEnd(line, 0);
+        if (typeEnd > 0 && isBlockStart(line, typeEnd)) {
+          int idStart = skipSpaces(line, typeEnd);
+          String type = line.substring(0, typeEnd);
+          String id = line.substring(idStart, wordEnd(line, idStart));
+          beginBlock(type, id, lineNumber, column);
+          record(CompiledScene.BEGIN, type, id, lineNumber, column);
+          continue;
+        }
+        
+        // Handle block end
+        if (line.equals("}")) {
+          endBlock(lineNumber, column);
+          record(CompiledScene.END, null, null, lineNumber, column);
+          continue;
+        }
+        
+        // Handle property assignments (e.g., "width = 800;")
+        if (!blocks.isEmpty()) {
+          int valueStart = typeEnd > 0 ? assignmentValueStart(line, typeEnd) : -1;
+          if (valueStart >= 0) {
+            String key = line.substring(0, typeEnd);
+            String value = line.substring(valueStart, line.length() - 1).trim();
+            blocks.peek().fields.put(key, value);
+            record(CompiledScene.FIELD, key, value, lineNumber, column);
+            } else {
+            // Handle special cases like Renderer settings that aren't in blocks
+            global(line);
+            record(CompiledScene.GLOBAL, line, null, lineNumber, column);
+          }
         }
       }
+      } finally {
+      if (!scanOnly) dropUnusedPrefetches();
     }
     
     // Check for any blocks that weren't properly closed
-    if (!stack.isEmpty()) {
+    if (!blocks.isEmpty()) {
       StringBuilder errorMsg = new StringBuilder("Unclosed blocks:\n");
-      for (ObjectBuilder builder : stack) {
-        errorMsg.append("- ").append(builder.type).append(" ").append(builder.id).append("\n");
+      for (ObjectBuilder builder : blocks) {
+        errorMsg.append("- ").append(builder.type).append(" ").append(builder.id)
+        .append(" (line ").append(builder.line).append(", column ").append(builder.column).append(")\n");
       }
       throw new IOException(errorMsg.toString());
     }
   }
   
-  private List<String> readLines(String filename) throws IOException {
-    List<String> lines = new ArrayList<>();
-    
-    File fd = new File (filename);
-    InputStream fis = new FileInputStream (fd);
-    Reader isr = new InputStreamReader (fis, "UTF-8");
-    BufferedReader br = new BufferedReader (isr);
-    
+  private void beginBlock(String type, String id, int line, int column) {
+    ObjectBuilder builder = new ObjectBuilder(type, id);
+    builder.line = line;
+    builder.column = column;
+    blocks.push(builder);
+  }
+  
+  private void endBlock(int line, int column) throws IOException {
+    if (blocks.isEmpty()) {
+      throw new IOException("Line " + line + ", column " + column
+        + ": Unmatched '}' character. Attempting to close a block that wasn't opened.");
+    }
+    ObjectBuilder builder = blocks.pop();
+    if (parsedBlocks != null) parsedBlocks.put(builder.id, builder);
+    if (scanOnly) return;
+    Object obj;
     try {
-      String line;
-      while ((line = br.readLine()) != null) {
-        // Satır sonu karakterlerini temizle
-        line = line.replace("\r", "").replace("\n", "");
-        lines.add(line);
-      }
-      
-      br.close ();
-      isr.close ();
-      fis.close ();
-      } catch (IOException ioe) {
-      ioe.printStackTrace ();
+      obj = builder.build(this);
+      } catch (RuntimeException e) {
+      throw new IOException("Line " + builder.line + ", column " + builder.column + ": "
+        + e.getMessage(), e);
     }
-    
-    return lines;
+    if (obj != null) {
+      objects.put(builder.id, obj);
+    }
+  }
+  
+  // Hand-written equivalents of the regular expression classes \w and \s
+  
+  private static boolean isWordChar(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+  }
+  
+  private static boolean isSpace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+  
+  /**
+   * End of the run of word characters starting at i (i itself if none).
+   */
+  private static int wordEnd(String s, int i) {
+    while (i < s.length() && isWordChar(s.charAt(i))) i++;
+    return i;
+  }
+  
+  private static int skipSpaces(String s, int i) {
+    while (i < s.length() && isSpace(s.charAt(i))) i++;
+    return i;
+  }
+  
+  /**
+   * Whole line is "word spaces word spaces? {", the first word ending at
+   * typeEnd.
+   */
+  private static boolean isBlockStart(String line, int typeEnd) {
+    int idStart = skipSpaces(line, typeEnd);
+    if (idStart == typeEnd) return false;
+    int idEnd = wordEnd(line, idStart);
+    if (idEnd == idStart) return false;
+    int brace = skipSpaces(line, idEnd);
+    return brace == line.length() - 1 && line.charAt(brace) == '{';
+  }
+  
+  /**
+   * For a line "key = value;" whose key ends at keyEnd, the index just
+   * after '='; -1 if the line is not an assignment. The value runs to the
+   * line's final ';', must not contain another ';' and may be blank but
+   * not empty.
+   */
+  private static int assignmentValueStart(String line, int keyEnd) {
+    int eq = skipSpaces(line, keyEnd);
+    if (eq >= line.length() || line.charAt(eq) != '=') return -1;
+    int last = line.length() - 1;
+    if (line.charAt(last) != ';' || last - (eq + 1) < 1) return -1;
+    if (line.indexOf(';', eq + 1) != last) return -1;
+    return eq + 1;
+  }
+  
+  private void global(String line) {
+    if (parsedGlobals != null) parsedGlobals.add(line);
+    if (!scanOnly) parseGlobal(line);
   }
   
   private void parseGlobal(String line) {
     if (line.contains("color")) {
-      Matcher m = Pattern.compile("color\\s*=\\s*(.+?);?").matcher(line);
+      Matcher m = GLOBAL_COLOR.matcher(line);
       if (m.find()) backgroundColor = parseColor(m.group(1));
     }
     if (line.contains("width")) {
-      Matcher m = Pattern.compile("width\\s*=\\s*(\\d+)").matcher(line);
+      Matcher m = GLOBAL_WIDTH.matcher(line);
       if (m.find()) imageWidth = Integer.parseInt(m.group(1));
     }
     if (line.contains("height")) {
-      Matcher m = Pattern.compile("height\\s*=\\s*(\\d+)").matcher(line);
+      Matcher m = GLOBAL_HEIGHT.matcher(line);
       if (m.find()) imageHeight = Integer.parseInt(m.group(1));
     }
   }
   
   private Point3 parsePoint3(String s) {
-    Matcher m = POINT3.matcher(s.trim());
-    if (m.find()) {
-      String[] parts = m.group(1).split(",");
-      return new Point3(
-        Double.parseDouble(parts[0].trim()),
-        Double.parseDouble(parts[1].trim()),
-        Double.parseDouble(parts[2].trim())
-      );
+    double[] xyz = new double[3];
+    if (parseTuple(s, 'P', xyz)) {
+      return new Point3(xyz[0], xyz[1], xyz[2]);
     }
     return new Point3(0, 0, 0);
   }
   
   private Vector3 parseVector3(String s) {
-    Matcher m = VECTOR3.matcher(s.trim());
-    if (m.find()) {
-      String[] parts = m.group(1).split(",");
-      return new Vector3(
-        Double.parseDouble(parts[0].trim()),
-        Double.parseDouble(parts[1].trim()),
-        Double.parseDouble(parts[2].trim())
-      );
+    double[] xyz = new double[3];
+    if (parseTuple(s, 'V', xyz)) {
+      return new Vector3(xyz[0], xyz[1], xyz[2]);
     }
     return new Vector3(0, 0, 0);
   }
   
+  /**
+   * Finds the first non-empty "P(...)" (or V) in s and parses its first
+   * three comma separated numbers into xyz.
+   */
+  private static boolean parseTuple(String s, char tag, double[] xyz) {
+    int n = s.length();
+    for (int i = 0; i + 1 < n; i++) {
+      if (s.charAt(i) != tag || s.charAt(i + 1) != '(') continue;
+      int close = s.indexOf(')', i + 2);
+      if (close < 0) return false;
+      if (close == i + 2) continue;
+      if (parseNumbers(s, i + 2, close, xyz) < 3) {
+        throw new IllegalArgumentException("Expected 3 numbers in " + s.substring(i, close + 1));
+      }
+      return true;
+    }
+    return false;
+  }
+  
+  /**
+   * Parses the comma separated numbers in s[from, to) into out, as
+   * split(",") and Double.parseDouble would, without the intermediate
+   * strings: trailing empty parts are dropped and parts beyond out.length
+   * are counted but not parsed.
+   * @return the number of parts
+   */
+  private static int parseNumbers(String s, int from, int to, double[] out) {
+    int count = 0;
+    int start = from;
+    int pendingEmpty = 0;
+    for (int i = from; i <= to; i++) {
+      if (i < to && s.charAt(i) != ',') continue;
+      if (i == start) {
+        pendingEmpty++;
+        } else {
+        // Empty parts are only dropped at the end
+        if (pendingEmpty > 0 && count < out.length) {
+          throw new NumberFormatException("empty String");
+        }
+        count += pendingEmpty;
+        pendingEmpty = 0;
+        if (count < out.length) out[count] = Double.parseDouble(s.substring(start, i));
+        count++;
+      }
+      start = i + 1;
+    }
+    return count;
+  }
+  
   private List<Point3> parsePoint3List(String s) {
     List<Point3> list = new ArrayList<>();
-    s = s.replaceAll("[\\[\\]]", "").trim();
+    s = removeAll(removeAll(s, "["), "]").trim();
     String[] items = s.split(",");
     for (int i = 0; i < items.length; i += 3) {
       list.add(new Point3(
-          Double.parseDouble(items[i].trim().replaceAll("P\\(", "")),
+          Double.parseDouble(removeAll(items[i].trim(), "P(")),
           Double.parseDouble(items[i + 1].trim()),
-          Double.parseDouble(items[i + 2].trim().replaceAll("\\)", ""))
+          Double.parseDouble(removeAll(items[i + 2].trim(), ")"))
       ));
     }
     return list;
   }
   
+  private static String removeAll(String s, String token) {
+    int i = s.indexOf(token);
+    if (i < 0) return s;
+    StringBuilder sb = new StringBuilder(s.length());
+    int from = 0;
+    for (; i >= 0; i = s.indexOf(token, from)) {
+      sb.append(s, from, i);
+      from = i + token.length();
+    }
+    return sb.append(s, from, s.length()).toString();
+  }
+  
   private Matrix4 parseTransform(String s) {
     Matrix4 result = Matrix4.identity();
     
     // Split the string by '*' to separate transform operations
     String[] parts = s.split("\\*");
     List<Matrix4> transforms = new ArrayList<>();
+    double[] xyz = new double[3];
     
     for (String part : parts) {
       part = part.trim();
       
-      // Match operation name and parameters: e.g., rotate(0,90,-25)
-      Matcher m = TRANSFORM_OP.matcher(part);
-      if (!m.matches()) {
+      // Operation name and parameters: e.g., rotate(0,90,-25)
+      String op = part.startsWith("translate") ? "translate"
+      : part.startsWith("rotate") ? "rotate"
+      : part.startsWith("scale") ? "scale" : null;
+      int open = (op != null) ? skipSpaces(part, op.length()) : -1;
+      if (open < 0 || open >= part.length() || part.charAt(open) != '('
+        || part.indexOf(')', open) != part.length() - 1) {
         throw new IllegalArgumentException("Invalid transform part: " + part);
       }
       
-      String op = m.group(1).trim();
-      String params = m.group(2).trim();
-      String[] p = params.split(",");
-      for (int i = 0; i < p.length; i++) p[i] = p[i].trim();
-      if (p.length != 3) throw new IllegalArgumentException("Transform requires 3 params: " + part);
+      int from = open + 1;
+      int to = part.length() - 1;
+      while (from < to && part.charAt(from) <= ' ') from++;
+      while (to > from && part.charAt(to - 1) <= ' ') to--;
+      if (parseNumbers(part, from, to, xyz) != 3) {
+        throw new IllegalArgumentException("Transform requires 3 params: " + part);
+      }
       
-      double x = Double.parseDouble(p[0]);
-      double y = Double.parseDouble(p[1]);
-      double z = Double.parseDouble(p[2]);
+      double x = xyz[0];
+      double y = xyz[1];
+      double z = xyz[2];
       
       Matrix4 T = null;
       if ("translate".equals(op)) {
@@ -788,10 +1698,8 @@ public class ElenaParser {
         Matrix4 ry = Matrix4.rotateY(y);
         Matrix4 rz = Matrix4.rotateZ(z);
         T = rx.multiply(ry).multiply(rz);
-        } else if ("scale".equals(op)) {
-        T = Matrix4.scale(x, y, z);
         } else {
-        throw new IllegalArgumentException("Unknown op: " + op);
+        T = Matrix4.scale(x, y, z);
       }
       
       transforms.add(T);
@@ -806,124 +1714,329 @@ public class ElenaParser {
   }
   
   private BufferedImage loadImage(String path) {
-    // Path normalization
+    return recordImage(path, readImage(path));
+  }
+  
+  private BufferedImage loadImageARGB(String path) {
+    return recordImage(path, readImageARGB(path));
+  }
+  
+  /**
+   * Adds an image the scene uses to the compiled scene being written.
+   * Tiled textures are memory-mapped already; only their hash is kept.
+   */
+  private BufferedImage recordImage(String path, BufferedImage image) {
+    if (recording == null) return image;
     String normalizedPath = path.replace("\"", "").trim();
-    
-    // Check cache first (fast path) - transparency value too add to cache key
-    String cacheKey = normalizedPath;
-    BufferedImage cachedImage = IMAGE_CACHE.get(cacheKey);
+    if (image == DEFAULT_IMAGE || TiledTexture.isTiledFile(normalizedPath)
+      || (long) image.getWidth() * image.getHeight() > LARGE_IMAGE_PIXELS) {
+      recordAsset(new File(normalizedPath));
+      return image;
+    }
+    try {
+      recording.addImage(normalizedPath, image);
+      } catch (IOException e) {
+      throw new RuntimeException("Cannot hash " + normalizedPath + ": " + e.getMessage(), e);
+    }
+    return image;
+  }
+  
+  /**
+   * Makes the compiled scene being written depend on a file the scene reads.
+   */
+  private void recordAsset(File file) {
+    if (recording == null) return;
+    try {
+      recording.addAsset(file);
+      } catch (IOException e) {
+      throw new RuntimeException("Cannot hash " + file + ": " + e.getMessage(), e);
+    }
+  }
+  
+  private BufferedImage readImage(String path) {
+    String normalizedPath = path.replace("\"", "").trim();
+    BufferedImage cachedImage = IMAGE_CACHE.get(normalizedPath);
     if (cachedImage != null) {
-      //IMAGE_CACHE.put(cacheKey, cachedImage.clone ());
+      dropPrefetch(normalizedPath);
       return cachedImage;
     }
     
-    // Synchronized loading to prevent duplicate loads
-    synchronized (IMAGE_CACHE) {
-      // Double-check after synchronization
-      cachedImage = IMAGE_CACHE.get(cacheKey);
-      if (cachedImage != null) {
-        //IMAGE_CACHE.put(cacheKey, cachedImage.clone ());
-        return cachedImage;
-      }
-      
-      // Load from disk
-      try {
-        File imageFile = new File(normalizedPath);
-        if (!imageFile.exists()) {
-          System.err.println("Image file not found: " + normalizedPath);
-          return DEFAULT_IMAGE;
-        }
-        
-        BufferedImage loadedImage = ImageIO.read(imageFile);
-        if (loadedImage == null) {
-          System.err.println("Failed to decode image: " + normalizedPath);
-          return DEFAULT_IMAGE;
-        }
-        
-        //BufferedImage bimg = new BufferedImage (
-        // loadedImage.getWidth (), loadedImage.getHeight (),
-        // BufferedImage.TYPE_INT_RGB);
-        //Graphics2D gx = bimg.createGraphics ();
-        //gx.drawImage (loadedImage, 0, 0, null);
-        
-        //loadedImage = bimg;
-        //gx.dispose ();
-        
-        // Cache the successfully loaded image
-        IMAGE_CACHE.put(cacheKey, loadedImage);
-        return loadedImage;
-        
-        } catch (IOException e) {
-        System.err.println("Error loading image '" + normalizedPath + "': " + e.getMessage());
-        return DEFAULT_IMAGE;
-      }
+    BufferedImage loadedImage = awaitImage(normalizedPath);
+    if (loadedImage == DEFAULT_IMAGE) {
+      return DEFAULT_IMAGE;
     }
+    cachedImage = IMAGE_CACHE.putIfAbsent(normalizedPath, loadedImage);
+    return cachedImage != null ? cachedImage : loadedImage;
   }
   
-  private BufferedImage loadImageARGB(String path) {
+  private BufferedImage readImageARGB(String path) {
     String normalizedPath = path.replace("\"", "").trim();
-    String cacheKey = normalizedPath;
-    
-    BufferedImage cachedImage = IMAGE_CACHE.get(cacheKey);
+    BufferedImage cachedImage = IMAGE_CACHE.get(normalizedPath);
     if (cachedImage != null) {
+      dropPrefetch(normalizedPath);
       return cachedImage;
     }
     
-    synchronized (IMAGE_CACHE) {
-      cachedImage = IMAGE_CACHE.get(cacheKey);
-      if (cachedImage != null) {
-        return cachedImage;
+    BufferedImage loadedImage = awaitImage(normalizedPath);
+    if (loadedImage == DEFAULT_IMAGE) {
+      return DEFAULT_IMAGE;
+    }
+    
+    // Tiled textures and INT_ARGB decodes need no conversion
+    BufferedImage compatibleImage = loadedImage;
+    if (loadedImage.getType() != BufferedImage.TYPE_INT_ARGB && !TiledTexture.isTiledFile(normalizedPath)
+      && (long) loadedImage.getWidth() * loadedImage.getHeight() <= LARGE_IMAGE_PIXELS) {
+      compatibleImage = new BufferedImage(
+        loadedImage.getWidth(), loadedImage.getHeight(), BufferedImage.TYPE_INT_ARGB
+      );
+      java.awt.Graphics2D g = compatibleImage.createGraphics();
+      g.drawImage(loadedImage, 0, 0, null);
+      g.dispose();
+    }
+    cachedImage = IMAGE_CACHE.putIfAbsent(normalizedPath, compatibleImage);
+    return cachedImage != null ? cachedImage : compatibleImage;
+  }
+  
+  /**
+   * Looks through the scene text on the loader pool and starts decoding
+   * every image it names. The parse builds each block right after reading
+   * it, so without this the images would still decode one at a time.
+   */
+  private void prefetchImages(final String filename) {
+    prefetchScan = IMAGE_LOADER.submit(() -> {
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(filename), "UTF-8"), 1 << 16)) {
+          String type = "";
+          String line;
+          while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            int end = line.lastIndexOf(';');
+            int keyEnd = wordEnd(line, 0);
+            if (keyEnd == 0) {
+              if (line.equals("}")) type = "";
+              continue;
+            }
+            if (isBlockStart(line, keyEnd)) {
+              type = line.substring(0, keyEnd);
+              continue;
+            }
+            if (end < 0 || !IMAGE_KEYS.contains(line.substring(0, keyEnd))) continue;
+            line = line.substring(0, end + 1).trim();
+            int valueStart = assignmentValueStart(line, keyEnd);
+            // ElenaTextureMaterial reads its image itself
+            if (valueStart >= 0 && !type.equals("ElenaTextureMaterial")) {
+              prefetchImage(line.substring(valueStart, line.length() - 1).trim());
+            }
+          }
+          } catch (IOException e) {
+          // The parse itself reports unreadable scenes
+        }
+    });
+  }
+  
+  private void prefetchImage(String path) {
+    String normalizedPath = path.replace("\"", "").trim();
+    if (IMAGE_CACHE.containsKey(normalizedPath) || !new File(normalizedPath).isFile()) {
+      return;
+    }
+    FutureTask<BufferedImage> task = new FutureTask<BufferedImage>(() -> decodeImage(normalizedPath));
+    if (IMAGE_LOADS.putIfAbsent(normalizedPath, task) == null) {
+      prefetched.put(normalizedPath, task);
+      IMAGE_LOADER.execute(task);
+    }
+  }
+  
+  /**
+   * Drops this parse's decode of a path that was found in the image cache,
+   * so the decode does not stay in IMAGE_LOADS unread.
+   */
+  private void dropPrefetch(String normalizedPath) {
+    if (prefetched.isEmpty()) return;
+    FutureTask<BufferedImage> task = prefetched.remove(normalizedPath);
+    if (task != null && IMAGE_LOADS.remove(normalizedPath, task)) task.cancel(false);
+  }
+  
+  /**
+   * At the end of a parse, drops the decodes it started that no block read:
+   * images only ElenaTextureMaterial loads, or blocks that failed. Only
+   * IMAGE_CACHE keeps images past a parse, within its limit.
+   */
+  private void dropUnusedPrefetches() {
+    if (prefetchScan != null) {
+      try {
+        prefetchScan.get();
+        } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException e) {
+        // Nothing more was started
+      }
+      prefetchScan = null;
+    }
+    for (Map.Entry<String, FutureTask<BufferedImage>> entry : prefetched.entrySet()) {
+      if (IMAGE_LOADS.remove(entry.getKey(), entry.getValue())) entry.getValue().cancel(false);
+    }
+    prefetched.clear();
+  }
+  
+  /**
+   * The decoded image for a path. Each path is decoded once; a decode
+   * still waiting for the pool runs on the calling thread instead, and
+   * unrelated paths never wait for each other.
+   */
+  private BufferedImage awaitImage(String normalizedPath) {
+    FutureTask<BufferedImage> task = new FutureTask<BufferedImage>(() -> decodeImage(normalizedPath));
+    FutureTask<BufferedImage> load = IMAGE_LOADS.putIfAbsent(normalizedPath, task);
+    if (load == null) load = task;
+    prefetched.remove(normalizedPath, load);
+    load.run();
+    try {
+      return load.get();
+      } catch (CancellationException e) {
+      // Dropped by another parse or cleared with the caches
+      return decodeImage(normalizedPath);
+      } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return DEFAULT_IMAGE;
+      } catch (ExecutionException e) {
+      System.err.println("Error loading image '" + normalizedPath + "': " + e.getCause());
+      return DEFAULT_IMAGE;
+      } finally {
+      IMAGE_LOADS.remove(normalizedPath, load);
+    }
+  }
+  
+  /**
+   * Reads an image from disk; DEFAULT_IMAGE if it is missing or unreadable.
+   */
+  private BufferedImage decodeImage(String normalizedPath) {
+    try {
+      File imageFile = new File(normalizedPath);
+      if (!imageFile.exists()) {
+        System.err.println("Image file not found: " + normalizedPath);
+        return DEFAULT_IMAGE;
       }
       
-      try {
-        File imageFile = new File(normalizedPath);
-        if (!imageFile.exists()) {
-          System.err.println("Image file not found: " + normalizedPath);
-          return DEFAULT_IMAGE;
-        }
-        
-        BufferedImage loadedImage = ImageIO.read(imageFile);
-        if (loadedImage == null) {
-          System.err.println("Failed to decode image: " + normalizedPath);
-          return DEFAULT_IMAGE;
-        }
-        
-        final int lw = loadedImage.getWidth ();
-        final int lh = loadedImage.getHeight ();
-        
-        BufferedImage compatibleImage = new BufferedImage(
-          lw, lh, BufferedImage.TYPE_INT_ARGB
-        );
-        
-        java.awt.Graphics2D g = compatibleImage.createGraphics();
-        //g.setComposite(AlphaComposite.Clear);
-        //g.fillRect(0, 0, lw, lh);
-        //g.setBackground (new Color (250, 0, 0, 0));
-        //g.clearRect (0, 0, lw, lh);
-        //g.setComposite(AlphaComposite.SrcOver);
-        
-        g.drawImage(loadedImage, 0, 0, null);
-        g.dispose();
-        
-        IMAGE_CACHE.put(cacheKey, compatibleImage);
-        return compatibleImage;
-        
-        } catch (IOException e) {
-        System.err.println("Error loading image '" + normalizedPath + "': " + e.getMessage());
+      // Tiled textures are already ARGB and never fully resident on heap
+      BufferedImage tiledImage = loadTiledImage(imageFile);
+      if (tiledImage != null) {
+        return tiledImage;
+      }
+      
+      BufferedImage loadedImage = ImageIO.read(imageFile);
+      if (loadedImage == null) {
+        System.err.println("Failed to decode image: " + normalizedPath);
         return DEFAULT_IMAGE;
       }
+      return loadedImage;
+      
+      } catch (IOException e) {
+      System.err.println("Error loading image '" + normalizedPath + "': " + e.getMessage());
+      return DEFAULT_IMAGE;
+    }
+  }
+  
+  /**
+   * Returns a tile-cache backed view for ".emtt" files and for images larger
+   * than LARGE_IMAGE_PIXELS (converted once into the directory named by
+   * -Delena.tileDir, see TiledTexture.convertedFileFor), or null when the
+   * image should be decoded normally.
+   */
+  private BufferedImage loadTiledImage(File imageFile) {
+    try {
+      if (TiledTexture.isTiledFile(imageFile.getPath())) {
+        return TiledTexture.open(imageFile).asBufferedImage();
+      }
+      
+      int[] size = TiledTexture.readImageSize(imageFile);
+      if (size == null || (long) size[0] * size[1] <= LARGE_IMAGE_PIXELS) {
+        return null;
+      }
+      
+      TiledTexture texture = TiledTexture.openOrConvert(imageFile);
+      System.out.println("Using tiled texture: " + texture);
+      return texture.asBufferedImage();
+      
+      } catch (IOException e) {
+      System.err.println("Tiled texture unavailable for '" + imageFile + "': " + e.getMessage());
+      return null;
     }
   }
   
   private BufferedImage render() {
     //ElenaMuratRayTracer tracer = new ElenaMuratRayTracer(scene, imageWidth, imageHeight, backgroundColor);
+    populateScene();
+    return tracer.render();
+  }
+  
+  private HdrFramebuffer renderHdr() {
+    populateScene();
+    return tracer.renderHdr();
+  }
+  
+  private void renderTo(RenderCheckpoint checkpoint) throws IOException {
+    populateScene();
+    tracer.render(checkpoint);
+  }
+  
+  private String checkpointSettings() {
+    return "lightSamples=" + tracer.getLightSamples() + ",lightCullThreshold=" + tracer.getLightCullThreshold();
+  }
+  
+  /**
+   * Renders the frames set by frames, firstFrame and frameRate, parsing
+   * and populating the scene only once.
+   */
+  private void renderSequence(String outputPattern) throws IOException {
+    populateScene();
+    SequenceRenderer sequence = new SequenceRenderer(tracer, scene, frameRate);
+    sequence.setCameraMotion(cameraOrbit, cameraVelocity);
+    if (temporalReuse) sequence.setTemporalReuse(temporalMaxAngle);
+    System.out.println("Rendering " + frames + " frames at " + frameRate + " fps, "
+      + sequence.getAnimatables().size() + " animated objects");
+    sequence.render(firstFrame, frames, outputPattern);
+  }
+  
+  private void renderTo(RenderSink sink, int bandHeight) throws IOException {
+    populateScene();
+    tracer.render(sink, bandHeight);
+  }
+  
+  /**
+   * Releases what the scene's materials share with other scenes, such as
+   * TextAtlas rasters. Called when the parsed scene is thrown away; it
+   * must not be rendered afterwards.
+   */
+  private void dispose() {
+    for (Object obj : objects.values()) {
+      disposeObject(obj);
+    }
+  }
+  
+  private static void disposeObject(Object obj) {
+    if (obj instanceof DisposableMaterial) ((DisposableMaterial) obj).dispose();
+  }
+  
+  private void populateScene() {
+    // Shapes that instance sets copy are rendered only through the copies
+    Set<Object> prototypes = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    for (Object obj : objects.values()) {
+      if (obj instanceof InstanceSet) prototypes.add(((InstanceSet) obj).getPrototype());
+    }
+    
     for (Object obj : objects.values()) {
       if (obj == null) {
         System.out.println ("NULL OBJECT!");
         continue;
       }
+      if (prototypes.contains(obj)) continue;
       
-      if (obj instanceof Light) {
+      if (obj instanceof BioluminescentLight && ((BioluminescentLight) obj).isEmitterSampling()) {
+        // Swarm as many small lights, see BioluminescentLight.toEmitterLights()
+        for (Light emitter : ((BioluminescentLight) obj).toEmitterLights()) {
+          scene.addLight (emitter);
+        }
+        System.out.println ("Added: "+obj.toString ()+" as emitter lights");
+        } else if (obj instanceof Light) {
         scene.addLight ((Light) obj);
         System.out.println ("Added: "+obj.toString ()+"");
         } else if (obj instanceof EMShape) {
@@ -936,8 +2049,6 @@ public class ElenaParser {
         System.out.println ("Added: "+obj.toString ()+"");
       } else continue;
     }
-    
-    return tracer.render();
   }
   
   private final String convertToLatin(String text) {
@@ -1023,6 +2134,8 @@ public class ElenaParser {
   private class ObjectBuilder {
     String type;
     String id;
+    int line;
+    int column;
     Map<String, String> fields = new HashMap<>();
     
     public ObjectBuilder(String type, String id) {
@@ -1030,19 +2143,100 @@ public class ElenaParser {
       this.id = id;
     }
     
+    /**
+     * True if a field value names one of the ids, as a whole word; only
+     * the given field is looked at unless it is null.
+     */
+    boolean refersTo(Set<String> ids, String key) {
+      for (Map.Entry<String, String> field : fields.entrySet()) {
+        if (key != null && !key.equals(field.getKey())) continue;
+        String value = field.getValue();
+        int i = 0;
+        while (i < value.length()) {
+          int end = wordEnd(value, i);
+          if (end == i) {
+            i++;
+            } else {
+            if (ids.contains(value.substring(i, end))) return true;
+            i = end;
+          }
+        }
+      }
+      return false;
+    }
+    
+    /**
+     * True if this block differs from its earlier version only through its
+     * material field: the name changed or the named material was rebuilt.
+     */
+    boolean onlyMaterialChanged(ObjectBuilder old, Set<String> rebuilt) {
+      Set<String> keys = new HashSet<String>(fields.keySet());
+      keys.addAll(old.fields.keySet());
+      for (String key : keys) {
+        if ("material".equals(key)) continue;
+        String value = fields.get(key);
+        if (value == null || !value.equals(old.fields.get(key)) || refersTo(rebuilt, key)) return false;
+      }
+      return true;
+    }
+    
     public Object build(ElenaParser parser) {
+      Object obj = buildObject(parser);
+      if (obj instanceof BakeableMaterial && fields.containsKey("bake")) {
+        try {
+          applyPatternBake((BakeableMaterial) obj);
+          } catch (Exception e) {
+          throw new RuntimeException("Error baking " + type + ": " + e.getMessage(), e);
+        }
+      }
+      return obj;
+    }
+    
+    /**
+     * Optional pattern bake for procedural materials:
+     * bake = volume|xy|xz|yz|spherical; bakeResolution; bakeMin; bakeMax.
+     * The bounds are in the object's local space.
+     */
+    private void applyPatternBake(BakeableMaterial material) {
+      PatternBake.Mode mode = PatternBake.parseMode(fields.get("bake"));
+      int resolution = (mode == PatternBake.Mode.VOLUME) ? 64 : 512;
+      if (fields.containsKey("bakeResolution")) {
+        resolution = Integer.parseInt(fields.get("bakeResolution"));
+      }
+      Point3 min = fields.containsKey("bakeMin") ? parsePoint3(fields.get("bakeMin")) : new Point3(-1, -1, -1);
+      Point3 max = fields.containsKey("bakeMax") ? parsePoint3(fields.get("bakeMax")) : new Point3(1, 1, 1);
+      
+      String key = type + " " + id + " " + line;
+      PatternBake bake = restored != null ? restored.getBake(key) : null;
+      if (bake != null) {
+        material.setPatternBake(bake);
+        System.out.println("Restored bake of " + type + " " + id + ": " + bake);
+        return;
+      }
+      
+      bake = PatternBake.bake(material, mode, resolution, min, max);
+      PatternBake.ErrorReport error = bake.measureError(material, 4096, 12345L);
+      material.setPatternBake(bake);
+      System.out.println("Baked " + type + " " + id + ": " + bake + ", error " + error);
+      if (recording != null) recording.addBake(key, bake);
+    }
+    
+    private Object buildObject(ElenaParser parser) {
       try {
         switch (type) {
           case "Camera": return buildCamera(parser);
           case "Renderer": return buildTracerValues(parser);
           
           case "BioluminescentLight": return buildBioluminescentLight(parser);
+          case "DiskAreaLight": return buildDiskAreaLight(parser);
           case "BlackHoleLight": return buildBlackHoleLight(parser);
           case "ElenaDirectionalLight": return buildElenaDirectionalLight(parser);
           case "ElenaMuratAmbientLight": return buildElenaMuratAmbientLight(parser);
           case "FractalLight": return buildFractalLight(parser);
           case "MuratPointLight": return buildMuratPointLight(parser);
           case "PulsatingPointLight": return buildPulsatingPointLight(parser);
+          case "RectangleAreaLight": return buildRectangleAreaLight(parser);
+          case "SphereAreaLight": return buildSphereAreaLight(parser);
           case "SpotLight": return buildSpotLight(parser);
           
           case "Box": return buildBox(parser);
@@ -1065,6 +2259,10 @@ public class ElenaParser {
           case "IntersectionCSG": return buildIntersectionCSG(parser);
           case "DifferenceCSG": return buildDifferenceCSG(parser);
           
+          case "Repeat": return buildRepeat(parser);
+          case "Grid": return buildGrid(parser);
+          case "Array": return buildArray(parser);
+          
           case "CustomMaterial": return buildCustomMaterial(parser);
           case "CustomShape": return buildCustomShape(parser);
           
@@ -1247,6 +2445,92 @@ public class ElenaParser {
         tracer.setShadowColor (cshadow);
       }
       
+      if (fields.containsKey("tileCacheMB")) {
+        long megabytes = Long.parseLong(fields.get("tileCacheMB"));
+        TileCache.shared().setCapacityBytes(megabytes * 1024L * 1024L);
+      }
+      
+      if (fields.containsKey("imageCacheMB")) {
+        long megabytes = Long.parseLong(fields.get("imageCacheMB"));
+        IMAGE_CACHE.setCapacityBytes(megabytes * 1024L * 1024L);
+      }
+      
+      if (fields.containsKey("lightCullThreshold")) {
+        tracer.setLightCullThreshold(Double.parseDouble(fields.get("lightCullThreshold")));
+      }
+      
+      if (fields.containsKey("lightSamples")) {
+        tracer.setLightSamples(Integer.parseInt(fields.get("lightSamples")));
+      }
+      
+      if (fields.containsKey("profile")) {
+        tracer.setProfiling(Boolean.parseBoolean(fields.get("profile")));
+      }
+      
+      if (fields.containsKey("streamBandHeight")) {
+        streamBandHeight = Integer.parseInt(fields.get("streamBandHeight"));
+      }
+      
+      if (fields.containsKey("checkpoint")) {
+        checkpoint = Boolean.parseBoolean(fields.get("checkpoint"));
+      }
+      
+      if (fields.containsKey("checkpointTileSize")) {
+        checkpointTileSize = Integer.parseInt(fields.get("checkpointTileSize"));
+      }
+      
+      if (fields.containsKey("checkpointInterval")) {
+        checkpointInterval = Double.parseDouble(fields.get("checkpointInterval"));
+      }
+      
+      if (fields.containsKey("farmTileSize")) {
+        farmTileSize = Integer.parseInt(fields.get("farmTileSize"));
+      }
+      
+      if (fields.containsKey("frames")) {
+        frames = Integer.parseInt(fields.get("frames"));
+      }
+      
+      if (fields.containsKey("firstFrame")) {
+        firstFrame = Integer.parseInt(fields.get("firstFrame"));
+      }
+      
+      if (fields.containsKey("frameRate")) {
+        frameRate = Double.parseDouble(fields.get("frameRate"));
+      }
+      
+      if (fields.containsKey("cameraOrbit")) {
+        cameraOrbit = Double.parseDouble(fields.get("cameraOrbit"));
+      }
+      
+      if (fields.containsKey("cameraVelocity")) {
+        cameraVelocity = parseVector3(fields.get("cameraVelocity"));
+      }
+      
+      if (fields.containsKey("temporalReuse")) {
+        temporalReuse = Boolean.parseBoolean(fields.get("temporalReuse"));
+      }
+      
+      if (fields.containsKey("temporalMaxAngle")) {
+        temporalMaxAngle = Double.parseDouble(fields.get("temporalMaxAngle"));
+      }
+      
+      if (fields.containsKey("hdrOutput")) {
+        hdrOutput = fields.get("hdrOutput").replace("\"", "").trim();
+      }
+      
+      if (fields.containsKey("toneMap")) {
+        toneMapOperator = ToneMapper.Operator.parse(fields.get("toneMap"));
+      }
+      
+      if (fields.containsKey("exposure")) {
+        exposure = Double.parseDouble(fields.get("exposure"));
+      }
+      
+      if (fields.containsKey("gamma")) {
+        gamma = Double.parseDouble(fields.get("gamma"));
+      }
+      
       return tracer;
     }
     
@@ -1258,12 +2542,14 @@ public class ElenaParser {
       }
       Color color = parser.parseColor(colorStr);
       double pulseSpeed = Double.parseDouble(fields.get("pulseSpeed"));
+      boolean emitterSampling = Boolean.parseBoolean(fields.get("emitterSampling"));
       if (fields.containsKey("baseIntensity")) {
         double baseIntensity = Double.parseDouble(fields.get("baseIntensity"));
         double attenuationFactor = Double.parseDouble(fields.get("attenuationFactor"));
-        return new BioluminescentLight(positions, color, pulseSpeed, baseIntensity, attenuationFactor);
+        return new BioluminescentLight(positions, color, pulseSpeed, baseIntensity, attenuationFactor, emitterSampling);
       }
-      return new BioluminescentLight(positions, color, pulseSpeed);
+      BioluminescentLight light = new BioluminescentLight(positions, color, pulseSpeed);
+      return emitterSampling ? light.withEmitterSampling(true) : light;
     }
     
     private BlackHoleLight buildBlackHoleLight(ElenaParser parser) {
@@ -1316,6 +2602,53 @@ public class ElenaParser {
       return new MuratPointLight(position, color, intensity);
     }
     
+    private RectangleAreaLight buildRectangleAreaLight(ElenaParser parser) {
+      Point3 position = parser.parsePoint3(fields.get("position"));
+      Vector3 uEdge = parser.parseVector3(fields.get("uEdge"));
+      Vector3 vEdge = parser.parseVector3(fields.get("vEdge"));
+      Color color = parser.parseColor(fields.get("color"));
+      double intensity = Double.parseDouble(fields.get("intensity"));
+      double[] a = parseAreaLightAttenuation();
+      return new RectangleAreaLight(position, uEdge, vEdge, color, intensity, a[0], a[1], a[2],
+        parseAreaLightSamples("minSamples", 4), parseAreaLightSamples("maxSamples", 16));
+    }
+    
+    private DiskAreaLight buildDiskAreaLight(ElenaParser parser) {
+      Point3 position = parser.parsePoint3(fields.get("position"));
+      Vector3 normal = parser.parseVector3(fields.get("normal"));
+      double radius = Double.parseDouble(fields.get("radius"));
+      Color color = parser.parseColor(fields.get("color"));
+      double intensity = Double.parseDouble(fields.get("intensity"));
+      double[] a = parseAreaLightAttenuation();
+      return new DiskAreaLight(position, normal, radius, color, intensity, a[0], a[1], a[2],
+        parseAreaLightSamples("minSamples", 4), parseAreaLightSamples("maxSamples", 16));
+    }
+    
+    private SphereAreaLight buildSphereAreaLight(ElenaParser parser) {
+      Point3 position = parser.parsePoint3(fields.get("position"));
+      double radius = Double.parseDouble(fields.get("radius"));
+      Color color = parser.parseColor(fields.get("color"));
+      double intensity = Double.parseDouble(fields.get("intensity"));
+      double[] a = parseAreaLightAttenuation();
+      return new SphereAreaLight(position, radius, color, intensity, a[0], a[1], a[2],
+        parseAreaLightSamples("minSamples", 4), parseAreaLightSamples("maxSamples", 16));
+    }
+    
+    private double[] parseAreaLightAttenuation() {
+      if (fields.containsKey("constantAttenuation")) {
+        return new double[] {
+          Double.parseDouble(fields.get("constantAttenuation")),
+          Double.parseDouble(fields.get("linearAttenuation")),
+          Double.parseDouble(fields.get("quadraticAttenuation"))
+        };
+      }
+      return new double[] { 1.0, 0.1, 0.01 };
+    }
+    
+    private int parseAreaLightSamples(String key, int defaultValue) {
+      return fields.containsKey(key) ? Integer.parseInt(fields.get(key)) : defaultValue;
+    }
+    
     private PulsatingPointLight buildPulsatingPointLight(ElenaParser parser) {
       Point3 initialPosition = parser.parsePoint3(fields.get("initialPosition"));
       Color baseColor = parser.parseColor(fields.get("baseColor"));
@@ -1786,6 +3119,97 @@ public class ElenaParser {
       return csg;
     }
     
+    // Instancing blocks place copies of the shape named by "shape"; the
+    // copies share its geometry and material, and the named shape itself
+    // is only rendered through them. "transform" moves the whole set.
+    
+    /**
+     * count copies, each one "step" (a transform) on from the one before:
+     * copy i is step applied i times.
+     */
+    private InstanceSet buildRepeat(ElenaParser parser) {
+      int count = Integer.parseInt(fields.get("count").trim());
+      if (count < 1) {
+        throw new IllegalArgumentException("Repeat count must be positive: " + count);
+      }
+      Matrix4 step = parser.parseTransform(fields.get("step"));
+      
+      InstanceSet set = newInstanceSet(parser);
+      Matrix4 current = Matrix4.identity();
+      for (int i = 0; i < count; i++) {
+        set.add(current);
+        current = current.multiply(step);
+      }
+      return finishInstances(parser, set);
+    }
+    
+    /**
+     * count = nx, ny, nz copies (missing counts are 1), spacing apart
+     * along the axes; centered = true puts the grid's middle where the
+     * shape is instead of its first copy.
+     */
+    private InstanceSet buildGrid(ElenaParser parser) {
+      String[] parts = fields.get("count").split(",");
+      if (parts.length > 3) {
+        throw new IllegalArgumentException("Grid count takes up to 3 numbers: " + fields.get("count"));
+      }
+      int[] counts = { 1, 1, 1 };
+      for (int i = 0; i < parts.length; i++) {
+        counts[i] = Integer.parseInt(parts[i].trim());
+        if (counts[i] < 1) {
+          throw new IllegalArgumentException("Grid counts must be positive: " + fields.get("count"));
+        }
+      }
+      Vector3 spacing = parser.parseVector3(fields.get("spacing"));
+      boolean centered = Boolean.parseBoolean(fields.get("centered"));
+      double x0 = centered ? -0.5 * (counts[0] - 1) * spacing.x : 0.0;
+      double y0 = centered ? -0.5 * (counts[1] - 1) * spacing.y : 0.0;
+      double z0 = centered ? -0.5 * (counts[2] - 1) * spacing.z : 0.0;
+      
+      InstanceSet set = newInstanceSet(parser);
+      for (int k = 0; k < counts[2]; k++) {
+        for (int j = 0; j < counts[1]; j++) {
+          for (int i = 0; i < counts[0]; i++) {
+            set.add(Matrix4.translate(x0 + i * spacing.x, y0 + j * spacing.y, z0 + k * spacing.z));
+          }
+        }
+      }
+      return finishInstances(parser, set);
+    }
+    
+    /**
+     * One copy moved to each of positions = [x, y, z, x, y, z, ...].
+     */
+    private InstanceSet buildArray(ElenaParser parser) {
+      List<Point3> positions = parser.parsePoint3List(fields.get("positions"));
+      
+      InstanceSet set = newInstanceSet(parser);
+      for (Point3 p : positions) {
+        set.add(Matrix4.translate(p.x, p.y, p.z));
+      }
+      return finishInstances(parser, set);
+    }
+    
+    private InstanceSet newInstanceSet(ElenaParser parser) {
+      Object prototype = parser.objects.get(fields.get("shape"));
+      if (!(prototype instanceof EMShape)) {
+        throw new IllegalArgumentException(type + " " + id + ": '" + fields.get("shape") + "' is not a shape");
+      }
+      InstanceSet set = new InstanceSet((EMShape) prototype);
+      if (fields.containsKey("transform")) set.setTransform(parser.parseTransform(fields.get("transform")));
+      return set;
+    }
+    
+    /**
+     * Gives the copies the material field's material, if there is one.
+     */
+    private InstanceSet finishInstances(ElenaParser parser, InstanceSet set) {
+      if (fields.containsKey("material")) {
+        set.setMaterial((Material) parser.objects.get(fields.get("material")));
+      }
+      return set;
+    }
+    
     // END OF SHAPES
     
     // START of MATERIALS
@@ -2409,6 +3833,7 @@ public class ElenaParser {
     
     private Material buildElenaTextureMaterial(ElenaParser parser) {
       String path = fields.get("imagePath").replace("\"", "");
+      parser.recordAsset(new File(path));
       Material material = null;
       if (fields.containsKey("ambientCoeff")) {
         double amb = Double.parseDouble(fields.get("ambientCoeff"));
@@ -2642,6 +4067,7 @@ public class ElenaParser {
     ///
     private final BufferedImage getBufferedImage (String pathimg) {
       BufferedImage timp=null;
+      recordAsset(new File(pathimg));
       
       try {
         timp = ImageIO.read (new File (pathimg));
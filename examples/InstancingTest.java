@@ -0,0 +1,105 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+
+// Custom classes
+import net.elena.murat.shape.*;
+import net.elena.murat.lovert.*;
+import net.elena.murat.material.*;
+import net.elena.murat.math.*;
+import net.elena.murat.light.*;
+
+/**
+ * Renders a grid of checkered spheres twice, once as an InstanceSet of
+ * one prototype and once as separate spheres with their own materials,
+ * and checks that both images are the same pixel for pixel.
+ */
+final public class InstancingTest extends Object {
+
+  private static final int COLUMNS = 5;
+  private static final int ROWS = 3;
+  private static final double SPACING = 1.6;
+
+  private InstancingTest() {
+    super();
+  }
+
+  public String toString() {
+    return "InstancingTest";
+  }
+
+  private static Material checker(Matrix4 objectInverseTransform) {
+    return new CheckerboardMaterial(new Color(255, 34, 34), new Color(34, 34, 255), 0.5,
+      objectInverseTransform);
+  }
+
+  private static Matrix4 placement(int i, int k) {
+    return Matrix4.translate((i - 0.5 * (COLUMNS - 1)) * SPACING, 0.0, (k - 0.5 * (ROWS - 1)) * SPACING);
+  }
+
+  private static BufferedImage renderScene(boolean instanced) {
+    Scene scene = new Scene();
+    ElenaMuratRayTracer rayTracer = new ElenaMuratRayTracer(scene, 320, 240, new Color(40, 44, 52));
+    rayTracer.setCameraPosition(new Point3(0, 4, 9));
+    rayTracer.setLookAt(new Point3(0, 0, 0));
+    rayTracer.setUpVector(new Vector3(0, 1, 0));
+    rayTracer.setFov(60.0);
+    rayTracer.getCamera().setShadowsEnabled(true);
+
+    scene.addLight(new ElenaMuratAmbientLight(Color.WHITE, 0.2));
+    scene.addLight(new MuratPointLight(new Point3(3, 6, 4), Color.WHITE, 1.2));
+
+    Plane floorPlane = new Plane(new Point3(0, -1.0, 0), new Vector3(0, 1, 0));
+    floorPlane.setMaterial(new LambertMaterial(Color.GRAY));
+    scene.addShape(floorPlane);
+
+    if (instanced) {
+      Sphere prototype = new Sphere(0.6);
+      prototype.setMaterial(checker(prototype.getInverseTransform()));
+      InstanceSet grid = new InstanceSet(prototype);
+      for (int k = 0; k < ROWS; k++) {
+        for (int i = 0; i < COLUMNS; i++) {
+          grid.add(placement(i, k));
+        }
+      }
+      scene.addShape(grid);
+      } else {
+      for (int k = 0; k < ROWS; k++) {
+        for (int i = 0; i < COLUMNS; i++) {
+          Sphere sphere = new Sphere(0.6);
+          sphere.setTransform(placement(i, k));
+          sphere.setMaterial(checker(sphere.getInverseTransform()));
+          scene.addShape(sphere);
+        }
+      }
+    }
+    return rayTracer.render();
+  }
+
+  final public static void main(final String[] args) {
+    BufferedImage separate = renderScene(false);
+    BufferedImage instanced = renderScene(true);
+
+    int differing = 0;
+    for (int y = 0; y < separate.getHeight(); y++) {
+      for (int x = 0; x < separate.getWidth(); x++) {
+        if (separate.getRGB(x, y) != instanced.getRGB(x, y)) differing++;
+      }
+    }
+
+    try {
+      ImageIO.write(instanced, "png", new File("..\\images\\instancingTest.png"));
+      } catch (IOException e) {
+      System.err.println("An error occurred while saving the image: " + e.getMessage());
+    }
+
+    if (differing > 0) {
+      System.err.println("FAILED: the instanced grid differs from the separate spheres in " + differing + " pixels");
+      System.exit(1);
+    }
+    System.out.println("OK: the instanced grid renders the same as the separate spheres");
+  }
+
+}
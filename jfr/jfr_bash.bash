@@ -0,0 +1,28 @@
+#!/bin/bash
+
+# Builds the optional JDK Flight Recorder events of jfr/src into obj, next to the ray tracer.
+#
+# The events need a JDK with jdk.jfr (JDK 11, or 8u262 and later). Without them a
+# profiled render still prints its summary; it only commits no events.
+#
+# Usage, from the root directory, after linux_bash.bash:
+#   bash jfr/jfr_bash.bash
+
+SOURCE_DIR="jfr/src"
+OUTPUT_DIR="obj"
+
+if [ ! -d "$OUTPUT_DIR/net/elena/murat/lovert" ]; then
+    echo "Compile the ray tracer into $OUTPUT_DIR/ first, with linux_bash.bash."
+    exit 1
+fi
+
+echo "Compiling Flight Recorder events from $SOURCE_DIR/..."
+find "$SOURCE_DIR" -name "*.java" -print0 | xargs -0 javac -source 1.8 -target 1.8 -encoding UTF-8 -nowarn \
+    -cp "$OUTPUT_DIR" -d "$OUTPUT_DIR"
+
+if [ $? -eq 0 ]; then
+    echo "Compilation successful! The events are in $OUTPUT_DIR/."
+else
+    echo "Compilation failed. This JDK may have no jdk.jfr; the ray tracer runs without the events."
+    exit 1
+fi
@@ -0,0 +1,156 @@
+package net.elena.murat.lovert;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events for a finished {@link RenderProfile}: one
+ * Render event with the ray totals, and one event per shape class and per
+ * material class with its calls and time. Record them with, for example,
+ * <pre>java -XX:StartFlightRecording=filename=render.jfr ElenaParser scene.txt out.png</pre>
+ * and open the file in JDK Mission Control or "jfr print --events
+ * net.elena.murat.* render.jfr". Nothing is created unless a recording
+ * has the events enabled.
+ * <p>
+ * The events need a JDK with jdk.jfr (JDK 11, or 8u262 and later), so
+ * this class is kept out of src and built by jfr/jfr_bash.bash into obj.
+ * The tracer looks it up by name and skips the events when it is missing
+ * or the JVM has no jdk.jfr.
+ * </p>
+ */
+final class RenderProfileEvents {
+
+  private RenderProfileEvents() {
+  }
+
+  @Name("net.elena.murat.Render")
+  @Label("Render")
+  @Category({ "Elena Murat", "Rendering" })
+  @Description("Ray totals of one profiled render")
+  @StackTrace(false)
+  static class RenderEvent extends Event {
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Primary Rays")
+    long primaryRays;
+
+    @Label("Reflection Rays")
+    long reflectionRays;
+
+    @Label("Refraction Rays")
+    long refractionRays;
+
+    @Label("Shadow Rays")
+    long shadowRays;
+
+    @Label("Shadow Hit Ratio")
+    @Percentage
+    double shadowHitRatio;
+
+    @Label("Average Depth")
+    double averageDepth;
+
+    @Label("Max Depth")
+    int maxDepth;
+  }
+
+  @Name("net.elena.murat.ShapeIntersections")
+  @Label("Shape Intersections")
+  @Category({ "Elena Murat", "Rendering" })
+  @Description("Intersection tests of one shape class during a profiled render")
+  @StackTrace(false)
+  static class ShapeEvent extends Event {
+    @Label("Shape Class")
+    String shapeClass;
+
+    @Label("Tests")
+    long tests;
+
+    @Label("Hits")
+    long hits;
+
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long time;
+
+    @Label("Frame Share")
+    @Percentage
+    double frameShare;
+  }
+
+  @Name("net.elena.murat.MaterialShading")
+  @Label("Material Shading")
+  @Category({ "Elena Murat", "Rendering" })
+  @Description("getColorAt calls of one material class during a profiled render")
+  @StackTrace(false)
+  static class MaterialEvent extends Event {
+    @Label("Material Class")
+    String materialClass;
+
+    @Label("Calls")
+    long calls;
+
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long time;
+
+    @Label("Frame Share")
+    @Percentage
+    double frameShare;
+  }
+
+  /**
+   * Commits the profile's events, if a recording wants them.
+   */
+  static void commit(RenderProfile profile, int width, int height) {
+    double frameNanos = Math.max(1, profile.getElapsedNanos());
+
+    RenderEvent render = new RenderEvent();
+    if (render.isEnabled()) {
+      render.width = width;
+      render.height = height;
+      render.primaryRays = profile.getPrimaryRays();
+      render.reflectionRays = profile.getReflectionRays();
+      render.refractionRays = profile.getRefractionRays();
+      render.shadowRays = profile.getShadowRays();
+      render.shadowHitRatio = profile.getShadowHitRatio();
+      render.averageDepth = profile.getAverageDepth();
+      render.maxDepth = profile.getMaxDepth();
+      render.commit();
+    }
+
+    if (new ShapeEvent().isEnabled()) {
+      for (RenderProfile.ClassTotals t : profile.getShapeTotals()) {
+        ShapeEvent event = new ShapeEvent();
+        event.shapeClass = t.className;
+        event.tests = t.calls;
+        event.hits = t.hits;
+        event.time = t.nanos;
+        event.frameShare = t.nanos / frameNanos;
+        event.commit();
+      }
+    }
+
+    if (new MaterialEvent().isEnabled()) {
+      for (RenderProfile.ClassTotals t : profile.getMaterialTotals()) {
+        MaterialEvent event = new MaterialEvent();
+        event.materialClass = t.className;
+        event.calls = t.calls;
+        event.time = t.nanos;
+        event.frameShare = t.nanos / frameNanos;
+        event.commit();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,42 @@
+#!/bin/bash
+
+# Builds and runs the JMH microbenchmarks of jmh/src against the ray tracer in src.
+#
+# JMH is not bundled. Put these jars (or newer versions) in libs/ first:
+#   jmh-core-1.37.jar
+#   jmh-generator-annprocess-1.37.jar
+#   jopt-simple-5.0.4.jar
+#   commons-math3-3.6.1.jar
+#
+# Usage, from the root directory:
+#   bash jmh/jmh_bash.bash                      all benchmarks
+#   bash jmh/jmh_bash.bash 'ShapeBenchmark'     benchmarks matching a regex
+#   bash jmh/jmh_bash.bash 'Math' out.json      and write JSON results
+# Results include the GC profiler's allocation rates, see BenchmarkMain.
+
+LIB_DIR="libs"
+SOURCE_DIR="src"
+BENCH_SOURCE_DIR="jmh/src"
+OUTPUT_DIR="jmh/obj"
+
+JMH_CP=$(ls "$LIB_DIR"/*.jar 2>/dev/null | tr '\n' ':')
+if ! ls "$LIB_DIR"/jmh-core-*.jar >/dev/null 2>&1 || ! ls "$LIB_DIR"/jmh-generator-annprocess-*.jar >/dev/null 2>&1; then
+    echo "JMH jars not found in $LIB_DIR/. See the top of this script for the jars to add."
+    exit 1
+fi
+
+echo "Cleaning up previous compilation artifacts in $OUTPUT_DIR/..."
+rm -rf "$OUTPUT_DIR"
+mkdir -p "$OUTPUT_DIR"
+
+# The annotation processor writes the generated benchmark classes and the META-INF/BenchmarkList JMH reads
+echo "Compiling ray tracer and benchmarks..."
+find "$SOURCE_DIR" "$BENCH_SOURCE_DIR" -name "*.java" -print0 | xargs -0 javac -source 1.8 -target 1.8 -encoding UTF-8 -nowarn \
+    -cp "$JMH_CP" -sourcepath "$SOURCE_DIR" -d "$OUTPUT_DIR"
+
+if [ $? -ne 0 ]; then
+    echo "Compilation failed. Please check the error messages above."
+    exit 1
+fi
+
+java -Djava.awt.headless=true -cp "$OUTPUT_DIR:$JMH_CP" net.elena.murat.bench.BenchmarkMain "$@"
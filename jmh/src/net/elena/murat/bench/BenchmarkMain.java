@@ -0,0 +1,31 @@
+package net.elena.murat.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached, so every result
+ * comes with its allocation rate (gc.alloc.rate.norm is bytes per call).
+ * <p>
+ * Usage: BenchmarkMain [includeRegex] [results.json]. Without a regex all
+ * benchmarks run; for other JMH options use org.openjdk.jmh.Main with
+ * "-prof gc" directly.
+ * </p>
+ */
+public class BenchmarkMain {
+
+  public static void main(String[] args) throws RunnerException {
+    ChainedOptionsBuilder options = new OptionsBuilder()
+    .include(args.length > 0 ? args[0] : "net\\.elena\\.murat\\.bench\\..*")
+    .addProfiler(GCProfiler.class);
+    if (args.length > 1) {
+      options.result(args[1]).resultFormat(ResultFormatType.JSON);
+    }
+    new Runner(options.build()).run();
+  }
+
+}
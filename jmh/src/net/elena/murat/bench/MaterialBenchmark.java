@@ -0,0 +1,90 @@
+package net.elena.murat.bench;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.elena.murat.light.Light;
+import net.elena.murat.light.MuratPointLight;
+import net.elena.murat.material.*;
+import net.elena.murat.material.pbr.GoldPBRMaterial;
+import net.elena.murat.material.pbr.MarblePBRMaterial;
+import net.elena.murat.math.*;
+
+/**
+ * getColorAt of one representative material per family, lit by a point
+ * light: plain diffuse, Phong, pattern, noise-based procedural, image
+ * texture, transparent and PBR. The texture is generated in setup, so no
+ * image file is read.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MaterialBenchmark {
+
+  @Param({
+    "Lambert", "Phong", "Checkerboard", "Marble", "Wood", "ProceduralCloud",
+    "ImageTexture", "Glass", "Dielectric", "GoldPBR", "MarblePBR"
+  })
+  private String materialName;
+
+  private Material material;
+  private Light light;
+  private Point3 point;
+  private Vector3 normal;
+  private Point3 viewer;
+
+  @Setup
+  public void setUp() {
+    material = createMaterial(materialName);
+    material.setObjectTransform(Matrix4.identity());
+    light = new MuratPointLight(new Point3(4.0, 6.0, 6.0), Color.WHITE, 1.2);
+    normal = new Vector3(0.3, 0.4, 0.866).normalize();
+    point = new Point3(normal.x, normal.y, normal.z);
+    viewer = new Point3(0.0, 1.0, 5.0);
+  }
+
+  static Material createMaterial(String name) {
+    Matrix4 identity = Matrix4.identity();
+    switch (name) {
+      case "Lambert": return new LambertMaterial(new Color(180, 60, 60), 0.1, 0.8);
+      case "Phong":
+        return new PhongMaterial(new Color(60, 90, 200), Color.WHITE, 40.0, 0.1, 0.7, 0.3, 0.0, 1.0, 0.0);
+      case "Checkerboard":
+        return new CheckerboardMaterial(Color.WHITE, Color.DARK_GRAY, 0.5,
+          0.1, 0.7, 0.2, 20.0, Color.WHITE, 0.0, 1.0, 0.0, identity);
+      case "Marble":
+        return new MarbleMaterial(new Color(235, 235, 230), new Color(70, 70, 80), 2.0, 4.0, 3.0,
+          0.1, 0.7, 0.3, 40.0, 0.05, 1.5, 0.0, identity);
+      case "Wood": return new WoodMaterial(new Color(150, 100, 50), new Color(90, 55, 25), 8.0, 0.3, identity);
+      case "ProceduralCloud": return new ProceduralCloudMaterial(new Color(120, 160, 220), Color.WHITE);
+      case "ImageTexture": return new ImageTextureMaterial(gradientImage(1024), identity);
+      case "Glass": return new GlassMaterial(new Color(240, 240, 255), 1.5, 0.08, 0.92);
+      case "Dielectric": return new DielectricMaterial(new Color(235, 235, 245), 1.5, 0.9, 0.15);
+      case "GoldPBR": return new GoldPBRMaterial(0.2);
+      case "MarblePBR": return new MarblePBRMaterial();
+      default: throw new IllegalArgumentException("Unknown material: " + name);
+    }
+  }
+
+  private static BufferedImage gradientImage(int size) {
+    BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+    for (int y = 0; y < size; y++) {
+      for (int x = 0; x < size; x++) {
+        image.setRGB(x, y, 0xFF000000 | (x * 255 / size) << 16 | (y * 255 / size) << 8 | ((x ^ y) & 0xFF));
+      }
+    }
+    return image;
+  }
+
+  @Benchmark
+  public Color getColorAt() {
+    return material.getColorAt(point, normal, light, viewer);
+  }
+
+}
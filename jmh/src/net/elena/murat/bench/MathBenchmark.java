@@ -0,0 +1,100 @@
+package net.elena.murat.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.elena.murat.math.*;
+
+/**
+ * Matrix, vector and polynomial kernels that every intersection and
+ * shading call goes through.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MathBenchmark {
+
+  private Matrix4 transform;
+  private Point3 point;
+  private Vector3 a;
+  private Vector3 b;
+  private Vector3 normal;
+
+  // (x-1)(x-2)(x-3)(x-4): four real roots, the torus case of a ray through both rings
+  private double[] fourRoots = { -10.0, 35.0, -50.0, 24.0 };
+  // x^4 + 1: no real root, a ray that misses
+  private double[] noRoots = { 0.0, 0.0, 0.0, 1.0 };
+
+  @Setup
+  public void setUp() {
+    transform = Matrix4.translate(1.5, -0.5, 2.0)
+    .multiply(Matrix4.rotateY(30.0))
+    .multiply(Matrix4.rotateX(15.0))
+    .multiply(Matrix4.scale(1.2, 0.8, 1.0));
+    point = new Point3(0.3, 1.7, -2.4);
+    a = new Vector3(0.3, 1.7, -2.4);
+    b = new Vector3(-1.1, 0.2, 0.9);
+    normal = new Vector3(0.0, 1.0, 0.2).normalize();
+  }
+
+  @Benchmark
+  public Point3 matrixTransformPoint() {
+    return transform.transformPoint(point);
+  }
+
+  @Benchmark
+  public Vector3 matrixTransformVector() {
+    return transform.transformVector(a);
+  }
+
+  @Benchmark
+  public Matrix4 matrixInverse() {
+    return transform.inverse();
+  }
+
+  @Benchmark
+  public Matrix4 matrixMultiply() {
+    return transform.multiply(transform);
+  }
+
+  @Benchmark
+  public Vector3 vectorNormalize() {
+    return a.normalize();
+  }
+
+  @Benchmark
+  public double vectorDot() {
+    return a.dot(b);
+  }
+
+  @Benchmark
+  public Vector3 vectorCross() {
+    return a.cross(b);
+  }
+
+  @Benchmark
+  public Vector3 vectorAddScale() {
+    return a.add(b.scale(0.5));
+  }
+
+  @Benchmark
+  public Vector3 vectorReflect() {
+    return a.reflect(normal);
+  }
+
+  @Benchmark
+  public List<Double> solveQuarticFourRoots() {
+    return PolynomialSolver.solveQuartic(fourRoots[0], fourRoots[1], fourRoots[2], fourRoots[3]);
+  }
+
+  @Benchmark
+  public List<Double> solveQuarticNoRoots() {
+    return PolynomialSolver.solveQuartic(noRoots[0], noRoots[1], noRoots[2], noRoots[3]);
+  }
+
+}
@@ -0,0 +1,79 @@
+package net.elena.murat.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.elena.murat.util.FastNoise;
+
+/**
+ * The FastNoise entry points on primitive coordinates, and the batch
+ * form over BATCH points. Compare with UtilBenchmark's NoiseUtil calls,
+ * which go through a Point3.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NoiseBenchmark {
+
+  private static final int BATCH = 1024;
+
+  private double x;
+  private double y;
+  private double z;
+  private double[] points;
+  private double[] values;
+
+  @Setup
+  public void setUp() {
+    x = 0.37;
+    y = 1.42;
+    z = -2.71;
+    points = new double[3 * BATCH];
+    for (int i = 0; i < points.length; i++) {
+      points[i] = i * 0.0137;
+    }
+    values = new double[BATCH];
+  }
+
+  @Benchmark
+  public double perlin() {
+    return FastNoise.perlin(x, y, z);
+  }
+
+  @Benchmark
+  public double simplex() {
+    return FastNoise.simplex(x, y, z);
+  }
+
+  @Benchmark
+  public double value() {
+    return FastNoise.value(x, y, z);
+  }
+
+  @Benchmark
+  public double worley() {
+    return FastNoise.worley(x, y, z);
+  }
+
+  @Benchmark
+  public double fbm8() {
+    return FastNoise.fbm(x, y, z, 8, 2.0, 0.5);
+  }
+
+  @Benchmark
+  public double turbulence8() {
+    return FastNoise.turbulence(x, y, z, 8);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public double[] perlinBatch() {
+    FastNoise.perlin(points, values, BATCH);
+    return values;
+  }
+
+}
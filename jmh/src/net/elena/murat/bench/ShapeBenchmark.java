@@ -0,0 +1,161 @@
+package net.elena.murat.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.elena.murat.material.LambertMaterial;
+import net.elena.murat.math.*;
+import net.elena.murat.shape.*;
+import net.elena.murat.shape.letters.Image3D;
+import net.elena.murat.shape.letters.Letter3D;
+
+/**
+ * intersect and intersectAll of every shape, for a ray that hits it and
+ * one that misses it. The hit ray starts outside the shape and aims at
+ * the point of the z = 0 plane nearest the origin through which it meets
+ * the shape. The miss ray must miss in both directions, so intersectAll
+ * finds nothing either; setup fails if no hit point is found or the miss
+ * ray meets the shape anywhere along its line, so a benchmark never
+ * silently measures the wrong path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShapeBenchmark {
+
+  private static final Point3 EYE = new Point3(0.2, 3.0, 10.0);
+  // Hit rays aim at points of a grid this far out on the z = 0 plane
+  private static final double TARGET_RANGE = 1.5;
+  private static final double TARGET_STEP = 0.05;
+
+  @Param({
+    "Sphere", "Plane", "Box", "Cube", "Cylinder", "Cone", "Ellipsoid", "Hyperboloid",
+    "Torus", "TorusKnot", "Triangle", "Crescent", "Rectangle3D", "RectangularPrism",
+    "TransparentPlane", "EmojiBillboard", "UnionCSG", "DifferenceCSG", "IntersectionCSG",
+    "Letter3D", "Image3D", "ShapeInstance"
+  })
+  private String shapeName;
+
+  private EMShape shape;
+  private Ray hitRay;
+  private Ray missRay;
+
+  @Setup
+  public void setUp() {
+    shape = createShape(shapeName);
+    // An instance's transform is its placement; everything else is measured untransformed
+    if (!(shape instanceof ShapeInstance)) shape.setTransform(Matrix4.identity());
+    shape.setMaterial(new LambertMaterial(Color.GRAY));
+
+    hitRay = findHitRay(shape);
+    if (hitRay == null) {
+      throw new IllegalStateException(shapeName + ": no benchmark ray hits the shape");
+    }
+    missRay = missRay(shape);
+    if (hits(shape, missRay) || !shape.intersectAll(missRay).isEmpty()) {
+      throw new IllegalStateException(shapeName + ": the miss ray hits the shape");
+    }
+  }
+
+  private static Ray missRay(EMShape shape) {
+    if (shape instanceof Hyperboloid) {
+      // The quadric is unbounded, so only a ray down its open throat misses the whole surface
+      return new Ray(new Point3(0.0, 0.0, 50.0), new Vector3(0.0, 0.0, -1.0));
+    }
+    // Up and away from everything, including the y = 0 planes
+    return new Ray(new Point3(50.0, 50.0, 50.0), new Vector3(1.0, 1.0, 1.0));
+  }
+
+  private static Ray findHitRay(EMShape shape) {
+    int n = (int) Math.round(TARGET_RANGE / TARGET_STEP);
+    Ray best = null;
+    double bestDistance = Double.POSITIVE_INFINITY;
+    for (int i = -n; i <= n; i++) {
+      for (int j = -n; j <= n; j++) {
+        Point3 target = new Point3(i * TARGET_STEP, j * TARGET_STEP, 0.0);
+        double distance = target.x * target.x + target.y * target.y;
+        if (distance >= bestDistance) continue;
+        Ray ray = new Ray(EYE, target.subtract(EYE));
+        if (hits(shape, ray)) {
+          best = ray;
+          bestDistance = distance;
+        }
+      }
+    }
+    return best;
+  }
+
+  private static boolean hits(EMShape shape, Ray ray) {
+    double t = shape.intersect(ray);
+    return t > Ray.EPSILON && t < Double.POSITIVE_INFINITY;
+  }
+
+  static EMShape createShape(String name) {
+    switch (name) {
+      case "Sphere": return new Sphere(1.0);
+      case "Plane": return new Plane(new Point3(0.0, 0.0, 0.0), new Vector3(0.0, 1.0, 0.0));
+      case "Box": return new Box(1.5, 1.0, 1.0);
+      case "Cube": return new Cube(1.2);
+      case "Cylinder": return new Cylinder(0.8, 1.5);
+      case "Cone": return new Cone(0.8, 1.5);
+      case "Ellipsoid": return new Ellipsoid(new Point3(0.0, 0.0, 0.0), 1.2, 0.8, 1.0);
+      case "Hyperboloid": return new Hyperboloid();
+      case "Torus": return new Torus(1.0, 0.3);
+      case "TorusKnot": return new TorusKnot(1.0, 0.25, 2, 3);
+      case "Triangle":
+        return new Triangle(new Point3(-1.0, -1.0, 0.0), new Point3(1.0, -1.0, 0.0), new Point3(0.0, 1.5, 0.0));
+      case "Crescent": return new Crescent(1.0, 0.8, 0.5);
+      case "Rectangle3D": return new Rectangle3D(new Point3(-1.0, -1.0, 0.0), new Point3(1.0, 1.0, 0.0), 0.2f);
+      case "RectangularPrism": return new RectangularPrism(1.5, 1.0, 1.0);
+      case "TransparentPlane":
+        return new TransparentPlane(new Point3(0.0, 0.0, 0.0), new Vector3(0.0, 1.0, 0.0), 0.1);
+      case "EmojiBillboard": return new EmojiBillboard(2.0);
+      case "UnionCSG": return new UnionCSG(new Sphere(1.0), new Cube(1.4));
+      case "DifferenceCSG": return new DifferenceCSG(new Cube(1.6), new Sphere(1.0));
+      case "IntersectionCSG": return new IntersectionCSG(new Cube(1.6), new Sphere(1.0));
+      case "Letter3D": return new Letter3D('A');
+      case "Image3D": return new Image3D(discImage(32));
+      case "ShapeInstance":
+        return new ShapeInstance(new Sphere(1.0), Matrix4.rotateY(30.0).multiply(Matrix4.scale(1.0, 0.7, 1.0)));
+      default: throw new IllegalArgumentException("Unknown shape: " + name);
+    }
+  }
+
+  private static BufferedImage discImage(int size) {
+    BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    g.setColor(Color.BLACK);
+    g.fillOval(2, 2, size - 4, size - 4);
+    g.dispose();
+    return image;
+  }
+
+  @Benchmark
+  public double intersectHit() {
+    return shape.intersect(hitRay);
+  }
+
+  @Benchmark
+  public double intersectMiss() {
+    return shape.intersect(missRay);
+  }
+
+  @Benchmark
+  public List<IntersectionInterval> intersectAllHit() {
+    return shape.intersectAll(hitRay);
+  }
+
+  @Benchmark
+  public List<IntersectionInterval> intersectAllMiss() {
+    return shape.intersectAll(missRay);
+  }
+
+}
@@ -0,0 +1,73 @@
+package net.elena.murat.bench;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.elena.murat.math.Point3;
+import net.elena.murat.util.ColorUtil;
+import net.elena.murat.util.NoiseUtil;
+
+/**
+ * Noise and color helpers used by the procedural materials. ColorUtil
+ * works on java.awt.Color, so most of these also measure one Color
+ * allocation per call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UtilBenchmark {
+
+  private Point3 point;
+  private Color c1;
+  private Color c2;
+  private double ratio;
+
+  @Setup
+  public void setUp() {
+    point = new Point3(0.37, 1.42, -2.71);
+    c1 = new Color(200, 120, 40);
+    c2 = new Color(30, 90, 220);
+    ratio = 0.35;
+  }
+
+  @Benchmark
+  public double noise() {
+    return NoiseUtil.noise(point);
+  }
+
+  @Benchmark
+  public double turbulence4() {
+    return NoiseUtil.turbulence(point, 4);
+  }
+
+  @Benchmark
+  public double turbulence8() {
+    return NoiseUtil.turbulence(point, 8);
+  }
+
+  @Benchmark
+  public Color blendColors() {
+    return ColorUtil.blendColors(c1, c2, ratio);
+  }
+
+  @Benchmark
+  public Color interpolateColor() {
+    return ColorUtil.interpolateColor(c1, c2, ratio);
+  }
+
+  @Benchmark
+  public Color multiplyColors() {
+    return ColorUtil.multiplyColors(c1, c2, ratio);
+  }
+
+  @Benchmark
+  public Color addSafe() {
+    return ColorUtil.addSafe(c1, c2);
+  }
+
+}
@@ -0,0 +1,63 @@
+package net.elena.murat.light;
+
+import java.awt.Color;
+
+import net.elena.murat.math.Point3;
+import net.elena.murat.math.Vector3;
+
+/**
+ * A light with a surface, casting soft shadows.
+ * <p>
+ * Shading treats it as a point light at its center, so every material
+ * that handles {@link MuratPointLight} handles area lights too. Only the
+ * shadow test differs: the tracer traces shadow rays to stratified points
+ * on the surface, starting with {@link #getMinSamples()} rays and going up
+ * to {@link #getMaxSamples()} only where the first rays disagree.
+ * </p>
+ */
+public abstract class AreaLight extends MuratPointLight {
+  private final int minSamples;
+  private final int maxSamples;
+
+  protected AreaLight(Point3 center, Color color, double intensity,
+    double constantAttenuation, double linearAttenuation, double quadraticAttenuation,
+    int minSamples, int maxSamples) {
+    super(center, color, intensity, constantAttenuation, linearAttenuation, quadraticAttenuation);
+    this.minSamples = Math.max(1, minSamples);
+    this.maxSamples = Math.max(this.minSamples, maxSamples);
+  }
+
+  /**
+   * Maps a point of the unit square onto the light's surface. Strata of
+   * the square map to separate patches of the surface.
+   * @param from shading point the sample is for
+   * @param u first coordinate in [0, 1)
+   * @param v second coordinate in [0, 1)
+   */
+  public abstract Point3 samplePoint(Point3 from, double u, double v);
+
+  /**
+   * Shadow rays traced first; one grid of about this many strata.
+   */
+  public int getMinSamples() {
+    return minSamples;
+  }
+
+  /**
+   * Extra shadow rays traced in the penumbra, on a finer grid.
+   */
+  public int getMaxSamples() {
+    return maxSamples;
+  }
+
+  /**
+   * Two unit vectors perpendicular to the given unit normal and to each
+   * other, written to axes[0] and axes[1].
+   */
+  protected static void orthonormalBasis(Vector3 normal, Vector3[] axes) {
+    Vector3 helper = Math.abs(normal.x) > 0.9 ? new Vector3(0, 1, 0) : new Vector3(1, 0, 0);
+    axes[0] = helper.cross(normal).normalize();
+    axes[1] = normal.cross(axes[0]);
+  }
+
+}
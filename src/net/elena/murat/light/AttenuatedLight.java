@@ -0,0 +1,22 @@
+package net.elena.murat.light;
+
+/**
+ * A positioned light whose intensity falls off as
+ * peak / (constant + linear * d + quadratic * d * d).
+ * Lets {@link LightTree} bound the contribution of groups of lights.
+ */
+public interface AttenuatedLight extends Light {
+
+  double getConstantAttenuation();
+
+  double getLinearAttenuation();
+
+  double getQuadraticAttenuation();
+
+  /**
+   * Upper bound of the unattenuated intensity, including pulsation
+   * or cone factors.
+   */
+  double getPeakIntensity();
+
+}
@@ -1,21 +1,34 @@
 package net.elena.murat.light;
 
 import java.awt.Color;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import net.elena.murat.math.Point3;
+import net.elena.murat.math.PointKdTree;
 import net.elena.murat.math.Vector3;
 import net.elena.murat.math.Ray;
+import net.elena.murat.lovert.Animatable;
 import net.elena.murat.lovert.Scene;
 
-public class BioluminescentLight implements Light {
+/**
+ * A swarm of glowing organisms lighting each point from its nearest
+ * organism. Nearest-organism lookups go through a k-d tree built once
+ * from the positions.
+ */
+public class BioluminescentLight implements Light, Animatable {
   private final List<Point3> organismPositions;
+  private final PointKdTree positionIndex;
+  private final boolean emitterSampling;
   private final Color baseColor;
   private final double pulseSpeed;
   private final double baseIntensity;
   private final double attenuationFactor;
   private double currentTime;
+  // Color and intensity at currentTime
+  private Color pulseColor;
+  private double pulseIntensity;
   private static final double MIN_PULSE_INTENSITY = 0.7;
   private static final double PULSE_AMPLITUDE = 0.3;
   
@@ -25,6 +38,15 @@ public class BioluminescentLight implements Light {
   
   public BioluminescentLight(List<Point3> positions, Color color,
     double pulseSpeed, double baseIntensity, double attenuationFactor) {
+    this(positions, color, pulseSpeed, baseIntensity, attenuationFactor, false);
+  }
+  
+  /**
+   * @param emitterSampling if true the swarm is meant to be added to the
+   *        scene as one point light per organism, see {@link #toEmitterLights()}
+   */
+  public BioluminescentLight(List<Point3> positions, Color color,
+    double pulseSpeed, double baseIntensity, double attenuationFactor, boolean emitterSampling) {
     if (positions == null || positions.isEmpty()) {
       throw new IllegalArgumentException("Organism positions cannot be null or empty");
     }
@@ -33,10 +55,25 @@ public class BioluminescentLight implements Light {
     this.pulseSpeed = Math.max(0, pulseSpeed);
     this.baseIntensity = Math.max(0, baseIntensity);
     this.attenuationFactor = Math.max(0, attenuationFactor);
+    this.positionIndex = new PointKdTree(this.organismPositions);
+    this.emitterSampling = emitterSampling;
+    pulse();
   }
   
+  @Override
   public void update(double deltaTime) {
     this.currentTime += deltaTime;
+    pulse();
+  }
+  
+  private void pulse() {
+    double pulseFactor = MIN_PULSE_INTENSITY + PULSE_AMPLITUDE * Math.sin(currentTime * pulseSpeed);
+    pulseColor = new Color(
+      clampColor(baseColor.getRed() * pulseFactor),
+      clampColor(baseColor.getGreen() * pulseFactor),
+      clampColor(baseColor.getBlue() * pulseFactor)
+    );
+    pulseIntensity = baseIntensity * (MIN_PULSE_INTENSITY + PULSE_AMPLITUDE * Math.sin(currentTime * pulseSpeed * 1.2));
   }
   
   @Override
@@ -46,17 +83,12 @@ public class BioluminescentLight implements Light {
   
   @Override
   public Color getColor() {
-    double pulseFactor = MIN_PULSE_INTENSITY + PULSE_AMPLITUDE * Math.sin(currentTime * pulseSpeed);
-    return new Color(
-      clampColor(baseColor.getRed() * pulseFactor),
-      clampColor(baseColor.getGreen() * pulseFactor),
-      clampColor(baseColor.getBlue() * pulseFactor)
-    );
+    return pulseColor;
   }
   
   @Override
   public double getIntensity() {
-    return baseIntensity * (MIN_PULSE_INTENSITY + PULSE_AMPLITUDE * Math.sin(currentTime * pulseSpeed * 1.2));
+    return pulseIntensity;
   }
   
   @Override
@@ -82,6 +114,13 @@ public class BioluminescentLight implements Light {
     return getAttenuatedIntensity(point);
   }
   
+  @Override
+  public boolean sample(Point3 point, LightSample out) {
+    Point3 closest = findClosestPosition(point);
+    out.set(this, closest.subtract(point).normalize(), closest.distance(point));
+    return true;
+  }
+  
   @Override
   public boolean isVisibleFrom(Point3 point, Scene scene) {
     Point3 closest = findClosestPosition(point);
@@ -100,9 +139,80 @@ public class BioluminescentLight implements Light {
   }
   
   private Point3 findClosestPosition(Point3 point) {
-    return organismPositions.stream()
-    .min((p1, p2) -> Double.compare(p1.distance(point), p2.distance(point)))
-    .orElse(organismPositions.get(0));
+    int closest = positionIndex.nearest(point);
+    return organismPositions.get(closest >= 0 ? closest : 0);
+  }
+  
+  /**
+   * Organisms within the radius of the point, in list order.
+   */
+  public List<Point3> getPositionsWithin(Point3 point, double radius) {
+    List<Integer> found = new ArrayList<Integer>();
+    positionIndex.forEachWithin(point, radius, found::add);
+    Collections.sort(found);
+    List<Point3> result = new ArrayList<Point3>(found.size());
+    for (int index : found) {
+      result.add(organismPositions.get(index));
+    }
+    return result;
+  }
+  
+  public List<Point3> getPositions() {
+    return organismPositions;
+  }
+  
+  public boolean isEmitterSampling() {
+    return emitterSampling;
+  }
+  
+  /**
+   * One point light per organism, pulsing with the swarm's color and
+   * intensity and with the same linear falloff. Added to a scene instead
+   * of this light, every organism lights and shadows on its own; with the
+   * renderer's lightSamples option the light tree then picks organisms
+   * by their estimated contribution instead of evaluating them all.
+   * Updating the swarm updates all of its emitters.
+   */
+  public List<Light> toEmitterLights() {
+    List<Light> emitters = new ArrayList<Light>(organismPositions.size());
+    for (Point3 position : organismPositions) {
+      emitters.add(new Emitter(this, position));
+    }
+    return emitters;
+  }
+  
+  /**
+   * One organism of a swarm as a point light, see {@link #toEmitterLights()}.
+   */
+  public static final class Emitter extends MuratPointLight {
+    private final BioluminescentLight swarm;
+    
+    private Emitter(BioluminescentLight swarm, Point3 position) {
+      super(position, swarm.baseColor, swarm.baseIntensity, 1.0, swarm.attenuationFactor, 0.0);
+      this.swarm = swarm;
+    }
+    
+    /**
+     * The light to update between frames for this emitter to pulse.
+     */
+    public BioluminescentLight getSwarm() {
+      return swarm;
+    }
+    
+    @Override
+    public Color getColor() {
+      return swarm.getColor();
+    }
+    
+    @Override
+    public double getIntensity() {
+      return swarm.getIntensity();
+    }
+    
+    @Override
+    public double getPeakIntensity() {
+      return swarm.getIntensity();
+    }
   }
   
   private int clampColor(double value) {
@@ -111,15 +221,19 @@ public class BioluminescentLight implements Light {
   
   // Utility methods
   public BioluminescentLight withPositions(List<Point3> newPositions) {
-    return new BioluminescentLight(newPositions, baseColor, pulseSpeed, baseIntensity, attenuationFactor);
+    return new BioluminescentLight(newPositions, baseColor, pulseSpeed, baseIntensity, attenuationFactor, emitterSampling);
   }
   
   public BioluminescentLight withColor(Color newColor) {
-    return new BioluminescentLight(organismPositions, newColor, pulseSpeed, baseIntensity, attenuationFactor);
+    return new BioluminescentLight(organismPositions, newColor, pulseSpeed, baseIntensity, attenuationFactor, emitterSampling);
   }
   
   public BioluminescentLight withPulseSpeed(double newSpeed) {
-    return new BioluminescentLight(organismPositions, baseColor, newSpeed, baseIntensity, attenuationFactor);
+    return new BioluminescentLight(organismPositions, baseColor, newSpeed, baseIntensity, attenuationFactor, emitterSampling);
+  }
+  
+  public BioluminescentLight withEmitterSampling(boolean newEmitterSampling) {
+    return new BioluminescentLight(organismPositions, baseColor, pulseSpeed, baseIntensity, attenuationFactor, newEmitterSampling);
   }
   
   public static BioluminescentLight createDefault() {
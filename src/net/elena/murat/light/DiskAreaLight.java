@@ -0,0 +1,65 @@
+package net.elena.murat.light;
+
+import java.awt.Color;
+
+import net.elena.murat.math.Point3;
+import net.elena.murat.math.Vector3;
+
+/**
+ * Flat round area light.
+ */
+public class DiskAreaLight extends AreaLight {
+  private final Vector3 normal;
+  private final double radius;
+  private final Vector3 tangent;
+  private final Vector3 bitangent;
+  
+  public DiskAreaLight(Point3 center, Vector3 normal, double radius,
+    Color color, double intensity) {
+    this(center, normal, radius, color, intensity, 1.0, 0.1, 0.01, 4, 16);
+  }
+  
+  public DiskAreaLight(Point3 center, Vector3 normal, double radius,
+    Color color, double intensity,
+    double constantAttenuation, double linearAttenuation, double quadraticAttenuation,
+    int minSamples, int maxSamples) {
+    super(center, color, intensity, constantAttenuation, linearAttenuation, quadraticAttenuation,
+    minSamples, maxSamples);
+    this.normal = normal.normalize();
+    this.radius = Math.max(0, radius);
+    Vector3[] axes = new Vector3[2];
+    orthonormalBasis(this.normal, axes);
+    this.tangent = axes[0];
+    this.bitangent = axes[1];
+  }
+  
+  /**
+   * Concentric square-to-disk mapping, which keeps strata compact.
+   */
+  @Override
+  public Point3 samplePoint(Point3 from, double u, double v) {
+    double a = 2.0 * u - 1.0;
+    double b = 2.0 * v - 1.0;
+    if (a == 0.0 && b == 0.0) return getPosition();
+    
+    double r;
+    double phi;
+    if (Math.abs(a) > Math.abs(b)) {
+      r = a;
+      phi = (Math.PI / 4.0) * (b / a);
+      } else {
+      r = b;
+      phi = (Math.PI / 2.0) - (Math.PI / 4.0) * (a / b);
+    }
+    r *= radius;
+    return getPosition().add(tangent.scale(r * Math.cos(phi))).add(bitangent.scale(r * Math.sin(phi)));
+  }
+  
+  public Vector3 getNormal() {
+    return normal;
+  }
+  
+  public double getRadius() {
+    return radius;
+  }
+}
@@ -57,6 +57,12 @@ public class ElenaDirectionalLight implements Light {
     return intensity; // Uniform intensity everywhere
   }
   
+  @Override
+  public boolean sample(Point3 point, LightSample out) {
+    out.set(this, direction.negate().normalize(), Double.POSITIVE_INFINITY);
+    return true;
+  }
+  
   @Override
   public boolean isVisibleFrom(Point3 point, Scene scene) {
     Ray shadowRay = new Ray(
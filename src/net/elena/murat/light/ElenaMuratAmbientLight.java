@@ -52,6 +52,11 @@ public class ElenaMuratAmbientLight implements Light {
     return intensity;
   }
   
+  @Override
+  public boolean sample(Point3 point, LightSample out) {
+    return false; // Ambient light has no direction
+  }
+  
   @Override
   public boolean isVisibleFrom(Point3 point, Scene scene) {
     return true; // Ambient light is always visible
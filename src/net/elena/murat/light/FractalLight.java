@@ -4,6 +4,7 @@ import java.awt.Color;
 
 import net.elena.murat.math.*;
 import net.elena.murat.lovert.Scene;
+import net.elena.murat.util.FastNoise;
 
 public class FractalLight implements Light {
   private final Point3 position;
@@ -12,8 +13,10 @@ public class FractalLight implements Light {
   private final int octaves;
   private final double persistence;
   private final double frequency;
-  private final double[] randoms;
-  private final int[] permutations;
+  // Per-light offset into the shared noise field
+  private final double offsetX;
+  private final double offsetY;
+  private final double offsetZ;
   
   public FractalLight(Point3 position, Color color, double intensity) {
     this(position, color, intensity, 4, 0.5, 0.1);
@@ -27,28 +30,9 @@ public class FractalLight implements Light {
     this.octaves = Math.max(1, octaves);
     this.persistence = Math.max(0, Math.min(1, persistence));
     this.frequency = Math.max(0.001, frequency);
-    this.randoms = new double[256];
-    this.permutations = new int[512];
-    
-    initializeNoise();
-  }
-  
-  private void initializeNoise() {
-    for (int i = 0; i < 256; i++) {
-      randoms[i] = Math.random() * 2 - 1;
-      permutations[i] = i;
-    }
-    
-    // Fisher-Yates shuffle
-    for (int i = 255; i > 0; i--) {
-      int index = (int)(Math.random() * (i + 1));
-      int temp = permutations[i];
-      permutations[i] = permutations[index];
-      permutations[index] = temp;
-    }
-    
-    // Duplicate for overflow
-    System.arraycopy(permutations, 0, permutations, 256, 256);
+    this.offsetX = Math.random() * 256.0;
+    this.offsetY = Math.random() * 256.0;
+    this.offsetZ = Math.random() * 256.0;
   }
   
   @Override
@@ -85,7 +69,8 @@ public class FractalLight implements Light {
     double freq = frequency;
     
     for (int i = 0; i < octaves; i++) {
-      total += improvedNoise(x * freq, y * freq, z * freq) * amplitude;
+      double n = FastNoise.perlin(x * freq + offsetX, y * freq + offsetY, z * freq + offsetZ);
+      total += (n + 1) / 2 * amplitude; // [-1,1] -> [0,1] aralığına normalize
       maxAmplitude += amplitude;
       amplitude *= persistence;
       freq *= 2.0;
@@ -94,55 +79,6 @@ public class FractalLight implements Light {
     return total / maxAmplitude;
   }
   
-  private double improvedNoise(double x, double y, double z) {
-    // Ken Perlin'in geliştirilmiş gürültü algoritması
-    int xi = (int)Math.floor(x) & 255;
-    int yi = (int)Math.floor(y) & 255;
-    int zi = (int)Math.floor(z) & 255;
-    
-    double xf = x - Math.floor(x);
-    double yf = y - Math.floor(y);
-    double zf = z - Math.floor(z);
-    
-    double u = fade(xf);
-    double v = fade(yf);
-    double w = fade(zf);
-    
-    int aaa = permutations[permutations[permutations[xi] + yi] + zi];
-    int aba = permutations[permutations[permutations[xi] + yi + 1] + zi];
-    int aab = permutations[permutations[permutations[xi] + yi] + zi + 1];
-    int abb = permutations[permutations[permutations[xi] + yi + 1] + zi + 1];
-    int baa = permutations[permutations[permutations[xi + 1] + yi] + zi];
-    int bba = permutations[permutations[permutations[xi + 1] + yi + 1] + zi];
-    int bab = permutations[permutations[permutations[xi + 1] + yi] + zi + 1];
-    int bbb = permutations[permutations[permutations[xi + 1] + yi + 1] + zi + 1];
-    
-    double x1 = lerp(u, grad(aaa, xf, yf, zf), grad(baa, xf-1, yf, zf));
-    double x2 = lerp(u, grad(aba, xf, yf-1, zf), grad(bba, xf-1, yf-1, zf));
-    double y1 = lerp(v, x1, x2);
-    
-    x1 = lerp(u, grad(aab, xf, yf, zf-1), grad(bab, xf-1, yf, zf-1));
-    x2 = lerp(u, grad(abb, xf, yf-1, zf-1), grad(bbb, xf-1, yf-1, zf-1));
-    double y2 = lerp(v, x1, x2);
-    
-    return (lerp(w, y1, y2) + 1) / 2; // [-1,1] -> [0,1] aralığına normalize
-  }
-  
-  private double fade(double t) {
-    return t * t * t * (t * (t * 6 - 15) + 10);
-  }
-  
-  private double lerp(double t, double a, double b) {
-    return a + t * (b - a);
-  }
-  
-  private double grad(int hash, double x, double y, double z) {
-    int h = hash & 15;
-    double u = h < 8 ? x : y;
-    double v = h < 4 ? y : (h == 12 || h == 14 ? x : z);
-    return ((h & 1) == 0 ? u : -u) + ((h & 2) == 0 ? v : -v);
-  }
-  
   // Light interface diğer metodları
   @Override
   public Vector3 getDirectionTo(Point3 point) {
@@ -24,4 +24,18 @@ public interface Light {
   
   boolean isVisibleFrom(Point3 point, Scene scene);
   
+  /**
+   * Fills the direction and distance from the point to this light into
+   * the reusable sample. Lights with a single position use this default;
+   * others override it.
+   * @return false if the light gives no direct light at the point
+   */
+  default boolean sample(Point3 point, LightSample out) {
+    Point3 position = getPosition();
+    if (position == null) return false;
+    Vector3 toLight = position.subtract(point);
+    out.set(this, toLight.normalize(), toLight.length());
+    return true;
+  }
+  
 }
@@ -0,0 +1,38 @@
+package net.elena.murat.light;
+
+import net.elena.murat.math.Vector3;
+
+/**
+ * Reusable result of {@link Light#sample}: the unit direction from the
+ * shading point towards the light and the distance to it.
+ */
+public final class LightSample {
+
+  private Light light;
+  private Vector3 direction;
+  private double distance;
+
+  /**
+   * Stores a new sample.
+   * @param distance distance to the light, POSITIVE_INFINITY for lights
+   *        at infinity
+   */
+  public void set(Light light, Vector3 direction, double distance) {
+    this.light = light;
+    this.direction = direction;
+    this.distance = distance;
+  }
+
+  public Light getLight() {
+    return light;
+  }
+
+  public Vector3 getDirection() {
+    return direction;
+  }
+
+  public double getDistance() {
+    return distance;
+  }
+
+}
@@ -0,0 +1,312 @@
+package net.elena.murat.light;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.elena.murat.math.Point3;
+import net.elena.murat.math.Ray;
+
+/**
+ * Bounding volume hierarchy over {@link AttenuatedLight}s.
+ * <p>
+ * Every node stores the box of its lights' positions, the largest peak
+ * intensity, the smallest attenuation coefficients and the summed power
+ * of the subtree. From these it gives, for any shading point, an upper
+ * bound of the intensity any light below can deliver. That bound drives
+ * two queries:
+ * </p>
+ * <ul>
+ *   <li>{@link #collect} - every light whose intensity at the point reaches
+ *       a threshold, skipping whole subtrees that cannot</li>
+ *   <li>{@link #sample} - one light picked with probability proportional
+ *       to its estimated contribution, with the probability returned so
+ *       callers can reweight the result without bias; either from the
+ *       whole tree or from the lights a {@link #collect} returned</li>
+ * </ul>
+ * Lights are identified by their index in the list the tree was built
+ * from. Positions are read when the tree is built; call {@link #refit()}
+ * or rebuild it after moving lights.
+ */
+public final class LightTree {
+
+  private static final class Node {
+    double minX, minY, minZ;
+    double maxX, maxY, maxZ;
+    double peak;
+    double power;
+    double c, l, q;
+    Node left;
+    Node right;
+    AttenuatedLight light;
+    int id;
+  }
+
+  private static final class Entry {
+    final AttenuatedLight light;
+    final int id;
+    final Point3 position;
+
+    Entry(AttenuatedLight light, int id) {
+      this.light = light;
+      this.id = id;
+      this.position = light.getPosition();
+    }
+  }
+
+  private final Node root;
+  private final int size;
+  // Leaves by list index, null for lights the tree leaves out
+  private final Node[] leaves;
+
+  /**
+   * Builds the tree over the {@link AttenuatedLight}s of the list; other
+   * lights are left out and must be handled by the caller.
+   */
+  public LightTree(List<? extends Light> lights) {
+    List<Entry> entries = new ArrayList<Entry>(lights.size());
+    for (int i = 0; i < lights.size(); i++) {
+      Light light = lights.get(i);
+      if (light instanceof AttenuatedLight) {
+        entries.add(new Entry((AttenuatedLight) light, i));
+      }
+    }
+    this.size = entries.size();
+    this.leaves = new Node[lights.size()];
+    this.root = entries.isEmpty() ? null : build(entries, leaves);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private static Node build(List<Entry> entries, Node[] leaves) {
+    Node node = new Node();
+    node.minX = node.minY = node.minZ = Double.POSITIVE_INFINITY;
+    node.maxX = node.maxY = node.maxZ = Double.NEGATIVE_INFINITY;
+
+    if (entries.size() == 1) {
+      Entry e = entries.get(0);
+      node.light = e.light;
+      node.id = e.id;
+      setLeaf(node, e.position);
+      leaves[e.id] = node;
+      return node;
+    }
+
+    for (Entry e : entries) {
+      node.minX = Math.min(node.minX, e.position.x);
+      node.minY = Math.min(node.minY, e.position.y);
+      node.minZ = Math.min(node.minZ, e.position.z);
+      node.maxX = Math.max(node.maxX, e.position.x);
+      node.maxY = Math.max(node.maxY, e.position.y);
+      node.maxZ = Math.max(node.maxZ, e.position.z);
+    }
+
+    // Median split on the longest axis
+    double dx = node.maxX - node.minX;
+    double dy = node.maxY - node.minY;
+    double dz = node.maxZ - node.minZ;
+    final int axis = (dx >= dy && dx >= dz) ? 0 : (dy >= dz ? 1 : 2);
+    Collections.sort(entries, (a, b) -> Double.compare(coord(a.position, axis), coord(b.position, axis)));
+
+    int mid = entries.size() / 2;
+    node.left = build(new ArrayList<Entry>(entries.subList(0, mid)), leaves);
+    node.right = build(new ArrayList<Entry>(entries.subList(mid, entries.size())), leaves);
+    merge(node);
+    return node;
+  }
+
+  private static void setLeaf(Node node, Point3 position) {
+    AttenuatedLight light = node.light;
+    node.minX = node.maxX = position.x;
+    node.minY = node.maxY = position.y;
+    node.minZ = node.maxZ = position.z;
+    node.peak = Math.max(0.0, light.getPeakIntensity());
+    node.power = node.peak * luminance(light);
+    node.c = light.getConstantAttenuation();
+    node.l = light.getLinearAttenuation();
+    node.q = light.getQuadraticAttenuation();
+  }
+
+  /**
+   * Sets an inner node's box and bounds from its two children.
+   */
+  private static void merge(Node node) {
+    Node a = node.left;
+    Node b = node.right;
+    node.minX = Math.min(a.minX, b.minX);
+    node.minY = Math.min(a.minY, b.minY);
+    node.minZ = Math.min(a.minZ, b.minZ);
+    node.maxX = Math.max(a.maxX, b.maxX);
+    node.maxY = Math.max(a.maxY, b.maxY);
+    node.maxZ = Math.max(a.maxZ, b.maxZ);
+    node.peak = Math.max(a.peak, b.peak);
+    node.power = a.power + b.power;
+    node.c = Math.min(a.c, b.c);
+    node.l = Math.min(a.l, b.l);
+    node.q = Math.min(a.q, b.q);
+  }
+
+  /**
+   * Re-reads every light's position and intensity and updates the boxes
+   * and bounds bottom-up, keeping the tree's shape. Much cheaper than a
+   * rebuild for lights that move between animation frames; the queries
+   * stay exact, only the splits may get looser as lights drift.
+   */
+  public void refit() {
+    if (root != null) refit(root);
+  }
+
+  private static void refit(Node node) {
+    if (node.light != null) {
+      setLeaf(node, node.light.getPosition());
+      return;
+    }
+    refit(node.left);
+    refit(node.right);
+    merge(node);
+  }
+
+  private static double coord(Point3 p, int axis) {
+    return axis == 0 ? p.x : (axis == 1 ? p.y : p.z);
+  }
+
+  private static double luminance(Light light) {
+    java.awt.Color color = light.getColor();
+    if (color == null) return 1.0;
+    return Math.max(color.getRed(), Math.max(color.getGreen(), color.getBlue())) / 255.0;
+  }
+
+  /**
+   * Squared distance from the point to the node's box (0 inside).
+   */
+  private static double distanceSquared(Node node, Point3 p) {
+    double dx = Math.max(0.0, Math.max(node.minX - p.x, p.x - node.maxX));
+    double dy = Math.max(0.0, Math.max(node.minY - p.y, p.y - node.maxY));
+    double dz = Math.max(0.0, Math.max(node.minZ - p.z, p.z - node.maxZ));
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  private static double attenuation(Node node, double d2) {
+    double d = Math.sqrt(d2);
+    return Math.max(node.c + node.l * d + node.q * d2, Ray.EPSILON);
+  }
+
+  /**
+   * Upper bound of getIntensityAt(p) for every light in the subtree.
+   */
+  private static double intensityBound(Node node, Point3 p) {
+    return node.peak / attenuation(node, distanceSquared(node, p));
+  }
+
+  /**
+   * Estimated contribution of the whole subtree, used for sampling.
+   */
+  private static double importance(Node node, Point3 p) {
+    return node.power / attenuation(node, distanceSquared(node, p));
+  }
+
+  /**
+   * Finds every light whose intensity at the point is at least the
+   * threshold. Spot lights are tested with their cone.
+   * @param ids receives the list indices of the lights, in ascending
+   *        order; must have room for {@link #size()} entries
+   * @return number of indices written
+   */
+  public int collect(Point3 point, double threshold, int[] ids) {
+    if (root == null) return 0;
+    int count = collect(root, point, threshold, ids, 0);
+    Arrays.sort(ids, 0, count);
+    return count;
+  }
+
+  private int collect(Node node, Point3 point, double threshold, int[] ids, int count) {
+    if (intensityBound(node, point) < threshold) return count;
+    if (node.light != null) {
+      if (node.light.getIntensityAt(point) >= threshold) {
+        ids[count++] = node.id;
+      }
+      return count;
+    }
+    count = collect(node.left, point, threshold, ids, count);
+    return collect(node.right, point, threshold, ids, count);
+  }
+
+  /**
+   * Picks one light by walking down the tree, choosing each child in
+   * proportion to its importance at the point.
+   * @param u uniform random number in [0, 1)
+   * @param pdf receives the probability of the returned light in pdf[0]
+   * @return list index of the chosen light, or -1 for an empty tree
+   */
+  public int sample(Point3 point, double u, double[] pdf) {
+    if (root == null) return -1;
+
+    Node node = root;
+    double p = 1.0;
+    while (node.light == null) {
+      double il = importance(node.left, point);
+      double ir = importance(node.right, point);
+      double pl = (il + ir > 0.0) ? il / (il + ir) : 0.5;
+      if (u < pl) {
+        u = u / pl;
+        p *= pl;
+        node = node.left;
+        } else {
+        u = (u - pl) / (1.0 - pl);
+        p *= 1.0 - pl;
+        node = node.right;
+      }
+      // Guard against rounding pushing u to 1
+      if (u >= 1.0) u = Math.nextDown(1.0);
+    }
+    pdf[0] = p;
+    return node.id;
+  }
+
+  /**
+   * Picks one of the lights a {@link #collect} returned, with probability
+   * proportional to its estimated contribution at the point. Lights left
+   * out by the threshold can never be picked, so the probability is the
+   * one among the survivors only.
+   * @param ids list indices as written by collect
+   * @param count number of indices in ids
+   * @param u uniform random number in [0, 1)
+   * @param pdf receives the probability of the returned light in pdf[0]
+   * @return list index of the chosen light, or -1 if count is 0
+   */
+  public int sample(Point3 point, int[] ids, int count, double u, double[] pdf) {
+    if (count <= 0) return -1;
+
+    double total = 0.0;
+    for (int i = 0; i < count; i++) {
+      total += importance(leaves[ids[i]], point);
+    }
+    if (!(total > 0.0)) {
+      // No light has any estimated power here: pick uniformly
+      int i = Math.min((int) (u * count), count - 1);
+      pdf[0] = 1.0 / count;
+      return ids[i];
+    }
+
+    double target = u * total;
+    double sum = 0.0;
+    int last = 0;
+    for (int i = 0; i < count; i++) {
+      double importance = importance(leaves[ids[i]], point);
+      if (importance <= 0.0) continue;
+      last = i;
+      sum += importance;
+      if (target < sum) {
+        pdf[0] = importance / total;
+        return ids[i];
+      }
+    }
+    // Rounding left target at or past the summed importance
+    pdf[0] = importance(leaves[ids[last]], point) / total;
+    return ids[last];
+  }
+
+}
@@ -7,7 +7,7 @@ import net.elena.murat.math.Vector3;
 import net.elena.murat.math.Ray;
 import net.elena.murat.lovert.Scene;
 
-public class MuratPointLight implements Light {
+public class MuratPointLight implements AttenuatedLight {
   private final Point3 position;
   private final Color color;
   private final double intensity;
@@ -62,7 +62,7 @@ public class MuratPointLight implements Light {
     double attenuation = constantAttenuation +
     linearAttenuation * distance +
     quadraticAttenuation * distance * distance;
-    return intensity / Math.max(attenuation, Ray.EPSILON);
+    return getIntensity() / Math.max(attenuation, Ray.EPSILON);
   }
   
   @Override
@@ -84,6 +84,26 @@ public class MuratPointLight implements Light {
   public double getDistanceTo(Point3 point) {
     return position.distance(point);
   }
+  
+  @Override
+  public double getConstantAttenuation() {
+    return constantAttenuation;
+  }
+  
+  @Override
+  public double getLinearAttenuation() {
+    return linearAttenuation;
+  }
+  
+  @Override
+  public double getQuadraticAttenuation() {
+    return quadraticAttenuation;
+  }
+  
+  @Override
+  public double getPeakIntensity() {
+    return intensity;
+  }
 }
 
 /***
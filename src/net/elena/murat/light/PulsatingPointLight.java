@@ -5,9 +5,10 @@ import java.awt.Color;
 import net.elena.murat.math.Point3;
 import net.elena.murat.math.Vector3;
 import net.elena.murat.math.Ray;
+import net.elena.murat.lovert.Animatable;
 import net.elena.murat.lovert.Scene;
 
-public class PulsatingPointLight implements Light {
+public class PulsatingPointLight implements AttenuatedLight, Animatable {
   private final Point3 initialPosition;
   private final Color baseColor;
   private final double baseIntensity;
@@ -41,6 +42,7 @@ public class PulsatingPointLight implements Light {
     this.currentTime = 0;
   }
   
+  @Override
   public void update(double deltaTime) {
     this.currentTime += deltaTime;
   }
@@ -110,6 +112,26 @@ public class PulsatingPointLight implements Light {
     return getPosition().distance(point);
   }
   
+  @Override
+  public double getConstantAttenuation() {
+    return constantAttenuation;
+  }
+  
+  @Override
+  public double getLinearAttenuation() {
+    return linearAttenuation;
+  }
+  
+  @Override
+  public double getQuadraticAttenuation() {
+    return quadraticAttenuation;
+  }
+  
+  @Override
+  public double getPeakIntensity() {
+    return baseIntensity;
+  }
+  
   private double calculateAttenuation(double distance) {
     return constantAttenuation +
     linearAttenuation * distance +
@@ -0,0 +1,43 @@
+package net.elena.murat.light;
+
+import java.awt.Color;
+
+import net.elena.murat.math.Point3;
+import net.elena.murat.math.Vector3;
+
+/**
+ * Parallelogram-shaped area light spanned by two edge vectors around its
+ * center.
+ */
+public class RectangleAreaLight extends AreaLight {
+  private final Vector3 uEdge;
+  private final Vector3 vEdge;
+  
+  public RectangleAreaLight(Point3 center, Vector3 uEdge, Vector3 vEdge,
+    Color color, double intensity) {
+    this(center, uEdge, vEdge, color, intensity, 1.0, 0.1, 0.01, 4, 16);
+  }
+  
+  public RectangleAreaLight(Point3 center, Vector3 uEdge, Vector3 vEdge,
+    Color color, double intensity,
+    double constantAttenuation, double linearAttenuation, double quadraticAttenuation,
+    int minSamples, int maxSamples) {
+    super(center, color, intensity, constantAttenuation, linearAttenuation, quadraticAttenuation,
+    minSamples, maxSamples);
+    this.uEdge = uEdge;
+    this.vEdge = vEdge;
+  }
+  
+  @Override
+  public Point3 samplePoint(Point3 from, double u, double v) {
+    return getPosition().add(uEdge.scale(u - 0.5)).add(vEdge.scale(v - 0.5));
+  }
+  
+  public Vector3 getUEdge() {
+    return uEdge;
+  }
+  
+  public Vector3 getVEdge() {
+    return vEdge;
+  }
+}
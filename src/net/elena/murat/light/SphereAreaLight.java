@@ -0,0 +1,67 @@
+package net.elena.murat.light;
+
+import java.awt.Color;
+
+import net.elena.murat.math.Point3;
+import net.elena.murat.math.Vector3;
+
+/**
+ * Spherical area light. Samples cover only the cap seen from the shading
+ * point, spread evenly over the cone it subtends.
+ */
+public class SphereAreaLight extends AreaLight {
+  private final double radius;
+  
+  public SphereAreaLight(Point3 center, double radius, Color color, double intensity) {
+    this(center, radius, color, intensity, 1.0, 0.1, 0.01, 4, 16);
+  }
+  
+  public SphereAreaLight(Point3 center, double radius,
+    Color color, double intensity,
+    double constantAttenuation, double linearAttenuation, double quadraticAttenuation,
+    int minSamples, int maxSamples) {
+    super(center, color, intensity, constantAttenuation, linearAttenuation, quadraticAttenuation,
+    minSamples, maxSamples);
+    this.radius = Math.max(0, radius);
+  }
+  
+  @Override
+  public Point3 samplePoint(Point3 from, double u, double v) {
+    Point3 center = getPosition();
+    if (radius <= 0.0) return center;
+    Vector3 toCenter = center.subtract(from);
+    double dc = toCenter.length();
+    if (dc <= radius) {
+      // Inside the light: any point of the sphere
+      double z = 1.0 - 2.0 * u;
+      double s = Math.sqrt(Math.max(0.0, 1.0 - z * z));
+      double phi = 2.0 * Math.PI * v;
+      return center.add(new Vector3(s * Math.cos(phi), s * Math.sin(phi), z).scale(radius));
+    }
+    
+    Vector3 w = toCenter.scale(1.0 / dc);
+    Vector3[] axes = new Vector3[2];
+    orthonormalBasis(w, axes);
+    
+    // Direction inside the cone towards the sphere
+    double sinThetaMax2 = (radius * radius) / (dc * dc);
+    double cosThetaMax = Math.sqrt(Math.max(0.0, 1.0 - sinThetaMax2));
+    double cosTheta = 1.0 - u + u * cosThetaMax;
+    double sinTheta2 = Math.max(0.0, 1.0 - cosTheta * cosTheta);
+    double phi = 2.0 * Math.PI * v;
+    
+    // Angle at the center between -w and the hit point
+    double ds = dc * cosTheta - Math.sqrt(Math.max(0.0, radius * radius - dc * dc * sinTheta2));
+    double cosAlpha = (dc * dc + radius * radius - ds * ds) / (2.0 * dc * radius);
+    double sinAlpha = Math.sqrt(Math.max(0.0, 1.0 - cosAlpha * cosAlpha));
+    
+    Vector3 offset = axes[0].scale(sinAlpha * Math.cos(phi))
+    .add(axes[1].scale(sinAlpha * Math.sin(phi)))
+    .add(w.scale(-cosAlpha));
+    return center.add(offset.scale(radius));
+  }
+  
+  public double getRadius() {
+    return radius;
+  }
+}
@@ -5,7 +5,7 @@ import java.awt.Color;
 import net.elena.murat.math.*;
 import net.elena.murat.lovert.Scene;
 
-public class SpotLight implements Light {
+public class SpotLight implements AttenuatedLight {
   private final Point3 position;
   private final Vector3 direction;
   private final Color color;
@@ -91,6 +91,26 @@ public class SpotLight implements Light {
     return position.distance(point);
   }
   
+  @Override
+  public double getConstantAttenuation() {
+    return constantAttenuation;
+  }
+  
+  @Override
+  public double getLinearAttenuation() {
+    return linearAttenuation;
+  }
+  
+  @Override
+  public double getQuadraticAttenuation() {
+    return quadraticAttenuation;
+  }
+  
+  @Override
+  public double getPeakIntensity() {
+    return Math.max(0, intensity);
+  }
+  
   private double calculateConeFactor(Point3 point) {
     Vector3 lightToPoint = getDirectionTo(point);
     double dot = lightToPoint.dot(direction);
@@ -0,0 +1,16 @@
+package net.elena.murat.lovert;
+
+/**
+ * A scene object whose appearance depends on time, such as a moving light
+ * or a flowing material. {@link SequenceRenderer} advances every one of
+ * them between frames and leaves everything else untouched.
+ */
+public interface Animatable {
+
+  /**
+   * Moves the object's clock forward.
+   * @param deltaTime seconds since the previous update
+   */
+  void update(double deltaTime);
+
+}
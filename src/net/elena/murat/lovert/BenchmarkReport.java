@@ -0,0 +1,358 @@
+package net.elena.murat.lovert;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Results of a benchmark run over a corpus of scenes, written to and read
+ * back from a CSV or JSON baseline file, and compared against an earlier
+ * baseline.
+ * <p>
+ * The format follows the file name: ".json" files hold a JSON array with
+ * one object per scene, anything else is CSV with a header line. Both
+ * carry the same columns, so either can be the baseline for the other.
+ * </p>
+ * A scene regresses when its wall time (parse plus render) exceeds the
+ * baseline's by more than the threshold percentage. Allocation and heap
+ * figures are reported but never fail a run; they vary with the JVM's
+ * collector and heap settings far more than timings do.
+ */
+public class BenchmarkReport {
+
+  private static final String[] COLUMNS = {
+    "scene", "width", "height", "parseSeconds", "renderSeconds", "wallSeconds",
+    "rays", "raysPerSecond", "allocatedBytes", "allocationBytesPerSecond", "peakHeapBytes"
+  };
+
+  /**
+   * Measurements of one scene; -1 where the JVM cannot provide a figure.
+   */
+  public static class Result {
+    public final String scene;
+    public final int width;
+    public final int height;
+    public final double parseSeconds;
+    public final double renderSeconds;
+    public final long rays;
+    public final long allocatedBytes;
+    public final long peakHeapBytes;
+
+    public Result(String scene, int width, int height, double parseSeconds, double renderSeconds,
+      long rays, long allocatedBytes, long peakHeapBytes) {
+      this.scene = scene;
+      this.width = width;
+      this.height = height;
+      this.parseSeconds = parseSeconds;
+      this.renderSeconds = renderSeconds;
+      this.rays = rays;
+      this.allocatedBytes = allocatedBytes;
+      this.peakHeapBytes = peakHeapBytes;
+    }
+
+    public double getWallSeconds() {
+      return parseSeconds + renderSeconds;
+    }
+
+    public double getRaysPerSecond() {
+      return renderSeconds > 0 ? rays / renderSeconds : 0.0;
+    }
+
+    public double getAllocationRate() {
+      double wall = getWallSeconds();
+      return (allocatedBytes >= 0 && wall > 0) ? allocatedBytes / wall : -1.0;
+    }
+
+    private String[] values() {
+      return new String[] {
+        scene, Integer.toString(width), Integer.toString(height),
+        number(parseSeconds), number(renderSeconds), number(getWallSeconds()),
+        Long.toString(rays), number(getRaysPerSecond()),
+        Long.toString(allocatedBytes), number(getAllocationRate()), Long.toString(peakHeapBytes)
+      };
+    }
+  }
+
+  private final List<Result> results = new ArrayList<Result>();
+
+  public void add(Result result) {
+    results.add(result);
+  }
+
+  public List<Result> getResults() {
+    return Collections.unmodifiableList(results);
+  }
+
+  /**
+   * Picks the run with the median wall time, so one slow or fast run
+   * (a collection, a JIT recompile) does not decide the result.
+   */
+  public static Result median(List<Result> runs) {
+    if (runs.isEmpty()) {
+      throw new IllegalArgumentException("No benchmark runs");
+    }
+    List<Result> sorted = new ArrayList<Result>(runs);
+    Collections.sort(sorted, (a, b) -> Double.compare(a.getWallSeconds(), b.getWallSeconds()));
+    return sorted.get(sorted.size() / 2);
+  }
+
+  // Measurement helpers
+
+  /**
+   * Bytes allocated so far by the calling thread, or -1 if the JVM does
+   * not count them. Only the calling thread is counted; allocations of
+   * loader threads are missed.
+   */
+  public static long allocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean counting = (com.sun.management.ThreadMXBean) bean;
+      if (counting.isThreadAllocatedMemorySupported() && counting.isThreadAllocatedMemoryEnabled()) {
+        return counting.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  public static void resetPeakHeap() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) pool.resetPeakUsage();
+    }
+  }
+
+  /**
+   * Sum of the heap pools' peaks since the last resetPeakHeap(). The pools
+   * peak at different moments, so this is an upper bound of the real peak.
+   */
+  public static long peakHeapBytes() {
+    long total = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid() && pool.getPeakUsage() != null) {
+        total += pool.getPeakUsage().getUsed();
+      }
+    }
+    return total;
+  }
+
+  // Comparison
+
+  /**
+   * Describes every scene that is slower than in the baseline by more
+   * than thresholdPercent; an empty list means the run passed. Scenes
+   * missing from the baseline or rendered at another resolution are not
+   * compared.
+   */
+  public List<String> findRegressions(Map<String, Result> baseline, double thresholdPercent) {
+    List<String> regressions = new ArrayList<String>();
+    for (Result current : results) {
+      Result base = baseline.get(current.scene);
+      if (base == null || base.width != current.width || base.height != current.height) continue;
+      double limit = base.getWallSeconds() * (1.0 + thresholdPercent / 100.0);
+      if (current.getWallSeconds() > limit) {
+        regressions.add(String.format(Locale.ROOT, "%s: %.3f s, baseline %.3f s (%+.1f%%, threshold %.1f%%)",
+            current.scene, current.getWallSeconds(), base.getWallSeconds(),
+            100.0 * (current.getWallSeconds() / base.getWallSeconds() - 1.0), thresholdPercent));
+      }
+    }
+    return regressions;
+  }
+
+  /**
+   * One line per scene, with the change against the baseline when there
+   * is one.
+   */
+  public String summary(Map<String, Result> baseline) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format(Locale.ROOT, "%-16s %9s %9s %9s %12s %10s %10s %9s%n",
+        "scene", "parse s", "render s", "wall s", "rays/s", "alloc MB/s", "peak MB", "vs base"));
+    for (Result r : results) {
+      Result base = baseline != null ? baseline.get(r.scene) : null;
+      String change = "";
+      if (base != null && base.getWallSeconds() > 0) {
+        change = String.format(Locale.ROOT, "%+.1f%%", 100.0 * (r.getWallSeconds() / base.getWallSeconds() - 1.0));
+      }
+      sb.append(String.format(Locale.ROOT, "%-16s %9.3f %9.3f %9.3f %12.0f %10.1f %10.1f %9s%n",
+          r.scene, r.parseSeconds, r.renderSeconds, r.getWallSeconds(), r.getRaysPerSecond(),
+          r.getAllocationRate() / (1024.0 * 1024.0), r.peakHeapBytes / (1024.0 * 1024.0), change));
+    }
+    return sb.toString();
+  }
+
+  // Files
+
+  public void write(File file) throws IOException {
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists()) parent.mkdirs();
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+      if (isJson(file)) {
+        writeJson(out);
+        } else {
+        writeCsv(out);
+      }
+    }
+  }
+
+  private void writeCsv(PrintWriter out) {
+    out.println(String.join(",", COLUMNS));
+    for (Result r : results) {
+      String[] values = r.values();
+      values[0] = csvField(values[0]);
+      out.println(String.join(",", values));
+    }
+  }
+
+  private void writeJson(PrintWriter out) {
+    out.println("[");
+    for (int i = 0; i < results.size(); i++) {
+      String[] values = results.get(i).values();
+      StringBuilder sb = new StringBuilder("  {");
+      for (int c = 0; c < COLUMNS.length; c++) {
+        if (c > 0) sb.append(", ");
+        sb.append('"').append(COLUMNS[c]).append("\": ");
+        sb.append(c == 0 ? jsonString(values[c]) : values[c]);
+      }
+      sb.append(i < results.size() - 1 ? "}," : "}");
+      out.println(sb);
+    }
+    out.println("]");
+  }
+
+  /**
+   * Reads a file written by write(File), keyed by scene name. Columns
+   * this version does not know are ignored and missing ones read as
+   * zero, so baselines survive added or removed columns.
+   */
+  public static Map<String, Result> read(File file) throws IOException {
+    String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    List<Map<String, String>> rows = isJson(file) ? readJsonRows(text) : readCsvRows(text);
+    Map<String, Result> results = new LinkedHashMap<String, Result>();
+    for (Map<String, String> row : rows) {
+      String scene = row.get("scene");
+      if (scene == null) {
+        throw new IOException("Benchmark row without a scene in " + file + ": " + row);
+      }
+      try {
+        results.put(scene, new Result(scene,
+            (int) longValue(row, "width"), (int) longValue(row, "height"),
+            doubleValue(row, "parseSeconds"), doubleValue(row, "renderSeconds"),
+            longValue(row, "rays"), longValue(row, "allocatedBytes"), longValue(row, "peakHeapBytes")));
+        } catch (NumberFormatException e) {
+        throw new IOException("Invalid number for scene " + scene + " in " + file + ": " + e.getMessage());
+      }
+    }
+    return results;
+  }
+
+  private static List<Map<String, String>> readCsvRows(String text) throws IOException {
+    List<Map<String, String>> rows = new ArrayList<Map<String, String>>();
+    String[] lines = text.split("\r?\n");
+    if (lines.length == 0 || lines[0].trim().isEmpty()) return rows;
+    List<String> header = splitCsv(lines[0]);
+    for (int i = 1; i < lines.length; i++) {
+      if (lines[i].trim().isEmpty()) continue;
+      List<String> fields = splitCsv(lines[i]);
+      if (fields.size() != header.size()) {
+        throw new IOException("CSV line " + (i + 1) + " has " + fields.size() + " fields, expected " + header.size());
+      }
+      Map<String, String> row = new LinkedHashMap<String, String>();
+      for (int c = 0; c < header.size(); c++) {
+        row.put(header.get(c).trim(), fields.get(c).trim());
+      }
+      rows.add(row);
+    }
+    return rows;
+  }
+
+  private static List<String> splitCsv(String line) {
+    List<String> fields = new ArrayList<String>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+          } else if (c == '"') {
+          quoted = false;
+          } else {
+          field.append(c);
+        }
+        } else if (c == '"') {
+        quoted = true;
+        } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+        } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  private static final Pattern JSON_OBJECT = Pattern.compile("\\{([^{}]*)\\}");
+  private static final Pattern JSON_MEMBER = Pattern.compile(
+    "\"([^\"]+)\"\\s*:\\s*(\"((?:[^\"\\\\]|\\\\.)*)\"|[-+0-9.eE]+)");
+
+  /**
+   * Reads the flat objects of a results array; nested values are not
+   * part of the format.
+   */
+  private static List<Map<String, String>> readJsonRows(String text) {
+    List<Map<String, String>> rows = new ArrayList<Map<String, String>>();
+    Matcher object = JSON_OBJECT.matcher(text);
+    while (object.find()) {
+      Map<String, String> row = new LinkedHashMap<String, String>();
+      Matcher member = JSON_MEMBER.matcher(object.group(1));
+      while (member.find()) {
+        String value = member.group(3) != null ? member.group(3).replaceAll("\\\\(.)", "$1") : member.group(2);
+        row.put(member.group(1), value);
+      }
+      rows.add(row);
+    }
+    return rows;
+  }
+
+  private static long longValue(Map<String, String> row, String key) {
+    String value = row.get(key);
+    return (value == null || value.isEmpty()) ? 0 : Long.parseLong(value);
+  }
+
+  private static double doubleValue(Map<String, String> row, String key) {
+    String value = row.get(key);
+    return (value == null || value.isEmpty()) ? 0.0 : Double.parseDouble(value);
+  }
+
+  private static boolean isJson(File file) {
+    return file.getName().toLowerCase(Locale.ROOT).endsWith(".json");
+  }
+
+  private static String number(double value) {
+    return String.format(Locale.ROOT, "%.6f", value);
+  }
+
+  private static String csvField(String s) {
+    if (s.indexOf(',') < 0 && s.indexOf('"') < 0) return s;
+    return '"' + s.replace("\"", "\"\"") + '"';
+  }
+
+  private static String jsonString(String s) {
+    return '"' + s.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+  }
+
+}
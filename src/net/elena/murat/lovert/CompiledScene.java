@@ -0,0 +1,354 @@
+package net.elena.murat.lovert;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.elena.murat.material.PatternBake;
+
+/**
+ * Binary form of a parsed scene file, kept next to it so later runs can
+ * skip the text scan and the expensive loading work.
+ * <p>
+ * It holds the scene's statements (block starts, fields, block ends and
+ * global settings) in file order over a shared string table, the decoded
+ * pixels of every image the scene loaded, stored once per content hash,
+ * and the finished pattern bakes. Objects are still built from the
+ * statements on load, so the result is the same as parsing the text.
+ * </p>
+ * The file records the SHA-256, size and modification time of the source
+ * and of every asset file (images, external classes); {@link #load} maps it
+ * read-only and returns null as soon as any of them changed. Only files
+ * whose size or modification time differ are hashed again.
+ */
+public class CompiledScene {
+
+  public static final String EXTENSION = ".emsc";
+
+  private static final int MAGIC = 0x454D5343; // "EMSC"
+  private static final int VERSION = 2;
+
+  public static final byte BEGIN = 0;
+  public static final byte FIELD = 1;
+  public static final byte END = 2;
+  public static final byte GLOBAL = 3;
+
+  /**
+   * One scene file statement. BEGIN has type and id, FIELD key and value,
+   * GLOBAL the line text; END has neither.
+   */
+  public static final class Statement {
+    public final byte kind;
+    public final String first;
+    public final String second;
+    public final int line;
+    public final int column;
+
+    Statement(byte kind, String first, String second, int line, int column) {
+      this.kind = kind;
+      this.first = first;
+      this.second = second;
+      this.line = line;
+      this.column = column;
+    }
+  }
+
+  /**
+   * Content hash of a file with the size and modification time it was
+   * hashed at; a missing file has size -1.
+   */
+  private static final class FileStamp {
+    final String hash;
+    final long size;
+    final long modified;
+
+    FileStamp(String hash, long size, long modified) {
+      this.hash = hash;
+      this.size = size;
+      this.modified = modified;
+    }
+
+    static FileStamp of(File file) throws IOException {
+      if (!file.isFile()) return new FileStamp("missing", -1L, 0L);
+      // Taken before hashing, so a write during it shows as a change next time
+      long size = file.length();
+      long modified = file.lastModified();
+      return new FileStamp(RenderCheckpoint.hashFile(file), size, modified);
+    }
+
+    /**
+     * True if the file still has the recorded content; hashes it only when
+     * its size or modification time moved.
+     */
+    boolean matches(File file) throws IOException {
+      if (!file.isFile()) return size < 0;
+      if (size < 0) return false;
+      if (file.length() == size && file.lastModified() == modified) return true;
+      return hash.equals(RenderCheckpoint.hashFile(file));
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+      writeString(out, hash);
+      out.writeLong(size);
+      out.writeLong(modified);
+    }
+
+    static FileStamp readFrom(ByteBuffer in) {
+      return new FileStamp(readString(in), in.getLong(), in.getLong());
+    }
+  }
+
+  private final FileStamp source;
+  private final List<Statement> statements = new ArrayList<Statement>();
+  private final Map<String, FileStamp> assets = new LinkedHashMap<String, FileStamp>();
+  private final Map<String, String> imageHashes = new LinkedHashMap<String, String>();
+  private final Map<String, BufferedImage> images = new LinkedHashMap<String, BufferedImage>();
+  private final Map<String, PatternBake> bakes = new LinkedHashMap<String, PatternBake>();
+
+  /**
+   * Starts recording a scene read from the given source file.
+   */
+  public CompiledScene(File source) throws IOException {
+    this(FileStamp.of(source));
+  }
+
+  private CompiledScene(FileStamp source) {
+    this.source = source;
+  }
+
+  public static File compiledFileFor(String sceneFile) {
+    return new File(sceneFile + EXTENSION);
+  }
+
+  public void addStatement(byte kind, String first, String second, int line, int column) {
+    statements.add(new Statement(kind, first, second, line, column));
+  }
+
+  public List<Statement> getStatements() {
+    return Collections.unmodifiableList(statements);
+  }
+
+  /**
+   * Makes the compiled scene depend on a file; a missing file is recorded
+   * too, so creating it later invalidates the cache.
+   */
+  public void addAsset(File file) throws IOException {
+    String path = file.getPath();
+    if (!assets.containsKey(path)) {
+      assets.put(path, FileStamp.of(file));
+    }
+  }
+
+  /**
+   * Stores an image loaded from the given asset path. Images with equal
+   * content share one copy of the pixels.
+   */
+  public void addImage(String path, BufferedImage image) throws IOException {
+    File file = new File(path);
+    addAsset(file);
+    String hash = assets.get(file.getPath()).hash;
+    imageHashes.put(path, hash);
+    if (!images.containsKey(hash)) images.put(hash, image);
+  }
+
+  /**
+   * Images by the path they were loaded from.
+   */
+  public Map<String, BufferedImage> getImages() {
+    Map<String, BufferedImage> result = new HashMap<String, BufferedImage>();
+    for (Map.Entry<String, String> e : imageHashes.entrySet()) {
+      result.put(e.getKey(), images.get(e.getValue()));
+    }
+    return result;
+  }
+
+  public void addBake(String key, PatternBake bake) {
+    bakes.put(key, bake);
+  }
+
+  public PatternBake getBake(String key) {
+    return bakes.get(key);
+  }
+
+  public void write(File file) throws IOException {
+    Map<String, Integer> index = new HashMap<String, Integer>();
+    List<String> strings = new ArrayList<String>();
+    for (Statement s : statements) {
+      intern(s.first, index, strings);
+      intern(s.second, index, strings);
+    }
+
+    File tmp = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      source.writeTo(out);
+
+      out.writeInt(assets.size());
+      for (Map.Entry<String, FileStamp> e : assets.entrySet()) {
+        writeString(out, e.getKey());
+        e.getValue().writeTo(out);
+      }
+
+      out.writeInt(strings.size());
+      for (String s : strings) {
+        writeString(out, s);
+      }
+      out.writeInt(statements.size());
+      for (Statement s : statements) {
+        out.writeByte(s.kind);
+        out.writeInt(s.first == null ? -1 : index.get(s.first));
+        out.writeInt(s.second == null ? -1 : index.get(s.second));
+        out.writeInt(s.line);
+        out.writeInt(s.column);
+      }
+
+      out.writeInt(images.size());
+      for (Map.Entry<String, BufferedImage> e : images.entrySet()) {
+        BufferedImage image = e.getValue();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        writeString(out, e.getKey());
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeBoolean(image.getColorModel().hasAlpha());
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+          image.getRGB(0, y, width, 1, row, 0, width);
+          for (int argb : row) {
+            out.writeInt(argb);
+          }
+        }
+      }
+      out.writeInt(imageHashes.size());
+      for (Map.Entry<String, String> e : imageHashes.entrySet()) {
+        writeString(out, e.getKey());
+        writeString(out, e.getValue());
+      }
+
+      out.writeInt(bakes.size());
+      for (Map.Entry<String, PatternBake> e : bakes.entrySet()) {
+        writeString(out, e.getKey());
+        e.getValue().writeTo(out);
+      }
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static void intern(String s, Map<String, Integer> index, List<String> strings) {
+    if (s != null && !index.containsKey(s)) {
+      index.put(s, strings.size());
+      strings.add(s);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer in) {
+    byte[] bytes = new byte[in.getInt()];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Loads a compiled scene if it is still current for the source file;
+   * returns null, with the reason printed, when it is stale or unreadable.
+   */
+  public static CompiledScene load(File file, File source) {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      FileChannel channel = raf.getChannel();
+      if (channel.size() > Integer.MAX_VALUE) {
+        System.err.println("Compiled scene too large to map: " + file);
+        return null;
+      }
+      MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+        System.out.println("Compiled scene " + file + " has an old format");
+        return null;
+      }
+      FileStamp sourceStamp = FileStamp.readFrom(in);
+      if (!sourceStamp.matches(source)) {
+        System.out.println("Compiled scene " + file + " is out of date: " + source + " changed");
+        return null;
+      }
+      CompiledScene scene = new CompiledScene(sourceStamp);
+
+      int assetCount = in.getInt();
+      for (int i = 0; i < assetCount; i++) {
+        String path = readString(in);
+        FileStamp stamp = FileStamp.readFrom(in);
+        if (!stamp.matches(new File(path))) {
+          System.out.println("Compiled scene " + file + " is out of date: " + path + " changed");
+          return null;
+        }
+        scene.assets.put(path, stamp);
+      }
+
+      String[] strings = new String[in.getInt()];
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = readString(in);
+      }
+      int statementCount = in.getInt();
+      for (int i = 0; i < statementCount; i++) {
+        byte kind = in.get();
+        int first = in.getInt();
+        int second = in.getInt();
+        scene.addStatement(kind, first < 0 ? null : strings[first], second < 0 ? null : strings[second],
+          in.getInt(), in.getInt());
+      }
+
+      int imageCount = in.getInt();
+      for (int i = 0; i < imageCount; i++) {
+        String hash = readString(in);
+        int width = in.getInt();
+        int height = in.getInt();
+        boolean alpha = in.get() != 0;
+        BufferedImage image = new BufferedImage(width, height,
+          alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        in.asIntBuffer().get(pixels);
+        in.position(in.position() + 4 * pixels.length);
+        scene.images.put(hash, image);
+      }
+      int refCount = in.getInt();
+      for (int i = 0; i < refCount; i++) {
+        String path = readString(in);
+        scene.imageHashes.put(path, readString(in));
+      }
+
+      int bakeCount = in.getInt();
+      for (int i = 0; i < bakeCount; i++) {
+        String key = readString(in);
+        scene.bakes.put(key, PatternBake.readFrom(in));
+      }
+      return scene;
+
+      } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+      System.err.println("Unreadable compiled scene " + file + ": " + e);
+      return null;
+    }
+  }
+
+}
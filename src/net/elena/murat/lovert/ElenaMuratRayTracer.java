@@ -13,9 +13,13 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
 
 // Custom imports
 import net.elena.murat.shape.*;
@@ -162,6 +166,42 @@ public class ElenaMuratRayTracer {
   
   private Color shadowColor = Color.BLACK;
   
+  // Light acceleration; disabled while both are zero
+  private double lightCullThreshold = 0.0;
+  private int lightSamples = 0;
+  
+  // Per-render light setup, see prepareScene()
+  private List<Light> renderLights;
+  private EMShape[] renderShapes;
+  private int[] unboundedLightIds;
+  private int[] culledLightIds;
+  private LightTree lightTree;
+  private final double[] lightPdf = new double[1];
+  private final LightSample lightSample = new LightSample();
+  private Random lightRandom;
+  private Random areaRandom;
+  
+  // Last shape that blocked a shadow ray, per light index and per thread
+  private ThreadLocal<EMShape[]> occluderCache;
+  
+  private final RenderStatistics statistics = new RenderStatistics();
+  
+  // Set while renderHdr() runs
+  private boolean keepHighDynamicRange;
+  
+  // Set between beginSequence() and endSequence()
+  private boolean sceneRetained;
+  
+  private TemporalCache temporalCache;
+  
+  private HitRecord hitRecord;
+  
+  // Materials whose object transform was set to a copy of an InstanceSet
+  private final Set<Material> instancedMaterials = Collections.newSetFromMap(new IdentityHashMap<Material, Boolean>());
+  
+  // Null while profiling is off, see setProfiling
+  private RenderProfile profile;
+  
   public ElenaMuratRayTracer(Scene scene, int width, int height,
     Color backgroundColor) {
     this.scene = scene;
@@ -219,6 +259,14 @@ public class ElenaMuratRayTracer {
     camera.setOrthographicScale(this.orthographicScale);
   }
   
+  public int getWidth() {
+    return width;
+  }
+  
+  public int getHeight() {
+    return height;
+  }
+  
   public int getMaxRecursionDepth() {
     if (camera == null) {
       return maxRecursionDepth;
@@ -230,10 +278,80 @@ public class ElenaMuratRayTracer {
 	this.shadowColor = scol;  
   }
   
+  /**
+   * Skips point and spot lights whose attenuated intensity at the shaded
+   * point is below the threshold. 0 disables culling.
+   */
+  public void setLightCullThreshold(double threshold) {
+    this.lightCullThreshold = Math.max(0.0, threshold);
+  }
+  
+  public double getLightCullThreshold() {
+    return lightCullThreshold;
+  }
+  
+  /**
+   * Shades point and spot lights with this many importance-sampled lights
+   * per hit, reweighted by their selection probability. With a cull
+   * threshold set, the samples are drawn from the lights that pass it
+   * only. 0 evaluates all.
+   */
+  public void setLightSamples(int samples) {
+    this.lightSamples = Math.max(0, samples);
+  }
+  
+  public int getLightSamples() {
+    return lightSamples;
+  }
+  
+  /**
+   * Counters of the last render.
+   */
+  public RenderStatistics getStatistics() {
+    return statistics;
+  }
+  
   public Color getShadowColor() {
 	return this.shadowColor;  
   }
   
+  /**
+   * Reuses shaded pixels of the previous frame where the camera still
+   * sees the same surface, see {@link TemporalCache}. Only for frames of
+   * one scene whose lights do not change; null turns reuse off.
+   */
+  public void setTemporalCache(TemporalCache cache) {
+    this.temporalCache = cache;
+  }
+  
+  public TemporalCache getTemporalCache() {
+    return temporalCache;
+  }
+  
+  /**
+   * Collects what the following rays run into in the record; null
+   * stops collecting. Only for single-threaded tile renders.
+   */
+  void setHitRecord(HitRecord record) {
+    this.hitRecord = record;
+  }
+  
+  /**
+   * Counts rays, intersection tests and shading calls of the following
+   * renders, see RenderProfile; each render ends by printing the profile
+   * and committing it as Flight Recorder events.
+   */
+  public void setProfiling(boolean enabled) {
+    profile = enabled ? new RenderProfile() : null;
+  }
+  
+  /**
+   * The profile of the last render, or null if profiling is off.
+   */
+  public RenderProfile getProfile() {
+    return profile;
+  }
+  
   public Camera getCamera() {
     return this.camera;
   }
@@ -281,43 +399,230 @@ public class ElenaMuratRayTracer {
 	g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
 	g2d.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
 
-    FloatColor cxx = FloatColor.BLACK;
+    prepareScene();
     
-	final int CERO = 0x0000;
-	
-	final double UNO = 1.0;
-	final double DOS = 2.0;
-	final double HALF = 0.5;
-	
-    for (int y = CERO; y < height; y++) {
-      for (int x = CERO; x < width; x++) {
-        double ndcX = (x + HALF)/width;
-        double ndcY = (y + HALF)/height;
-        double screenX = DOS*ndcX - UNO;
-        double screenY = UNO - DOS*ndcY;
-        
-        Ray ray = generateCameraRay(screenX, screenY);
-        
-        cxx = traceRay(ray, CERO, UNO);
-        
-        image.setRGB(x, y, cxx.toARGB());
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.setRGB(x, y, renderPixel(x, y));
       }
     }
 	
 	g2d.dispose ();
 	
+    releaseScene();
+    
     return image;
   }
   
+  /**
+   * Renders in bands of rows, handing each finished band to the sink, so
+   * only one band of pixels is held in memory. The sink is not closed.
+   */
+  public void render(RenderSink sink, int bandHeight) throws IOException {
+    bandHeight = Math.max(1, Math.min(bandHeight, height));
+    int[] band = new int[width * bandHeight];
+    
+    prepareScene();
+    try {
+      sink.begin(width, height);
+      for (int y0 = 0; y0 < height; y0 += bandHeight) {
+        int rows = Math.min(bandHeight, height - y0);
+        for (int y = y0; y < y0 + rows; y++) {
+          int offset = (y - y0) * width;
+          for (int x = 0; x < width; x++) {
+            band[offset + x] = renderPixel(x, y);
+          }
+        }
+        sink.writeRows(y0, rows, band);
+      }
+      sink.finish();
+      } finally {
+      releaseScene();
+    }
+  }
+  
+  /**
+   * Renders into a float framebuffer, keeping values above 1 for HDR
+   * output and later tone mapping.
+   */
+  public HdrFramebuffer renderHdr() {
+    HdrFramebuffer frame = new HdrFramebuffer(width, height);
+    prepareScene();
+    if (temporalCache != null) temporalCache.invalidate();
+    keepHighDynamicRange = true;
+    try {
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          frame.setPixel(x, y, tracePixel(x, y));
+        }
+      }
+      } finally {
+      keepHighDynamicRange = false;
+      releaseScene();
+    }
+    return frame;
+  }
+  
+  /**
+   * Renders tile by tile into the checkpoint, skipping tiles an earlier
+   * run finished. A resumed render gives the same pixels as an
+   * uninterrupted one, see {@link #renderTile}.
+   */
+  public void render(RenderCheckpoint checkpoint) throws IOException {
+    int tileSize = checkpoint.getTileSize();
+    int[] tile = new int[tileSize * tileSize];
+    
+    beginTiles();
+    try {
+      for (int t = 0; t < checkpoint.getTileCount(); t++) {
+        if (checkpoint.isTileDone(t)) continue;
+        
+        int x0 = (t % checkpoint.getTilesX()) * tileSize;
+        int y0 = (t / checkpoint.getTilesX()) * tileSize;
+        int tileWidth = Math.min(tileSize, width - x0);
+        int tileHeight = Math.min(tileSize, height - y0);
+        renderTile(x0, y0, tileWidth, tileHeight, tile);
+        checkpoint.writeTile(t, tile, tileWidth, tileHeight);
+      }
+      checkpoint.flush();
+      } finally {
+      endTiles();
+    }
+  }
+  
+  /**
+   * Prepares the scene for {@link #renderTile} calls.
+   */
+  public void beginTiles() {
+    prepareScene();
+  }
+  
+  public void endTiles() {
+    releaseScene();
+  }
+  
+  /**
+   * Renders one rectangle of the frame, between beginTiles() and
+   * endTiles(). Random sequences are seeded from the tile position, so a
+   * tile has the same pixels whichever run or process renders it.
+   * @param out receives the pixels, row after row, tileWidth per row
+   */
+  public void renderTile(int x0, int y0, int tileWidth, int tileHeight, int[] out) {
+    long salt = (long) y0 * width + x0;
+    areaRandom = new Random(0xA5EAL + 31L * salt);
+    if (lightTree != null) lightRandom = new Random(0x5EEDL + 31L * salt);
+    
+    for (int y = 0; y < tileHeight; y++) {
+      for (int x = 0; x < tileWidth; x++) {
+        out[y * tileWidth + x] = renderPixel(x0 + x, y0 + y);
+      }
+    }
+  }
+  
+  private int renderPixel(int x, int y) {
+    if (temporalCache == null) {
+      return tracePixel(x, y).toARGB();
+    }
+    
+    // Only the primary hit is needed to decide whether the cached pixel
+    // still applies; shading is the expensive part
+    Ray ray = primaryRay(x, y);
+    Optional<Intersection> hit = findClosestIntersection(ray);
+    statistics.addTracedRay();
+    if (profile != null) {
+      profile.addPrimaryRay();
+      profile.addTracedRay(0);
+    }
+    int pixel = y * width + x;
+    EMShape shape = hit.isPresent() && isTemporallyStable(hit.get().getShape()) ? hit.get().getShape() : null;
+    if (shape != null && temporalCache.reuse(pixel, shape, hit.get().getPoint())) {
+      return temporalCache.colorAt(pixel);
+    }
+    
+    int argb = shadeHit(ray, hit, 0, 1.0).toARGB();
+    temporalCache.store(pixel, shape, shape != null ? hit.get().getPoint() : null, argb);
+    return argb;
+  }
+  
+  /**
+   * True if a primary hit on the shape shades the same from a nearby
+   * view in the next frame: no mirror or glass rays, which would need
+   * their own reprojection, and nothing that changes over time.
+   */
+  private boolean isTemporallyStable(EMShape shape) {
+    Material material = shape.getMaterial();
+    if (material == null || shape instanceof EmojiBillboard) return false;
+    if (shouldCalculateReflections(material) || shouldCalculateRefractions(material)) return false;
+    return !isTimeDependent(material);
+  }
+  
+  private static boolean isTimeDependent(Material material) {
+    if (material instanceof Animatable) return true;
+    if (material instanceof PBRCapableMaterial
+      && ((PBRCapableMaterial) material).getMaterialType().isTimeDependent()) return true;
+    // These still animate from the wall clock
+    return material instanceof StarfieldMaterial
+    || material instanceof NorthernLightMaterial
+    || material instanceof LightningMaterial
+    || material instanceof HolographicPBRMaterial;
+  }
+  
+  private FloatColor tracePixel(int x, int y) {
+    if (profile != null) profile.addPrimaryRay();
+    return traceRay(primaryRay(x, y), 0, 1.0);
+  }
+  
+  Ray primaryRay(int x, int y) {
+    final double HALF = 0.5;
+    double ndcX = (x + HALF)/width;
+    double ndcY = (y + HALF)/height;
+    double screenX = 2.0*ndcX - 1.0;
+    double screenY = 1.0 - 2.0*ndcY;
+    
+    return generateCameraRay(screenX, screenY);
+  }
+  
+  /**
+   * Keeps the scene snapshot and light tree across the following renders,
+   * for frames of an animation where only {@link Animatable} objects
+   * change. Each render then only refits the light tree to the lights'
+   * new positions. Shapes and lights must not be added or removed until
+   * {@link #endSequence()}.
+   */
+  public void beginSequence() {
+    prepareScene();
+    sceneRetained = true;
+  }
+  
+  public void endSequence() {
+    sceneRetained = false;
+    releaseScene();
+  }
+  
+  private void releaseScene() {
+    finishProfile();
+    if (sceneRetained) return;
+    renderLights = null;
+    renderShapes = null;
+    lightTree = null;
+    occluderCache = null;
+  }
+  
   //Original traceRay
   private FloatColor traceRay(Ray ray, int depth, double attenuationFactor) {
     // 1. Check depth and attenuation factor
     if ((depth > camera.getMaxRecursionDepth()) || attenuationFactor < 1e-30) {
       return depth == 0 ? backgroundColorFloat : FloatColor.BLACK;
     }
+    if (depth > 0 && hitRecord != null) hitRecord.secondaryRays = true;
+    statistics.addTracedRay();
+    if (profile != null) profile.addTracedRay(depth);
     
     // 2. Intersection test
-    Optional<Intersection> hit = findClosestIntersection(ray);
+    return shadeHit(ray, findClosestIntersection(ray), depth, attenuationFactor);
+  }
+  
+  private FloatColor shadeHit(Ray ray, Optional<Intersection> hit, int depth, double attenuationFactor) {
     if (!hit.isPresent()) {
       return depth == 0 ? backgroundColorFloat : FloatColor.BLACK;
     }
@@ -325,6 +630,7 @@ public class ElenaMuratRayTracer {
     Intersection intersection = hit.get();
     EMShape shape = intersection.getShape();
     Material material = shape.getMaterial();
+    if (material != null) placeMaterial(material, intersection);
     Point3 hitPoint = intersection.getPoint();
     Vector3 normal = intersection.getNormal().normalize();
     
@@ -333,7 +639,7 @@ public class ElenaMuratRayTracer {
     if (shape instanceof EmojiBillboard) {
       EmojiBillboard billboard = (EmojiBillboard) shape;
       if (!billboard.isVisible()) {
-        Color materialColor = material.getColorAt(hitPoint, normal, null, ray.getOrigin());
+        Color materialColor = shade(material, hitPoint, normal, null, ray.getOrigin());
         
         if (materialColor.getAlpha() < 255) {
           Point3 offsetPoint = hitPoint.add(ray.getDirection().scale(Ray.EPSILON));
@@ -379,7 +685,7 @@ public class ElenaMuratRayTracer {
       // Ambient light
       for (Light light : scene.getLights()) {
         if (light instanceof ElenaMuratAmbientLight) {
-          Color ambientColor = material.getColorAt(hitPoint, N, light, ray.getOrigin());
+          Color ambientColor = shade(material, hitPoint, N, light, ray.getOrigin());
           FloatColor ambientFloat = new FloatColor(ambientColor);
           finalColor = finalColor.add(ambientFloat);
         }
@@ -393,6 +699,7 @@ public class ElenaMuratRayTracer {
         double newReflectedAttenuation = attenuationFactor * material.getReflectivity();
         Point3 offsetPoint = hitPoint.add(N.scale(Ray.EPSILON));
         Ray reflectedRay = new Ray(offsetPoint, reflectedDir);
+        if (profile != null) profile.addReflectionRay();
         FloatColor reflectedColor = traceRay(reflectedRay, depth + 1, newReflectedAttenuation);
         finalColor = finalColor.add(reflectedColor);
       }
@@ -413,6 +720,7 @@ public class ElenaMuratRayTracer {
           //double newRefractedAttenuation = attenuationFactor * material.getTransparency(); //Original
           double newRefractedAttenuation = attenuationFactor * material.getTransparency() * (1.0-fresnel);
           Ray refractedRay = new Ray(refractedOffsetPoint, refractedDir.get());
+          if (profile != null) profile.addRefractionRay();
           FloatColor refractedColor = traceRay(refractedRay, depth + 1, newRefractedAttenuation);
           
           if (material instanceof GlassMaterial) {
@@ -454,6 +762,8 @@ public class ElenaMuratRayTracer {
       
       finalColor = new FloatColor(finalColor.r, finalColor.g, finalColor.b, finalColor.a);
       
+      // Primary rays keep values above 1 for HDR output
+      if (depth == 0 && keepHighDynamicRange) return finalColor;
       return finalColor.clamp01();
     }
   }
@@ -481,7 +791,7 @@ public class ElenaMuratRayTracer {
     for (Light light : scene.getLights()) {
       try {
         if (light instanceof ElenaMuratAmbientLight) {
-          Color ambient = material.getColorAt(point, normal, light, ray.getOrigin());
+          Color ambient = shade(material, point, normal, light, ray.getOrigin());
           if (ambient != null) {
             FloatColor ambientRGB = new FloatColor(
               ambient.getRed() / 255.0,
@@ -547,76 +857,258 @@ public class ElenaMuratRayTracer {
     return camera.isShadowsEnabled();
   }
   
+  /**
+   * Snapshots the scene shapes and lights for one render and, when light
+   * culling or sampling is enabled, builds the light tree over point and
+   * spot lights.
+   */
+  private void prepareScene() {
+    statistics.reset();
+    if (profile != null) profile.reset();
+    if (temporalCache != null) {
+      if (temporalCache.getWidth() != width || temporalCache.getHeight() != height) {
+        throw new IllegalStateException("Temporal cache is " + temporalCache.getWidth() + "x"
+          + temporalCache.getHeight() + ", frame is " + width + "x" + height);
+      }
+      temporalCache.beginFrame(camera, fov);
+    }
+    if (sceneRetained) {
+      areaRandom = new Random(0xA5EAL);
+      if (lightTree != null) {
+        lightTree.refit();
+        lightRandom = new Random(0x5EEDL);
+      }
+      return;
+    }
+    renderLights = scene.getLights();
+    List<EMShape> shapes = scene.getShapes();
+    renderShapes = shapes.toArray(new EMShape[shapes.size()]);
+    final int lightCount = renderLights.size();
+    occluderCache = ThreadLocal.withInitial(() -> new EMShape[lightCount]);
+    lightTree = null;
+    areaRandom = new Random(0xA5EAL);
+    
+    if (lightCullThreshold <= 0.0 && lightSamples <= 0) {
+      return;
+    }
+    
+    int unbounded = 0;
+    unboundedLightIds = new int[renderLights.size()];
+    for (int i = 0; i < renderLights.size(); i++) {
+      Light light = renderLights.get(i);
+      if (!(light instanceof ElenaMuratAmbientLight) && !(light instanceof AttenuatedLight)) {
+        unboundedLightIds[unbounded++] = i;
+      }
+    }
+    unboundedLightIds = Arrays.copyOf(unboundedLightIds, unbounded);
+    
+    lightTree = new LightTree(renderLights);
+    culledLightIds = new int[lightTree.size()];
+    lightRandom = new Random(0x5EEDL);
+  }
+  
   private Color calculateDirectLighting(Point3 point, Vector3 normal,
     Material material, Ray ray) {
     Color directLightingColor = new Color(0, 0, 0);
     
-    for (Light light : scene.getLights()) {
-      if (light instanceof ElenaMuratAmbientLight) continue;
-      
-      Vector3 lightDir = null;
-      double distance = Double.POSITIVE_INFINITY;
-      
-      if (light instanceof MuratPointLight) {
-        MuratPointLight ptLight = (MuratPointLight) light;
-        lightDir = ptLight.getPosition().subtract(point).normalize();
-        distance = ptLight.getPosition().subtract(point).length();
-        } else if (light instanceof PulsatingPointLight) {
-        PulsatingPointLight pulsatingLight = (PulsatingPointLight) light;
-        lightDir = pulsatingLight.getPosition().subtract(point).normalize();
-        distance = pulsatingLight.getDistanceTo(point);
-        } else if (light instanceof ElenaDirectionalLight) {
-        ElenaDirectionalLight dl = (ElenaDirectionalLight) light;
-        lightDir = dl.getDirection().negate().normalize();
-        distance = Double.POSITIVE_INFINITY;
-        } else if (light instanceof SpotLight) {
-        SpotLight s = (SpotLight) light;
-        lightDir = s.getPosition().subtract(point).normalize();
-        distance = s.getPosition().subtract(point).length();
-        } else if (light instanceof FractalLight) {
-        FractalLight f = (FractalLight) light;
-        lightDir = f.getPosition().subtract(point).normalize();
-        distance = f.getPosition().subtract(point).length();
-        } else if (light instanceof BlackHoleLight) {
-        BlackHoleLight bh = (BlackHoleLight) light;
-        lightDir = bh.getPosition().subtract(point).normalize();
-        distance = bh.getPosition().subtract(point).length();
-        } else if (light instanceof BioluminescentLight) {
-        BioluminescentLight bio = (BioluminescentLight) light;
-        lightDir = bio.getDirectionAt(point);
-        distance = bio.getClosestDistance(point);
+    if (lightTree == null) {
+      List<Light> lights = (renderLights != null) ? renderLights : scene.getLights();
+      for (int id = 0; id < lights.size(); id++) {
+        directLightingColor = addDirectLight(directLightingColor, lights.get(id), id, point, normal, material, ray);
+      }
+      return directLightingColor;
+    }
+    
+    if (lightSamples > 0) {
+      // Directional and other unbounded lights are always evaluated
+      for (int id : unboundedLightIds) {
+        directLightingColor = addDirectLight(directLightingColor, renderLights.get(id), id,
+        point, normal, material, ray);
       }
       
-      if (lightDir == null) continue;
+      // Culled lights are left out before choosing, so the pdf is the
+      // real probability among the lights that can be picked
+      int candidates = (lightCullThreshold > 0.0)
+      ? lightTree.collect(point, lightCullThreshold, culledLightIds) : -1;
       
-      if (material instanceof TransparentPNGMaterial ||
-	      material instanceof TransparentColorMaterial ||
-		  material instanceof GhostTextMaterial) {
-        Color contribution = material.getColorAt(point, normal, light, ray.getOrigin());
-        directLightingColor = ColorUtil.addSafe(directLightingColor, contribution);
-        continue;
+      // Sampled contributions are summed unclamped and clamped once at the end
+      FloatColor sampled = FloatColor.BLACK;
+      for (int i = 0; i < lightSamples; i++) {
+        double u = lightRandom.nextDouble();
+        int id = (candidates < 0) ? lightTree.sample(point, u, lightPdf)
+        : lightTree.sample(point, culledLightIds, candidates, u, lightPdf);
+        if (id < 0) break;
+        if (lightPdf[0] <= 0.0) continue;
+        Light light = renderLights.get(id);
+        double visibility = lightVisibility(light, id, point, normal, material);
+        if (visibility < 0.0) continue;
+        if (visibility == 0.0) {
+          directLightingColor = ColorUtil.applyShadowColor(directLightingColor, shadowColor);
+          continue;
+        }
+        Color contribution = shade(material, point, normal, light, ray.getOrigin());
+        sampled = sampled.add(new FloatColor(contribution).scale(visibility / (lightSamples * lightPdf[0])));
+      }
+      return ColorUtil.addSafe(directLightingColor, sampled.toAWTColor());
+      } else {
+      // Surviving lights merged with the unbounded ones, in scene order,
+      // since shadowed lights tint what was accumulated before them
+      int culled = lightTree.collect(point, lightCullThreshold, culledLightIds);
+      int i = 0;
+      int j = 0;
+      while (i < culled || j < unboundedLightIds.length) {
+        int id;
+        if (j >= unboundedLightIds.length || (i < culled && culledLightIds[i] < unboundedLightIds[j])) {
+          id = culledLightIds[i++];
+          } else {
+          id = unboundedLightIds[j++];
+        }
+        directLightingColor = addDirectLight(directLightingColor, renderLights.get(id), id,
+        point, normal, material, ray);
       }
-      
-      // Only calculate direct lighting if not in shadow
-      if (!shouldCalculateShadows() ||
-        !isInShadow(point.add(normal.scale(Ray.EPSILON)), lightDir, distance)) {
-        Color contribution = material.getColorAt(point, normal, light, ray.getOrigin());
-        directLightingColor = ColorUtil.addSafe(directLightingColor, contribution);
-      }  else {
-		// Shadow color apply
-		directLightingColor = ColorUtil.applyShadowColor(directLightingColor, shadowColor);
-	  }
     }
     
     return directLightingColor;
   }
   
+  /**
+   * Adds one light's shadowed contribution.
+   * @param lightId index of the light in the render snapshot, -1 if none
+   */
+  private Color addDirectLight(Color directLightingColor, Light light, int lightId,
+    Point3 point, Vector3 normal, Material material, Ray ray) {
+    double visibility = lightVisibility(light, lightId, point, normal, material);
+    if (visibility < 0.0) return directLightingColor;
+    
+    // Shadow color apply
+    Color shadowed = (visibility < 1.0) ? ColorUtil.applyShadowColor(directLightingColor, shadowColor) : null;
+    if (visibility <= 0.0) return shadowed;
+    Color contribution = shade(material, point, normal, light, ray.getOrigin());
+    Color lit = ColorUtil.addSafe(directLightingColor, contribution);
+    if (visibility >= 1.0) return lit;
+    // Penumbra: between the shadowed and the lit result
+    return ColorUtil.blendColors(shadowed, lit, visibility);
+  }
+  
+  /**
+   * Fraction of the light that reaches the point: 0 or 1 for point
+   * lights, the visible part of area lights, always 1 without shadows or
+   * on the see-through materials. Fills lightSample.
+   * @return the fraction, or -1 if the light does not shine on the point
+   */
+  private double lightVisibility(Light light, int lightId, Point3 point, Vector3 normal, Material material) {
+    if (!light.sample(point, lightSample)) return -1.0;
+    
+    if (material instanceof TransparentPNGMaterial ||
+	      material instanceof TransparentColorMaterial ||
+		  material instanceof GhostTextMaterial) {
+      return 1.0;
+    }
+    if (!shouldCalculateShadows()) return 1.0;
+    
+    Point3 origin = point.add(normal.scale(Ray.EPSILON));
+    if (light instanceof AreaLight) {
+      return areaLightVisibility((AreaLight) light, lightId, origin);
+    }
+    return isInShadow(origin, lightSample.getDirection(), lightSample.getDistance(), lightId) ? 0.0 : 1.0;
+  }
+  
+  /**
+   * Fraction of the area light visible from the point. A coarse stratified
+   * grid of shadow rays is traced first; only if its rays disagree (the
+   * point is in the penumbra) is a finer grid added.
+   */
+  private double areaLightVisibility(AreaLight light, int lightId, Point3 origin) {
+    int coarse = (int) Math.ceil(Math.sqrt(light.getMinSamples()));
+    int total = coarse * coarse;
+    int visible = traceAreaLightGrid(light, lightId, origin, coarse);
+    boolean penumbra = visible > 0 && visible < total;
+    statistics.addAreaLightPoint(penumbra);
+    
+    if (penumbra) {
+      int fine = (int) Math.ceil(Math.sqrt(light.getMaxSamples()));
+      if (fine > coarse) {
+        visible += traceAreaLightGrid(light, lightId, origin, fine);
+        total += fine * fine;
+      }
+    }
+    return (double) visible / total;
+  }
+  
+  /**
+   * Traces one jittered shadow ray per cell of an n x n grid over the
+   * light and returns how many reach it.
+   */
+  private int traceAreaLightGrid(AreaLight light, int lightId, Point3 origin, int n) {
+    int visible = 0;
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        double u = (i + areaRandom.nextDouble()) / n;
+        double v = (j + areaRandom.nextDouble()) / n;
+        Vector3 toSample = light.samplePoint(origin, u, v).subtract(origin);
+        double distance = toSample.length();
+        if (distance < Ray.EPSILON) {
+          visible++;
+          continue;
+        }
+        if (!isInShadow(origin, toSample.scale(1.0 / distance), distance, lightId)) {
+          visible++;
+        }
+      }
+    }
+    return visible;
+  }
+  
+  /**
+   * Points the material's object transform at the hit copy when the hit is
+   * on an InstanceSet, so patterns follow each copy; a material that was
+   * moved that way gets the hit shape's own transform back when it shades
+   * anything else. Rendering is single-threaded, so the material is not
+   * moved again before the hit is shaded.
+   */
+  private void placeMaterial(Material material, Intersection hit) {
+    if (hit instanceof InstanceSet.Hit) {
+      material.setObjectTransform(((InstanceSet.Hit) hit).getObjectTransform());
+      instancedMaterials.add(material);
+      } else if (instancedMaterials.contains(material)) {
+      material.setObjectTransform(hit.getShape().getInverseTransform());
+    }
+  }
+  
+  private Color shade(Material material, Point3 point, Vector3 normal, Light light, Point3 viewerPos) {
+    if (profile == null) return material.getColorAt(point, normal, light, viewerPos);
+    return profile.getColorAt(material, point, normal, light, viewerPos);
+  }
+  
+  private double intersect(EMShape shape, Ray ray) {
+    return profile == null ? shape.intersect(ray) : profile.intersect(shape, ray);
+  }
+  
+  /**
+   * Ends the profile of the render that is finishing, if one is running:
+   * prints its summary and commits its Flight Recorder events when
+   * they were built.
+   */
+  private void finishProfile() {
+    if (profile == null || !profile.finish()) return;
+    System.out.print(profile.summary());
+    try {
+      // Built from jfr/src, and only where the JDK has jdk.jfr; see jfr/jfr_bash.bash
+      Class.forName("net.elena.murat.lovert.RenderProfileEvents")
+        .getDeclaredMethod("commit", RenderProfile.class, int.class, int.class)
+        .invoke(null, profile, width, height);
+    } catch (ReflectiveOperationException | LinkageError e) {
+      // Events not built, or no jdk.jfr in this JVM; the printed summary has the same figures
+    }
+  }
+  
   private Optional<Intersection> findClosestIntersection(Ray ray) {
     EMShape closestShape = null;
     double closestDist = Double.POSITIVE_INFINITY;
     
-    for (EMShape shape : scene.getShapes()) {
-      double dist = shape.intersect(ray);
+    Iterable<EMShape> shapes = (renderShapes != null) ? Arrays.asList(renderShapes) : scene.getShapes();
+    for (EMShape shape : shapes) {
+      double dist = intersect(shape, ray);
       if (dist > Ray.EPSILON && dist < closestDist) {
         closestDist = dist;
         closestShape = shape;
@@ -624,16 +1116,86 @@ public class ElenaMuratRayTracer {
     }
     
     if (closestShape == null) return Optional.empty();
+    if (hitRecord != null) hitRecord.shapes.add(closestShape);
     
+    if (closestShape instanceof InstanceSet) {
+      Intersection instanceHit = ((InstanceSet) closestShape).intersectClosest(ray);
+      if (instanceHit != null) return Optional.of(instanceHit);
+    }
     Point3 hitPoint = ray.pointAtParameter(closestDist);
     Vector3 normal = closestShape.getNormalAt(hitPoint);
     return Optional.of(new Intersection(hitPoint, normal, closestDist, closestShape));
   }
   
-  private boolean isInShadow(Point3 point, Vector3 lightDir, double lightDistance) {
+  /**
+   * True if any shape lies between the point and the light. The shape that
+   * blocked the previous shadow ray towards the same light is tested first;
+   * neighbouring points are usually shadowed by the same occluder.
+   */
+  private boolean isInShadow(Point3 point, Vector3 lightDir, double lightDistance, int lightId) {
+    boolean blocked = traceShadowRay(point, lightDir, lightDistance, lightId);
+    if (profile != null) profile.addShadowRay(blocked);
+    return blocked;
+  }
+  
+  private boolean traceShadowRay(Point3 point, Vector3 lightDir, double lightDistance, int lightId) {
     Ray shadowRay = new Ray(point, lightDir);
-    Optional<Intersection> shadowHit = findClosestIntersection(shadowRay);
-    return shadowHit.isPresent() && shadowHit.get().getDistance() < lightDistance - Ray.EPSILON;
+    double maxDistance = lightDistance - Ray.EPSILON;
+    statistics.addShadowRay();
+    
+    if (renderShapes == null) {
+      Optional<Intersection> shadowHit = findClosestIntersection(shadowRay);
+      boolean blocked = shadowHit.isPresent() && shadowHit.get().getDistance() < maxDistance;
+      if (hitRecord != null) recordShadowRay(shadowRay, maxDistance, blocked ? shadowHit.get().getShape() : null);
+      return blocked;
+    }
+    
+    EMShape[] occluders = (lightId >= 0) ? occluderCache.get() : null;
+    EMShape cached = null;
+    if (occluders != null && lightId < occluders.length) {
+      cached = occluders[lightId];
+      if (cached != null) {
+        boolean blocked = blocksShadowRay(cached, shadowRay, maxDistance);
+        statistics.addOccluderCacheResult(blocked);
+        if (blocked) {
+          if (hitRecord != null) recordShadowRay(shadowRay, maxDistance, cached);
+          return true;
+        }
+      }
+      } else {
+      occluders = null;
+    }
+    
+    for (EMShape shape : renderShapes) {
+      if (shape == cached) continue;
+      if (blocksShadowRay(shape, shadowRay, maxDistance)) {
+        if (occluders != null) {
+          occluders[lightId] = shape;
+        }
+        if (hitRecord != null) recordShadowRay(shadowRay, maxDistance, shape);
+        return true;
+      }
+    }
+    if (hitRecord != null) recordShadowRay(shadowRay, maxDistance, null);
+    return false;
+  }
+  
+  /**
+   * Notes the shape that blocked the shadow ray, or the ray itself if
+   * nothing did, so that moving a shape only re-traces the tiles whose
+   * shadows it can change.
+   */
+  private void recordShadowRay(Ray shadowRay, double maxDistance, EMShape occluder) {
+    if (occluder != null) {
+      hitRecord.occluders.add(occluder);
+      } else {
+      hitRecord.addOpenShadowRay(shadowRay, maxDistance);
+    }
+  }
+  
+  private boolean blocksShadowRay(EMShape shape, Ray shadowRay, double maxDistance) {
+    double dist = intersect(shape, shadowRay);
+    return dist > Ray.EPSILON && dist < maxDistance;
   }
   
   public static void main(String[] args) {
@@ -0,0 +1,100 @@
+package net.elena.murat.lovert;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import net.elena.murat.math.FloatColor;
+
+/**
+ * Unclamped linear RGBA float pixels of a render, kept so the frame can be
+ * saved as HDR and tone mapped any number of times without re-rendering.
+ * <p>
+ * Small frames live on the heap. Frames above 64 MB go to direct
+ * (off-heap) buffers, split into bands of rows so frames larger than one
+ * buffer can hold still fit.
+ * </p>
+ */
+public class HdrFramebuffer {
+
+  public static final int CHANNELS = 4;
+
+  private static final long DIRECT_THRESHOLD_BYTES = 64L * 1024 * 1024;
+  private static final long MAX_BAND_BYTES = 1L << 30;
+
+  private final int width;
+  private final int height;
+  private final int rowsPerBand;
+  private final FloatBuffer[] bands;
+
+  public HdrFramebuffer(int width, int height) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Invalid framebuffer size: " + width + "x" + height);
+    }
+    this.width = width;
+    this.height = height;
+
+    long rowBytes = (long) width * CHANNELS * 4;
+    long totalBytes = rowBytes * height;
+    boolean direct = totalBytes > DIRECT_THRESHOLD_BYTES;
+    this.rowsPerBand = (int) Math.max(1, Math.min(height, MAX_BAND_BYTES / rowBytes));
+
+    int bandCount = (height + rowsPerBand - 1) / rowsPerBand;
+    this.bands = new FloatBuffer[bandCount];
+    for (int i = 0; i < bandCount; i++) {
+      int rows = Math.min(rowsPerBand, height - i * rowsPerBand);
+      int floats = rows * width * CHANNELS;
+      bands[i] = direct
+      ? ByteBuffer.allocateDirect(floats * 4).order(ByteOrder.nativeOrder()).asFloatBuffer()
+      : FloatBuffer.allocate(floats);
+    }
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public void setPixel(int x, int y, float r, float g, float b, float a) {
+    FloatBuffer band = bands[y / rowsPerBand];
+    int i = index(x, y);
+    band.put(i, r);
+    band.put(i + 1, g);
+    band.put(i + 2, b);
+    band.put(i + 3, a);
+  }
+
+  public void setPixel(int x, int y, FloatColor color) {
+    setPixel(x, y, (float) color.r, (float) color.g, (float) color.b, (float) color.a);
+  }
+
+  /**
+   * Copies the pixel's r, g, b, a into rgba[0..3].
+   */
+  public void getPixel(int x, int y, float[] rgba) {
+    FloatBuffer band = bands[y / rowsPerBand];
+    int i = index(x, y);
+    rgba[0] = band.get(i);
+    rgba[1] = band.get(i + 1);
+    rgba[2] = band.get(i + 2);
+    rgba[3] = band.get(i + 3);
+  }
+
+  /**
+   * Copies one row, width * 4 floats in r, g, b, a order.
+   */
+  public void getRow(int y, float[] rgba) {
+    FloatBuffer band = bands[y / rowsPerBand];
+    FloatBuffer view = band.duplicate();
+    view.position(index(0, y));
+    view.get(rgba, 0, width * CHANNELS);
+  }
+
+  private int index(int x, int y) {
+    return ((y % rowsPerBand) * width + x) * CHANNELS;
+  }
+
+}
@@ -0,0 +1,257 @@
+package net.elena.murat.lovert;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Saves an {@link HdrFramebuffer} as Portable Float Map (.pfm), Radiance
+ * RGBE (.hdr) or uncompressed scanline OpenEXR (.exr), and reads PFM files
+ * back for tone mapping.
+ */
+public final class HdrImageIO {
+
+  private HdrImageIO() {
+  }
+
+  /**
+   * Picks the format from the file extension.
+   */
+  public static void write(HdrFramebuffer frame, File file) throws IOException {
+    String name = file.getName().toLowerCase();
+    if (name.endsWith(".pfm")) {
+      writePfm(frame, file);
+      } else if (name.endsWith(".hdr")) {
+      writeRadianceHdr(frame, file);
+      } else if (name.endsWith(".exr")) {
+      writeExr(frame, file);
+      } else {
+      throw new IllegalArgumentException("Unknown HDR format: " + file.getName() + " (use .pfm, .hdr or .exr)");
+    }
+  }
+
+  /**
+   * RGB little-endian PFM, rows stored bottom to top.
+   */
+  public static void writePfm(HdrFramebuffer frame, File file) throws IOException {
+    int width = frame.getWidth();
+    int height = frame.getHeight();
+    float[] row = new float[width * HdrFramebuffer.CHANNELS];
+    ByteBuffer out = ByteBuffer.allocate(width * 3 * 4).order(ByteOrder.LITTLE_ENDIAN);
+
+    try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+      os.write(("PF\n" + width + " " + height + "\n-1.0\n").getBytes(StandardCharsets.US_ASCII));
+      for (int y = height - 1; y >= 0; y--) {
+        frame.getRow(y, row);
+        out.clear();
+        for (int x = 0; x < width; x++) {
+          out.putFloat(row[x * 4]);
+          out.putFloat(row[x * 4 + 1]);
+          out.putFloat(row[x * 4 + 2]);
+        }
+        os.write(out.array(), 0, out.position());
+      }
+    }
+  }
+
+  /**
+   * Reads an RGB or greyscale PFM of either byte order.
+   */
+  public static HdrFramebuffer readPfm(File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+      String magic = readToken(in);
+      int channels;
+      if ("PF".equals(magic)) {
+        channels = 3;
+        } else if ("Pf".equals(magic)) {
+        channels = 1;
+        } else {
+        throw new IOException("Not a PFM file: " + file);
+      }
+      int width = Integer.parseInt(readToken(in));
+      int height = Integer.parseInt(readToken(in));
+      double scale = Double.parseDouble(readToken(in));
+      ByteOrder order = scale < 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+
+      HdrFramebuffer frame = new HdrFramebuffer(width, height);
+      byte[] bytes = new byte[width * channels * 4];
+      ByteBuffer row = ByteBuffer.wrap(bytes).order(order);
+      for (int y = height - 1; y >= 0; y--) {
+        in.readFully(bytes);
+        row.clear();
+        for (int x = 0; x < width; x++) {
+          float r = row.getFloat();
+          float g = channels == 3 ? row.getFloat() : r;
+          float b = channels == 3 ? row.getFloat() : r;
+          frame.setPixel(x, y, r, g, b, 1.0f);
+        }
+      }
+      return frame;
+    }
+  }
+
+  /**
+   * Reads one whitespace-terminated header token; consumes exactly one
+   * whitespace byte after it, as the format requires before the data.
+   */
+  private static String readToken(InputStream in) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    int c;
+    while ((c = in.read()) != -1) {
+      if (Character.isWhitespace(c)) {
+        if (sb.length() > 0) break;
+        } else {
+        sb.append((char) c);
+      }
+    }
+    if (sb.length() == 0) throw new IOException("Truncated PFM header");
+    return sb.toString();
+  }
+
+  /**
+   * Radiance RGBE with run-length scanlines (literal runs only), or flat
+   * scanlines for widths the RLE scheme cannot express.
+   */
+  public static void writeRadianceHdr(HdrFramebuffer frame, File file) throws IOException {
+    int width = frame.getWidth();
+    int height = frame.getHeight();
+    boolean rle = width >= 8 && width <= 0x7FFF;
+    float[] row = new float[width * HdrFramebuffer.CHANNELS];
+    byte[] rgbe = new byte[width * 4];
+    byte[] plane = new byte[width];
+
+    try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+      String header = "#?RADIANCE\nFORMAT=32-bit_rle_rgbe\n\n-Y " + height + " +X " + width + "\n";
+      os.write(header.getBytes(StandardCharsets.US_ASCII));
+
+      for (int y = 0; y < height; y++) {
+        frame.getRow(y, row);
+        for (int x = 0; x < width; x++) {
+          toRgbe(row[x * 4], row[x * 4 + 1], row[x * 4 + 2], rgbe, x * 4);
+        }
+        if (!rle) {
+          os.write(rgbe);
+          continue;
+        }
+
+        os.write(2);
+        os.write(2);
+        os.write(width >> 8);
+        os.write(width & 0xFF);
+        for (int c = 0; c < 4; c++) {
+          for (int x = 0; x < width; x++) {
+            plane[x] = rgbe[x * 4 + c];
+          }
+          for (int x = 0; x < width; x += 128) {
+            int count = Math.min(128, width - x);
+            os.write(count);
+            os.write(plane, x, count);
+          }
+        }
+      }
+    }
+  }
+
+  private static void toRgbe(float r, float g, float b, byte[] out, int offset) {
+    float max = Math.max(r, Math.max(g, b));
+    if (!(max > 1e-32f)) {
+      out[offset] = out[offset + 1] = out[offset + 2] = out[offset + 3] = 0;
+      return;
+    }
+    int exponent = Math.getExponent(max) + 1;
+    float scale = (float) (Math.scalb(1.0, -exponent) * 256.0);
+    out[offset] = (byte) Math.max(0, Math.min(255, (int) (r * scale)));
+    out[offset + 1] = (byte) Math.max(0, Math.min(255, (int) (g * scale)));
+    out[offset + 2] = (byte) Math.max(0, Math.min(255, (int) (b * scale)));
+    out[offset + 3] = (byte) (exponent + 128);
+  }
+
+  /**
+   * Single-part scanline OpenEXR with 32-bit float A, B, G, R channels
+   * and no compression.
+   */
+  public static void writeExr(HdrFramebuffer frame, File file) throws IOException {
+    int width = frame.getWidth();
+    int height = frame.getHeight();
+    String[] channels = { "A", "B", "G", "R" };
+    int[] source = { 3, 2, 1, 0 };
+
+    ByteBuffer header = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(20000630);  // magic
+    header.putInt(2);         // version 2, single-part scanline
+
+    ByteBuffer chlist = ByteBuffer.allocate(channels.length * 18 + 1).order(ByteOrder.LITTLE_ENDIAN);
+    for (String name : channels) {
+      chlist.put(name.getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+      chlist.putInt(2);             // FLOAT
+      chlist.put(new byte[4]);      // pLinear + reserved
+      chlist.putInt(1).putInt(1);   // x/y sampling
+    }
+    chlist.put((byte) 0);
+    putAttribute(header, "channels", "chlist", chlist.array(), chlist.position());
+    putAttribute(header, "compression", "compression", new byte[] { 0 }, 1);
+
+    ByteBuffer box = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+    box.putInt(0).putInt(0).putInt(width - 1).putInt(height - 1);
+    putAttribute(header, "dataWindow", "box2i", box.array(), 16);
+    putAttribute(header, "displayWindow", "box2i", box.array(), 16);
+    putAttribute(header, "lineOrder", "lineOrder", new byte[] { 0 }, 1);
+
+    ByteBuffer value = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    value.putFloat(1.0f);
+    putAttribute(header, "pixelAspectRatio", "float", value.array(), 4);
+    value.clear();
+    value.putFloat(0.0f).putFloat(0.0f);
+    putAttribute(header, "screenWindowCenter", "v2f", value.array(), 8);
+    value.clear();
+    value.putFloat(1.0f);
+    putAttribute(header, "screenWindowWidth", "float", value.array(), 4);
+    header.put((byte) 0);
+
+    int lineBytes = 8 + width * channels.length * 4;
+    long firstLine = header.position() + 8L * height;
+    float[] row = new float[width * HdrFramebuffer.CHANNELS];
+    ByteBuffer line = ByteBuffer.allocate(lineBytes).order(ByteOrder.LITTLE_ENDIAN);
+
+    try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+      os.write(header.array(), 0, header.position());
+
+      ByteBuffer offsets = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+      for (int y = 0; y < height; y++) {
+        offsets.clear();
+        offsets.putLong(firstLine + (long) y * lineBytes);
+        os.write(offsets.array());
+      }
+
+      for (int y = 0; y < height; y++) {
+        frame.getRow(y, row);
+        line.clear();
+        line.putInt(y);
+        line.putInt(lineBytes - 8);
+        for (int c = 0; c < channels.length; c++) {
+          for (int x = 0; x < width; x++) {
+            line.putFloat(row[x * 4 + source[c]]);
+          }
+        }
+        os.write(line.array(), 0, line.position());
+      }
+    }
+  }
+
+  private static void putAttribute(ByteBuffer header, String name, String type, byte[] value, int length) {
+    header.put(name.getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+    header.put(type.getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+    header.putInt(length);
+    header.put(value, 0, length);
+  }
+
+}
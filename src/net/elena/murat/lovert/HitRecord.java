@@ -0,0 +1,85 @@
+package net.elena.murat.lovert;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import net.elena.murat.math.Point3;
+import net.elena.murat.math.Ray;
+import net.elena.murat.math.Vector3;
+import net.elena.murat.shape.EMShape;
+
+/**
+ * What the rays of one tile ran into, collected by the tracer while
+ * {@link ElenaMuratRayTracer#setHitRecord} is set: the closest shape of
+ * every traced ray, whether any mirror or glass ray was spawned, the
+ * shapes that blocked its shadow rays and the shadow rays that reached
+ * their light.
+ */
+final class HitRecord {
+
+  // Origin, direction and length of each shadow ray that reached its light
+  private static final int RAY_FLOATS = 7;
+
+  final Set<EMShape> shapes = Collections.newSetFromMap(new IdentityHashMap<EMShape, Boolean>());
+  boolean secondaryRays;
+  final Set<EMShape> occluders = Collections.newSetFromMap(new IdentityHashMap<EMShape, Boolean>());
+
+  private final int maxOpenShadowRays;
+  private float[] openShadowRays = new float[64 * RAY_FLOATS];
+  private int openShadowRayCount;
+  // Set once more rays reached their light than are kept
+  private boolean openShadowRaysDropped;
+
+  /**
+   * @param maxOpenShadowRays how many unblocked shadow rays to keep; past
+   *        that, any new shape is taken to shadow the tile
+   */
+  HitRecord(int maxOpenShadowRays) {
+    this.maxOpenShadowRays = maxOpenShadowRays;
+  }
+
+  void addOpenShadowRay(Ray ray, double length) {
+    if (openShadowRaysDropped) return;
+    if (openShadowRayCount == maxOpenShadowRays) {
+      openShadowRaysDropped = true;
+      openShadowRays = null;
+      return;
+    }
+    if ((openShadowRayCount + 1) * RAY_FLOATS > openShadowRays.length) {
+      openShadowRays = Arrays.copyOf(openShadowRays, openShadowRays.length * 2);
+    }
+    int o = openShadowRayCount++ * RAY_FLOATS;
+    Point3 origin = ray.getOrigin();
+    Vector3 direction = ray.getDirection();
+    openShadowRays[o] = (float) origin.x;
+    openShadowRays[o + 1] = (float) origin.y;
+    openShadowRays[o + 2] = (float) origin.z;
+    openShadowRays[o + 3] = (float) direction.x;
+    openShadowRays[o + 4] = (float) direction.y;
+    openShadowRays[o + 5] = (float) direction.z;
+    openShadowRays[o + 6] = (float) length;
+  }
+
+  /**
+   * True if any of the shapes blocks a shadow ray of the tile that
+   * reached its light, or if those rays were not all kept.
+   */
+  boolean blocksOpenShadowRay(Collection<EMShape> shapes) {
+    if (openShadowRaysDropped) return true;
+    for (int i = 0; i < openShadowRayCount; i++) {
+      int o = i * RAY_FLOATS;
+      Ray ray = new Ray(new Point3(openShadowRays[o], openShadowRays[o + 1], openShadowRays[o + 2]),
+        new Vector3(openShadowRays[o + 3], openShadowRays[o + 4], openShadowRays[o + 5]));
+      double length = openShadowRays[o + 6];
+      for (EMShape shape : shapes) {
+        double dist = shape.intersect(ray);
+        if (dist > Ray.EPSILON && dist < length) return true;
+      }
+    }
+    return false;
+  }
+
+}
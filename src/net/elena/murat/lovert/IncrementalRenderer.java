@@ -0,0 +1,178 @@
+package net.elena.murat.lovert;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import net.elena.murat.math.Ray;
+import net.elena.murat.shape.EMShape;
+
+/**
+ * Keeps a rendered frame and re-traces only the tiles an edit of the scene
+ * can have changed.
+ * <p>
+ * The frame is rendered tile by tile and every tile remembers the shapes
+ * its rays hit. When a shape's material changes, only the tiles that hit
+ * it are traced again. When a shape moves or changes form, the tiles its
+ * old version was seen in and the tiles its new version covers are traced
+ * again, plus every tile with mirror or glass rays. With shadows on, the
+ * tiles also remember the shapes that blocked their shadow rays and the
+ * shadow rays that reached their light: a moved shape re-traces the tiles
+ * its old version shadowed and those with a ray its new version blocks.
+ * Tiles are seeded from their position, see
+ * {@link ElenaMuratRayTracer#renderTile}, so an updated frame matches a
+ * fresh render of the edited scene.
+ * </p>
+ * Not thread-safe; the scene must not change while a render runs.
+ */
+public class IncrementalRenderer {
+
+  // Unblocked shadow rays a tile keeps per pixel; a tile with more is
+  // re-traced whenever a shape moves
+  private static final int OPEN_SHADOW_RAYS_PER_PIXEL = 4;
+
+  private final ElenaMuratRayTracer tracer;
+  private final int tileSize;
+  private final int tilesX;
+  private final HitRecord[] records;
+  private final BufferedImage image;
+  private final int[] tile;
+  private int lastTileCount;
+
+  public IncrementalRenderer(ElenaMuratRayTracer tracer, int tileSize) {
+    if (tileSize <= 0) {
+      throw new IllegalArgumentException("Invalid tile size: " + tileSize);
+    }
+    this.tracer = tracer;
+    this.tileSize = tileSize;
+    this.tilesX = (tracer.getWidth() + tileSize - 1) / tileSize;
+    int tilesY = (tracer.getHeight() + tileSize - 1) / tileSize;
+    this.records = new HitRecord[tilesX * tilesY];
+    this.image = new BufferedImage(tracer.getWidth(), tracer.getHeight(), BufferedImage.TYPE_INT_ARGB);
+    this.tile = new int[tileSize * tileSize];
+  }
+
+  public BufferedImage getImage() {
+    return image;
+  }
+
+  public int getTileCount() {
+    return records.length;
+  }
+
+  /**
+   * Tiles traced by the last render() or update() call.
+   */
+  public int getLastTileCount() {
+    return lastTileCount;
+  }
+
+  /**
+   * Traces the whole frame.
+   */
+  public BufferedImage render() {
+    boolean[] dirty = new boolean[records.length];
+    Arrays.fill(dirty, true);
+    renderTiles(dirty);
+    return image;
+  }
+
+  /**
+   * Brings the frame up to date after shapes of the scene were replaced.
+   * @param changed the replaced shapes, as they were in the last render
+   * @param moved the replaced shapes whose geometry changed, each mapped
+   *        to its replacement; the others only have a new material
+   */
+  public BufferedImage update(Collection<EMShape> changed, Map<EMShape, EMShape> moved) {
+    boolean[] dirty = new boolean[records.length];
+    boolean shadows = !moved.isEmpty() && tracer.getCamera().isShadowsEnabled();
+
+    Set<EMShape> old = Collections.newSetFromMap(new IdentityHashMap<EMShape, Boolean>());
+    old.addAll(changed);
+    for (int t = 0; t < records.length; t++) {
+      HitRecord record = records[t];
+      if (record == null) {
+        dirty[t] = true;
+        continue;
+      }
+      for (EMShape shape : record.shapes) {
+        if (old.contains(shape)) {
+          dirty[t] = true;
+          break;
+        }
+      }
+      if (!moved.isEmpty() && record.secondaryRays) dirty[t] = true;
+      if (shadows && !dirty[t] && castsShadowChange(record, moved)) dirty[t] = true;
+    }
+    if (!moved.isEmpty()) markCoverage(moved.values(), dirty);
+    renderTiles(dirty);
+    return image;
+  }
+
+  /**
+   * True if a moved shape blocked one of the tile's shadow rays before
+   * or blocks one that reached its light now.
+   */
+  private static boolean castsShadowChange(HitRecord record, Map<EMShape, EMShape> moved) {
+    for (EMShape shape : moved.keySet()) {
+      if (record.occluders.contains(shape)) return true;
+    }
+    return record.blocksOpenShadowRay(moved.values());
+  }
+
+  /**
+   * Marks the tiles in which a camera ray meets any of the shapes,
+   * whether or not something nearer hides them.
+   */
+  private void markCoverage(Collection<EMShape> shapes, boolean[] dirty) {
+    int width = tracer.getWidth();
+    int height = tracer.getHeight();
+    for (int y = 0; y < height; y++) {
+      int row = (y / tileSize) * tilesX;
+      for (int x = 0; x < width; x++) {
+        int t = row + x / tileSize;
+        if (dirty[t]) continue;
+        Ray ray = tracer.primaryRay(x, y);
+        for (EMShape shape : shapes) {
+          double dist = shape.intersect(ray);
+          if (dist > Ray.EPSILON && dist < Double.POSITIVE_INFINITY) {
+            dirty[t] = true;
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  private void renderTiles(boolean[] dirty) {
+    int width = tracer.getWidth();
+    int height = tracer.getHeight();
+    int count = 0;
+    tracer.beginTiles();
+    try {
+      for (int t = 0; t < records.length; t++) {
+        if (!dirty[t]) continue;
+        int x0 = (t % tilesX) * tileSize;
+        int y0 = (t / tilesX) * tileSize;
+        int tileWidth = Math.min(tileSize, width - x0);
+        int tileHeight = Math.min(tileSize, height - y0);
+
+        HitRecord record = new HitRecord(tileWidth * tileHeight * OPEN_SHADOW_RAYS_PER_PIXEL);
+        tracer.setHitRecord(record);
+        tracer.renderTile(x0, y0, tileWidth, tileHeight, tile);
+        records[t] = record;
+        image.setRGB(x0, y0, tileWidth, tileHeight, tile, 0, tileWidth);
+        count++;
+      }
+      } finally {
+      tracer.setHitRecord(null);
+      tracer.endTiles();
+    }
+    lastTileCount = count;
+  }
+
+}
@@ -0,0 +1,196 @@
+package net.elena.murat.lovert;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a render to a PNG file while it runs, one band at a time.
+ * <p>
+ * Only the current band, one row and the deflate buffers are held in
+ * memory. Every band ends with a flush of the compressor and of the file
+ * buffer, so all finished rows are on disk and readable by lenient
+ * decoders even if the process dies. If the sink is closed before the
+ * render finished (an exception in the render loop), the missing rows are
+ * written as transparent pixels and the file is completed into a valid
+ * PNG.
+ * </p>
+ * Output is 8-bit RGBA, non-interlaced, every row using the Sub filter.
+ */
+public class PngStreamWriter implements RenderSink {
+  
+  private static final byte[] SIGNATURE = {
+    (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'
+  };
+  private static final int FILTER_SUB = 1;
+  private static final int CHUNK_SIZE = 32 * 1024;
+  
+  private final File file;
+  private final int compressionLevel;
+  
+  private FileChannel channel;
+  private ByteBuffer fileBuffer;
+  private Deflater deflater;
+  private byte[] rowBytes;
+  private byte[] deflated;
+  private final CRC32 crc = new CRC32();
+  
+  private int width;
+  private int height;
+  private int nextRow;
+  private boolean finished;
+  
+  public PngStreamWriter(File file) {
+    this(file, Deflater.DEFAULT_COMPRESSION);
+  }
+  
+  public PngStreamWriter(File file, int compressionLevel) {
+    this.file = file;
+    this.compressionLevel = compressionLevel;
+  }
+  
+  @Override
+  public void begin(int width, int height) throws IOException {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Invalid image size: " + width + "x" + height);
+    }
+    this.width = width;
+    this.height = height;
+    this.nextRow = 0;
+    
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+      StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    fileBuffer = ByteBuffer.allocate(2 * CHUNK_SIZE);
+    deflater = new Deflater(compressionLevel);
+    rowBytes = new byte[1 + width * 4];
+    deflated = new byte[CHUNK_SIZE];
+    
+    fileBuffer.put(SIGNATURE);
+    ByteBuffer header = ByteBuffer.allocate(13);
+    header.putInt(width).putInt(height);
+    header.put((byte) 8);  // bit depth
+    header.put((byte) 6);  // color type RGBA
+    header.put((byte) 0);  // deflate
+    header.put((byte) 0);  // adaptive filtering
+    header.put((byte) 0);  // no interlace
+    writeChunk("IHDR", header.array(), 13);
+  }
+  
+  @Override
+  public void writeRows(int y, int rowCount, int[] argb) throws IOException {
+    if (y != nextRow) {
+      throw new IllegalStateException("Rows must arrive in order: expected " + nextRow + ", got " + y);
+    }
+    for (int row = 0; row < rowCount; row++) {
+      encodeRow(argb, row * width);
+      deflate(Deflater.NO_FLUSH);
+    }
+    nextRow += rowCount;
+    
+    // Make every finished row decodable from the file
+    deflate(Deflater.SYNC_FLUSH);
+    flushFileBuffer();
+  }
+  
+  private void encodeRow(int[] argb, int offset) {
+    byte[] bytes = rowBytes;
+    bytes[0] = FILTER_SUB;
+    int prevR = 0, prevG = 0, prevB = 0, prevA = 0;
+    for (int x = 0, i = 1; x < width; x++, i += 4) {
+      int pixel = argb[offset + x];
+      int a = pixel >>> 24;
+      int r = (pixel >> 16) & 0xFF;
+      int g = (pixel >> 8) & 0xFF;
+      int b = pixel & 0xFF;
+      bytes[i] = (byte) (r - prevR);
+      bytes[i + 1] = (byte) (g - prevG);
+      bytes[i + 2] = (byte) (b - prevB);
+      bytes[i + 3] = (byte) (a - prevA);
+      prevR = r;
+      prevG = g;
+      prevB = b;
+      prevA = a;
+    }
+    deflater.setInput(bytes);
+  }
+  
+  /**
+   * Runs the compressor until it needs input again, writing its output
+   * as IDAT chunks.
+   */
+  private void deflate(int flush) throws IOException {
+    while (true) {
+      int n = deflater.deflate(deflated, 0, deflated.length, flush);
+      if (n > 0) writeChunk("IDAT", deflated, n);
+      if (n < deflated.length && deflater.needsInput()) break;
+    }
+  }
+  
+  @Override
+  public void finish() throws IOException {
+    if (nextRow != height) {
+      throw new IllegalStateException("Only " + nextRow + " of " + height + " rows written");
+    }
+    deflater.finish();
+    while (!deflater.finished()) {
+      int n = deflater.deflate(deflated);
+      if (n > 0) writeChunk("IDAT", deflated, n);
+    }
+    writeChunk("IEND", deflated, 0);
+    flushFileBuffer();
+    finished = true;
+  }
+  
+  /**
+   * Completes an unfinished image with transparent rows, then releases
+   * the file.
+   */
+  @Override
+  public void close() throws IOException {
+    if (channel == null) return;
+    try {
+      if (!finished) {
+        int[] blank = new int[width];
+        while (nextRow < height) {
+          writeRows(nextRow, 1, blank);
+        }
+        finish();
+      }
+      } finally {
+      deflater.end();
+      channel.close();
+      channel = null;
+    }
+  }
+  
+  private void writeChunk(String type, byte[] data, int length) throws IOException {
+    if (fileBuffer.remaining() < length + 12) flushFileBuffer();
+    
+    byte[] typeBytes = type.getBytes("US-ASCII");
+    crc.reset();
+    crc.update(typeBytes);
+    crc.update(data, 0, length);
+    
+    fileBuffer.putInt(length);
+    fileBuffer.put(typeBytes);
+    fileBuffer.put(data, 0, length);
+    fileBuffer.putInt((int) crc.getValue());
+  }
+  
+  private void flushFileBuffer() throws IOException {
+    fileBuffer.flip();
+    while (fileBuffer.hasRemaining()) {
+      channel.write(fileBuffer);
+    }
+    fileBuffer.clear();
+  }
+  
+  public File getFile() {
+    return file;
+  }
+  
+}
@@ -0,0 +1,307 @@
+package net.elena.murat.lovert;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Tile-level progress of a long render, kept on disk so a restarted
+ * render can skip finished tiles.
+ * <p>
+ * Pixels go to a memory-mapped scratch file: a table of per-tile done
+ * flags followed by the ARGB pixels, one mapping per row of tiles. A
+ * small properties manifest next to it records the scene hash,
+ * resolution, tile size and sampling settings; a checkpoint is only
+ * resumed when all of them match. The mapping is forced to disk and the
+ * manifest rewritten at most once per flush interval, and on close.
+ * </p>
+ */
+public class RenderCheckpoint implements Closeable {
+
+  private static final String VERSION = "1";
+  private static final int HEADER_ALIGN = 4096;
+
+  private final File scratchFile;
+  private final File manifestFile;
+  private final Properties manifest = new Properties();
+  private final int width;
+  private final int height;
+  private final int tileSize;
+  private final int tilesX;
+  private final int tilesY;
+  private final long flushIntervalNanos;
+
+  private RandomAccessFile file;
+  private MappedByteBuffer flags;
+  private MappedByteBuffer[] tileRows;
+  private IntBuffer[] tileRowPixels;
+  private int completedTiles;
+  private final boolean resumed;
+  private long lastFlush = System.nanoTime();
+
+  /**
+   * Opens the checkpoint for the given render, resuming the scratch file
+   * if its manifest matches and starting a new one otherwise.
+   * @param sceneHash identifies the scene, e.g. {@link #hashFile(File)}
+   * @param settings any further settings that change pixels, such as
+   *        sample counts; compared as text
+   * @param flushIntervalSeconds how often finished tiles are forced to disk
+   */
+  public RenderCheckpoint(File scratchFile, int width, int height, int tileSize,
+    String sceneHash, String settings, double flushIntervalSeconds) throws IOException {
+    if (width <= 0 || height <= 0 || tileSize <= 0) {
+      throw new IllegalArgumentException("Invalid checkpoint size: " + width + "x" + height + ", tile " + tileSize);
+    }
+    this.scratchFile = scratchFile;
+    this.manifestFile = new File(scratchFile.getPath() + ".properties");
+    this.width = width;
+    this.height = height;
+    this.tileSize = tileSize;
+    this.tilesX = (width + tileSize - 1) / tileSize;
+    this.tilesY = (height + tileSize - 1) / tileSize;
+    this.flushIntervalNanos = (long) (Math.max(0.0, flushIntervalSeconds) * 1e9);
+
+    manifest.setProperty("version", VERSION);
+    manifest.setProperty("sceneHash", sceneHash);
+    manifest.setProperty("width", Integer.toString(width));
+    manifest.setProperty("height", Integer.toString(height));
+    manifest.setProperty("tileSize", Integer.toString(tileSize));
+    manifest.setProperty("settings", settings);
+
+    boolean matches = scratchFile.length() == fileLength() && manifestMatches();
+    this.resumed = matches;
+    if (!matches) {
+      Files.deleteIfExists(scratchFile.toPath());
+    }
+    map();
+
+    if (resumed) {
+      for (int i = 0; i < getTileCount(); i++) {
+        if (flags.get(i) != 0) completedTiles++;
+      }
+    }
+    writeManifest();
+  }
+
+  private boolean manifestMatches() {
+    if (!manifestFile.isFile()) return false;
+    Properties saved = new Properties();
+    try (InputStream in = new FileInputStream(manifestFile)) {
+      saved.load(in);
+      } catch (IOException e) {
+      System.err.println("Unreadable checkpoint manifest " + manifestFile + ": " + e.getMessage());
+      return false;
+    }
+    for (String key : new String[] { "version", "sceneHash", "width", "height", "tileSize", "settings" }) {
+      if (!manifest.getProperty(key).equals(saved.getProperty(key))) return false;
+    }
+    return true;
+  }
+
+  private long headerLength() {
+    long flagsLength = getTileCount();
+    return (flagsLength + HEADER_ALIGN - 1) / HEADER_ALIGN * HEADER_ALIGN;
+  }
+
+  private long fileLength() {
+    return headerLength() + (long) width * height * 4;
+  }
+
+  private void map() throws IOException {
+    file = new RandomAccessFile(scratchFile, "rw");
+    file.setLength(fileLength());
+    FileChannel channel = file.getChannel();
+    flags = channel.map(FileChannel.MapMode.READ_WRITE, 0, getTileCount());
+
+    tileRows = new MappedByteBuffer[tilesY];
+    tileRowPixels = new IntBuffer[tilesY];
+    long offset = headerLength();
+    for (int ty = 0; ty < tilesY; ty++) {
+      int rows = Math.min(tileSize, height - ty * tileSize);
+      long length = (long) rows * width * 4;
+      if (length > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Tile row too large to map; use a smaller tile size");
+      }
+      tileRows[ty] = channel.map(FileChannel.MapMode.READ_WRITE, offset, length);
+      tileRowPixels[ty] = tileRows[ty].asIntBuffer();
+      offset += length;
+    }
+  }
+
+  public int getTileSize() {
+    return tileSize;
+  }
+
+  public int getTilesX() {
+    return tilesX;
+  }
+
+  public int getTilesY() {
+    return tilesY;
+  }
+
+  public int getTileCount() {
+    return tilesX * tilesY;
+  }
+
+  public int getCompletedTiles() {
+    return completedTiles;
+  }
+
+  /**
+   * True if progress from an earlier run was found and kept.
+   */
+  public boolean isResumed() {
+    return resumed;
+  }
+
+  public boolean isTileDone(int tile) {
+    return flags.get(tile) != 0;
+  }
+
+  /**
+   * Stores a finished tile and marks it done.
+   * @param argb tile pixels, row after row, tileWidth entries per row
+   */
+  public void writeTile(int tile, int[] argb, int tileWidth, int tileHeight) throws IOException {
+    int tx = tile % tilesX;
+    int ty = tile / tilesX;
+    IntBuffer pixels = tileRowPixels[ty];
+    int x0 = tx * tileSize;
+    for (int row = 0; row < tileHeight; row++) {
+      pixels.position(row * width + x0);
+      pixels.put(argb, row * tileWidth, tileWidth);
+    }
+    if (flags.get(tile) == 0) {
+      flags.put(tile, (byte) 1);
+      completedTiles++;
+    }
+
+    if (System.nanoTime() - lastFlush >= flushIntervalNanos) {
+      flush();
+    }
+  }
+
+  /**
+   * Forces finished tiles to disk and updates the manifest.
+   */
+  public void flush() throws IOException {
+    for (MappedByteBuffer row : tileRows) {
+      row.force();
+    }
+    flags.force();
+    writeManifest();
+    lastFlush = System.nanoTime();
+  }
+
+  private void writeManifest() throws IOException {
+    manifest.setProperty("completedTiles", completedTiles + "/" + getTileCount());
+    File tmp = new File(manifestFile.getPath() + ".tmp");
+    try (OutputStream out = new FileOutputStream(tmp)) {
+      manifest.store(out, "Elena render checkpoint");
+    }
+    Files.move(tmp.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  public BufferedImage toImage() {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      readRow(y, row);
+      image.setRGB(0, y, width, 1, row, 0, width);
+    }
+    return image;
+  }
+
+  /**
+   * Streams the stored pixels into a sink, one band at a time.
+   */
+  public void writeTo(RenderSink sink, int bandHeight) throws IOException {
+    bandHeight = Math.max(1, Math.min(bandHeight, height));
+    int[] band = new int[width * bandHeight];
+    int[] row = new int[width];
+    sink.begin(width, height);
+    for (int y0 = 0; y0 < height; y0 += bandHeight) {
+      int rows = Math.min(bandHeight, height - y0);
+      for (int i = 0; i < rows; i++) {
+        readRow(y0 + i, row);
+        System.arraycopy(row, 0, band, i * width, width);
+      }
+      sink.writeRows(y0, rows, band);
+    }
+    sink.finish();
+  }
+
+  private void readRow(int y, int[] row) {
+    IntBuffer pixels = tileRowPixels[y / tileSize].duplicate();
+    pixels.position((y % tileSize) * width);
+    pixels.get(row, 0, width);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (file == null) return;
+    try {
+      flush();
+      } finally {
+      file.close();
+      file = null;
+    }
+  }
+
+  /**
+   * Closes and removes the scratch file and manifest, once the final
+   * image has been saved.
+   */
+  public void delete() throws IOException {
+    if (file != null) {
+      file.close();
+      file = null;
+    }
+    // Drop the mappings before deleting; some platforms refuse otherwise
+    flags = null;
+    tileRows = null;
+    tileRowPixels = null;
+    Files.deleteIfExists(scratchFile.toPath());
+    Files.deleteIfExists(manifestFile.toPath());
+  }
+
+  /**
+   * SHA-256 of a file's contents, as hex. The file is streamed through the
+   * digest, so its size does not matter.
+   */
+  public static String hashFile(File source) throws IOException {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      try (InputStream in = new DigestInputStream(new FileInputStream(source), digest)) {
+        byte[] buffer = new byte[1 << 16];
+        while (in.read(buffer) != -1) {
+          // The stream feeds the digest
+        }
+      }
+      StringBuilder sb = new StringBuilder();
+      for (byte b : digest.digest()) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+      } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-256 unavailable", e);
+    }
+  }
+
+}
@@ -0,0 +1,326 @@
+package net.elena.murat.lovert;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Splits one frame into tiles and renders them in worker processes on
+ * the same host.
+ * <p>
+ * The coordinator listens on a loopback socket and starts the workers
+ * through a {@link WorkerLauncher}. Each worker parses the scene itself,
+ * connects, announces its frame size and then answers tile requests with
+ * the tile's pixels. A tile whose worker dies, disconnects or takes far
+ * longer than tiles took so far goes back to the queue and a replacement
+ * worker is started, up to a restart limit.
+ * </p>
+ * Protocol, big-endian: worker sends MAGIC, width, height; coordinator
+ * sends x0, y0, w, h per tile (x0 = -1 to stop); worker replies with
+ * w * h ARGB ints.
+ */
+public class RenderFarm {
+
+  private static final int MAGIC = 0x454C4652; // "ELFR"
+
+  // Read timeouts: until a tile has come back nothing is known about the
+  // scene's cost, afterwards a tile may take this many times the average
+  private static final int FIRST_TILE_TIMEOUT_MILLIS = 10 * 60 * 1000;
+  private static final int MIN_TILE_TIMEOUT_MILLIS = 30 * 1000;
+  private static final int TILE_TIMEOUT_FACTOR = 20;
+
+  /**
+   * Starts one worker process that will connect to the given port.
+   */
+  public interface WorkerLauncher {
+    Process launch(int port) throws IOException;
+  }
+
+  /**
+   * Renders rectangles of a frame; implemented by the worker side.
+   */
+  public interface TileRenderer {
+    int getWidth();
+    int getHeight();
+    void renderTile(int x0, int y0, int tileWidth, int tileHeight, int[] out);
+  }
+
+  private static final class Tile {
+    final int x0, y0, w, h;
+
+    Tile(int x0, int y0, int w, int h) {
+      this.x0 = x0;
+      this.y0 = y0;
+      this.w = w;
+      this.h = h;
+    }
+  }
+
+  private final int width;
+  private final int height;
+  private final int tileSize;
+  private final int workerCount;
+  private final int maxRestarts;
+  private final WorkerLauncher launcher;
+
+  private final LinkedBlockingDeque<Tile> queue = new LinkedBlockingDeque<Tile>();
+  private final AtomicInteger remaining = new AtomicInteger();
+  private final AtomicInteger restarts = new AtomicInteger();
+  private final AtomicLong renderedPixels = new AtomicLong();
+  private final AtomicLong renderNanos = new AtomicLong();
+  private final List<Process> processes = new ArrayList<Process>();
+  private volatile boolean failed;
+  private int[] pixels;
+
+  public RenderFarm(int width, int height, int tileSize, int workerCount, WorkerLauncher launcher) {
+    if (workerCount <= 0 || tileSize <= 0) {
+      throw new IllegalArgumentException("Worker count and tile size must be positive");
+    }
+    this.width = width;
+    this.height = height;
+    this.tileSize = tileSize;
+    this.workerCount = workerCount;
+    this.maxRestarts = 2 * workerCount;
+    this.launcher = launcher;
+  }
+
+  /**
+   * Runs the workers until every tile is back and assembles the frame.
+   */
+  public BufferedImage render() throws IOException {
+    pixels = new int[width * height];
+    for (int y0 = 0; y0 < height; y0 += tileSize) {
+      for (int x0 = 0; x0 < width; x0 += tileSize) {
+        queue.add(new Tile(x0, y0, Math.min(tileSize, width - x0), Math.min(tileSize, height - y0)));
+      }
+    }
+    remaining.set(queue.size());
+
+    try (ServerSocket server = new ServerSocket(0, workerCount, InetAddress.getLoopbackAddress())) {
+      server.setSoTimeout(500);
+      for (int i = 0; i < workerCount; i++) {
+        startWorker(server.getLocalPort());
+      }
+
+      List<Thread> handlers = new ArrayList<Thread>();
+      while (remaining.get() > 0 && !failed) {
+        Socket socket;
+        try {
+          socket = server.accept();
+          } catch (SocketTimeoutException e) {
+          replaceDeadWorkers(server.getLocalPort());
+          continue;
+        }
+        Thread handler = new Thread(() -> serve(socket), "render-farm-" + handlers.size());
+        handler.setDaemon(true);
+        handler.start();
+        handlers.add(handler);
+      }
+
+      for (Thread handler : handlers) {
+        try {
+          handler.join(5000);
+          } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      } finally {
+      stopWorkers();
+    }
+
+    if (failed || remaining.get() > 0) {
+      throw new IOException("Render farm gave up: " + remaining.get() + " tiles unfinished after "
+        + restarts.get() + " worker restarts");
+    }
+
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    image.setRGB(0, 0, width, height, pixels, 0, width);
+    return image;
+  }
+
+  private void startWorker(int port) throws IOException {
+    Process process = launcher.launch(port);
+    synchronized (processes) {
+      processes.add(process);
+    }
+  }
+
+  /**
+   * Starts replacements for exited workers while tiles are left, so the
+   * farm keeps its size.
+   */
+  private void replaceDeadWorkers(int port) throws IOException {
+    synchronized (processes) {
+      int alive = 0;
+      for (Process process : processes) {
+        if (process.isAlive()) alive++;
+      }
+      for (int i = 0; i < processes.size(); i++) {
+        Process process = processes.get(i);
+        if (process.isAlive() || remaining.get() == 0) continue;
+        if (alive >= workerCount) {
+          // Replaced already: a timed-out worker that exited later
+          processes.remove(i--);
+          continue;
+        }
+        if (restarts.incrementAndGet() > maxRestarts) {
+          failed = true;
+          return;
+        }
+        System.err.println("Render farm: worker exited with " + process.exitValue() + ", starting a replacement");
+        processes.set(i, launcher.launch(port));
+        alive++;
+      }
+    }
+  }
+
+  /**
+   * Read timeout for a tile: the average time per pixel of the tiles that
+   * came back, times the tile's pixels and a safety factor.
+   */
+  private int tileTimeoutMillis(Tile tile) {
+    long pixelsDone = renderedPixels.get();
+    if (pixelsDone == 0) return FIRST_TILE_TIMEOUT_MILLIS;
+    double expectedMillis = (double) renderNanos.get() / pixelsDone * tile.w * tile.h / 1e6;
+    return (int) Math.min(FIRST_TILE_TIMEOUT_MILLIS,
+      Math.max(MIN_TILE_TIMEOUT_MILLIS, TILE_TIMEOUT_FACTOR * expectedMillis));
+  }
+
+  private void serve(Socket socket) {
+    Tile tile = null;
+    try (Socket s = socket) {
+      s.setSoTimeout(FIRST_TILE_TIMEOUT_MILLIS);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+
+      if (in.readInt() != MAGIC) throw new IOException("Not a render farm worker");
+      int workerWidth = in.readInt();
+      int workerHeight = in.readInt();
+      if (workerWidth != width || workerHeight != height) {
+        failed = true;
+        throw new IOException("Worker renders " + workerWidth + "x" + workerHeight
+          + ", expected " + width + "x" + height);
+      }
+
+      while (remaining.get() > 0 && !failed) {
+        tile = queue.poll(200, TimeUnit.MILLISECONDS);
+        if (tile == null) continue;
+
+        s.setSoTimeout(tileTimeoutMillis(tile));
+        long start = System.nanoTime();
+        out.writeInt(tile.x0);
+        out.writeInt(tile.y0);
+        out.writeInt(tile.w);
+        out.writeInt(tile.h);
+        out.flush();
+
+        for (int y = 0; y < tile.h; y++) {
+          int offset = (tile.y0 + y) * width + tile.x0;
+          for (int x = 0; x < tile.w; x++) {
+            pixels[offset + x] = in.readInt();
+          }
+        }
+        renderNanos.addAndGet(System.nanoTime() - start);
+        renderedPixels.addAndGet((long) tile.w * tile.h);
+        tile = null;
+        remaining.decrementAndGet();
+      }
+
+      out.writeInt(-1);
+      out.writeInt(0);
+      out.writeInt(0);
+      out.writeInt(0);
+      out.flush();
+      } catch (SocketTimeoutException e) {
+      // The worker hangs; closing the socket makes it fail when it writes
+      System.err.println("Render farm: worker timed out" + (tile != null ? ", requeueing its tile" : ""));
+      replaceHungWorker(socket.getLocalPort());
+      } catch (SocketException | EOFException e) {
+      System.err.println("Render farm: lost a worker" + (tile != null ? ", requeueing its tile" : ""));
+      } catch (IOException e) {
+      System.err.println("Render farm: " + e.getMessage());
+      } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      } finally {
+      if (tile != null) queue.addFirst(tile);
+    }
+  }
+
+  /**
+   * Starts a worker in place of one that stopped answering. It counts as a
+   * restart; the hung process itself is ended by {@link #stopWorkers()}.
+   */
+  private void replaceHungWorker(int port) {
+    if (remaining.get() == 0) return;
+    if (restarts.incrementAndGet() > maxRestarts) {
+      failed = true;
+      return;
+    }
+    try {
+      startWorker(port);
+      } catch (IOException e) {
+      System.err.println("Render farm: " + e.getMessage());
+    }
+  }
+
+  private void stopWorkers() {
+    synchronized (processes) {
+      for (Process process : processes) {
+        try {
+          if (!process.waitFor(5, TimeUnit.SECONDS)) process.destroyForcibly();
+          } catch (InterruptedException e) {
+          process.destroyForcibly();
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  /**
+   * Worker side: connects to the coordinator and renders tiles until told
+   * to stop.
+   */
+  public static void runWorker(int port, TileRenderer renderer) throws IOException {
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+      out.writeInt(MAGIC);
+      out.writeInt(renderer.getWidth());
+      out.writeInt(renderer.getHeight());
+      out.flush();
+
+      int[] tile = new int[0];
+      while (true) {
+        int x0 = in.readInt();
+        int y0 = in.readInt();
+        int w = in.readInt();
+        int h = in.readInt();
+        if (x0 < 0) break;
+
+        if (tile.length < w * h) tile = new int[w * h];
+        renderer.renderTile(x0, y0, w, h, tile);
+        for (int i = 0; i < w * h; i++) {
+          out.writeInt(tile[i]);
+        }
+        out.flush();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,361 @@
+package net.elena.murat.lovert;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.elena.murat.light.Light;
+import net.elena.murat.material.Material;
+import net.elena.murat.math.Point3;
+import net.elena.murat.math.Ray;
+import net.elena.murat.math.Vector3;
+import net.elena.murat.shape.EMShape;
+
+/**
+ * Where the time of a render goes: rays by kind, recursion depth, shadow
+ * rays that were blocked, and intersection tests, hits and time per
+ * shape class and shading calls and time per material class.
+ * <p>
+ * Every rendering thread counts into its own stripe of plain fields, so
+ * counting takes no locks or atomic updates; the stripes are summed when
+ * the render is over. The tracer only calls in here when
+ * profiling is on, see {@link ElenaMuratRayTracer#setProfiling}; off, it
+ * costs one null check per intersection and shading call.
+ * </p>
+ * Timings come from System.nanoTime() around each call. The clock's own
+ * cost, measured once, is taken off every call in the report, but very
+ * cheap shapes are still timed less precisely than expensive ones. At
+ * the end of each render the totals are committed as JDK Flight
+ * Recorder events by RenderProfileEvents, which lives in jfr/src so that
+ * the tracer still builds on a Java 8 JDK without jdk.jfr.
+ */
+public class RenderProfile {
+
+  private static final long CLOCK_OVERHEAD_NANOS = measureClockOverhead();
+
+  // Class ids shared by all stripes; a stripe's arrays grow as ids are handed out
+  private final Map<Class<?>, Integer> classIds = new ConcurrentHashMap<Class<?>, Integer>();
+  private final List<String> classNames = new CopyOnWriteArrayList<String>();
+
+  private final List<Stripe> stripes = new CopyOnWriteArrayList<Stripe>();
+  private ThreadLocal<Stripe> stripe = newStripes();
+
+  private long startNanos;
+  private long elapsedNanos;
+  private boolean running;
+
+  /**
+   * Counters of one thread. Only that thread writes them; they are read
+   * once the render is over.
+   */
+  static final class Stripe {
+    long primaryRays;
+    long reflectionRays;
+    long refractionRays;
+    long tracedRays;
+    long depthSum;
+    int maxDepth;
+    long shadowRays;
+    long blockedShadowRays;
+    long[] shapeTests = new long[8];
+    long[] shapeHits = new long[8];
+    long[] shapeNanos = new long[8];
+    long[] shadingCalls = new long[8];
+    long[] shadingNanos = new long[8];
+
+    void ensure(int id) {
+      if (id < shapeTests.length) return;
+      int size = Math.max(id + 1, shapeTests.length * 2);
+      shapeTests = Arrays.copyOf(shapeTests, size);
+      shapeHits = Arrays.copyOf(shapeHits, size);
+      shapeNanos = Arrays.copyOf(shapeNanos, size);
+      shadingCalls = Arrays.copyOf(shadingCalls, size);
+      shadingNanos = Arrays.copyOf(shadingNanos, size);
+    }
+  }
+
+  /**
+   * Totals of one shape or material class.
+   */
+  public static final class ClassTotals {
+    public final String className;
+    public final long calls;
+    public final long hits;
+    public final long nanos;
+
+    ClassTotals(String className, long calls, long hits, long nanos) {
+      this.className = className;
+      this.calls = calls;
+      this.hits = hits;
+      this.nanos = nanos;
+    }
+  }
+
+  private ThreadLocal<Stripe> newStripes() {
+    return ThreadLocal.withInitial(() -> {
+        Stripe s = new Stripe();
+        stripes.add(s);
+        return s;
+    });
+  }
+
+  /**
+   * Starts counting a new render.
+   */
+  void reset() {
+    stripes.clear();
+    stripe = newStripes();
+    elapsedNanos = 0;
+    startNanos = System.nanoTime();
+    running = true;
+  }
+
+  /**
+   * Stops the clock of the render started by reset().
+   * @return false if no render was running
+   */
+  boolean finish() {
+    if (!running) return false;
+    elapsedNanos = System.nanoTime() - startNanos;
+    running = false;
+    return true;
+  }
+
+  private int classId(Class<?> type) {
+    Integer id = classIds.get(type);
+    if (id != null) return id;
+    synchronized (classNames) {
+      id = classIds.get(type);
+      if (id == null) {
+        id = classNames.size();
+        classNames.add(type.getSimpleName());
+        classIds.put(type, id);
+      }
+    }
+    return id;
+  }
+
+  // Counting, called by the tracer
+
+  void addTracedRay(int depth) {
+    Stripe s = stripe.get();
+    s.tracedRays++;
+    s.depthSum += depth;
+    if (depth > s.maxDepth) s.maxDepth = depth;
+  }
+
+  void addPrimaryRay() {
+    stripe.get().primaryRays++;
+  }
+
+  void addReflectionRay() {
+    stripe.get().reflectionRays++;
+  }
+
+  void addRefractionRay() {
+    stripe.get().refractionRays++;
+  }
+
+  void addShadowRay(boolean blocked) {
+    Stripe s = stripe.get();
+    s.shadowRays++;
+    if (blocked) s.blockedShadowRays++;
+  }
+
+  /**
+   * shape.intersect(ray), counted and timed. A hit is any intersection in
+   * front of the origin, whether or not it is the closest.
+   */
+  double intersect(EMShape shape, Ray ray) {
+    int id = classId(shape.getClass());
+    long start = System.nanoTime();
+    double dist = shape.intersect(ray);
+    long nanos = System.nanoTime() - start;
+    Stripe s = stripe.get();
+    s.ensure(id);
+    s.shapeTests[id]++;
+    s.shapeNanos[id] += nanos;
+    if (dist > Ray.EPSILON && dist < Double.POSITIVE_INFINITY) s.shapeHits[id]++;
+    return dist;
+  }
+
+  /**
+   * material.getColorAt(...), counted and timed.
+   */
+  Color getColorAt(Material material, Point3 point, Vector3 normal, Light light, Point3 viewerPos) {
+    int id = classId(material.getClass());
+    long start = System.nanoTime();
+    Color color = material.getColorAt(point, normal, light, viewerPos);
+    long nanos = System.nanoTime() - start;
+    Stripe s = stripe.get();
+    s.ensure(id);
+    s.shadingCalls[id]++;
+    s.shadingNanos[id] += nanos;
+    return color;
+  }
+
+  // Totals
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  public long getPrimaryRays() {
+    long total = 0;
+    for (Stripe s : stripes) total += s.primaryRays;
+    return total;
+  }
+
+  public long getReflectionRays() {
+    long total = 0;
+    for (Stripe s : stripes) total += s.reflectionRays;
+    return total;
+  }
+
+  public long getRefractionRays() {
+    long total = 0;
+    for (Stripe s : stripes) total += s.refractionRays;
+    return total;
+  }
+
+  public long getShadowRays() {
+    long total = 0;
+    for (Stripe s : stripes) total += s.shadowRays;
+    return total;
+  }
+
+  public long getBlockedShadowRays() {
+    long total = 0;
+    for (Stripe s : stripes) total += s.blockedShadowRays;
+    return total;
+  }
+
+  /**
+   * Share of shadow rays that found an occluder.
+   */
+  public double getShadowHitRatio() {
+    long shadowRays = getShadowRays();
+    return shadowRays > 0 ? (double) getBlockedShadowRays() / shadowRays : 0.0;
+  }
+
+  /**
+   * Mean recursion depth of the camera, mirror and glass rays traced;
+   * 0 when no ray spawned another.
+   */
+  public double getAverageDepth() {
+    long rays = 0;
+    long depthSum = 0;
+    for (Stripe s : stripes) {
+      rays += s.tracedRays;
+      depthSum += s.depthSum;
+    }
+    return rays > 0 ? (double) depthSum / rays : 0.0;
+  }
+
+  public int getMaxDepth() {
+    int max = 0;
+    for (Stripe s : stripes) max = Math.max(max, s.maxDepth);
+    return max;
+  }
+
+  /**
+   * Intersection tests by shape class, most time first. Times have the
+   * clock overhead taken off.
+   */
+  public List<ClassTotals> getShapeTotals() {
+    return totals(true);
+  }
+
+  /**
+   * getColorAt calls by material class, most time first.
+   */
+  public List<ClassTotals> getMaterialTotals() {
+    return totals(false);
+  }
+
+  private List<ClassTotals> totals(boolean shapes) {
+    int classes = classNames.size();
+    long[] calls = new long[classes];
+    long[] hits = new long[classes];
+    long[] nanos = new long[classes];
+    for (Stripe s : stripes) {
+      long[] sCalls = shapes ? s.shapeTests : s.shadingCalls;
+      long[] sNanos = shapes ? s.shapeNanos : s.shadingNanos;
+      for (int id = 0; id < Math.min(classes, sCalls.length); id++) {
+        calls[id] += sCalls[id];
+        nanos[id] += sNanos[id];
+        if (shapes) hits[id] += s.shapeHits[id];
+      }
+    }
+    List<ClassTotals> result = new ArrayList<ClassTotals>();
+    for (int id = 0; id < classes; id++) {
+      if (calls[id] == 0) continue;
+      long net = Math.max(0, nanos[id] - calls[id] * CLOCK_OVERHEAD_NANOS);
+      result.add(new ClassTotals(classNames.get(id), calls[id], hits[id], net));
+    }
+    Collections.sort(result, (a, b) -> Long.compare(b.nanos, a.nanos));
+    return result;
+  }
+
+  /**
+   * The end-of-render report: ray counts, then shape and material
+   * classes with their share of the render time.
+   */
+  public String summary() {
+    StringBuilder sb = new StringBuilder();
+    double seconds = elapsedNanos / 1e9;
+    sb.append(String.format(Locale.ROOT, "Render profile: %.3f s%n", seconds));
+    sb.append(String.format(Locale.ROOT,
+        "  rays: primary=%d reflection=%d refraction=%d shadow=%d (%.1f%% blocked)%n",
+        getPrimaryRays(), getReflectionRays(), getRefractionRays(), getShadowRays(),
+        100.0 * getShadowHitRatio()));
+    sb.append(String.format(Locale.ROOT, "  recursion depth: average=%.3f max=%d%n",
+        getAverageDepth(), getMaxDepth()));
+
+    sb.append(String.format(Locale.ROOT, "  %-24s %12s %12s %10s %9s %7s%n",
+        "shape", "tests", "hits", "ns/test", "seconds", "frame"));
+    for (ClassTotals t : getShapeTotals()) {
+      appendRow(sb, t, t.hits, seconds);
+    }
+    sb.append(String.format(Locale.ROOT, "  %-24s %12s %12s %10s %9s %7s%n",
+        "material", "calls", "", "ns/call", "seconds", "frame"));
+    for (ClassTotals t : getMaterialTotals()) {
+      appendRow(sb, t, -1, seconds);
+    }
+    return sb.toString();
+  }
+
+  private static void appendRow(StringBuilder sb, ClassTotals t, long hits, double frameSeconds) {
+    double classSeconds = t.nanos / 1e9;
+    sb.append(String.format(Locale.ROOT, "  %-24s %12d %12s %10.1f %9.3f %6.1f%%%n",
+        t.className, t.calls, hits >= 0 ? Long.toString(hits) : "",
+        (double) t.nanos / t.calls, classSeconds,
+        frameSeconds > 0 ? 100.0 * classSeconds / frameSeconds : 0.0));
+  }
+
+  /**
+   * Cost of one System.nanoTime() pair, the smallest of a few batches so
+   * that a preemption does not inflate it.
+   */
+  private static long measureClockOverhead() {
+    final int calls = 10000;
+    long best = Long.MAX_VALUE;
+    for (int batch = 0; batch < 5; batch++) {
+      long start = System.nanoTime();
+      long sink = 0;
+      for (int i = 0; i < calls; i++) {
+        sink += System.nanoTime();
+      }
+      long perCall = (System.nanoTime() - start) / calls;
+      if (sink != 0) best = Math.min(best, perCall);
+    }
+    return best == Long.MAX_VALUE ? 0 : best;
+  }
+
+}
@@ -0,0 +1,31 @@
+package net.elena.murat.lovert;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives a render band by band, top to bottom, instead of as one
+ * finished image.
+ */
+public interface RenderSink extends Closeable {
+  
+  /**
+   * Called once before the first band.
+   */
+  void begin(int width, int height) throws IOException;
+  
+  /**
+   * Takes the next band of finished rows.
+   * @param y first row of the band
+   * @param rowCount rows in the band
+   * @param argb pixels of the band, row after row, width entries per row;
+   *        reused by the caller after this returns
+   */
+  void writeRows(int y, int rowCount, int[] argb) throws IOException;
+  
+  /**
+   * Called after the last band of a complete render.
+   */
+  void finish() throws IOException;
+  
+}
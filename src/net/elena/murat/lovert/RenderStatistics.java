@@ -0,0 +1,100 @@
+package net.elena.murat.lovert;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters collected while rendering. Safe to update from several
+ * threads; reset at the start of every render.
+ */
+public class RenderStatistics {
+
+  private final LongAdder tracedRays = new LongAdder();
+  private final LongAdder shadowRays = new LongAdder();
+  private final LongAdder occluderCacheHits = new LongAdder();
+  private final LongAdder occluderCacheMisses = new LongAdder();
+  private final LongAdder areaLightPoints = new LongAdder();
+  private final LongAdder areaLightPenumbraPoints = new LongAdder();
+
+  public void reset() {
+    tracedRays.reset();
+    shadowRays.reset();
+    occluderCacheHits.reset();
+    occluderCacheMisses.reset();
+    areaLightPoints.reset();
+    areaLightPenumbraPoints.reset();
+  }
+
+  /**
+   * A camera, mirror or glass ray was intersected with the scene.
+   */
+  void addTracedRay() {
+    tracedRays.increment();
+  }
+
+  void addShadowRay() {
+    shadowRays.increment();
+  }
+
+  /**
+   * A cached occluder was tested: hit means it blocked the ray.
+   */
+  void addOccluderCacheResult(boolean hit) {
+    if (hit) {
+      occluderCacheHits.increment();
+      } else {
+      occluderCacheMisses.increment();
+    }
+  }
+
+  /**
+   * An area light was tested from a point; penumbra means the extra
+   * samples were traced.
+   */
+  void addAreaLightPoint(boolean penumbra) {
+    areaLightPoints.increment();
+    if (penumbra) {
+      areaLightPenumbraPoints.increment();
+    }
+  }
+
+  public long getTracedRays() {
+    return tracedRays.sum();
+  }
+
+  public long getShadowRays() {
+    return shadowRays.sum();
+  }
+
+  public long getOccluderCacheHits() {
+    return occluderCacheHits.sum();
+  }
+
+  public long getOccluderCacheMisses() {
+    return occluderCacheMisses.sum();
+  }
+
+  public long getAreaLightPoints() {
+    return areaLightPoints.sum();
+  }
+
+  public long getAreaLightPenumbraPoints() {
+    return areaLightPenumbraPoints.sum();
+  }
+
+  /**
+   * Share of cached occluder tests that blocked the shadow ray.
+   */
+  public double getOccluderCacheHitRate() {
+    long hits = getOccluderCacheHits();
+    long total = hits + getOccluderCacheMisses();
+    return total > 0 ? (double) hits / total : 0.0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("RenderStatistics[tracedRays=%d, shadowRays=%d, occluderCache hits=%d misses=%d (%.1f%%), areaLight points=%d penumbra=%d]",
+      getTracedRays(), getShadowRays(), getOccluderCacheHits(), getOccluderCacheMisses(),
+      100.0 * getOccluderCacheHitRate(), getAreaLightPoints(), getAreaLightPenumbraPoints());
+  }
+
+}
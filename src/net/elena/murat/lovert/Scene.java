@@ -36,6 +36,21 @@ public class Scene {
     lights.add(light);
   }
   
+  /**
+   * Puts a shape in place of another one, keeping its position in the
+   * scene's order.
+   * @return false if the old shape is not in the scene
+   */
+  public boolean replaceShape(EMShape oldShape, EMShape newShape) {
+    for (int i = 0; i < shapes.size(); i++) {
+      if (shapes.get(i) == oldShape) {
+        shapes.set(i, newShape);
+        return true;
+      }
+    }
+    return false;
+  }
+  
   public List<EMShape> getShapes() {
     return new ArrayList<>(shapes); // Return copy for immutability
   }
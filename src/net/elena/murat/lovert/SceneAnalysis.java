@@ -0,0 +1,415 @@
+package net.elena.murat.lovert;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import net.elena.murat.light.Light;
+import net.elena.murat.material.Material;
+import net.elena.murat.material.PatternBake;
+import net.elena.murat.shape.CSGShape;
+import net.elena.murat.shape.EMShape;
+import net.elena.murat.shape.InstanceSet;
+import net.elena.murat.shape.Torus;
+import net.elena.murat.shape.TorusKnot;
+import net.elena.murat.shape.letters.Image3D;
+import net.elena.murat.shape.letters.Letter3D;
+
+/**
+ * What a parsed scene will cost to render, found without rendering it:
+ * object counts by class and the copies instance sets place, an estimate of the memory held by textures,
+ * glyph meshes and pattern bakes, the deepest CSG nesting, lights by
+ * type, and the raymarched shapes (Torus, TorusKnot), which are the
+ * slowest to intersect.
+ * <p>
+ * A probe traces a random sample of the frame's tiles at the scene's own
+ * resolution and settings, so its time and ray counts extrapolate to the
+ * full frame by pixel count. The estimate is for the tracer's single
+ * rendering thread.
+ * </p>
+ * The result is written as one JSON object, see {@link #toJson()}.
+ */
+public class SceneAnalysis {
+
+  private static final int PROBE_TILE_SIZE = 16;
+  // Heap size of one mesh vertex (three doubles) and face (three ints), with the list slot
+  private static final long VERTEX_BYTES = 48;
+  private static final long FACE_BYTES = 40;
+
+  private final String sceneName;
+  private final int width;
+  private final int height;
+  private final Map<String, Integer> shapes = new TreeMap<String, Integer>();
+  private final Map<String, Integer> materials = new TreeMap<String, Integer>();
+  private final Map<String, Integer> lights = new TreeMap<String, Integer>();
+  private final Map<String, Integer> raymarched = new TreeMap<String, Integer>();
+  private int shapeCount;
+  private int instanceCount;
+  private int materialCount;
+  private int maxCsgDepth;
+  private long textureBytes;
+  private long mappedTextureBytes;
+  private long glyphMeshBytes;
+  private long bakeBytes;
+  private long otherArrayBytes;
+  private final List<String> warnings = new ArrayList<String>();
+
+  private int probePixels;
+  private double probeSeconds;
+  private long probeTracedRays;
+  private long probeShadowRays;
+
+  private SceneAnalysis(String sceneName, int width, int height) {
+    this.sceneName = sceneName;
+    this.width = width;
+    this.height = height;
+    raymarched.put("Torus", 0);
+    raymarched.put("TorusKnot", 0);
+  }
+
+  /**
+   * Analyzes the tracer's scene.
+   * @param objects every object the scene file defined, including
+   *        materials no shape uses
+   * @param probeFraction share of the frame's pixels the probe traces;
+   *        0 skips the probe
+   */
+  public static SceneAnalysis analyze(String sceneName, ElenaMuratRayTracer tracer, Scene scene,
+    Collection<?> objects, double probeFraction) {
+    if (probeFraction < 0.0 || probeFraction > 1.0) {
+      throw new IllegalArgumentException("Probe fraction must be in [0, 1]: " + probeFraction);
+    }
+    SceneAnalysis analysis = new SceneAnalysis(sceneName, tracer.getWidth(), tracer.getHeight());
+    analysis.count(scene, objects);
+    if (probeFraction > 0.0) analysis.probe(tracer, probeFraction);
+    return analysis;
+  }
+
+  private void count(Scene scene, Collection<?> objects) {
+    Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    List<EMShape> sceneShapes = scene.getShapes();
+    for (EMShape shape : sceneShapes) {
+      increment(shapes, shape.getClass().getSimpleName());
+      shapeCount++;
+      if (shape instanceof InstanceSet) instanceCount += ((InstanceSet) shape).size();
+      maxCsgDepth = Math.max(maxCsgDepth, csgDepth(shape));
+      countRaymarched(shape, seen, 1);
+      if (shape.getMaterial() == null) {
+        warnings.add(shape.getClass().getSimpleName() + " without a material");
+      }
+    }
+
+    seen.clear();
+    for (Object obj : objects) {
+      if (obj instanceof Material && seen.add(obj)) countMaterial((Material) obj);
+    }
+    for (EMShape shape : sceneShapes) {
+      Material material = shape.getMaterial();
+      if (material != null && seen.add(material)) countMaterial(material);
+    }
+
+    List<Light> sceneLights = scene.getLights();
+    for (Light light : sceneLights) {
+      increment(lights, light.getClass().getSimpleName());
+    }
+    if (sceneLights.isEmpty()) warnings.add("No lights");
+    if (sceneShapes.isEmpty()) warnings.add("No shapes");
+
+    List<Object> roots = new ArrayList<Object>(objects);
+    roots.addAll(sceneShapes);
+    measureMemory(roots);
+  }
+
+  private void countMaterial(Material material) {
+    increment(materials, material.getClass().getSimpleName());
+    materialCount++;
+  }
+
+  private static void increment(Map<String, Integer> counts, String key) {
+    increment(counts, key, 1);
+  }
+
+  private static void increment(Map<String, Integer> counts, String key, int amount) {
+    Integer count = counts.get(key);
+    counts.put(key, count == null ? amount : count + amount);
+  }
+
+  /**
+   * Levels of CSG operations above the deepest leaf; 0 for a plain shape.
+   */
+  private static int csgDepth(EMShape shape) {
+    if (shape instanceof InstanceSet) return csgDepth(((InstanceSet) shape).getPrototype());
+    if (!(shape instanceof CSGShape)) return 0;
+    CSGShape csg = (CSGShape) shape;
+    return 1 + Math.max(csgDepth(csg.getLeft()), csgDepth(csg.getRight()));
+  }
+
+  /**
+   * Counts the raymarched shapes under the shape, each as many times as
+   * it is placed: an instance set's prototype once per copy.
+   */
+  private void countRaymarched(EMShape shape, Set<Object> seen, int copies) {
+    if (!seen.add(shape)) return;
+    if (shape instanceof InstanceSet) {
+      // Sets may share a prototype; each set's copies count on their own
+      InstanceSet set = (InstanceSet) shape;
+      countRaymarched(set.getPrototype(), Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()),
+        copies * set.size());
+    }
+    if (shape instanceof Torus) increment(raymarched, "Torus", copies);
+    if (shape instanceof TorusKnot) increment(raymarched, "TorusKnot", copies);
+    if (shape instanceof CSGShape) {
+      countRaymarched(((CSGShape) shape).getLeft(), seen, copies);
+      countRaymarched(((CSGShape) shape).getRight(), seen, copies);
+    }
+  }
+
+  /**
+   * Walks the fields of the scene's objects, adding up the images, glyph
+   * meshes and arrays they hold; each object is counted once however many
+   * refer to it. JDK objects other than images and arrays are not entered.
+   */
+  private void measureMemory(List<Object> roots) {
+    Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    Deque<Object[]> pending = new ArrayDeque<Object[]>();
+    for (Object root : roots) {
+      if (root != null) pending.push(new Object[] { root, null });
+    }
+    while (!pending.isEmpty()) {
+      Object[] entry = pending.pop();
+      Object obj = entry[0];
+      Object owner = entry[1];
+      if (!seen.add(obj)) continue;
+
+      Class<?> type = obj.getClass();
+      if (obj instanceof BufferedImage) {
+        measureImage((BufferedImage) obj);
+        } else if (type.isArray()) {
+        if (type.getComponentType().isPrimitive()) {
+          long bytes = 16L + (long) Array.getLength(obj) * primitiveSize(type.getComponentType());
+          if (owner instanceof PatternBake) {
+            bakeBytes += bytes;
+            } else {
+            otherArrayBytes += bytes;
+          }
+          } else {
+          for (int i = Array.getLength(obj) - 1; i >= 0; i--) {
+            Object element = Array.get(obj, i);
+            if (element != null) pending.push(new Object[] { element, owner });
+          }
+        }
+        } else if (!isJdkClass(type)) {
+        if (obj instanceof Letter3D) {
+          Letter3D letter = (Letter3D) obj;
+          glyphMeshBytes += letter.getVertexCount() * VERTEX_BYTES + letter.getFaceCount() * FACE_BYTES;
+          } else if (obj instanceof Image3D) {
+          Image3D image = (Image3D) obj;
+          glyphMeshBytes += image.getVertexCount() * VERTEX_BYTES + image.getFaceCount() * FACE_BYTES;
+        }
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+          for (Field field : c.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) continue;
+            Object value;
+            try {
+              field.setAccessible(true);
+              value = field.get(obj);
+              } catch (RuntimeException | IllegalAccessException e) {
+              continue;
+            }
+            if (value != null) pending.push(new Object[] { value, obj });
+          }
+        }
+      }
+    }
+  }
+
+  private void measureImage(BufferedImage image) {
+    DataBuffer buffer = image.getRaster().getDataBuffer();
+    long bytes = (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    if (isJdkClass(buffer.getClass())) {
+      textureBytes += bytes;
+      } else {
+      // Tiled textures page their pixels in from a memory-mapped file
+      mappedTextureBytes += bytes;
+    }
+  }
+
+  private static boolean isJdkClass(Class<?> type) {
+    String name = type.getName();
+    return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.")
+    || name.startsWith("jdk.") || name.startsWith("com.sun.");
+  }
+
+  private static int primitiveSize(Class<?> type) {
+    if (type == long.class || type == double.class) return 8;
+    if (type == int.class || type == float.class) return 4;
+    if (type == short.class || type == char.class) return 2;
+    return 1;
+  }
+
+  /**
+   * Traces a random, seeded sample of tiles covering about the given share
+   * of the frame, plus one untimed tile to warm up the JIT.
+   */
+  private void probe(ElenaMuratRayTracer tracer, double fraction) {
+    int tilesX = (width + PROBE_TILE_SIZE - 1) / PROBE_TILE_SIZE;
+    int tilesY = (height + PROBE_TILE_SIZE - 1) / PROBE_TILE_SIZE;
+    List<Integer> order = new ArrayList<Integer>();
+    for (int t = 0; t < tilesX * tilesY; t++) {
+      order.add(t);
+    }
+    Collections.shuffle(order, new Random(1234L));
+    int sampleCount = Math.max(1, (int) Math.round(fraction * order.size()));
+    int[] tile = new int[PROBE_TILE_SIZE * PROBE_TILE_SIZE];
+
+    tracer.beginTiles();
+    try {
+      renderProbeTile(tracer, order.get(order.size() - 1), tilesX, tile);
+      tracer.getStatistics().reset();
+      long start = System.nanoTime();
+      for (int i = 0; i < sampleCount; i++) {
+        probePixels += renderProbeTile(tracer, order.get(i), tilesX, tile);
+      }
+      probeSeconds = (System.nanoTime() - start) / 1e9;
+      } finally {
+      tracer.endTiles();
+    }
+    probeTracedRays = tracer.getStatistics().getTracedRays();
+    probeShadowRays = tracer.getStatistics().getShadowRays();
+  }
+
+  private int renderProbeTile(ElenaMuratRayTracer tracer, int t, int tilesX, int[] tile) {
+    int x0 = (t % tilesX) * PROBE_TILE_SIZE;
+    int y0 = (t / tilesX) * PROBE_TILE_SIZE;
+    int tileWidth = Math.min(PROBE_TILE_SIZE, width - x0);
+    int tileHeight = Math.min(PROBE_TILE_SIZE, height - y0);
+    tracer.renderTile(x0, y0, tileWidth, tileHeight, tile);
+    return tileWidth * tileHeight;
+  }
+
+  public int getShapeCount() {
+    return shapeCount;
+  }
+
+  /**
+   * Copies placed by the scene's instance sets; each set is one shape.
+   */
+  public int getInstanceCount() {
+    return instanceCount;
+  }
+
+  public int getMaxCsgDepth() {
+    return maxCsgDepth;
+  }
+
+  public long getEstimatedMemoryBytes() {
+    return textureBytes + glyphMeshBytes + bakeBytes + otherArrayBytes;
+  }
+
+  /**
+   * Seconds a full render should take on one thread, extrapolated from
+   * the probe; NaN if no probe ran.
+   */
+  public double getEstimatedRenderSeconds() {
+    if (probePixels == 0) return Double.NaN;
+    return probeSeconds * ((double) width * height / probePixels);
+  }
+
+  public String toJson() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\n");
+    sb.append("  \"scene\": ").append(quote(sceneName)).append(",\n");
+    sb.append("  \"width\": ").append(width).append(",\n");
+    sb.append("  \"height\": ").append(height).append(",\n");
+    sb.append("  \"shapes\": {\"total\": ").append(shapeCount)
+    .append(", \"instances\": ").append(instanceCount).append(", \"byClass\": ");
+    appendCounts(sb, shapes);
+    sb.append("},\n");
+    sb.append("  \"materials\": {\"total\": ").append(materialCount).append(", \"byClass\": ");
+    appendCounts(sb, materials);
+    sb.append("},\n");
+    int lightCount = 0;
+    for (int count : lights.values()) {
+      lightCount += count;
+    }
+    sb.append("  \"lights\": {\"total\": ").append(lightCount).append(", \"byType\": ");
+    appendCounts(sb, lights);
+    sb.append("},\n");
+    sb.append("  \"raymarchedShapes\": ");
+    appendCounts(sb, raymarched);
+    sb.append(",\n");
+    sb.append("  \"maxCsgDepth\": ").append(maxCsgDepth).append(",\n");
+    sb.append("  \"memory\": {\"textureBytes\": ").append(textureBytes)
+    .append(", \"mappedTextureBytes\": ").append(mappedTextureBytes)
+    .append(", \"glyphMeshBytes\": ").append(glyphMeshBytes)
+    .append(", \"bakeBytes\": ").append(bakeBytes)
+    .append(", \"otherArrayBytes\": ").append(otherArrayBytes)
+    .append(", \"totalBytes\": ").append(getEstimatedMemoryBytes()).append("},\n");
+    if (probePixels > 0) {
+      double scale = (double) width * height / probePixels;
+      long rays = probeTracedRays + probeShadowRays;
+      sb.append("  \"probe\": {\"pixels\": ").append(probePixels)
+      .append(", \"seconds\": ").append(number(probeSeconds))
+      .append(", \"tracedRays\": ").append(probeTracedRays)
+      .append(", \"shadowRays\": ").append(probeShadowRays)
+      .append(", \"raysPerSecond\": ").append(number(probeSeconds > 0 ? rays / probeSeconds : 0.0))
+      .append(", \"estimatedRays\": ").append(Math.round(rays * scale))
+      .append(", \"estimatedRenderSeconds\": ").append(number(getEstimatedRenderSeconds())).append("},\n");
+      } else {
+      sb.append("  \"probe\": null,\n");
+    }
+    sb.append("  \"warnings\": [");
+    for (int i = 0; i < warnings.size(); i++) {
+      if (i > 0) sb.append(", ");
+      sb.append(quote(warnings.get(i)));
+    }
+    sb.append("]\n");
+    sb.append("}");
+    return sb.toString();
+  }
+
+  private static void appendCounts(StringBuilder sb, Map<String, Integer> counts) {
+    sb.append('{');
+    boolean first = true;
+    for (Map.Entry<String, Integer> e : counts.entrySet()) {
+      if (!first) sb.append(", ");
+      sb.append(quote(e.getKey())).append(": ").append(e.getValue());
+      first = false;
+    }
+    sb.append('}');
+  }
+
+  private static String number(double value) {
+    return String.format(Locale.ROOT, "%.3f", value);
+  }
+
+  private static String quote(String s) {
+    StringBuilder sb = new StringBuilder("\"");
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+        } else if (c < 0x20) {
+        sb.append(String.format("\\u%04x", (int) c));
+        } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+}
@@ -0,0 +1,243 @@
+package net.elena.murat.lovert;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import net.elena.murat.light.BioluminescentLight;
+import net.elena.murat.light.Light;
+import net.elena.murat.material.BakeableMaterial;
+import net.elena.murat.material.Material;
+import net.elena.murat.math.Point3;
+import net.elena.murat.math.Vector3;
+import net.elena.murat.shape.CSGShape;
+import net.elena.murat.shape.EMShape;
+
+/**
+ * Renders an animation from a scene that is parsed and set up once.
+ * <p>
+ * Between frames a simulation clock advances by 1 / frame rate and only
+ * the scene's {@link Animatable} lights and materials are updated; the
+ * tracer keeps its shape snapshot and refits its light tree instead of
+ * rebuilding it, see {@link ElenaMuratRayTracer#beginSequence()}. Each
+ * finished frame is encoded on a background thread while the next one
+ * renders, with at most one frame waiting for the encoder.
+ * </p>
+ * The camera can orbit its look-at point and travel at a constant
+ * velocity. For such camera moves a {@link TemporalCache} can reuse the
+ * previous frame's shading wherever the same surface is still in view.
+ */
+public class SequenceRenderer {
+
+  private final ElenaMuratRayTracer tracer;
+  private final double frameRate;
+  private final List<Animatable> animatables;
+  private double orbitDegreesPerSecond;
+  private Vector3 cameraVelocity = Vector3.ZERO;
+  private TemporalCache temporalCache;
+
+  public SequenceRenderer(ElenaMuratRayTracer tracer, Scene scene, double frameRate) {
+    if (frameRate <= 0) {
+      throw new IllegalArgumentException("Frame rate must be positive: " + frameRate);
+    }
+    this.tracer = tracer;
+    this.frameRate = frameRate;
+    this.animatables = collectAnimatables(scene);
+  }
+
+  private static List<Animatable> collectAnimatables(Scene scene) {
+    Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    List<Animatable> result = new ArrayList<Animatable>();
+    for (Light light : scene.getLights()) {
+      // Emitter lights pulse with the swarm they were made from, which is not in the scene
+      Object animated = (light instanceof BioluminescentLight.Emitter)
+      ? ((BioluminescentLight.Emitter) light).getSwarm() : light;
+      if (animated instanceof Animatable && seen.add(animated)) {
+        result.add((Animatable) animated);
+      }
+    }
+    for (EMShape shape : scene.getShapes()) {
+      collectMaterials(shape, seen, result);
+    }
+    return result;
+  }
+
+  /**
+   * Adds the shape's animated material, or those of a CSG shape's
+   * children, each of which keeps its own.
+   */
+  private static void collectMaterials(EMShape shape, Set<Object> seen, List<Animatable> result) {
+    if (shape instanceof CSGShape) {
+      collectMaterials(((CSGShape) shape).getLeft(), seen, result);
+      collectMaterials(((CSGShape) shape).getRight(), seen, result);
+      return;
+    }
+    Material material = shape.getMaterial();
+    if (!(material instanceof Animatable) || !seen.add(material)) return;
+    if (material instanceof BakeableMaterial && ((BakeableMaterial) material).getPatternBake() != null) {
+      // A bake would freeze the pattern at its first frame
+      System.err.println("Dropping the pattern bake of animated " + material.getClass().getSimpleName());
+      ((BakeableMaterial) material).setPatternBake(null);
+    }
+    result.add((Animatable) material);
+  }
+
+  /**
+   * Moves the camera over time: an orbit around the up vector through the
+   * look-at point (a turntable), then a translation of both camera and
+   * look-at point.
+   */
+  public void setCameraMotion(double orbitDegreesPerSecond, Vector3 velocity) {
+    this.orbitDegreesPerSecond = orbitDegreesPerSecond;
+    this.cameraVelocity = velocity != null ? velocity : Vector3.ZERO;
+  }
+
+  /**
+   * Reuses shading between frames where the view direction at a point
+   * changed less than the given angle. Ignored while the scene has
+   * animated lights, which change every pixel's shading.
+   */
+  public void setTemporalReuse(double maxAngleDegrees) {
+    this.temporalCache = new TemporalCache(tracer.getWidth(), tracer.getHeight(), 0.01, maxAngleDegrees);
+  }
+
+  /**
+   * The time-dependent objects the clock drives.
+   */
+  public List<Animatable> getAnimatables() {
+    return Collections.unmodifiableList(animatables);
+  }
+
+  /**
+   * Renders frames firstFrame .. firstFrame + frameCount - 1 and writes
+   * them as PNG files named by {@link #frameFile}. Frame n shows the scene
+   * at n / frame rate seconds.
+   */
+  public void render(int firstFrame, int frameCount, String outputPattern) throws IOException {
+    if (firstFrame < 0 || frameCount <= 0) {
+      throw new IllegalArgumentException("Invalid frame range: " + firstFrame + " + " + frameCount);
+    }
+    ExecutorService encoder = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "sequence-encoder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    Future<?> pending = null;
+
+    Camera camera = tracer.getCamera();
+    final Point3 startPosition = camera.getCameraPosition();
+    final Point3 startLookAt = camera.getLookAt();
+    boolean reuse = temporalCache != null;
+    for (Animatable animatable : animatables) {
+      if (animatable instanceof Light) {
+        if (reuse) System.err.println("Animated lights in the scene; temporal reuse is off");
+        reuse = false;
+        break;
+      }
+    }
+    TemporalCache previousCache = tracer.getTemporalCache();
+    if (reuse) {
+      temporalCache.invalidate();
+      tracer.setTemporalCache(temporalCache);
+    }
+
+    tracer.beginSequence();
+    try {
+      advance(firstFrame / frameRate);
+      for (int i = 0; i < frameCount; i++) {
+        if (i > 0) advance(1.0 / frameRate);
+        final int frame = firstFrame + i;
+        moveCamera(startPosition, startLookAt, frame / frameRate);
+        final BufferedImage image = tracer.render();
+        if (reuse) {
+          System.out.println("Frame " + frame + ": " + temporalCache.getReusedPixels() + " pixels reused, "
+            + temporalCache.getTracedPixels() + " traced");
+        }
+
+        waitFor(pending);
+        final File file = frameFile(outputPattern, frame);
+        pending = encoder.submit(() -> {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists()) parent.mkdirs();
+            ImageIO.write(image, "png", file);
+            System.out.println("Frame " + frame + " written: " + file);
+            return null;
+        });
+      }
+      waitFor(pending);
+      } finally {
+      tracer.endSequence();
+      tracer.setTemporalCache(previousCache);
+      tracer.setLookAt(startLookAt);
+      tracer.setCameraPosition(startPosition);
+      encoder.shutdownNow();
+    }
+  }
+
+  private void moveCamera(Point3 startPosition, Point3 startLookAt, double time) {
+    if (orbitDegreesPerSecond == 0.0 && cameraVelocity.lengthSquared() == 0.0) return;
+    Camera camera = tracer.getCamera();
+    Vector3 offset = startPosition.subtract(startLookAt);
+    if (orbitDegreesPerSecond != 0.0) {
+      // Rodrigues' rotation of the offset around the up axis
+      Vector3 k = camera.getUpVector().normalize();
+      double angle = Math.toRadians(orbitDegreesPerSecond * time);
+      double cos = Math.cos(angle);
+      double sin = Math.sin(angle);
+      offset = offset.scale(cos)
+      .add(k.cross(offset).scale(sin))
+      .add(k.scale(k.dot(offset) * (1.0 - cos)));
+    }
+    Vector3 travel = cameraVelocity.scale(time);
+    Point3 lookAt = startLookAt.add(travel);
+    tracer.setLookAt(lookAt);
+    tracer.setCameraPosition(lookAt.add(offset));
+  }
+
+  private void advance(double deltaTime) {
+    for (Animatable animatable : animatables) {
+      animatable.update(deltaTime);
+    }
+  }
+
+  private static void waitFor(Future<?> pending) throws IOException {
+    if (pending == null) return;
+    try {
+      pending.get();
+      } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while encoding a frame", e);
+      } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      throw new IOException("Frame encoding failed: " + cause, cause);
+    }
+  }
+
+  /**
+   * Output file of a frame. A pattern containing % is formatted with the
+   * frame number (e.g. "out/frame_%04d.png"); otherwise "_0000" style
+   * numbering goes before the extension.
+   */
+  public static File frameFile(String pattern, int frame) {
+    if (pattern.indexOf('%') >= 0) {
+      return new File(String.format(pattern, frame));
+    }
+    int dot = pattern.lastIndexOf('.');
+    int slash = Math.max(pattern.lastIndexOf('/'), pattern.lastIndexOf(File.separatorChar));
+    if (dot <= slash) dot = pattern.length();
+    return new File(pattern.substring(0, dot) + String.format("_%04d", frame) + pattern.substring(dot));
+  }
+
+}
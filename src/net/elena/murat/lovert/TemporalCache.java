@@ -0,0 +1,256 @@
+package net.elena.murat.lovert;
+
+import net.elena.murat.math.Point3;
+import net.elena.murat.math.Vector3;
+import net.elena.murat.shape.EMShape;
+
+/**
+ * Shaded pixels of the previous animation frame, kept so the next frame
+ * can reuse them where the camera still sees the same surface.
+ * <p>
+ * For every pixel the cache keeps the primary hit's shape, its distance
+ * from the camera, the color, and the point and view direction it was
+ * shaded from.
+ * A new pixel's hit point is projected into the previous camera; the
+ * stored pixel there is reused only if it saw the same shape at the
+ * same distance (so the point was not hidden), was shaded within one
+ * pixel of the new point, and from a view direction within the angle
+ * limit (so view-dependent highlights stay close). Everything else is
+ * traced again. The tracer decides which materials may be reused at all.
+ * </p>
+ * Not thread-safe; one frame is rendered at a time.
+ */
+public class TemporalCache {
+
+  /**
+   * Camera of one frame, with the projection that inverts the tracer's
+   * primary rays.
+   */
+  static final class View {
+    final Point3 eye;
+    final Vector3 xAxis, yAxis, zAxis;
+    final boolean orthographic;
+    final double halfWidth;
+    final double halfHeight;
+    final int width, height;
+
+    View(Camera camera, double fov, int width, int height) {
+      this.eye = camera.getCameraPosition();
+      this.zAxis = eye.subtract(camera.getLookAt()).normalize();
+      this.xAxis = camera.getUpVector().cross(zAxis).normalize();
+      this.yAxis = zAxis.cross(xAxis).normalize();
+      this.orthographic = camera.isOrthographic();
+      this.width = width;
+      this.height = height;
+      double aspectRatio = (double) width / height;
+      if (orthographic) {
+        halfWidth = camera.getOrthographicScale() / 2.0;
+        halfHeight = camera.getOrthographicScale() / aspectRatio / 2.0;
+        } else {
+        double tanHalfFov = Math.tan(Math.toRadians(fov) / 2);
+        halfWidth = aspectRatio * tanHalfFov;
+        halfHeight = tanHalfFov;
+      }
+    }
+
+    /**
+     * Distance the primary ray travels to reach p.
+     */
+    double depth(Point3 p) {
+      Vector3 d = p.subtract(eye);
+      return orthographic ? -d.dot(zAxis) : d.length();
+    }
+
+    /**
+     * Continuous pixel coordinates of p into xy; false if p is behind the
+     * camera.
+     */
+    boolean project(Point3 p, double[] xy) {
+      Vector3 d = p.subtract(eye);
+      double forward = -d.dot(zAxis);
+      if (forward <= 1e-9) return false;
+      double scale = orthographic ? 1.0 : forward;
+      double screenX = d.dot(xAxis) / (scale * halfWidth);
+      double screenY = d.dot(yAxis) / (scale * halfHeight);
+      xy[0] = (screenX + 1.0) * 0.5 * width;
+      xy[1] = (1.0 - screenY) * 0.5 * height;
+      return true;
+    }
+
+    /**
+     * Pixel index p falls into, or -1 if it is behind or outside the view.
+     */
+    int pixelOf(Point3 p, double[] xy) {
+      if (!project(p, xy)) return -1;
+      int x = (int) Math.floor(xy[0]);
+      int y = (int) Math.floor(xy[1]);
+      if (x < 0 || y < 0 || x >= width || y >= height) return -1;
+      return y * width + x;
+    }
+
+    Vector3 directionTo(Point3 p) {
+      return orthographic ? zAxis.negate() : p.subtract(eye).normalize();
+    }
+  }
+
+  private static final class Frame {
+    EMShape[] shapes;
+    float[] depths;
+    int[] colors;
+    float[] origins;
+    // Unit view direction at the origin when it was shaded
+    float[] directions;
+  }
+
+  private final int width;
+  private final int height;
+  private final double depthTolerance;
+  private final double minCosAngle;
+  private Frame previous;
+  private Frame current;
+  private View previousView;
+  private View currentView;
+  private int reused;
+  private int traced;
+  private final double[] xy = new double[2];
+
+  /**
+   * @param depthTolerance relative depth difference still taken as the
+   *        same surface point, e.g. 0.01
+   * @param maxAngleDegrees largest change of view direction at a point
+   *        before it is shaded again
+   */
+  public TemporalCache(int width, int height, double depthTolerance, double maxAngleDegrees) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Invalid cache size: " + width + "x" + height);
+    }
+    this.width = width;
+    this.height = height;
+    this.depthTolerance = Math.max(0.0, depthTolerance);
+    this.minCosAngle = Math.cos(Math.toRadians(Math.max(0.0, Math.min(180.0, maxAngleDegrees))));
+    this.current = newFrame();
+  }
+
+  private Frame newFrame() {
+    int n = width * height;
+    Frame frame = new Frame();
+    frame.shapes = new EMShape[n];
+    frame.depths = new float[n];
+    frame.colors = new int[n];
+    frame.origins = new float[n * 3];
+    frame.directions = new float[n * 3];
+    return frame;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Forgets the cached frame, e.g. after lights or objects changed; the
+   * next frame is traced in full.
+   */
+  public void invalidate() {
+    previous = null;
+    previousView = null;
+    currentView = null;
+  }
+
+  /**
+   * Pixels reused and traced in the last frame.
+   */
+  public int getReusedPixels() {
+    return reused;
+  }
+
+  public int getTracedPixels() {
+    return traced;
+  }
+
+  /**
+   * Starts a frame seen from the given camera; the frame finished last
+   * becomes the one looked up.
+   */
+  void beginFrame(Camera camera, double fov) {
+    if (currentView != null) {
+      Frame swap = previous != null ? previous : newFrame();
+      previous = current;
+      previousView = currentView;
+      current = swap;
+    }
+    currentView = new View(camera, fov, width, height);
+    reused = 0;
+    traced = 0;
+  }
+
+  /**
+   * Tries to reuse a cached color for the pixel whose primary ray hit the
+   * point. On success the color is recorded for the pixel and can be read
+   * with {@link #colorAt}; otherwise the pixel must be traced.
+   */
+  boolean reuse(int pixel, EMShape shape, Point3 point) {
+    if (previous == null) return false;
+    int old = previousView.pixelOf(point, xy);
+    if (old < 0 || previous.shapes[old] != shape) return false;
+
+    double expected = previousView.depth(point);
+    if (Math.abs(previous.depths[old] - expected) > depthTolerance * expected) return false;
+
+    // The color was shaded at the origin point; it must land within a
+    // pixel of this one, or textures would drift frame after frame
+    int o = old * 3;
+    Point3 origin = new Point3(previous.origins[o], previous.origins[o + 1], previous.origins[o + 2]);
+    if (!currentView.project(origin, xy)) return false;
+    double dx = xy[0] - (pixel % width + 0.5);
+    double dy = xy[1] - (pixel / width + 0.5);
+    if (dx * dx + dy * dy > 1.0) return false;
+
+    Vector3 direction = currentView.directionTo(point);
+    double cos = previous.directions[o] * direction.x + previous.directions[o + 1] * direction.y
+    + previous.directions[o + 2] * direction.z;
+    if (cos < minCosAngle) return false;
+
+    int c = pixel * 3;
+    current.shapes[pixel] = shape;
+    current.depths[pixel] = (float) currentView.depth(point);
+    current.colors[pixel] = previous.colors[old];
+    current.origins[c] = previous.origins[o];
+    current.origins[c + 1] = previous.origins[o + 1];
+    current.origins[c + 2] = previous.origins[o + 2];
+    current.directions[c] = previous.directions[o];
+    current.directions[c + 1] = previous.directions[o + 1];
+    current.directions[c + 2] = previous.directions[o + 2];
+    reused++;
+    return true;
+  }
+
+  int colorAt(int pixel) {
+    return current.colors[pixel];
+  }
+
+  /**
+   * Records a freshly traced pixel; shape is null for pixels that must
+   * never be reused.
+   */
+  void store(int pixel, EMShape shape, Point3 point, int color) {
+    current.shapes[pixel] = shape;
+    current.colors[pixel] = color;
+    if (shape != null) {
+      int c = pixel * 3;
+      current.depths[pixel] = (float) currentView.depth(point);
+      current.origins[c] = (float) point.x;
+      current.origins[c + 1] = (float) point.y;
+      current.origins[c + 2] = (float) point.z;
+      Vector3 direction = currentView.directionTo(point);
+      current.directions[c] = (float) direction.x;
+      current.directions[c + 1] = (float) direction.y;
+      current.directions[c + 2] = (float) direction.z;
+    }
+    traced++;
+  }
+
+}
@@ -0,0 +1,127 @@
+package net.elena.murat.lovert;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import net.elena.murat.util.ColorUtil;
+
+/**
+ * Turns an {@link HdrFramebuffer} into 8-bit pixels: exposure, a tone
+ * curve, then gamma. With CLAMP, exposure 1 and gamma 1 the result is
+ * what {@link ElenaMuratRayTracer#render()} writes directly, up to float
+ * rounding.
+ * <p>
+ * Also runnable on a saved PFM to try exposures without re-rendering:
+ * {@code java net.elena.murat.lovert.ToneMapper in.pfm out.png [clamp|reinhard|aces] [exposure] [gamma]}
+ * </p>
+ */
+public class ToneMapper {
+
+  public enum Operator {
+    CLAMP, REINHARD, ACES;
+
+    public static Operator parse(String name) {
+      try {
+        return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Unknown tone map operator: " + name + " (use clamp, reinhard or aces)");
+      }
+    }
+  }
+
+  private final Operator operator;
+  private final float exposure;
+  private final float inverseGamma;
+
+  public ToneMapper(Operator operator, double exposure, double gamma) {
+    if (gamma <= 0) {
+      throw new IllegalArgumentException("Gamma must be positive: " + gamma);
+    }
+    this.operator = operator;
+    this.exposure = (float) exposure;
+    this.inverseGamma = (float) (1.0 / gamma);
+  }
+
+  public int toARGB(float r, float g, float b, float a) {
+    int aInt = (int) (Math.max(0, Math.min(1, a)) * 255);
+    return (aInt << 24) | (channel(r) << 16) | (channel(g) << 8) | channel(b);
+  }
+
+  private int channel(float value) {
+    float v = value * exposure;
+    switch (operator) {
+      case REINHARD: v = ColorUtil.reinhardToneMap(Math.max(0f, v)); break;
+      case ACES: v = ColorUtil.acesToneMap(v); break;
+      default: break;
+    }
+    double clamped = Math.max(0, Math.min(1, v));
+    if (inverseGamma != 1f) clamped = Math.pow(clamped, inverseGamma);
+    return (int) (clamped * 255);
+  }
+
+  public BufferedImage toImage(HdrFramebuffer frame) {
+    int width = frame.getWidth();
+    int height = frame.getHeight();
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    float[] row = new float[width * HdrFramebuffer.CHANNELS];
+    int[] argb = new int[width];
+    for (int y = 0; y < height; y++) {
+      mapRow(frame, y, row, argb, 0);
+      image.setRGB(0, y, width, 1, argb, 0, width);
+    }
+    return image;
+  }
+
+  /**
+   * Streams the mapped frame into a sink, e.g. a {@link PngStreamWriter},
+   * without building a full 8-bit image.
+   */
+  public void writeTo(HdrFramebuffer frame, RenderSink sink, int bandHeight) throws IOException {
+    int width = frame.getWidth();
+    int height = frame.getHeight();
+    bandHeight = Math.max(1, Math.min(bandHeight, height));
+    float[] row = new float[width * HdrFramebuffer.CHANNELS];
+    int[] band = new int[width * bandHeight];
+
+    sink.begin(width, height);
+    for (int y0 = 0; y0 < height; y0 += bandHeight) {
+      int rows = Math.min(bandHeight, height - y0);
+      for (int i = 0; i < rows; i++) {
+        mapRow(frame, y0 + i, row, band, i * width);
+      }
+      sink.writeRows(y0, rows, band);
+    }
+    sink.finish();
+  }
+
+  private void mapRow(HdrFramebuffer frame, int y, float[] row, int[] argb, int offset) {
+    frame.getRow(y, row);
+    for (int x = 0; x < frame.getWidth(); x++) {
+      int i = x * HdrFramebuffer.CHANNELS;
+      argb[offset + x] = toARGB(row[i], row[i + 1], row[i + 2], row[i + 3]);
+    }
+  }
+
+  public static void main(String[] args) {
+    if (args.length < 2) {
+      System.err.println("Usage: java net.elena.murat.lovert.ToneMapper <in.pfm> <out.png> [clamp|reinhard|aces] [exposure] [gamma]");
+      System.exit(1);
+    }
+    try {
+      Operator operator = args.length > 2 ? Operator.parse(args[2]) : Operator.ACES;
+      double exposure = args.length > 3 ? Double.parseDouble(args[3]) : 1.0;
+      double gamma = args.length > 4 ? Double.parseDouble(args[4]) : 2.2;
+
+      HdrFramebuffer frame = HdrImageIO.readPfm(new File(args[0]));
+      try (PngStreamWriter writer = new PngStreamWriter(new File(args[1]))) {
+        new ToneMapper(operator, exposure, gamma).writeTo(frame, writer, 64);
+      }
+      System.out.println("Tone mapped " + args[0] + " -> " + args[1]);
+      } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(-1);
+    }
+  }
+
+}
@@ -0,0 +1,29 @@
+package net.elena.murat.material;
+
+import net.elena.murat.lovert.Animatable;
+
+/**
+ * Base of the materials that animate by themselves. They follow the wall
+ * clock from their creation until {@link #update} is first called, as
+ * {@link net.elena.murat.lovert.SequenceRenderer} does between frames;
+ * from then on they follow the simulated time, so every frame of a
+ * sequence is reproducible.
+ */
+public abstract class AnimatedMaterial implements Material, Animatable {
+
+  private final long startTime = System.currentTimeMillis();
+  private double simulatedMillis = -1.0;
+
+  @Override
+  public void update(double deltaTime) {
+    simulatedMillis = Math.max(0.0, simulatedMillis) + deltaTime * 1000.0;
+  }
+
+  /**
+   * Animation time in milliseconds.
+   */
+  protected final double elapsedMillis() {
+    return simulatedMillis >= 0.0 ? simulatedMillis : System.currentTimeMillis() - startTime;
+  }
+
+}
@@ -8,12 +8,13 @@ import java.util.Random;
 import net.elena.murat.math.*;
 import net.elena.murat.light.*;
 import net.elena.murat.util.ColorUtil;
+import net.elena.murat.util.TextAtlas;
 
 /**
  * AnodizedTextMaterial - Combines anodized metal material with text/image texture support.
  * Renders text or images on an iridescent, metallic anodized surface.
  */
-public class AnodizedTextMaterial implements Material {
+public class AnodizedTextMaterial extends TextAtlasMaterial {
   
   // --- TEXTURE PROPERTIES (from TextDielectricMaterial) ---
   private final String word;
@@ -31,7 +32,6 @@ public class AnodizedTextMaterial implements Material {
   private final int imageHeight;
   private final int imageUOffset;
   private final int imageVOffset;
-  private BufferedImage texture;
   
   // --- ANODIZED METAL PROPERTIES (from AnodizedMetalMaterial) ---
   private final Color baseColor;
@@ -80,7 +80,7 @@ public class AnodizedTextMaterial implements Material {
     this.objectTransform = Matrix4.identity();
     
     // Generate texture
-    this.texture = createTexture();
+    this.texture = acquireTexture();
   }
   
   /**
@@ -94,14 +94,20 @@ public class AnodizedTextMaterial implements Material {
   }
   
   /**
-   * Creates the texture image with the word drawn centered, optionally with a gradient and background image.
+   * Returns the shared atlas texture for this word, font and color setup.
+   * Materials with identical settings share a single rasterization.
+   */
+  private TextAtlas.Raster acquireTexture() {
+    String key = TextAtlas.key("AnodizedTextMaterial", word, textColor, gradientColor, gradientType, fontFamily, fontStyle, fontSize,
+      uOffset, vOffset, imageObject, imageWidth, imageHeight, imageUOffset, imageVOffset);
+    return TextAtlas.acquire(key, 1024, 1024, (g2d, width, height) -> paintTexture(g2d, width));
+  }
+  
+  /**
+   * Draws the texture image with the word drawn centered, optionally with a gradient and background image.
    * The texture size is fixed at 1024x1024 pixels.
    */
-  private BufferedImage createTexture() {
-    final int size = 1024;
-    BufferedImage texture = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
-    Graphics2D g2d = texture.createGraphics();
-    
+  private void paintTexture(Graphics2D g2d, int size) {
     g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
     g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
     
@@ -141,9 +147,6 @@ public class AnodizedTextMaterial implements Material {
     }
     
     g2d.drawString(word, x, y);
-    g2d.dispose();
-    
-    return texture;
   }
   
   private GradientPaint createGradient(float x, float y, float width, float height) {
@@ -174,50 +177,69 @@ public class AnodizedTextMaterial implements Material {
   @Override
   public Color getColorAt(Point3 worldPoint, Vector3 worldNormal, Light light, Point3 viewerPos) {
     // 1. Get texture color at this point
-    Point3 localPoint = objectTransform.inverse().transformPoint(worldPoint);
-    Color textureColor = getTextureColor(localPoint, worldNormal);
+    int textureArgb = getTextureArgb(worldNormal);
     
     // 2. If texture has alpha=0, use base anodized color only
-    if (textureColor.getAlpha() == 0) {
-      textureColor = baseColor;
+    if ((textureArgb >>> 24) == 0) {
+      textureArgb = baseColor.getRGB();
     }
     
     // 3. Apply iridescence effect to the combined color
-    Color surfaceColor = calculateIridescentColor(worldPoint, worldNormal, viewerPos, textureColor);
+    int surfaceArgb = calculateIridescentArgb(worldPoint, worldNormal, viewerPos, textureArgb);
     
-    // 4. Handle lighting (same as AnodizedMetalMaterial)
+    // 4. Handle lighting (same as AnodizedMetalMaterial), per channel as
+    // ColorUtil.multiplyColors and ColorUtil.combineColors do
     LightProperties props = LightProperties.getLightProperties(light, worldPoint);
-    if (props == null) return surfaceColor;
+    if (props == null) return colorOf(surfaceArgb);
     
-    Color ambient = ColorUtil.multiplyColors(surfaceColor, props.color, ambientCoeff);
+    Color lightColor = props.color;
+    int surfaceR = (surfaceArgb >> 16) & 0xFF;
+    int surfaceG = (surfaceArgb >> 8) & 0xFF;
+    int surfaceB = surfaceArgb & 0xFF;
+    int ambientR = scale(surfaceR, lightColor.getRed(), ambientCoeff);
+    int ambientG = scale(surfaceG, lightColor.getGreen(), ambientCoeff);
+    int ambientB = scale(surfaceB, lightColor.getBlue(), ambientCoeff);
     
     if (light instanceof ElenaMuratAmbientLight) {
-      return ambient;
+      return colorOf(rgb(ambientR, ambientG, ambientB));
     }
     
     double NdotL = Math.max(0, worldNormal.dot(props.direction));
-    Color diffuse = ColorUtil.multiplyColors(surfaceColor, props.color, diffuseCoeff * NdotL * props.intensity);
+    double diffuseFactor = diffuseCoeff * NdotL * props.intensity;
     
     Vector3 viewDir = viewerPos.subtract(worldPoint).normalize();
     Vector3 reflectDir = props.direction.negate().reflect(worldNormal);
     double RdotV = Math.max(0, reflectDir.dot(viewDir));
     double specFactor = Math.pow(RdotV, shininess) * props.intensity;
-    Color specular = ColorUtil.multiplyColors(specularColor, props.color, specularCoeff * specFactor);
+    double specularFactor = specularCoeff * specFactor;
     
-    return ColorUtil.combineColors(ambient, diffuse, specular);
+    int r = Math.min(255, Math.min(255, ambientR + scale(surfaceR, lightColor.getRed(), diffuseFactor))
+      + scale(specularColor.getRed(), lightColor.getRed(), specularFactor));
+    int g = Math.min(255, Math.min(255, ambientG + scale(surfaceG, lightColor.getGreen(), diffuseFactor))
+      + scale(specularColor.getGreen(), lightColor.getGreen(), specularFactor));
+    int b = Math.min(255, Math.min(255, ambientB + scale(surfaceB, lightColor.getBlue(), diffuseFactor))
+      + scale(specularColor.getBlue(), lightColor.getBlue(), specularFactor));
+    return colorOf(rgb(r, g, b));
+  }
+  
+  /**
+   * One channel of ColorUtil.multiplyColors(base, light, factor).
+   */
+  private static int scale(int base, int light, double factor) {
+    return (int) Math.min(255, Math.max(0, base * light / 255.0 * factor));
   }
   
   /**
    * Modified iridescence that blends baseColor with textureColor based on view angle
    */
-  private Color calculateIridescentColor(Point3 worldPoint, Vector3 normal, Point3 viewerPos, Color textureColor) {
+  private int calculateIridescentArgb(Point3 worldPoint, Vector3 normal, Point3 viewerPos, int textureArgb) {
     Vector3 viewDir = viewerPos.subtract(worldPoint).normalize();
     double viewAngle = Math.abs(viewDir.dot(normal));
     
     // Extract RGB from texture
-    int r = textureColor.getRed();
-    int g = textureColor.getGreen();
-    int b = textureColor.getBlue();
+    int r = (textureArgb >> 16) & 0xFF;
+    int g = (textureArgb >> 8) & 0xFF;
+    int b = textureArgb & 0xFF;
     
     // Blend with iridescent shift based on view angle
     if (viewAngle < 0.3) {
@@ -237,16 +259,14 @@ public class AnodizedTextMaterial implements Material {
       b = (int)(b * 0.8);
     }
     
-    return new Color(
-      Math.min(255, Math.max(0, r)),
-      Math.min(255, Math.max(0, g)),
-      Math.min(255, Math.max(0, b)),
-      textureColor.getAlpha() // Preserve alpha
-    );
+    return (textureArgb & 0xFF000000) // Preserve alpha
+      | (Math.min(255, Math.max(0, r)) << 16)
+      | (Math.min(255, Math.max(0, g)) << 8)
+      | Math.min(255, Math.max(0, b));
   }
   
-  private Color getTextureColor(Point3 localPoint, Vector3 worldNormal) {
-    if (texture == null) return new Color(0, 0, 0, 0);
+  private int getTextureArgb(Vector3 worldNormal) {
+    if (texture == null) return 0;
     
     Vector3 dir = worldNormal.normalize();
     double phi = Math.atan2(dir.z, dir.x);
@@ -258,16 +278,7 @@ public class AnodizedTextMaterial implements Material {
     
     u = (u + 0.25) % 1.0; // Offset for better alignment
     
-    int texX = (int) (u * texture.getWidth());
-    texX = texX % texture.getWidth();
-    if (texX < 0) texX += texture.getWidth();
-    
-    int texY = (int) (v * texture.getHeight());
-    if (texY < 0 || texY >= texture.getHeight()) {
-      return new Color(0, 0, 0, 0);
-    }
-    
-    return new Color(texture.getRGB(texX, texY), true);
+    return sampleWrapped(u, v);
   }
   
   // --- MATERIAL INTERFACE ---
@@ -293,7 +304,7 @@ public class AnodizedTextMaterial implements Material {
   
   // --- GETTERS ---
   public Color getBaseColor() { return baseColor; }
-  public BufferedImage getTexture() { return texture; }
+  public BufferedImage getTexture() { return texture != null ? texture.toBufferedImage() : null; }
   
   @Override
   public String toString() {
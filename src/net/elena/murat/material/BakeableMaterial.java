@@ -0,0 +1,30 @@
+package net.elena.murat.material;
+
+/**
+ * A procedural material whose pattern can be precomputed into a
+ * {@link PatternBake} and looked up instead of evaluated at shade time.
+ * <p>
+ * The pattern is the view and light independent part of the material,
+ * expressed as up to three values at a point in the object's local space.
+ * What the values mean is up to the material (usually an RGB color in
+ * the 0-255 range); lighting is still computed live from them.
+ * </p>
+ */
+public interface BakeableMaterial extends Material {
+
+  /**
+   * Evaluates the live procedural pattern at a local-space point.
+   * Must be thread-safe; bakes are filled in parallel.
+   * @param out receives the pattern values, length 3
+   */
+  void evaluatePattern(double x, double y, double z, double[] out);
+
+  /**
+   * Installs a bake that replaces the live pattern, or null to go back
+   * to live evaluation.
+   */
+  void setPatternBake(PatternBake bake);
+
+  PatternBake getPatternBake();
+
+}
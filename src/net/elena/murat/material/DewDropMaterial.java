@@ -5,6 +5,7 @@ import java.awt.Color;
 import net.elena.murat.math.*;
 import net.elena.murat.light.*;
 import net.elena.murat.util.ColorUtil;
+import net.elena.murat.util.FastNoise;
 
 /**
  * Optimized dew drop material
@@ -100,7 +101,7 @@ public class DewDropMaterial implements Material {
   
   private boolean hasDewDrop(Point3 point) {
     Vector3 normal = point.toVector3().normalize();
-    double noise = simpleNoise(normal.x * 100, normal.y * 100, normal.z * 100);
+    double noise = FastNoise.linearHash(normal.x * 100, normal.y * 100, normal.z * 100);
     return noise > (1.0 - dropDensity);
   }
   
@@ -150,12 +151,6 @@ public class DewDropMaterial implements Material {
     return clamp(value, 0, 1);
   }
   
-  private double simpleNoise(double x, double y, double z) {
-    // Simple hash function
-    int hash = (int)(x * 127 + y * 311 + z * 571);
-    return (hash & 0x7FFFFFFF) / 2147483647.0;
-  }
-  
   @Override public double getReflectivity() { return reflectivity; }
   @Override public double getIndexOfRefraction() { return ior; }
   @Override public double getTransparency() { return transparency; }
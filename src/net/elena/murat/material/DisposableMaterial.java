@@ -0,0 +1,16 @@
+package net.elena.murat.material;
+
+/**
+ * A material that holds a shared resource, such as a {@link
+ * net.elena.murat.util.TextAtlas} raster, which should be given back as
+ * soon as the material leaves the scene rather than when it is collected.
+ */
+public interface DisposableMaterial extends Material {
+
+  /**
+   * Releases the shared resources. The material must not be rendered
+   * afterwards; calling dispose again does nothing.
+   */
+  void dispose();
+
+}
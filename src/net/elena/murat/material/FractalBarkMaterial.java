@@ -5,8 +5,9 @@ import java.awt.Color;
 import net.elena.murat.math.*;
 import net.elena.murat.light.*;
 
-public class FractalBarkMaterial implements Material {
+public class FractalBarkMaterial implements BakeableMaterial {
   private Matrix4 objectInverseTransform;
+  private PatternBake patternBake = null;
   private double roughness=0.1;
   private final double reflectivity=clamp(0.1 * roughness, 0.0, 1.0);
   
@@ -26,8 +27,29 @@ public class FractalBarkMaterial implements Material {
   }
   
   // Fractal pattern between 0.0-1.0
-  private double fractalNoise(Point3 p) {
-    return clamp(Math.abs(Math.sin(30*p.x) * Math.cos(20*p.z) * Math.sin(5*p.y)), 0.0, 1.0);
+  private double fractalNoise(double x, double y, double z) {
+    return clamp(Math.abs(Math.sin(30*x) * Math.cos(20*z) * Math.sin(5*y)), 0.0, 1.0);
+  }
+  
+  /**
+   * Bakes the fractal value n into the first channel; the bark color
+   * depends on the light color and is still computed live.
+   */
+  @Override
+  public void evaluatePattern(double x, double y, double z, double[] out) {
+    out[0] = fractalNoise(x, y, z);
+    out[1] = 0.0;
+    out[2] = 0.0;
+  }
+  
+  @Override
+  public void setPatternBake(PatternBake bake) {
+    this.patternBake = bake;
+  }
+  
+  @Override
+  public PatternBake getPatternBake() {
+    return patternBake;
   }
   
   @Override
@@ -39,7 +61,12 @@ public class FractalBarkMaterial implements Material {
     
     // Fractal pattern (guaranteed between 0.0-1.0 range)
     Point3 localPoint = objectInverseTransform.transformPoint(worldPoint);
-    double n = fractalNoise(localPoint);
+    double n;
+    if (patternBake != null) {
+      n = clamp(patternBake.sample(localPoint)[0], 0.0, 1.0);
+      } else {
+      n = fractalNoise(localPoint.x, localPoint.y, localPoint.z);
+    }
     
     // Base bark color (guaranteed between 0-255 range)
     int r = clamp((int)(100 + 100*n * (lightColor.getRed()/255.0)), 0, 255);
@@ -5,10 +5,9 @@ import java.awt.Color;
 import net.elena.murat.light.Light;
 import net.elena.murat.math.*;
 
-public class FractalFireMaterial implements Material {
+public class FractalFireMaterial extends AnimatedMaterial {
   private final int iterations;
   private final double chaos;
-  private final long startTime;
   private final double scale;
   private final double speed;
   
@@ -17,13 +16,12 @@ public class FractalFireMaterial implements Material {
     this.chaos = Math.max(0.1, Math.min(2.0, chaos));         // Chaos parameter has wider range
     this.scale = Math.max(0.5, Math.min(3.0, scale));         // Scale is better adjusted
     this.speed = Math.max(0.1, Math.min(2.0, speed));        // Animation speed added
-    this.startTime = System.currentTimeMillis();
   }
   
   @Override
   public Color getColorAt(Point3 point, Vector3 normal, Light light, Point3 viewerPos) {
     // 1. Time-based animation (for smoother movement)
-    double time = (System.currentTimeMillis() - startTime) * 0.0005 * speed;
+    double time = elapsedMillis() * 0.0005 * speed;
     
     // 2. Scale the point and offset from center (for more interesting patterns)
     double x = (point.x - 0.5) * scale;
@@ -7,12 +7,13 @@ import java.util.Random;
 import net.elena.murat.math.*;
 import net.elena.murat.light.Light;
 import net.elena.murat.util.ColorUtil;
+import net.elena.murat.util.TextAtlas;
 
 /**
  * GhostTextMaterial - Transparent ghost material with text and image texture support
  * Maintains original constructor signatures while adding dielectric properties
  */
-public class GhostTextMaterial implements Material {
+public class GhostTextMaterial extends TextAtlasMaterial {
   
   // Original texture properties (DO NOT CHANGE NAMES)
   private final String word;
@@ -29,7 +30,6 @@ public class GhostTextMaterial implements Material {
   private final int imageHeight;
   private final int imageUOffset;
   private final int imageVOffset;
-  private BufferedImage texture;
   
   // New transparent material properties
   //private final double baseTransparency;
@@ -77,7 +77,7 @@ public class GhostTextMaterial implements Material {
     
     this.random = new Random();
     this.objectTransform = new Matrix4().identity();
-    this.texture = createTexture();
+    this.texture = acquireTexture();
   }
   
   /**
@@ -117,7 +117,7 @@ public class GhostTextMaterial implements Material {
     
     this.random = new Random();
     this.objectTransform = new Matrix4().identity();
-    this.texture = createTexture();
+    this.texture = acquireTexture();
   }
   
   /**
@@ -131,13 +131,19 @@ public class GhostTextMaterial implements Material {
   }
   
   /**
-   * Creates the texture (ORIGINAL METHOD - DO NOT CHANGE)
+   * Returns the shared atlas texture for this word, font and color setup.
+   * Materials with identical settings share a single rasterization.
    */
-  private BufferedImage createTexture() {
-    final int size = 1024;
-    BufferedImage texture = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
-    Graphics2D g2d = texture.createGraphics();
-    
+  private TextAtlas.Raster acquireTexture() {
+    String key = TextAtlas.key("GhostTextMaterial", word, textColor, gradientColor, gradientType, fontFamily, fontStyle, fontSize,
+      uOffset, vOffset, imageObject, imageWidth, imageHeight, imageUOffset, imageVOffset);
+    return TextAtlas.acquire(key, 1024, 1024, (g2d, width, height) -> paintTexture(g2d, width));
+  }
+  
+  /**
+   * Draws the texture (ORIGINAL METHOD - DO NOT CHANGE)
+   */
+  private void paintTexture(Graphics2D g2d, int size) {
     g2d.setComposite(AlphaComposite.Clear);
     g2d.clearRect(0, 0, size, size);
     g2d.setComposite(AlphaComposite.SrcOver);
@@ -180,9 +186,6 @@ public class GhostTextMaterial implements Material {
     }
     
     g2d.drawString(word, x, y);
-    g2d.dispose();
-    
-    return texture;
   }
   
   private GradientPaint createGradient(float x, float y, float width, float height) {
@@ -218,41 +221,40 @@ public class GhostTextMaterial implements Material {
    */
   @Override
   public Color getColorAt(Point3 point, Vector3 normal, Light light, Point3 viewerPoint) {
-    Color backgroundColor = calculateBackgroundColor(point, normal, light, viewerPoint);
+    int backgroundArgb = calculateBackgroundArgb(point, normal, light, viewerPoint);
     
-    Point3 localPoint = objectTransform.inverse().transformPoint(point);
-    Color textureColor = getTextureColor(localPoint, normal);
+    int textureArgb = getTextureArgb(normal);
     
-    if (textureColor.getAlpha() == 0) {
+    if ((textureArgb >>> 24) == 0) {
       //this.transparency = this.transparency * 1.2; // %20
-      return backgroundColor;
+      return colorOf(backgroundArgb);
     }
     
-    float textureAlpha = textureColor.getAlpha() / 255.0f;
+    float textureAlpha = (textureArgb >>> 24) / 255.0f;
     
-    float r = (textureColor.getRed() / 255.0f * textureAlpha) +
-    (backgroundColor.getRed() / 255.0f * (1 - textureAlpha));
-    float g = (textureColor.getGreen() / 255.0f * textureAlpha) +
-    (backgroundColor.getGreen() / 255.0f * (1 - textureAlpha));
-    float b = (textureColor.getBlue() / 255.0f * textureAlpha) +
-    (backgroundColor.getBlue() / 255.0f * (1 - textureAlpha));
+    float r = (((textureArgb >> 16) & 0xFF) / 255.0f * textureAlpha) +
+    (((backgroundArgb >> 16) & 0xFF) / 255.0f * (1 - textureAlpha));
+    float g = (((textureArgb >> 8) & 0xFF) / 255.0f * textureAlpha) +
+    (((backgroundArgb >> 8) & 0xFF) / 255.0f * (1 - textureAlpha));
+    float b = ((textureArgb & 0xFF) / 255.0f * textureAlpha) +
+    ((backgroundArgb & 0xFF) / 255.0f * (1 - textureAlpha));
     
     // Alpha: background transparency + texture visibility
-    float a = Math.max(backgroundColor.getAlpha() / 255.0f, textureAlpha);
+    float a = Math.max((backgroundArgb >>> 24) / 255.0f, textureAlpha);
     
     //this.transparency = baseTransparency;
     
-    return new Color(r, g, b, a);
+    return colorOf(argb(r, g, b, a));
   }
   
-  private Color calculateBackgroundColor(Point3 point, Vector3 normal, Light light, Point3 viewerPoint) {
+  private int calculateBackgroundArgb(Point3 point, Vector3 normal, Light light, Point3 viewerPoint) {
     int a = (int)(transparency * 255.0);
     a = ColorUtil.clampColorValue(a);
-    return new Color(0, 0, 0, a);
+    return a << 24;
   }
   
-  private Color getTextureColor(Point3 localPoint, Vector3 worldNormal) {
-    if (texture == null) return new Color(textColor.getRed(), textColor.getGreen(), textColor.getBlue(), 255);
+  private int getTextureArgb(Vector3 worldNormal) {
+    if (texture == null) return textColor.getRGB() | 0xFF000000;
     
     Vector3 dir = worldNormal.normalize();
     
@@ -265,7 +267,7 @@ public class GhostTextMaterial implements Material {
     // Kenarları atla - merkeze yakın pikselleri kullan
     double edgeMargin = 0.05;
     if (u < edgeMargin || u > 1.0 - edgeMargin || v < edgeMargin || v > 1.0 - edgeMargin) {
-      return new Color(0, 0, 0, 0); // Kenarlar şeffaf
+      return 0; // Kenarlar şeffaf
     }
     
     int texX = (int) (u * texture.getWidth());
@@ -274,8 +276,7 @@ public class GhostTextMaterial implements Material {
     texX = Math.max(0, Math.min(texture.getWidth() - 1, texX));
     texY = Math.max(0, Math.min(texture.getHeight() - 1, texY));
     
-    int rgb = texture.getRGB(texX, texY);
-    return new Color(rgb, true);
+    return texture.getRGB(texX, texY);
   }
   
   // Material interface methods
@@ -6,8 +6,9 @@ import java.awt.image.*;
 import java.util.Random;
 import net.elena.murat.light.*;
 import net.elena.murat.math.*;
+import net.elena.murat.util.TextAtlas;
 
-public class GradientImageTextMaterial implements Material {
+public class GradientImageTextMaterial extends TextAtlasMaterial {
   private final Color bgStartColor;
   private final Color bgEndColor;
   private final Color textStartColor;
@@ -15,6 +16,7 @@ public class GradientImageTextMaterial implements Material {
   private final String text;
   private final Font font;
   private final StripeDirection direction;
+  private final StripeDirection backgroundDirection;
   private final double reflectivity;
   private final double ior;
   private final double transparency;
@@ -26,7 +28,6 @@ public class GradientImageTextMaterial implements Material {
   private final BufferedImage bgImage;
   private final float bgAlpha;
   private final float textAlpha;
-  private BufferedImage texture;
   private final boolean isWrap;
   
   private Random random = new Random();
@@ -60,7 +61,12 @@ public class GradientImageTextMaterial implements Material {
     this.imgOffsetY = imgOffsetY;
     this.isWrap = isWrap;
     
-    this.texture = createCompositeTexture();
+    // Resolve a random background direction once so it can be part of the atlas key
+    this.backgroundDirection = (direction == StripeDirection.RANDOM)
+    ? StripeDirection.values()[random.nextInt(3)]
+    : direction;
+    
+    this.texture = acquireTexture();
   }
   
   // Simplified constructor with default parameters
@@ -105,24 +111,26 @@ public class GradientImageTextMaterial implements Material {
   }
   
   /**
-   * Creates a texture with cyclic (repeating) gradients for strong visual impact.
+   * Returns the shared atlas texture for this text, font and color setup.
+   * Materials with identical settings share a single rasterization.
+   */
+  private TextAtlas.Raster acquireTexture() {
+    String key = TextAtlas.key("GradientImageTextMaterial", bgStartColor, bgEndColor, textStartColor, textEndColor, text, font, direction, backgroundDirection,
+      xOffset, yOffset, bgImage, bgAlpha, textAlpha, imgOffsetX, imgOffsetY, isWrap);
+    return TextAtlas.acquire(key, 1024, 1024, (g2d, width, height) -> paintCompositeTexture(g2d, width));
+  }
+  
+  /**
+   * Draws a texture with cyclic (repeating) gradients for strong visual impact.
    * Uses GradientPaint with isCyclic=true to create wave-like color transitions
    * that remain visible even after spherical mapping and on low-resolution renders.
-   *
-   * @return A BufferedImage with repeating gradient patterns suitable for 3D materials.
    */
-  private BufferedImage createCompositeTexture() {
-    final int size = 1024;
-    BufferedImage texture = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
-    Graphics2D g2d = texture.createGraphics();
-    
+  private void paintCompositeTexture(Graphics2D g2d, int size) {
     g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
     g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
     
     // === 1. BACKGROUND: CYCLIC GRADIENT ===
-    StripeDirection bgDir = (direction == StripeDirection.RANDOM)
-    ? StripeDirection.values()[random.nextInt(3)]
-    : direction;
+    StripeDirection bgDir = backgroundDirection;
     
     Point2D bgStart = new Point2D.Float(0, 0);
     Point2D bgEnd;
@@ -214,8 +222,6 @@ public class GradientImageTextMaterial implements Material {
       g2d.drawString(text, x, y);
     }
     
-    g2d.dispose();
-    return texture;
   }
   
   private Point2D getEndPoint(int size, StripeDirection dir) {
@@ -264,14 +270,15 @@ public class GradientImageTextMaterial implements Material {
     Point3 localPoint = objectInverseTransform.transformPoint(worldPoint);
     Vector3 localNormal = objectInverseTransform.inverseTransposeForNormal().transformVector(worldNormal).normalize();
     
-    Color textureColor = getTextureColor(localPoint, localNormal);
-    if (textureColor.getAlpha() == 0) {
-      return new Color(0, 0, 0, 0);
+    int textureArgb = getTextureArgb(localPoint, localNormal);
+    int textureAlpha = textureArgb >>> 24;
+    if (textureAlpha == 0) {
+      return TRANSPARENT;
     }
     
-    double texR = textureColor.getRed() / 255.0;
-    double texG = textureColor.getGreen() / 255.0;
-    double texB = textureColor.getBlue() / 255.0;
+    double texR = ((textureArgb >> 16) & 0xFF) / 255.0;
+    double texG = ((textureArgb >> 8) & 0xFF) / 255.0;
+    double texB = (textureArgb & 0xFF) / 255.0;
     
     double rCombined = 0.0;
     double gCombined = 0.0;
@@ -302,12 +309,12 @@ public class GradientImageTextMaterial implements Material {
       }
     }
     
-    return new Color(
+    return colorOf(argb(
       (float)Math.min(1.0, Math.max(0.0, rCombined)),
       (float)Math.min(1.0, Math.max(0.0, gCombined)),
       (float)Math.min(1.0, Math.max(0.0, bCombined)),
-      textureColor.getAlpha() / 255.0f
-    );
+      textureAlpha / 255.0f
+    ));
   }
   
   /**
@@ -317,10 +324,10 @@ public class GradientImageTextMaterial implements Material {
    *
    * @param localPoint  The point on the surface in object space.
    * @param localNormal The surface normal (unused here, kept for interface).
-   * @return The color sampled from the texture.
+   * @return The packed ARGB color sampled from the texture.
    */
-  private Color getTextureColor(Point3 localPoint, Vector3 localNormal) {
-    if (texture == null) return bgStartColor;
+  private int getTextureArgb(Point3 localPoint, Vector3 localNormal) {
+    if (texture == null) return bgStartColor.getRGB();
     
     // Normalize direction vector from center to point
     Vector3 dir = new Vector3(localPoint.x, localPoint.y, localPoint.z).normalize();
@@ -337,18 +344,8 @@ public class GradientImageTextMaterial implements Material {
     // Flip V because BufferedImage has Y-down
     v = 1.0 - v;
     
-    // Wrap U for seamless tiling
-    int texX = (int)(u * texture.getWidth());
-    texX = texX % texture.getWidth();
-    if (texX < 0) texX += texture.getWidth();
-    
-    // Clamp V
-    int texY = (int)(v * texture.getHeight());
-    if (texY < 0 || texY >= texture.getHeight()) {
-      return new Color(0, 0, 0, 0);
-    }
-    
-    return new Color(texture.getRGB(texX, texY), true);
+    // Wrap U for seamless tiling, V outside the texture is transparent
+    return sampleWrapped(u, v);
   }
   
   @Override
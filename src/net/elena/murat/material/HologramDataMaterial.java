@@ -5,15 +5,13 @@ import java.awt.Color;
 import net.elena.murat.light.Light;
 import net.elena.murat.math.*;
 
-public class HologramDataMaterial implements Material {
+public class HologramDataMaterial extends AnimatedMaterial {
   private final double dataDensity;
   private final int resolution;
-  private final long startTime;
   
   public HologramDataMaterial(double dataDensity, int resolution) {
     this.dataDensity = Math.max(0.1, Math.min(1.0, dataDensity));
     this.resolution = Math.max(64, Math.min(512, resolution));
-    this.startTime = System.currentTimeMillis();
   }
   
   @Override
@@ -23,7 +21,7 @@ public class HologramDataMaterial implements Material {
     int gridY = (int)(point.z * resolution) % resolution;
     
     // 2. Time-based animation
-    double time = (System.currentTimeMillis() - startTime) * 0.001;
+    double time = elapsedMillis() * 0.001;
     int animOffset = (int)(time * 10) % 10;
     
     // 3. Data pattern (ASCII art like)
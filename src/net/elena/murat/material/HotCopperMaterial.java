@@ -5,6 +5,7 @@ import java.awt.Color;
 import net.elena.murat.math.*;
 import net.elena.murat.light.*;
 import net.elena.murat.util.ColorUtil;
+import net.elena.murat.util.FastNoise;
 
 public class HotCopperMaterial implements Material {
   private final Color copperColor;
@@ -65,8 +66,8 @@ public class HotCopperMaterial implements Material {
   }
   
   private Color calculatePatinaPattern(Point3 point) {
-    double noise1 = simplexNoise3D(point.x * 8, point.y * 8, point.z * 8);
-    double noise2 = simplexNoise3D(point.x * 3 + 5.3, point.y * 3 + 2.7, point.z * 3 + 1.9);
+    double noise1 = FastNoise.copperWaves(point.x * 8, point.y * 8, point.z * 8);
+    double noise2 = FastNoise.copperWaves(point.x * 3 + 5.3, point.y * 3 + 2.7, point.z * 3 + 1.9);
     
     double pattern = (noise1 * 0.7 + noise2 * 0.3 + 1) * 0.5;
     
@@ -87,13 +88,6 @@ public class HotCopperMaterial implements Material {
     }
   }
   
-  private double simplexNoise3D(double x, double y, double z) {
-    double value = Math.sin(x * 0.472) + Math.cos(y * 0.683) + Math.sin(z * 0.291);
-    value += Math.cos(x * 1.732 + y * 0.846) * 0.6;
-    value += Math.sin(y * 1.357 + z * 2.173) * 0.3;
-    return value % 1.0;
-  }
-  
   private Color interpolateColor(Color c1, Color c2, double t) {
     t = Math.max(0, Math.min(1, t));
     int r = (int)(c1.getRed() * (1-t) + c2.getRed() * t);
@@ -8,14 +8,16 @@ import java.util.Random;
 import net.elena.murat.math.*;
 import net.elena.murat.light.Light;
 import net.elena.murat.util.ColorUtil;
+import net.elena.murat.util.TextAtlas;
 
 /**
  * HybridTextMaterial — Combines dielectric material properties with text/image rendering.
  * Supports reflection, refraction, Fresnel effect, and textured text on curved surfaces.
  * Fully compatible with scene.txt loading and RayTracer integration.
  */
-public class HybridTextMaterial implements Material {
+public class HybridTextMaterial extends TextAtlasMaterial {
   private final Color glassTint = new Color(0.95f, 0.97f, 1.0f, 1.0f);
+  private static final Color SUBTLE_GLASS_TINT = new Color(0.98f, 0.99f, 1.0f); // Very subtle tint
   
   // --- TEXTURE PROPERTIES ---
   private final String word;
@@ -33,7 +35,6 @@ public class HybridTextMaterial implements Material {
   private final int imageHeight;
   private final int imageUOffset;
   private final int imageVOffset;
-  private BufferedImage texture;
   
   // --- DIELECTRIC PROPERTIES ---
   private Color diffuseColor;
@@ -107,7 +108,7 @@ public class HybridTextMaterial implements Material {
     this.objectTransform = new Matrix4().identity();
     
     // Generate texture with improved visibility
-    this.texture = createTexture();
+    this.texture = acquireTexture();
   }
   
   /**
@@ -123,14 +124,20 @@ public class HybridTextMaterial implements Material {
   }
   
   /**
-   * Creates the texture image with the word drawn centered, optionally with a gradient and background image.
+   * Returns the shared atlas texture for this word, font and color setup.
+   * Materials with identical settings share a single rasterization.
+   */
+  private TextAtlas.Raster acquireTexture() {
+    String key = TextAtlas.key("HybridTextMaterial", word, textColor, gradientColor, gradientType, fontFamily, fontStyle, fontSize,
+      uOffset, vOffset, imageObject, imageWidth, imageHeight, imageUOffset, imageVOffset);
+    return TextAtlas.acquire(key, 1024, 1024, (g2d, width, height) -> paintTexture(g2d, width));
+  }
+  
+  /**
+   * Draws the texture image with the word drawn centered, optionally with a gradient and background image.
    * The texture size is fixed at 1024x1024 pixels.
    */
-  private BufferedImage createTexture() {
-    final int size = 1024;
-    BufferedImage texture = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
-    Graphics2D g2d = texture.createGraphics();
-    
+  private void paintTexture(Graphics2D g2d, int size) {
     g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
     g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
     
@@ -177,9 +184,6 @@ public class HybridTextMaterial implements Material {
     }
     
     g2d.drawString(word, x, y);
-    g2d.dispose();
-    
-    return texture;
   }
   
   private GradientPaint createGradient(float x, float y, float width, float height) {
@@ -210,11 +214,10 @@ public class HybridTextMaterial implements Material {
   @Override
   public Color getColorAt(Point3 point, Vector3 normal, Light light, Point3 viewerPoint) {
     // 1. Get texture color at this point
-    Point3 localPoint = objectTransform.inverse().transformPoint(point);
-    Color textureColor = getTextureColor(localPoint, normal);
+    int textureArgb = getTextureArgb(normal);
     
     // 2. Check if this point is textured (text or image area)
-    boolean isTexturedArea = textureColor.getAlpha() > 50;
+    boolean isTexturedArea = (textureArgb >>> 24) > 50;
     
     // 3. Fresnel effect for dynamic properties
     Vector3 viewDir = viewerPoint.subtract(point).normalize();
@@ -223,28 +226,36 @@ public class HybridTextMaterial implements Material {
     this.currentReflectivity = Math.min(0.95, reflectivity + (fresnel * 0.4));
     this.currentTransparency = Math.max(0.05, transparency * (1.0 - fresnel * 0.3));
     
-    // 4. Different treatment for textured vs non-textured areas
+    // 4. Different treatment for textured vs non-textured areas.
+    // Channels are scaled and added as ColorUtil.multiplyColor and ColorUtil.add do.
     if (isTexturedArea) {
       // TEXTURED AREAS - Bright and vibrant with contrast boost
-      Color brightColor = ColorUtil.enhanceBrightnessAndContrast(textureColor, 1.3f, 1.2f);
+      int brightR = brighten((textureArgb >> 16) & 0xFF);
+      int brightG = brighten((textureArgb >> 8) & 0xFF);
+      int brightB = brighten(textureArgb & 0xFF);
       
       // Ambient component - normal
-      Color ambient = ColorUtil.multiplyColor(brightColor, ambientCoefficient * light.getIntensity());
+      double ambientScale = Math.max(0, Math.min(1, ambientCoefficient * light.getIntensity()));
       
       // Diffuse component - normal
       Vector3 lightDir = light.getDirectionTo(point).normalize();
       double NdotL = Math.max(0.0, normal.dot(lightDir));
-      Color diffuse = ColorUtil.multiplyColor(brightColor, diffuseCoefficient * NdotL * light.getIntensity());
+      double diffuseScale = Math.max(0, Math.min(1, diffuseCoefficient * NdotL * light.getIntensity()));
       
       // Specular component - normal
       Vector3 reflectDir = lightDir.reflect(normal);
       double RdotV = Math.max(0.0, reflectDir.dot(viewDir));
       double specFactor = Math.pow(RdotV, shininess);
-      Color specular = ColorUtil.multiplyColor(specularColor, specularCoefficient * specFactor * light.getIntensity());
+      double specularScale = Math.max(0, Math.min(1, specularCoefficient * specFactor * light.getIntensity()));
       
       // Combine components - prioritize texture
-      Color result = ColorUtil.add(ambient, ColorUtil.add(diffuse, specular));
-      return ColorUtil.clampColor(result);
+      int r = Math.min(255, (int) (brightR * ambientScale)
+        + Math.min(255, (int) (brightR * diffuseScale) + (int) (specularColor.getRed() * specularScale)));
+      int g = Math.min(255, (int) (brightG * ambientScale)
+        + Math.min(255, (int) (brightG * diffuseScale) + (int) (specularColor.getGreen() * specularScale)));
+      int b = Math.min(255, (int) (brightB * ambientScale)
+        + Math.min(255, (int) (brightB * diffuseScale) + (int) (specularColor.getBlue() * specularScale)));
+      return colorOf(rgb(r, g, b));
     }
     else {
       // GLASS AREAS - Normal lighting but ensure brightness
@@ -252,25 +263,44 @@ public class HybridTextMaterial implements Material {
       
       Vector3 lightDir = light.getDirectionTo(point).normalize();
       double diffuseFactor = Math.max(0.4, normal.dot(lightDir));
-      
-      Color diffuse = ColorUtil.multiplyColor(baseColor, diffuseFactor * light.getIntensity());
+      double diffuseScale = Math.max(0, Math.min(1, diffuseFactor * light.getIntensity()));
       
       // Normal specular for glass
       Vector3 reflectDir = lightDir.reflect(normal);
       double specularFactor = Math.pow(Math.max(0, viewDir.dot(reflectDir)), 40);
-      Color specular = ColorUtil.multiplyColor(specularColor, specularFactor * 0.4 * light.getIntensity());
+      double specularScale = Math.max(0, Math.min(1, specularFactor * 0.4 * light.getIntensity()));
       
       // Combine with light glass tint (not too strong)
-      Color result = ColorUtil.add(diffuse, specular);
-      Color glassTint = new Color(0.98f, 0.99f, 1.0f); // Very subtle tint
-      result = ColorUtil.multiplyColors(result, glassTint);
+      int r = Math.min(255, (int) (baseColor.getRed() * diffuseScale) + (int) (specularColor.getRed() * specularScale));
+      int g = Math.min(255, (int) (baseColor.getGreen() * diffuseScale) + (int) (specularColor.getGreen() * specularScale));
+      int b = Math.min(255, (int) (baseColor.getBlue() * diffuseScale) + (int) (specularColor.getBlue() * specularScale));
       
-      return ColorUtil.clampColor(result);
+      return colorOf(rgb(tint(r, SUBTLE_GLASS_TINT.getRed()),
+        tint(g, SUBTLE_GLASS_TINT.getGreen()),
+        tint(b, SUBTLE_GLASS_TINT.getBlue())));
     }
   }
   
-  private Color getTextureColor(Point3 localPoint, Vector3 worldNormal) {
-    if (texture == null) return textColor;
+  /**
+   * One channel of ColorUtil.enhanceBrightnessAndContrast(color, 1.3f, 1.2f).
+   */
+  private static int brighten(int c) {
+    c = Math.min(255, (int) (c * 1.3f));
+    float contrast = (1.2f - 1.0f) / 2.0f;
+    c = (int) ((c - 128) * 1.2f + 128 + contrast * 255);
+    return Math.max(0, Math.min(255, c));
+  }
+  
+  /**
+   * One channel of ColorUtil.multiplyColors(color, tint).
+   */
+  private static int tint(int c, int tint) {
+    float f = c / 255.0f * tint / 255.0f;
+    return (int) (f * 255 + 0.5);
+  }
+  
+  private int getTextureArgb(Vector3 worldNormal) {
+    if (texture == null) return textColor.getRGB();
     
     Vector3 dir = worldNormal.normalize();
     double phi = Math.atan2(dir.z, dir.x);
@@ -282,16 +312,7 @@ public class HybridTextMaterial implements Material {
     
     u = (u + 0.25) % 1.0; // Offset for alignment
     
-    int texX = (int) (u * texture.getWidth());
-    texX = texX % texture.getWidth();
-    if (texX < 0) texX += texture.getWidth();
-    
-    int texY = (int) (v * texture.getHeight());
-    if (texY < 0 || texY >= texture.getHeight()) {
-      return new Color(0, 0, 0, 0);
-    }
-    
-    return new Color(texture.getRGB(texX, texY), true);
+    return sampleWrapped(u, v);
   }
   
   // --- MATERIAL INTERFACE METHODS ---
@@ -335,7 +356,7 @@ public class HybridTextMaterial implements Material {
   public void setTransparency(double transparency) { this.transparency = transparency; }
   public void setReflectivity(double reflectivity) { this.reflectivity = reflectivity; }
   
-  public BufferedImage getTexture() { return texture; }
+  public BufferedImage getTexture() { return texture != null ? texture.toBufferedImage() : null; }
   
   @Override
   public String toString() {
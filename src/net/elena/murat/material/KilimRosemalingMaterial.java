@@ -6,12 +6,13 @@ import net.elena.murat.math.*;
 import net.elena.murat.light.*;
 import net.elena.murat.util.ColorUtil;
 
-public class KilimRosemalingMaterial implements Material {
+public class KilimRosemalingMaterial implements BakeableMaterial {
   private final Color kilimColor;
   private final Color rosemalingColor;
   private final Color accentColor;
   private final double patternIntensity;
   private Matrix4 objectTransform;
+  private PatternBake patternBake = null;
   
   private final double ambientCoeff = 0.5;
   private final double diffuseCoeff = 0.85;
@@ -43,7 +44,7 @@ public class KilimRosemalingMaterial implements Material {
   public Color getColorAt(Point3 worldPoint, Vector3 worldNormal, Light light, Point3 viewerPos) {
     Point3 objectPoint = objectTransform.inverse().transformPoint(worldPoint);
     
-    Color surfaceColor = calculateFusionPattern(objectPoint);
+    Color surfaceColor = (patternBake != null) ? new Color(patternBake.sampleRGB(objectPoint)) : calculateFusionPattern(objectPoint);
     
     LightProperties props = LightProperties.getLightProperties(light, worldPoint);
     if (props == null) return surfaceColor;
@@ -66,6 +67,21 @@ public class KilimRosemalingMaterial implements Material {
     return ColorUtil.combineColors(ambient, diffuse, specular);
   }
   
+  @Override
+  public void evaluatePattern(double x, double y, double z, double[] out) {
+    PatternBake.fromColor(calculateFusionPattern(new Point3(x, y, z)), out);
+  }
+  
+  @Override
+  public void setPatternBake(PatternBake bake) {
+    this.patternBake = bake;
+  }
+  
+  @Override
+  public PatternBake getPatternBake() {
+    return patternBake;
+  }
+  
   private Color calculateFusionPattern(Point3 point) {
     double x = point.x * 12.0;
     double y = point.y * 12.0;
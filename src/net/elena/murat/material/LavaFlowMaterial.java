@@ -4,9 +4,11 @@ import java.awt.Color;
 
 import net.elena.murat.math.*;
 import net.elena.murat.light.*;
+import net.elena.murat.lovert.Animatable;
 import net.elena.murat.util.ColorUtil;
+import net.elena.murat.util.FastNoise;
 
-public class LavaFlowMaterial implements Material {
+public class LavaFlowMaterial implements Material, Animatable {
   private final Color hotColor;
   private final Color coolColor;
   private final double flowSpeed;
@@ -31,6 +33,7 @@ public class LavaFlowMaterial implements Material {
     this.objectInverseTransform = invTransform;
   }
   
+  @Override
   public void update(double deltaTime) {
     time += deltaTime * flowSpeed;
   }
@@ -50,8 +53,8 @@ public class LavaFlowMaterial implements Material {
     double nx = localPoint.x * 2 + time;
     double ny = localPoint.y * 3;
     double nz = time * 0.5;
-    double noise1 = fract(Math.sin(nx) * 43758.5453);
-    double noise2 = fract(Math.cos(ny) * 12578.1459);
+    double noise1 = FastNoise.sineHash(nx, 43758.5453);
+    double noise2 = FastNoise.cosineHash(ny, 12578.1459);
     double pattern = clamp(Math.sin(noise1 * Math.PI * 3) * Math.cos(noise2 * Math.PI * 2), -1, 1) * 0.5 + 0.5;
     
     // Temperature variation (guaranteed in 0-1 range)
@@ -96,10 +99,6 @@ public class LavaFlowMaterial implements Material {
     return Math.max(min, Math.min(max, value));
   }
   
-  private static double fract(double value) {
-    return value - Math.floor(value);
-  }
-  
   @Override public double getReflectivity() { return reflectivity; }
   @Override public double getIndexOfRefraction() { return 1.4; }
   @Override public double getTransparency() { return 0.0; }
@@ -6,12 +6,13 @@ import java.awt.Color;
 import net.elena.murat.math.*;
 import net.elena.murat.light.*;
 import net.elena.murat.util.ColorUtil;
+import net.elena.murat.util.FastNoise;
 
 /**
  * A material that simulates marble with natural veining patterns.
  * Uses Perlin noise for realistic marble texture generation.
  */
-public class MarbleMaterial implements Material {
+public class MarbleMaterial implements BakeableMaterial {
   
   private final Color baseColor;       // Base color of the marble
   private final Color veinColor;      // Color of the veins
@@ -19,6 +20,7 @@ public class MarbleMaterial implements Material {
   private final double veinDensity;   // Controls how prominent the veins are (0.0 to 1.0)
   private final double turbulence;    // Controls the complexity of the veins
   private Matrix4 objectInverseTransform;
+  private PatternBake patternBake = null;
   
   // Lighting coefficients
   private final double ambientCoefficient;
@@ -120,6 +122,21 @@ public class MarbleMaterial implements Material {
     return ColorUtil.blendColors(baseColor, veinColor, marblePattern);
   }
   
+  @Override
+  public void evaluatePattern(double x, double y, double z, double[] out) {
+    PatternBake.fromColor(getMarbleColor(new Point3(x, y, z)), out);
+  }
+  
+  @Override
+  public void setPatternBake(PatternBake bake) {
+    this.patternBake = bake;
+  }
+  
+  @Override
+  public PatternBake getPatternBake() {
+    return patternBake;
+  }
+  
   /**
    * Simple turbulence function to create natural-looking patterns.
    */
@@ -128,56 +145,13 @@ public class MarbleMaterial implements Material {
     double size = 0.5;
     
     while (size >= 0.01) {
-      t += Math.abs(improvedNoise(x/size, y/size, z/size)) * size;
+      t += Math.abs(FastNoise.hashedPerlin(x/size, y/size, z/size)) * size;
       size /= 2.0;
     }
     
     return t * turbulenceFactor;
   }
   
-  /**
-   * Improved Perlin noise function for better pattern generation.
-   */
-  private double improvedNoise(double x, double y, double z) {
-    // This is a simplified version of Perlin noise
-    // In a full implementation, you'd want a proper noise function
-    int xi = (int)Math.floor(x) & 255;
-    int yi = (int)Math.floor(y) & 255;
-    int zi = (int)Math.floor(z) & 255;
-    
-    x -= Math.floor(x);
-    y -= Math.floor(y);
-    z -= Math.floor(z);
-    
-    double u = fade(x);
-    double v = fade(y);
-    double w = fade(z);
-    
-    // Hash coordinates
-    int a = xi+yi*256+zi*256*256;
-    int b = a+1;
-    int aa = a%256;
-    int ab = (a+1)%256;
-    int ba = (a+256)%256;
-    int bb = (a+257)%256;
-    
-    // Blend everything
-    double lerp1 = lerp(u, grad(aa, x, y, z), grad(ab, x-1, y, z));
-    double lerp2 = lerp(u, grad(ba, x, y-1, z), grad(bb, x-1, y-1, z));
-    double lerp3 = lerp(v, lerp1, lerp2);
-    
-    return lerp3;
-  }
-  
-  private double fade(double t) { return t * t * t * (t * (t * 6 - 15) + 10); }
-  private double lerp(double t, double a, double b) { return a + t * (b - a); }
-  private double grad(int hash, double x, double y, double z) {
-    int h = hash & 15;
-    double u = h<8 ? x : y;
-    double v = h<4 ? y : h==12||h==14 ? x : z;
-    return ((h&1) == 0 ? u : -u) + ((h&2) == 0 ? v : -v);
-  }
-  
   @Override
   public Color getColorAt(Point3 worldPoint, Vector3 worldNormal, Light light, Point3 viewerPos) {
     if (objectInverseTransform == null) {
@@ -195,16 +169,19 @@ public class MarbleMaterial implements Material {
     }
     
     // Get base marble color
-    Color marbleBaseColor = getMarbleColor(localPoint);
+    int marbleRgb = (patternBake != null) ? patternBake.sampleRGB(localPoint) : getMarbleColor(localPoint).getRGB();
+    int baseRed = (marbleRgb >> 16) & 0xFF;
+    int baseGreen = (marbleRgb >> 8) & 0xFF;
+    int baseBlue = marbleRgb & 0xFF;
     
     // Lighting calculation (same structure as other materials)
     Color lightColor = light.getColor();
     double attenuatedIntensity = 0.0;
     
     // Ambient component
-    int rAmbient = (int)(marbleBaseColor.getRed() * ambientCoefficient * lightColor.getRed() / 255.0);
-    int gAmbient = (int)(marbleBaseColor.getGreen() * ambientCoefficient * lightColor.getGreen() / 255.0);
-    int bAmbient = (int)(marbleBaseColor.getBlue() * ambientCoefficient * lightColor.getBlue() / 255.0);
+    int rAmbient = (int)(baseRed * ambientCoefficient * lightColor.getRed() / 255.0);
+    int gAmbient = (int)(baseGreen * ambientCoefficient * lightColor.getGreen() / 255.0);
+    int bAmbient = (int)(baseBlue * ambientCoefficient * lightColor.getBlue() / 255.0);
     
     if (light instanceof ElenaMuratAmbientLight) {
       return new Color(
@@ -250,9 +227,9 @@ public class MarbleMaterial implements Material {
     
     // Diffuse component
     double NdotL = Math.max(0, worldNormal.dot(lightDirection));
-    int rDiffuse = (int)(marbleBaseColor.getRed() * diffuseCoefficient * lightColor.getRed() / 255.0 * attenuatedIntensity * NdotL);
-    int gDiffuse = (int)(marbleBaseColor.getGreen() * diffuseCoefficient * lightColor.getGreen() / 255.0 * attenuatedIntensity * NdotL);
-    int bDiffuse = (int)(marbleBaseColor.getBlue() * diffuseCoefficient * lightColor.getBlue() / 255.0 * attenuatedIntensity * NdotL);
+    int rDiffuse = (int)(baseRed * diffuseCoefficient * lightColor.getRed() / 255.0 * attenuatedIntensity * NdotL);
+    int gDiffuse = (int)(baseGreen * diffuseCoefficient * lightColor.getGreen() / 255.0 * attenuatedIntensity * NdotL);
+    int bDiffuse = (int)(baseBlue * diffuseCoefficient * lightColor.getBlue() / 255.0 * attenuatedIntensity * NdotL);
     
     // Specular component
     Vector3 viewDir = viewerPos.subtract(worldPoint).normalize();
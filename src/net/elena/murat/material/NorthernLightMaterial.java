@@ -6,11 +6,12 @@ import net.elena.murat.math.*;
 import net.elena.murat.light.*;
 import net.elena.murat.util.ColorUtil;
 
-public class NorthernLightMaterial implements Material {
+public class NorthernLightMaterial implements BakeableMaterial {
   private final Color primaryAurora;
   private final Color secondaryAurora;
   private final double intensity;
   private Matrix4 objectTransform;
+  private PatternBake patternBake = null;
   
   private final double ambientCoeff = 0.2;
   private final double diffuseCoeff = 0.4;
@@ -64,10 +65,21 @@ public class NorthernLightMaterial implements Material {
     return ColorUtil.combineColors(ambient, diffuse, specular);
   }
   
-  private Color calculateAuroraEffect(Point3 point, Vector3 normal, Point3 viewerPos) {
-    double x = point.x * 8.0;
-    double y = point.y * 12.0;
-    double z = point.z * 8.0;
+  /**
+   * Bakes the curtain pattern and the time effect; the view-dependent
+   * intensity is applied live. A bake freezes the animation.
+   */
+  @Override
+  public void evaluatePattern(double px, double py, double pz, double[] out) {
+    out[0] = auroraPattern(px, py, pz);
+    out[1] = timeEffect(pz);
+    out[2] = 0.0;
+  }
+  
+  private static double auroraPattern(double px, double py, double pz) {
+    double x = px * 8.0;
+    double y = py * 12.0;
+    double z = pz * 8.0;
     
     // Aurora curtain wave patterns
     double curtain1 = Math.sin(x * 0.7 + Math.sin(y * 1.2) * 3.0 + z * 0.3);
@@ -75,10 +87,36 @@ public class NorthernLightMaterial implements Material {
     double curtain3 = Math.sin(x * 1.1 + y * 2.0 + Math.cos(z * 0.6) * 2.0);
     
     double auroraPattern = (curtain1 * 0.5 + curtain2 * 0.3 + curtain3 * 0.2);
-    double normalizedPattern = (auroraPattern + 1.0) * 0.5;
-    
+    return (auroraPattern + 1.0) * 0.5;
+  }
+  
+  private static double timeEffect(double pz) {
+    double z = pz * 8.0;
     // Time-based animation simulation (using z-coordinate as time proxy)
-    double timeEffect = Math.sin(z * 0.5 + System.currentTimeMillis() * 0.0001) * 0.3 + 0.7;
+    return Math.sin(z * 0.5 + System.currentTimeMillis() * 0.0001) * 0.3 + 0.7;
+  }
+  
+  @Override
+  public void setPatternBake(PatternBake bake) {
+    this.patternBake = bake;
+  }
+  
+  @Override
+  public PatternBake getPatternBake() {
+    return patternBake;
+  }
+  
+  private Color calculateAuroraEffect(Point3 point, Vector3 normal, Point3 viewerPos) {
+    double normalizedPattern;
+    double timeEffect;
+    if (patternBake != null) {
+      double[] field = patternBake.sample(point);
+      normalizedPattern = field[0];
+      timeEffect = field[1];
+      } else {
+      normalizedPattern = auroraPattern(point.x, point.y, point.z);
+      timeEffect = timeEffect(point.z);
+    }
     
     // View-dependent intensity
     Vector3 viewDir = viewerPos.subtract(point).normalize();
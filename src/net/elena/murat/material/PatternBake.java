@@ -0,0 +1,405 @@
+package net.elena.murat.material;
+
+import java.awt.Color;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import net.elena.murat.math.Point3;
+
+/**
+ * Precomputed grid of a {@link BakeableMaterial} pattern.
+ * <p>
+ * The pattern is sampled once, in parallel, on a regular grid over a
+ * local-space domain and afterwards looked up with linear interpolation.
+ * Supported layouts:
+ * </p>
+ * <ul>
+ *   <li>VOLUME - 3D grid over the box [min, max]</li>
+ *   <li>PLANAR_XY / PLANAR_XZ / PLANAR_YZ - 2D grid over two axes of the box;
+ *       the third axis is fixed at the box center (exact for flat shapes)</li>
+ *   <li>SPHERICAL - 2D longitude/latitude grid over the sphere inscribed in
+ *       the box along X (exact for spheres centered in the box)</li>
+ * </ul>
+ * A bake freezes time-dependent patterns at the moment it is made.
+ */
+public final class PatternBake {
+
+  public enum Mode { VOLUME, PLANAR_XY, PLANAR_XZ, PLANAR_YZ, SPHERICAL }
+
+  private static final int CHANNELS = 3;
+
+  // Per-thread result of the shading-time lookups, so a hit allocates nothing
+  private static final ThreadLocal<double[]> LOOKUP = new ThreadLocal<double[]>() {
+    @Override
+    protected double[] initialValue() {
+      return new double[CHANNELS];
+    }
+  };
+
+  private final Mode mode;
+  private final int resolution;
+  private final double minX, minY, minZ;
+  private final double maxX, maxY, maxZ;
+  private final float[] data;
+  private long bakeMillis;
+
+  private PatternBake(Mode mode, int resolution, Point3 min, Point3 max) {
+    if (resolution < 2) {
+      throw new IllegalArgumentException("Bake resolution must be at least 2: " + resolution);
+    }
+    long nodes = (long) resolution * resolution * (mode == Mode.VOLUME ? resolution : 1);
+    if (nodes * CHANNELS > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Bake resolution too large for " + mode + ": " + resolution);
+    }
+    this.mode = mode;
+    this.resolution = resolution;
+    this.minX = Math.min(min.x, max.x);
+    this.minY = Math.min(min.y, max.y);
+    this.minZ = Math.min(min.z, max.z);
+    this.maxX = Math.max(min.x, max.x);
+    this.maxY = Math.max(min.y, max.y);
+    this.maxZ = Math.max(min.z, max.z);
+    this.data = new float[(int) (nodes * CHANNELS)];
+  }
+
+  /**
+   * Bakes the material's live pattern.
+   * @param min lower corner of the local-space domain
+   * @param max upper corner of the local-space domain
+   */
+  public static PatternBake bake(final BakeableMaterial material, Mode mode, int resolution,
+    Point3 min, Point3 max) {
+    final PatternBake bake = new PatternBake(mode, resolution, min, max);
+    long start = System.currentTimeMillis();
+
+    final int rows = (mode == Mode.VOLUME) ? resolution * resolution : resolution;
+    IntStream.range(0, rows).parallel().forEach(row -> {
+        double[] pos = new double[3];
+        double[] out = new double[CHANNELS];
+        for (int i = 0; i < bake.resolution; i++) {
+          int node = row * bake.resolution + i;
+          bake.nodePosition(node, pos);
+          material.evaluatePattern(pos[0], pos[1], pos[2], out);
+          int base = node * CHANNELS;
+          for (int c = 0; c < CHANNELS; c++) {
+            bake.data[base + c] = (float) out[c];
+          }
+        }
+    });
+
+    bake.bakeMillis = System.currentTimeMillis() - start;
+    return bake;
+  }
+
+  /**
+   * Parses a mode name as used in scene files: volume, xy, xz, yz, spherical.
+   */
+  public static Mode parseMode(String name) {
+    String s = name.trim().toLowerCase();
+    if (s.equals("volume") || s.equals("3d")) return Mode.VOLUME;
+    if (s.equals("xy") || s.equals("planar_xy") || s.equals("uv") || s.equals("2d")) return Mode.PLANAR_XY;
+    if (s.equals("xz") || s.equals("planar_xz")) return Mode.PLANAR_XZ;
+    if (s.equals("yz") || s.equals("planar_yz")) return Mode.PLANAR_YZ;
+    if (s.equals("spherical") || s.equals("sphere")) return Mode.SPHERICAL;
+    throw new IllegalArgumentException("Unknown bake mode: " + name);
+  }
+
+  /**
+   * Interpolated pattern values at a local-space point, in a buffer owned
+   * by the calling thread. The thread's next lookup overwrites them.
+   */
+  public double[] sample(Point3 p) {
+    double[] out = LOOKUP.get();
+    sample(p.x, p.y, p.z, out);
+    return out;
+  }
+
+  /**
+   * Looks up a pattern stored as 0-255 RGB values.
+   * @return the color packed as by Color.getRGB
+   */
+  public int sampleRGB(Point3 p) {
+    double[] out = sample(p);
+    return 0xFF000000 | (toChannel(out[0]) << 16) | (toChannel(out[1]) << 8) | toChannel(out[2]);
+  }
+
+  /**
+   * Stores a color into pattern values, for {@link #sampleRGB}.
+   */
+  public static void fromColor(Color color, double[] out) {
+    out[0] = color.getRed();
+    out[1] = color.getGreen();
+    out[2] = color.getBlue();
+  }
+
+  private static int toChannel(double value) {
+    return (int) Math.max(0.0, Math.min(255.0, Math.round(value)));
+  }
+
+  /**
+   * Interpolated pattern values at a local-space point. Points outside the
+   * domain are clamped to its border.
+   */
+  public void sample(double x, double y, double z, double[] out) {
+    int n = resolution;
+    switch (mode) {
+      case VOLUME:
+      sampleVolume(grid(x, minX, maxX), grid(y, minY, maxY), grid(z, minZ, maxZ), out);
+      return;
+      case PLANAR_XY:
+      samplePlane(grid(x, minX, maxX), grid(y, minY, maxY), false, out);
+      return;
+      case PLANAR_XZ:
+      samplePlane(grid(x, minX, maxX), grid(z, minZ, maxZ), false, out);
+      return;
+      case PLANAR_YZ:
+      samplePlane(grid(y, minY, maxY), grid(z, minZ, maxZ), false, out);
+      return;
+      default:
+      double dx = x - centerX();
+      double dy = y - centerY();
+      double dz = z - centerZ();
+      double len = Math.sqrt(dx * dx + dy * dy + dz * dz);
+      if (len < 1e-12) {
+        dy = 1.0;
+        len = 1.0;
+      }
+      double u = (Math.atan2(dz, dx) / (2.0 * Math.PI) + 1.0) % 1.0;
+      double v = Math.acos(Math.max(-1.0, Math.min(1.0, dy / len))) / Math.PI;
+      samplePlane(u * n, v * (n - 1), true, out);
+    }
+  }
+
+  private double grid(double value, double min, double max) {
+    if (max <= min) return 0.0;
+    double t = (value - min) / (max - min);
+    return Math.max(0.0, Math.min(1.0, t)) * (resolution - 1);
+  }
+
+  private void samplePlane(double gu, double gv, boolean wrapU, double[] out) {
+    int n = resolution;
+    int u0 = (int) gu;
+    int v0 = Math.min((int) gv, n - 2);
+    double fu = gu - u0;
+    double fv = gv - v0;
+    int u1;
+    if (wrapU) {
+      u0 = u0 % n;
+      u1 = (u0 + 1) % n;
+      } else {
+      u0 = Math.min(u0, n - 2);
+      fu = gu - u0;
+      u1 = u0 + 1;
+    }
+
+    int i00 = (v0 * n + u0) * CHANNELS;
+    int i10 = (v0 * n + u1) * CHANNELS;
+    int i01 = ((v0 + 1) * n + u0) * CHANNELS;
+    int i11 = ((v0 + 1) * n + u1) * CHANNELS;
+    for (int c = 0; c < CHANNELS; c++) {
+      double a = data[i00 + c] + (data[i10 + c] - data[i00 + c]) * fu;
+      double b = data[i01 + c] + (data[i11 + c] - data[i01 + c]) * fu;
+      out[c] = a + (b - a) * fv;
+    }
+  }
+
+  private void sampleVolume(double gx, double gy, double gz, double[] out) {
+    int n = resolution;
+    int x0 = Math.min((int) gx, n - 2);
+    int y0 = Math.min((int) gy, n - 2);
+    int z0 = Math.min((int) gz, n - 2);
+    double fx = gx - x0;
+    double fy = gy - y0;
+    double fz = gz - z0;
+
+    int base = ((z0 * n + y0) * n + x0) * CHANNELS;
+    int sx = CHANNELS;
+    int sy = n * CHANNELS;
+    int sz = n * n * CHANNELS;
+    for (int c = 0; c < CHANNELS; c++) {
+      int i = base + c;
+      double c00 = data[i] + (data[i + sx] - data[i]) * fx;
+      double c10 = data[i + sy] + (data[i + sy + sx] - data[i + sy]) * fx;
+      double c01 = data[i + sz] + (data[i + sz + sx] - data[i + sz]) * fx;
+      double c11 = data[i + sz + sy] + (data[i + sz + sy + sx] - data[i + sz + sy]) * fx;
+      double c0 = c00 + (c10 - c00) * fy;
+      double c1 = c01 + (c11 - c01) * fy;
+      out[c] = c0 + (c1 - c0) * fz;
+    }
+  }
+
+  /**
+   * Local-space position of a grid node.
+   */
+  private void nodePosition(int node, double[] pos) {
+    int n = resolution;
+    double step = 1.0 / (n - 1);
+    int i = node % n;
+    int j = (node / n) % n;
+    switch (mode) {
+      case VOLUME:
+      int k = node / (n * n);
+      pos[0] = minX + (maxX - minX) * i * step;
+      pos[1] = minY + (maxY - minY) * j * step;
+      pos[2] = minZ + (maxZ - minZ) * k * step;
+      return;
+      case PLANAR_XY:
+      pos[0] = minX + (maxX - minX) * i * step;
+      pos[1] = minY + (maxY - minY) * j * step;
+      pos[2] = centerZ();
+      return;
+      case PLANAR_XZ:
+      pos[0] = minX + (maxX - minX) * i * step;
+      pos[1] = centerY();
+      pos[2] = minZ + (maxZ - minZ) * j * step;
+      return;
+      case PLANAR_YZ:
+      pos[0] = centerX();
+      pos[1] = minY + (maxY - minY) * i * step;
+      pos[2] = minZ + (maxZ - minZ) * j * step;
+      return;
+      default:
+      double phi = 2.0 * Math.PI * i / n;
+      double theta = Math.PI * j * step;
+      double r = radius();
+      pos[0] = centerX() + r * Math.sin(theta) * Math.cos(phi);
+      pos[1] = centerY() + r * Math.cos(theta);
+      pos[2] = centerZ() + r * Math.sin(theta) * Math.sin(phi);
+    }
+  }
+
+  private double centerX() { return (minX + maxX) * 0.5; }
+  private double centerY() { return (minY + maxY) * 0.5; }
+  private double centerZ() { return (minZ + maxZ) * 0.5; }
+  private double radius() { return (maxX - minX) * 0.5; }
+
+  /**
+   * Difference between the bake and the live pattern at random points of
+   * the baked domain.
+   */
+  public static final class ErrorReport {
+    public final int samples;
+    public final double meanError;
+    public final double maxError;
+
+    private ErrorReport(int samples, double meanError, double maxError) {
+      this.samples = samples;
+      this.meanError = meanError;
+      this.maxError = maxError;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("mean=%.3f max=%.3f over %d samples", meanError, maxError, samples);
+    }
+  }
+
+  /**
+   * Compares the bake against the material's live pattern. The error of
+   * one sample is the largest absolute difference over the channels.
+   */
+  public ErrorReport measureError(BakeableMaterial material, int samples, long seed) {
+    Random random = new Random(seed);
+    double[] pos = new double[3];
+    double[] live = new double[CHANNELS];
+    double[] baked = new double[CHANNELS];
+    double sum = 0.0;
+    double max = 0.0;
+
+    for (int s = 0; s < samples; s++) {
+      randomPosition(random, pos);
+      material.evaluatePattern(pos[0], pos[1], pos[2], live);
+      sample(pos[0], pos[1], pos[2], baked);
+      double err = 0.0;
+      for (int c = 0; c < CHANNELS; c++) {
+        err = Math.max(err, Math.abs(live[c] - baked[c]));
+      }
+      sum += err;
+      max = Math.max(max, err);
+    }
+    return new ErrorReport(samples, samples > 0 ? sum / samples : 0.0, max);
+  }
+
+  private void randomPosition(Random random, double[] pos) {
+    pos[0] = minX + (maxX - minX) * random.nextDouble();
+    pos[1] = minY + (maxY - minY) * random.nextDouble();
+    pos[2] = minZ + (maxZ - minZ) * random.nextDouble();
+    switch (mode) {
+      case PLANAR_XY:
+      pos[2] = centerZ();
+      break;
+      case PLANAR_XZ:
+      pos[1] = centerY();
+      break;
+      case PLANAR_YZ:
+      pos[0] = centerX();
+      break;
+      case SPHERICAL:
+      double y = 2.0 * random.nextDouble() - 1.0;
+      double phi = 2.0 * Math.PI * random.nextDouble();
+      double s = Math.sqrt(1.0 - y * y);
+      double r = radius();
+      pos[0] = centerX() + r * s * Math.cos(phi);
+      pos[1] = centerY() + r * y;
+      pos[2] = centerZ() + r * s * Math.sin(phi);
+      break;
+      default:
+      break;
+    }
+  }
+
+  /**
+   * Writes the bake so {@link #readFrom(ByteBuffer)} can restore it
+   * without sampling the material again.
+   */
+  public void writeTo(DataOutputStream out) throws IOException {
+    out.writeByte(mode.ordinal());
+    out.writeInt(resolution);
+    out.writeDouble(minX);
+    out.writeDouble(minY);
+    out.writeDouble(minZ);
+    out.writeDouble(maxX);
+    out.writeDouble(maxY);
+    out.writeDouble(maxZ);
+    for (float value : data) {
+      out.writeFloat(value);
+    }
+  }
+
+  public static PatternBake readFrom(ByteBuffer in) {
+    Mode mode = Mode.values()[in.get()];
+    int resolution = in.getInt();
+    Point3 min = new Point3(in.getDouble(), in.getDouble(), in.getDouble());
+    Point3 max = new Point3(in.getDouble(), in.getDouble(), in.getDouble());
+    PatternBake bake = new PatternBake(mode, resolution, min, max);
+    in.asFloatBuffer().get(bake.data);
+    in.position(in.position() + 4 * bake.data.length);
+    return bake;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public int getResolution() {
+    return resolution;
+  }
+
+  public long getMemoryBytes() {
+    return 4L * data.length;
+  }
+
+  public long getBakeMillis() {
+    return bakeMillis;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("PatternBake[%s, res=%d, %.1f MB, %d ms]",
+      mode, resolution, getMemoryBytes() / 1048576.0, bakeMillis);
+  }
+
+}
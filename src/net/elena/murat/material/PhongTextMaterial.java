@@ -7,12 +7,13 @@ import java.awt.image.BufferedImage;
 import net.elena.murat.math.*;
 import net.elena.murat.light.*;
 import net.elena.murat.util.ColorUtil;
+import net.elena.murat.util.TextAtlas;
 
 /**
  * PhongTextMaterial - Combines text/image rendering capability with Phong lighting model.
  * Renders text or images on a surface with ambient, diffuse, and specular lighting.
  */
-public class PhongTextMaterial implements Material {
+public class PhongTextMaterial extends TextAtlasMaterial {
   
   // --- TEXTURE PROPERTIES (from TextDielectricMaterial) ---
   private final String word;
@@ -30,7 +31,6 @@ public class PhongTextMaterial implements Material {
   private final int imageHeight;
   private final int imageUOffset;
   private final int imageVOffset;
-  private BufferedImage texture;
   
   // --- PHONG MATERIAL PROPERTIES ---
   private final Color diffuseColor;   // Base color (can be overridden by texture)
@@ -87,7 +87,7 @@ public class PhongTextMaterial implements Material {
     this.objectTransform = Matrix4.identity();
     
     // Generate texture
-    this.texture = createTexture();
+    this.texture = acquireTexture();
   }
   
   /**
@@ -103,14 +103,20 @@ public class PhongTextMaterial implements Material {
   }
   
   /**
-   * Creates the texture image with the word drawn centered, optionally with a gradient and background image.
+   * Returns the shared atlas texture for this word, font and color setup.
+   * Materials with identical settings share a single rasterization.
+   */
+  private TextAtlas.Raster acquireTexture() {
+    String key = TextAtlas.key("PhongTextMaterial", word, textColor, gradientColor, gradientType, fontFamily, fontStyle, fontSize,
+      uOffset, vOffset, imageObject, imageWidth, imageHeight, imageUOffset, imageVOffset);
+    return TextAtlas.acquire(key, 1024, 1024, (g2d, width, height) -> paintTexture(g2d, width));
+  }
+  
+  /**
+   * Draws the texture image with the word drawn centered, optionally with a gradient and background image.
    * The texture size is fixed at 1024x1024 pixels.
    */
-  private BufferedImage createTexture() {
-    final int size = 1024;
-    BufferedImage texture = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
-    Graphics2D g2d = texture.createGraphics();
-    
+  private void paintTexture(Graphics2D g2d, int size) {
     g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
     g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
     
@@ -150,9 +156,6 @@ public class PhongTextMaterial implements Material {
     }
     
     g2d.drawString(word, x, y);
-    g2d.dispose();
-    
-    return texture;
   }
   
   private GradientPaint createGradient(float x, float y, float width, float height) {
@@ -183,30 +186,32 @@ public class PhongTextMaterial implements Material {
   @Override
   public Color getColorAt(Point3 point, Vector3 normal, Light light, Point3 viewerPos) {
     // 1. Get texture color at this point
-    Point3 localPoint = objectTransform.inverse().transformPoint(point);
-    Color textureColor = getTextureColor(localPoint, normal);
+    int textureArgb = getTextureArgb(normal);
     
     // 2. If texture has alpha=0, use diffuseColor (base)
-    if (textureColor.getAlpha() == 0) {
-      textureColor = diffuseColor;
+    if ((textureArgb >>> 24) == 0) {
+      textureArgb = diffuseColor.getRGB();
     }
+    int texR = (textureArgb >> 16) & 0xFF;
+    int texG = (textureArgb >> 8) & 0xFF;
+    int texB = textureArgb & 0xFF;
     
     // 3. Apply Phong lighting using textureColor as diffuse base
     Color lightColor = light.getColor();
     double attenuatedIntensity = 0.0;
     
     // Ambient component
-    int rAmbient = (int) (textureColor.getRed()   * ambientCoefficient * lightColor.getRed()   / 255.0);
-    int gAmbient = (int) (textureColor.getGreen() * ambientCoefficient * lightColor.getGreen() / 255.0);
-    int bAmbient = (int) (textureColor.getBlue()  * ambientCoefficient * lightColor.getBlue()  / 255.0);
+    int rAmbient = (int) (texR * ambientCoefficient * lightColor.getRed()   / 255.0);
+    int gAmbient = (int) (texG * ambientCoefficient * lightColor.getGreen() / 255.0);
+    int bAmbient = (int) (texB * ambientCoefficient * lightColor.getBlue()  / 255.0);
     
     // If light is ambient, return only ambient contribution
     if (light instanceof ElenaMuratAmbientLight) {
-      return new Color(
+      return colorOf(rgb(
         Math.min(255, rAmbient),
         Math.min(255, gAmbient),
         Math.min(255, bAmbient)
-      );
+      ));
     }
     
     // Get light direction
@@ -235,9 +240,9 @@ public class PhongTextMaterial implements Material {
     
     // Diffuse component
     double NdotL = Math.max(0, normal.dot(lightDir));
-    int rDiffuse = (int) (textureColor.getRed()   * diffuseCoefficient * lightColor.getRed()   / 255.0 * attenuatedIntensity * NdotL);
-    int gDiffuse = (int) (textureColor.getGreen() * diffuseCoefficient * lightColor.getGreen() / 255.0 * attenuatedIntensity * NdotL);
-    int bDiffuse = (int) (textureColor.getBlue()  * diffuseCoefficient * lightColor.getBlue()  / 255.0 * attenuatedIntensity * NdotL);
+    int rDiffuse = (int) (texR * diffuseCoefficient * lightColor.getRed()   / 255.0 * attenuatedIntensity * NdotL);
+    int gDiffuse = (int) (texG * diffuseCoefficient * lightColor.getGreen() / 255.0 * attenuatedIntensity * NdotL);
+    int bDiffuse = (int) (texB * diffuseCoefficient * lightColor.getBlue()  / 255.0 * attenuatedIntensity * NdotL);
     
     // Specular component
     Vector3 viewDir = viewerPos.subtract(point).normalize();
@@ -254,11 +259,11 @@ public class PhongTextMaterial implements Material {
     int finalG = Math.min(255, gAmbient + gDiffuse + gSpecular);
     int finalB = Math.min(255, bAmbient + bDiffuse + bSpecular);
     
-    return new Color(finalR, finalG, finalB);
+    return colorOf(rgb(finalR, finalG, finalB));
   }
   
-  private Color getTextureColor(Point3 localPoint, Vector3 worldNormal) {
-    if (texture == null) return new Color(0, 0, 0, 0);
+  private int getTextureArgb(Vector3 worldNormal) {
+    if (texture == null) return 0;
     
     Vector3 dir = worldNormal.normalize();
     double phi = Math.atan2(dir.z, dir.x);
@@ -270,16 +275,7 @@ public class PhongTextMaterial implements Material {
     
     u = (u + 0.25) % 1.0; // Offset for better alignment
     
-    int texX = (int) (u * texture.getWidth());
-    texX = texX % texture.getWidth();
-    if (texX < 0) texX += texture.getWidth();
-    
-    int texY = (int) (v * texture.getHeight());
-    if (texY < 0 || texY >= texture.getHeight()) {
-      return new Color(0, 0, 0, 0);
-    }
-    
-    return new Color(texture.getRGB(texX, texY), true);
+    return sampleWrapped(u, v);
   }
   
   // --- MATERIAL INTERFACE ---
@@ -288,6 +284,7 @@ public class PhongTextMaterial implements Material {
     this.objectTransform = (tm != null) ? tm : new Matrix4();
   }
   
+  
   @Override
   public double getReflectivity() {
     return reflectivity;
@@ -307,7 +304,7 @@ public class PhongTextMaterial implements Material {
   public Color getDiffuseColor() { return diffuseColor; }
   public Color getSpecularColor() { return specularColor; }
   public double getShininess() { return shininess; }
-  public BufferedImage getTexture() { return texture; }
+  public BufferedImage getTexture() { return texture != null ? texture.toBufferedImage() : null; }
   
   private double clamp01(double val) {
     return Math.min(1.0, Math.max(0.0, val));
@@ -5,10 +5,9 @@ import java.awt.Color;
 import net.elena.murat.light.Light;
 import net.elena.murat.math.*;
 
-public class PureWaterMaterial implements Material {
+public class PureWaterMaterial extends AnimatedMaterial {
   private final Color baseColor;
   private final double flowSpeed;
-  private final long startTime;
   
   public PureWaterMaterial() {
     this(new Color(135, 206, 250), 0.1); // Default: Light blue, medium speed
@@ -17,13 +16,12 @@ public class PureWaterMaterial implements Material {
   public PureWaterMaterial(Color baseColor, double flowSpeed) {
     this.baseColor = baseColor != null ? baseColor : new Color(135, 206, 250);
     this.flowSpeed = Math.max(0.01, Math.min(1.0, flowSpeed));
-    this.startTime = System.currentTimeMillis();
   }
   
   @Override
   public Color getColorAt(Point3 point, Vector3 normal, Light light, Point3 viewerPos) {
     // 1. Time-based animation
-    double time = (System.currentTimeMillis() - startTime) * 0.001 * flowSpeed;
+    double time = elapsedMillis() * 0.001 * flowSpeed;
     
     // 2. Vertical wave pattern
     double verticalWave = bound(Math.sin(point.y * 12 + time * 1.5) * 0.25, -0.25, 0.25);
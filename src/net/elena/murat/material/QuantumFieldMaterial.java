@@ -4,13 +4,15 @@ import java.awt.Color;
 
 import net.elena.murat.math.*;
 import net.elena.murat.light.*;
+import net.elena.murat.lovert.Animatable;
 
-public class QuantumFieldMaterial implements Material {
+public class QuantumFieldMaterial implements BakeableMaterial, Animatable {
   private final Color primaryColor;
   private final Color secondaryColor;
   private final double energy;
   private Matrix4 objectInverseTransform;
   private double time;
+  private PatternBake patternBake = null;
   private final double reflectivity=0.3;
   
   public QuantumFieldMaterial(Color primary, Color secondary,
@@ -27,29 +29,66 @@ public class QuantumFieldMaterial implements Material {
     this.objectInverseTransform = tm;
   }
   
+  @Override
   public void update(double deltaTime) {
     time += deltaTime * energy * 0.1;
   }
   
+  /**
+   * Bakes the quantum pattern and the energy pulse at the current time.
+   * The pattern is hash noise, so bakes only approximate it at high
+   * resolutions; check the reported error.
+   */
   @Override
-  public Color getColorAt(Point3 worldPoint, Vector3 worldNormal, Light light, Point3 viewPos) {
-    Point3 localPoint = objectInverseTransform.transformPoint(worldPoint);
-    Vector3 normal = objectInverseTransform.transformNormal(worldNormal).normalize();
-    
+  public void evaluatePattern(double x, double y, double z, double[] out) {
+    out[0] = quantumPattern(x, y, z);
+    out[1] = energyPulse(x, y, z);
+    out[2] = 0.0;
+  }
+  
+  private double quantumPattern(double x, double y, double z) {
     // Quantum noise patterns
-    double nx = localPoint.x * 2 + time;
-    double ny = localPoint.y * 3;
-    double nz = localPoint.z + time;
+    double nx = x * 2 + time;
+    double ny = y * 3;
+    double nz = z + time;
     double pattern1 = (Math.sin(nx * 12.9898 + ny * 78.233 + nz * 144.7212) * 43758.5453) -
     Math.floor(Math.sin(nx * 12.9898 + ny * 78.233 + nz * 144.7212) * 43758.5453);
     
     double pattern2 = (Math.cos(nx * 9.1234 + ny * 45.678 + nz * 98.765) * 54321.987) -
     Math.floor(Math.cos(nx * 9.1234 + ny * 45.678 + nz * 98.765) * 54321.987);
     
-    double pattern = Math.sin(pattern1 * Math.PI * 2) * Math.cos(pattern2 * Math.PI * 3);
+    return Math.sin(pattern1 * Math.PI * 2) * Math.cos(pattern2 * Math.PI * 3);
+  }
+  
+  private double energyPulse(double x, double y, double z) {
+    return 0.5 + 0.5 * Math.sin(time * 2 + Math.sqrt(x * x + y * y + z * z) * 5);
+  }
+  
+  @Override
+  public void setPatternBake(PatternBake bake) {
+    this.patternBake = bake;
+  }
+  
+  @Override
+  public PatternBake getPatternBake() {
+    return patternBake;
+  }
+  
+  @Override
+  public Color getColorAt(Point3 worldPoint, Vector3 worldNormal, Light light, Point3 viewPos) {
+    Point3 localPoint = objectInverseTransform.transformPoint(worldPoint);
+    Vector3 normal = objectInverseTransform.transformNormal(worldNormal).normalize();
     
-    // Energy pulse
-    double pulse = 0.5 + 0.5 * Math.sin(time * 2 + localPoint.length() * 5);
+    double pattern;
+    double pulse;
+    if (patternBake != null) {
+      double[] field = patternBake.sample(localPoint);
+      pattern = field[0];
+      pulse = field[1];
+      } else {
+      pattern = quantumPattern(localPoint.x, localPoint.y, localPoint.z);
+      pulse = energyPulse(localPoint.x, localPoint.y, localPoint.z);
+    }
     
     // Base color
     Color baseColor = new Color(
@@ -6,12 +6,13 @@ import net.elena.murat.math.*;
 import net.elena.murat.light.*;
 import net.elena.murat.util.ColorUtil;
 
-public class TelemarkPatternMaterial implements Material {
+public class TelemarkPatternMaterial implements BakeableMaterial {
   private final Color baseColor;
   private final Color patternColor;
   private final Color accentColor;
   private final double patternScale;
   private Matrix4 objectTransform;
+  private PatternBake patternBake = null;
   
   private final double ambientCoeff = 0.45;
   private final double diffuseCoeff = 0.8;
@@ -43,7 +44,7 @@ public class TelemarkPatternMaterial implements Material {
   public Color getColorAt(Point3 worldPoint, Vector3 worldNormal, Light light, Point3 viewerPos) {
     Point3 objectPoint = objectTransform.inverse().transformPoint(worldPoint);
     
-    Color surfaceColor = calculateTelemarkPattern(objectPoint);
+    Color surfaceColor = (patternBake != null) ? new Color(patternBake.sampleRGB(objectPoint)) : calculateTelemarkPattern(objectPoint);
     
     LightProperties props = LightProperties.getLightProperties(light, worldPoint);
     if (props == null) return surfaceColor;
@@ -66,6 +67,21 @@ public class TelemarkPatternMaterial implements Material {
     return ColorUtil.combineColors(ambient, diffuse, specular);
   }
   
+  @Override
+  public void evaluatePattern(double x, double y, double z, double[] out) {
+    PatternBake.fromColor(calculateTelemarkPattern(new Point3(x, y, z)), out);
+  }
+  
+  @Override
+  public void setPatternBake(PatternBake bake) {
+    this.patternBake = bake;
+  }
+  
+  @Override
+  public PatternBake getPatternBake() {
+    return patternBake;
+  }
+  
   private Color calculateTelemarkPattern(Point3 point) {
     double x = point.x * patternScale;
     double y = point.y * patternScale;
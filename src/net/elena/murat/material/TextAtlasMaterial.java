@@ -0,0 +1,91 @@
+package net.elena.murat.material;
+
+import java.awt.Color;
+
+import net.elena.murat.util.TextAtlas;
+
+/**
+ * Base of the text materials that draw their texture into a shared
+ * {@link TextAtlas} raster. It holds the raster, gives it back on
+ * {@link #dispose()}, and turns packed ARGB values into colors without
+ * making a new Color for every hit: colors handed out before are kept
+ * in a small table keyed by their ARGB value and returned again.
+ */
+public abstract class TextAtlasMaterial implements DisposableMaterial {
+
+  /** Fully transparent black, returned where a material shows nothing. */
+  protected static final Color TRANSPARENT = new Color(0, 0, 0, 0);
+
+  private static final int COLOR_SLOTS = 256;
+
+  protected TextAtlas.Raster texture;
+
+  // Direct-mapped by ARGB value; racy, but entries are immutable and safely published
+  private final CachedColor[] colors = new CachedColor[COLOR_SLOTS];
+
+  private static final class CachedColor {
+    final int argb;
+    final Color color;
+
+    CachedColor(int argb) {
+      this.argb = argb;
+      this.color = new Color(argb, true);
+    }
+  }
+
+  /**
+   * Returns a color with the given packed ARGB value.
+   */
+  protected final Color colorOf(int argb) {
+    int slot = (argb * 0x9E3779B9) >>> 24;
+    CachedColor cached = colors[slot];
+    if (cached == null || cached.argb != argb) {
+      cached = new CachedColor(argb);
+      colors[slot] = cached;
+    }
+    return cached.color;
+  }
+
+  /**
+   * Texel at texture coordinates (u, v): u wraps around, v outside the
+   * texture gives 0, which is transparent.
+   */
+  protected final int sampleWrapped(double u, double v) {
+    int width = texture.getWidth();
+    int texX = (int) (u * width);
+    texX = texX % width;
+    if (texX < 0) texX += width;
+
+    int texY = (int) (v * texture.getHeight());
+    if (texY < 0 || texY >= texture.getHeight()) {
+      return 0;
+    }
+    return texture.getRGB(texX, texY);
+  }
+
+  /**
+   * Packs opaque 0-255 components.
+   */
+  protected static int rgb(int r, int g, int b) {
+    return 0xFF000000 | (r << 16) | (g << 8) | b;
+  }
+
+  /**
+   * Packs 0-1 components, rounded as new Color(r, g, b, a) rounds them.
+   */
+  protected static int argb(float r, float g, float b, float a) {
+    return ((int) (a * 255 + 0.5) << 24) | ((int) (r * 255 + 0.5) << 16)
+      | ((int) (g * 255 + 0.5) << 8) | (int) (b * 255 + 0.5);
+  }
+
+  /**
+   * Releases the shared text texture. Afterwards the material renders
+   * without its text.
+   */
+  @Override
+  public void dispose() {
+    TextAtlas.release(texture);
+    texture = null;
+  }
+
+}
@@ -8,12 +8,13 @@ import java.util.Random;
 import net.elena.murat.math.*;
 import net.elena.murat.light.Light;
 import net.elena.murat.util.ColorUtil;
+import net.elena.murat.util.TextAtlas;
 
 /**
  * TextDielectricMaterial - Combines text rendering capability with dielectric material properties
  * Creates transparent glass-like text on a sphere with refraction and reflection effects
  */
-public class TextDielectricMaterial implements Material {
+public class TextDielectricMaterial extends TextAtlasMaterial {
   
   // Text properties (from SphereWordTextureMaterial)
   private final String word;
@@ -31,7 +32,6 @@ public class TextDielectricMaterial implements Material {
   private final int imageHeight;
   private final int imageUOffset;
   private final int imageVOffset;
-  private BufferedImage texture;
   
   // Dielectric properties (from DielectricMaterial)
   private Color diffuseColor;
@@ -87,7 +87,7 @@ public class TextDielectricMaterial implements Material {
     this.currentTransparency = transparency;
     this.objectTransform = new Matrix4().identity();
     
-    this.texture = createTexture();
+    this.texture = acquireTexture();
   }
   
   /**
@@ -103,16 +103,20 @@ public class TextDielectricMaterial implements Material {
   }
   
   /**
-   * Creates the texture image with the word drawn centered, optionally with a gradient and background image.
+   * Returns the shared atlas texture for this word, font and color setup.
+   * Materials with identical settings share a single rasterization.
+   */
+  private TextAtlas.Raster acquireTexture() {
+    String key = TextAtlas.key("TextDielectricMaterial", word, textColor, gradientColor, gradientType, fontFamily, fontStyle, fontSize,
+      uOffset, vOffset, imageObject, imageWidth, imageHeight, imageUOffset, imageVOffset);
+    return TextAtlas.acquire(key, 1024, 1024, (g2d, width, height) -> paintTexture(g2d, width));
+  }
+  
+  /**
+   * Draws the texture image with the word drawn centered, optionally with a gradient and background image.
    * The texture size is fixed at 1024x1024 pixels.
-   *
-   * @return BufferedImage containing the rendered word texture.
    */
-  private BufferedImage createTexture() {
-    final int size = 1024;
-    BufferedImage texture = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
-    Graphics2D g2d = texture.createGraphics();
-    
+  private void paintTexture(Graphics2D g2d, int size) {
     g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
     g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
     
@@ -149,9 +153,6 @@ public class TextDielectricMaterial implements Material {
     }
     
     g2d.drawString(word, x, y);
-    g2d.dispose();
-    
-    return texture;
   }
   
   private GradientPaint createGradient(float x, float y, float width, float height) {
@@ -186,8 +187,7 @@ public class TextDielectricMaterial implements Material {
   @Override
   public Color getColorAt(Point3 point, Vector3 normal, Light light, Point3 viewerPoint) {
     // Get texture color first
-    Point3 localPoint = objectTransform.inverse().transformPoint(point);
-    Color textureColor = getTextureColor(localPoint, normal);
+    int textureArgb = getTextureArgb(normal);
     
     // Apply dielectric lighting effects
     Vector3 lightDir = light.getDirectionTo(point).normalize();
@@ -200,26 +200,28 @@ public class TextDielectricMaterial implements Material {
     this.currentReflectivity = Math.min(0.95, reflectivity + (fresnel * 0.8));
     this.currentTransparency = Math.max(0.05, transparency * (1.0 - fresnel * 0.2));
     
-    // Diffuse and specular components
-    //Original is below line with textureColor:
-    Color diffuse = ColorUtil.multiplyColor(textureColor, diffuseFactor * light.getIntensity());
+    // Diffuse and specular components, scaled and added per channel as
+    // ColorUtil.multiplyColor and ColorUtil.add do
+    double diffuseScale = Math.max(0, Math.min(1, diffuseFactor * light.getIntensity()));
     
     Vector3 reflectDir = lightDir.reflect(normal);
     double specularFactor = Math.pow(Math.max(0, viewDir.dot(reflectDir)), 128);
-    Color specular = ColorUtil.multiplyColor(light.getColor(), specularFactor * 1.2 * light.getIntensity());
+    double specularScale = Math.max(0, Math.min(1, specularFactor * 1.2 * light.getIntensity()));
     
-    // Combine with glass tint
-    Color result = ColorUtil.add(diffuse, specular);
+    Color lightColor = light.getColor();
+    int r = Math.min(255, (int) (((textureArgb >> 16) & 0xFF) * diffuseScale) + (int) (lightColor.getRed() * specularScale));
+    int g = Math.min(255, (int) (((textureArgb >> 8) & 0xFF) * diffuseScale) + (int) (lightColor.getGreen() * specularScale));
+    int b = Math.min(255, (int) ((textureArgb & 0xFF) * diffuseScale) + (int) (lightColor.getBlue() * specularScale));
     //if (transparency > 0.3) {
     //Color glassTint = new Color(0.95f, 0.97f, 1.0f);
     //result = ColorUtil.multiplyColors(result, glassTint);
     //}
     
-    return ColorUtil.clampColor(result);
+    return colorOf(rgb(r, g, b));
   }
   
-  private Color getTextureColor(Point3 localPoint, Vector3 worldNormal) {
-    if (texture == null) return textColor;
+  private int getTextureArgb(Vector3 worldNormal) {
+    if (texture == null) return textColor.getRGB();
     
     // Normal normalize
     Vector3 dir = worldNormal.normalize();
@@ -233,15 +235,7 @@ public class TextDielectricMaterial implements Material {
     
     u = (u + 0.25) % 1.0; // Offset
     
-    int texX = (int) (u * texture.getWidth());
-    texX = texX % texture.getWidth();
-    if (texX < 0) texX += texture.getWidth();
-    
-    int texY = (int) (v * texture.getHeight());
-    if (texY < 0 || texY >= texture.getHeight()) {
-      return new Color(0, 0, 0, 0);
-    }
-    return new Color(texture.getRGB(texX, texY), true);
+    return sampleWrapped(u, v);
   }
   
   // Material interface methods
@@ -5,6 +5,7 @@ import java.awt.Color;
 import net.elena.murat.math.*;
 import net.elena.murat.light.*;
 import net.elena.murat.util.ColorUtil;
+import net.elena.murat.util.FastNoise;
 
 public class VikingMetalMaterial implements Material {
   private final Color baseColor;
@@ -65,7 +66,7 @@ public class VikingMetalMaterial implements Material {
   }
   
   private Color calculateRustPattern(Point3 point) {
-    double noise = simplexNoise3D(point.x * 5, point.y * 5, point.z * 5);
+    double noise = FastNoise.vikingWaves(point.x * 5, point.y * 5, point.z * 5);
     
     double t = (noise + 1) * 0.5;
     
@@ -84,13 +85,6 @@ public class VikingMetalMaterial implements Material {
     }
   }
   
-  private double simplexNoise3D(double x, double y, double z) {
-    double value = Math.sin(x * 0.431) + Math.sin(y * 0.723) + Math.sin(z * 0.327);
-    value += Math.sin(x * 1.531 + y * 0.927) * 0.5;
-    value += Math.sin(y * 1.231 + z * 1.627) * 0.25;
-    return value % 1.0;
-  }
-  
   private Color interpolateColor(Color c1, Color c2, double t) {
     t = Math.max(0, Math.min(1, t));
     int r = (int)(c1.getRed() * (1-t) + c2.getRed() * t);
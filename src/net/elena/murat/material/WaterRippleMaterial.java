@@ -4,9 +4,10 @@ import java.awt.Color;
 
 import net.elena.murat.math.*;
 import net.elena.murat.light.*;
+import net.elena.murat.lovert.Animatable;
 import net.elena.murat.util.ColorUtil;
 
-public class WaterRippleMaterial implements Material {
+public class WaterRippleMaterial implements Material, Animatable {
   private final Color waterColor;
   private final double waveSpeed;
   private final double reflectivity;
@@ -32,6 +33,7 @@ public class WaterRippleMaterial implements Material {
     this.objectInverseTransform = tm;
   }
   
+  @Override
   public void update(double deltaTime) {
     time += deltaTime * waveSpeed;
   }
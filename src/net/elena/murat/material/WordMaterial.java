@@ -13,15 +13,15 @@ import net.elena.murat.light.Light;
 import net.elena.murat.math.Matrix4;
 import net.elena.murat.math.Point3;
 import net.elena.murat.math.Vector3;
+import net.elena.murat.util.TextAtlas;
 
 /**
  * Material class that generates textures with rendered text and optional image on the fly.
  * Supports custom text, fonts, colors, gradients, transparent backgrounds, and image integration.
  * Uses planar UV mapping on XY plane (Z ignored) similar to TransparentPNGMaterial.
  */
-public class WordMaterial implements Material {
+public class WordMaterial extends TextAtlasMaterial {
   
-  private BufferedImage texture;
   private Matrix4 objectInverseTransform = new Matrix4();
   private double transparency = 1.0;
   
@@ -131,12 +131,26 @@ public class WordMaterial implements Material {
     this.width = width;
     this.height = height;
     
-    this.texture = createTextImage(text, foregroundColor, backgroundColor, font,
+    this.texture = acquireTextImage(text, foregroundColor, backgroundColor, font,
     useGradient, gradientColor, wordImage, width, height);
   }
   
   /**
-   * Creates a BufferedImage with the rendered text and optional image
+   * Returns the shared atlas raster for these settings, rasterizing it
+   * only if no other WordMaterial uses the same text, font and colors.
+   */
+  private static TextAtlas.Raster acquireTextImage(final String text, final Color fgColor, final Color bgColor,
+    final Font font, final boolean useGradient, final Color gradientColor,
+    final BufferedImage wordImage, int width, int height) {
+    String key = TextAtlas.key("WordMaterial", text, fgColor, bgColor, font,
+    useGradient, gradientColor, wordImage);
+    return TextAtlas.acquire(key, width, height, (g2d, w, h) ->
+      paintTextImage(g2d, text, fgColor, bgColor, font, useGradient, gradientColor, wordImage, w, h));
+  }
+  
+  /**
+   * Draws the rendered text and optional image
+   * @param g2d Graphics of a cleared ARGB image
    * @param text Text to render
    * @param fgColor Text color
    * @param bgColor Background color
@@ -146,15 +160,11 @@ public class WordMaterial implements Material {
    * @param wordImage Optional image to display above text
    * @param width Image width
    * @param height Image height
-   * @return BufferedImage with rendered content
    */
-  private static BufferedImage createTextImage(String text, Color fgColor, Color bgColor,
+  private static void paintTextImage(Graphics2D g2d, String text, Color fgColor, Color bgColor,
     Font font, boolean useGradient, Color gradientColor,
     BufferedImage wordImage, int width, int height) {
     
-    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-    Graphics2D g2d = image.createGraphics();
-    
     // Clear background (transparent or colored)
     if (bgColor.getAlpha() == 0) {
       g2d.setComposite(AlphaComposite.Clear);
@@ -207,9 +217,6 @@ public class WordMaterial implements Material {
     
     // NO AUTO-SCALING - draw text as is, even if it goes outside bounds
     g2d.drawString(text, textX, textY);
-    g2d.dispose();
-    
-    return image;
   }
   
   /**
@@ -242,7 +249,7 @@ public class WordMaterial implements Material {
   public Color getColorAt(Point3 point, Vector3 normal, Light light, Point3 viewerPos) {
     if (texture == null) {
       setTransparency(1.0);
-      return new Color(0, 0, 0, 0);
+      return TRANSPARENT;
     }
     
     Point3 local = objectInverseTransform.transformPoint(point);
@@ -270,7 +277,7 @@ public class WordMaterial implements Material {
       } else {
       if (scaledU < 0.0 || scaledU > 1.0 || scaledV < 0.0 || scaledV > 1.0) {
         setTransparency(1.0);
-        return new Color(0, 0, 0, 0);
+        return TRANSPARENT;
       }
       finalU = scaledU;
       finalV = scaledV;
@@ -282,17 +289,14 @@ public class WordMaterial implements Material {
     int argb = texture.getRGB(px, py);
     
     int alpha = (argb >> 24) & 0xFF;
-    int red = (argb >> 16) & 0xFF;
-    int green = (argb >> 8) & 0xFF;
-    int blue = argb & 0xFF;
     
     if (alpha > 5) {
       setTransparency(0.0);
-      return new Color(red, green, blue, 255);
+      return colorOf(argb | 0xFF000000);
     }
     
     setTransparency(1.0);
-    return new Color(0, 0, 0, 0);
+    return TRANSPARENT;
   }
   
   /**
@@ -561,8 +565,10 @@ public class WordMaterial implements Material {
    * Useful when multiple properties change and you want to update once
    */
   public void regenerateTexture() {
-    this.texture = createTextImage(text, foregroundColor, backgroundColor, font,
+    TextAtlas.Raster old = this.texture;
+    this.texture = acquireTextImage(text, foregroundColor, backgroundColor, font,
     gradientEnabled, gradientColor, wordImage, width, height);
+    TextAtlas.release(old);
   }
   
 }
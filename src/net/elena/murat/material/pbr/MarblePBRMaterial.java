@@ -5,7 +5,7 @@ import java.awt.Color;
 import net.elena.murat.math.*;
 import net.elena.murat.light.*;
 import net.elena.murat.util.ColorUtil;
-import net.elena.murat.util.NoiseUtil;
+import net.elena.murat.util.FastNoise;
 
 public class MarblePBRMaterial implements PBRCapableMaterial {
   private final Color baseColor;
@@ -36,13 +36,12 @@ public class MarblePBRMaterial implements PBRCapableMaterial {
   @Override
   public Color getColorAt(Point3 point, Vector3 normal, Light light, Point3 viewerPos) {
     // 1. Advanced vein pattern (3D Perlin noise)
-    Point3 scaledPoint = new Point3(
+    double noise = FastNoise.turbulence(
       point.x * veinScale,
       point.y * veinScale,
-      point.z * veinScale * 0.5
+      point.z * veinScale * 0.5,
+      4
     );
-    
-    double noise = NoiseUtil.turbulence(scaledPoint, 4);
     double veins = Math.pow(Math.sin(noise * Math.PI * 3) * 0.5 + 0.5, veinContrast * 10);
     veins *= veinIntensity;
     
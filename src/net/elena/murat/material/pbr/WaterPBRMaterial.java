@@ -4,9 +4,10 @@ import java.awt.Color;
 
 import net.elena.murat.math.*;
 import net.elena.murat.light.*;
+import net.elena.murat.lovert.Animatable;
 import net.elena.murat.util.*;
 
-public class WaterPBRMaterial implements PBRCapableMaterial {
+public class WaterPBRMaterial implements PBRCapableMaterial, Animatable {
   private final Color waterColor;
   private final double roughness;
   private final double waveIntensity;
@@ -34,6 +35,7 @@ public class WaterPBRMaterial implements PBRCapableMaterial {
     this.time = 0.0;
   }
   
+  @Override
   public void update(double deltaTime) {
     this.time += deltaTime * 0.5; // Animation speed
   }
@@ -0,0 +1,146 @@
+package net.elena.murat.math;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Static k-d tree over a list of points, for nearest-point and radius
+ * queries in logarithmic time. Points are identified by their index in
+ * the list the tree was built from.
+ * <p>
+ * The tree is stored implicitly: the median of every range is its node,
+ * the halves before and after it are the subtrees. Each node splits on
+ * the axis along which its range is widest.
+ * </p>
+ */
+public final class PointKdTree {
+
+  private final double[] xs;
+  private final double[] ys;
+  private final double[] zs;
+  private final int[] ids;
+  private final byte[] axes;
+
+  private static final class Search {
+    double bestDistance = Double.POSITIVE_INFINITY;
+    int bestId = -1;
+  }
+
+  public PointKdTree(List<Point3> points) {
+    int n = points.size();
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    this.xs = new double[n];
+    this.ys = new double[n];
+    this.zs = new double[n];
+    this.ids = new int[n];
+    this.axes = new byte[n];
+    build(points, order, 0, n);
+    for (int i = 0; i < n; i++) {
+      Point3 p = points.get(order[i]);
+      xs[i] = p.x;
+      ys[i] = p.y;
+      zs[i] = p.z;
+      ids[i] = order[i];
+    }
+  }
+
+  private void build(List<Point3> points, Integer[] order, int lo, int hi) {
+    if (hi - lo <= 1) return;
+
+    double minX = Double.POSITIVE_INFINITY, minY = minX, minZ = minX;
+    double maxX = Double.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+    for (int i = lo; i < hi; i++) {
+      Point3 p = points.get(order[i]);
+      minX = Math.min(minX, p.x); maxX = Math.max(maxX, p.x);
+      minY = Math.min(minY, p.y); maxY = Math.max(maxY, p.y);
+      minZ = Math.min(minZ, p.z); maxZ = Math.max(maxZ, p.z);
+    }
+    double dx = maxX - minX;
+    double dy = maxY - minY;
+    double dz = maxZ - minZ;
+    final int axis = (dx >= dy && dx >= dz) ? 0 : (dy >= dz ? 1 : 2);
+
+    Comparator<Integer> byAxis = (a, b) -> Double.compare(points.get(a).get(axis), points.get(b).get(axis));
+    Arrays.sort(order, lo, hi, byAxis);
+
+    int mid = (lo + hi) >>> 1;
+    axes[mid] = (byte) axis;
+    build(points, order, lo, mid);
+    build(points, order, mid + 1, hi);
+  }
+
+  public int size() {
+    return ids.length;
+  }
+
+  /**
+   * Index of the point closest to p; on equal distances the lowest index
+   * wins. Returns -1 for an empty tree.
+   */
+  public int nearest(Point3 p) {
+    Search search = new Search();
+    nearest(p, 0, ids.length, search);
+    return search.bestId;
+  }
+
+  private void nearest(Point3 p, int lo, int hi, Search search) {
+    if (lo >= hi) return;
+    int mid = (lo + hi) >>> 1;
+
+    double dx = xs[mid] - p.x;
+    double dy = ys[mid] - p.y;
+    double dz = zs[mid] - p.z;
+    double d = Math.sqrt(dx * dx + dy * dy + dz * dz);
+    if (d < search.bestDistance || (d == search.bestDistance && ids[mid] < search.bestId)) {
+      search.bestDistance = d;
+      search.bestId = ids[mid];
+    }
+
+    double diff = coord(p, axes[mid]) - coord(mid, axes[mid]);
+    if (diff < 0) {
+      nearest(p, lo, mid, search);
+      if (-diff <= search.bestDistance) nearest(p, mid + 1, hi, search);
+      } else {
+      nearest(p, mid + 1, hi, search);
+      if (diff <= search.bestDistance) nearest(p, lo, mid, search);
+    }
+  }
+
+  /**
+   * Calls the action with the index of every point within the radius of
+   * p, in no particular order.
+   */
+  public void forEachWithin(Point3 p, double radius, IntConsumer action) {
+    forEachWithin(p, radius, radius * radius, 0, ids.length, action);
+  }
+
+  private void forEachWithin(Point3 p, double radius, double radius2, int lo, int hi, IntConsumer action) {
+    if (lo >= hi) return;
+    int mid = (lo + hi) >>> 1;
+
+    double dx = xs[mid] - p.x;
+    double dy = ys[mid] - p.y;
+    double dz = zs[mid] - p.z;
+    if (dx * dx + dy * dy + dz * dz <= radius2) {
+      action.accept(ids[mid]);
+    }
+
+    double diff = coord(p, axes[mid]) - coord(mid, axes[mid]);
+    if (diff <= radius) forEachWithin(p, radius, radius2, mid + 1, hi, action);
+    if (-diff <= radius) forEachWithin(p, radius, radius2, lo, mid, action);
+  }
+
+  private static double coord(Point3 p, int axis) {
+    return axis == 0 ? p.x : (axis == 1 ? p.y : p.z);
+  }
+
+  private double coord(int node, int axis) {
+    return axis == 0 ? xs[node] : (axis == 1 ? ys[node] : zs[node]);
+  }
+
+}
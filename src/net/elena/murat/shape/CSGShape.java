@@ -105,6 +105,14 @@ public abstract class CSGShape implements EMShape {
     return normalTransformMatrix.transformVector(localNormal).normalize();
   }
   
+  public EMShape getLeft() {
+    return left;
+  }
+  
+  public EMShape getRight() {
+    return right;
+  }
+  
   @Override
   public Material getMaterial() {
     return left.getMaterial();
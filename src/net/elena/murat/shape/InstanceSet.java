@@ -0,0 +1,309 @@
+package net.elena.murat.shape;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.elena.murat.math.*;
+import net.elena.murat.material.Material;
+
+/**
+ * Copies of one prototype shape, such as a Repeat, Grid or Array block of
+ * a scene file produces, intersected as one scene shape. A copy costs
+ * {@value #STRIDE} doubles in a shared array: the affine world-to-prototype
+ * transform it is placed by and its position, used to tell copies apart
+ * in {@link #getNormalAt}. All copies share the prototype's geometry and
+ * one material.
+ * <p>
+ * Hits found through {@link #intersectClosest} carry the copy's placement.
+ * The tracer shades them in world space like any other hit, with the
+ * material's object transform set to the copy's, so a procedural pattern
+ * moves along with each copy.
+ * </p>
+ */
+public class InstanceSet implements EMShape {
+  // Rows 0-2 of the inverse transform, then the copy's world position
+  private static final int STRIDE = 15;
+
+  private final EMShape prototype;
+  private Material material;
+
+  private double[] placements = new double[4 * STRIDE];
+  private int count;
+
+  // Moves the whole set, on top of each copy's own transform
+  private Matrix4 transform = Matrix4.identity();
+  private Matrix4 inverseTransform = Matrix4.identity();
+
+  public InstanceSet(EMShape prototype) {
+    if (prototype == null) {
+      throw new IllegalArgumentException("Instance set without a prototype shape");
+    }
+    this.prototype = prototype;
+  }
+
+  /**
+   * Adds a copy placed by the transform, within the set's own transform.
+   * @return the copy's index
+   */
+  public int add(Matrix4 transform) {
+    Matrix4 world = this.transform.multiply(transform);
+    Matrix4 inverse = world.inverse();
+    if (inverse == null) {
+      throw new IllegalArgumentException("Instance transform is not invertible: " + transform);
+    }
+    if ((count + 1) * STRIDE > placements.length) {
+      placements = Arrays.copyOf(placements, placements.length * 2);
+    }
+    store(count, inverse, world.transformPoint(new Point3(0.0, 0.0, 0.0)));
+    return count++;
+  }
+
+  private void store(int index, Matrix4 inverse, Point3 position) {
+    int o = index * STRIDE;
+    for (int row = 0; row < 3; row++) {
+      for (int col = 0; col < 4; col++) {
+        placements[o++] = inverse.get(row, col);
+      }
+    }
+    placements[o++] = position.x;
+    placements[o++] = position.y;
+    placements[o] = position.z;
+  }
+
+  private Matrix4 inverseOf(int index) {
+    int o = index * STRIDE;
+    double[] m = placements;
+    return new Matrix4(
+      m[o], m[o + 1], m[o + 2], m[o + 3],
+      m[o + 4], m[o + 5], m[o + 6], m[o + 7],
+      m[o + 8], m[o + 9], m[o + 10], m[o + 11],
+      0.0, 0.0, 0.0, 1.0);
+  }
+
+  public EMShape getPrototype() {
+    return prototype;
+  }
+
+  public int size() {
+    return count;
+  }
+
+  /**
+   * World transform of one copy, the set's transform included.
+   */
+  public Matrix4 getInstanceTransform(int index) {
+    checkIndex(index);
+    return inverseOf(index).inverse();
+  }
+
+  /**
+   * World transforms of all copies, see {@link #getInstanceTransform}.
+   */
+  public List<Matrix4> getInstanceTransforms() {
+    List<Matrix4> transforms = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      transforms.add(getInstanceTransform(i));
+    }
+    return Collections.unmodifiableList(transforms);
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException("Instance " + index + " of " + count);
+    }
+  }
+
+  private static Point3 toLocalPoint(double[] m, int o, Point3 p) {
+    return new Point3(
+      m[o] * p.x + m[o + 1] * p.y + m[o + 2] * p.z + m[o + 3],
+      m[o + 4] * p.x + m[o + 5] * p.y + m[o + 6] * p.z + m[o + 7],
+      m[o + 8] * p.x + m[o + 9] * p.y + m[o + 10] * p.z + m[o + 11]);
+  }
+
+  private static Vector3 toLocalDirection(double[] m, int o, Vector3 v) {
+    return new Vector3(
+      m[o] * v.x + m[o + 1] * v.y + m[o + 2] * v.z,
+      m[o + 4] * v.x + m[o + 5] * v.y + m[o + 6] * v.z,
+      m[o + 8] * v.x + m[o + 9] * v.y + m[o + 10] * v.z);
+  }
+
+  // Normals go back to the world by the transpose of the inverse
+  private static Vector3 toWorldNormal(double[] m, int o, Vector3 n) {
+    return new Vector3(
+      m[o] * n.x + m[o + 4] * n.y + m[o + 8] * n.z,
+      m[o + 1] * n.x + m[o + 5] * n.y + m[o + 9] * n.z,
+      m[o + 2] * n.x + m[o + 6] * n.y + m[o + 10] * n.z).normalize();
+  }
+
+  /**
+   * Distance along the world ray to the copy's surface, or a value not
+   * above {@link Ray#EPSILON} if the ray misses it.
+   */
+  private double intersect(int index, Ray ray) {
+    int o = index * STRIDE;
+    Vector3 localDirection = toLocalDirection(placements, o, ray.getDirection());
+    double t = prototype.intersect(new Ray(toLocalPoint(placements, o, ray.getOrigin()), localDirection));
+    if (t == Double.POSITIVE_INFINITY || t <= 0) return t;
+    // The prototype measures t along its normalized local direction
+    return t / localDirection.length();
+  }
+
+  @Override
+  public double intersect(Ray ray) {
+    double closest = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < count; i++) {
+      double t = intersect(i, ray);
+      if (t > Ray.EPSILON && t < closest) closest = t;
+    }
+    return closest;
+  }
+
+  /**
+   * The nearest hit of the ray on any copy, with the copy's placement;
+   * null if the ray misses them all.
+   */
+  public Hit intersectClosest(Ray ray) {
+    int closestIndex = -1;
+    double closest = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < count; i++) {
+      double t = intersect(i, ray);
+      if (t > Ray.EPSILON && t < closest) {
+        closest = t;
+        closestIndex = i;
+      }
+    }
+    if (closestIndex < 0) return null;
+
+    Point3 worldPoint = ray.pointAtParameter(closest);
+    int o = closestIndex * STRIDE;
+    Point3 localPoint = toLocalPoint(placements, o, worldPoint);
+    Vector3 localNormal = prototype.getNormalAt(localPoint);
+    return new Hit(worldPoint, toWorldNormal(placements, o, localNormal), closest, closestIndex);
+  }
+
+  @Override
+  public List<IntersectionInterval> intersectAll(Ray ray) {
+    List<IntersectionInterval> result = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      int o = i * STRIDE;
+      Vector3 localDirection = toLocalDirection(placements, o, ray.getDirection());
+      double scale = 1.0 / localDirection.length();
+      List<IntersectionInterval> local = prototype.intersectAll(
+        new Ray(toLocalPoint(placements, o, ray.getOrigin()), localDirection));
+      for (IntersectionInterval interval : local) {
+        Intersection in = toWorld(interval.in, ray, scale, o);
+        Intersection out = (interval.out == interval.in) ? in : toWorld(interval.out, ray, scale, o);
+        result.add(new IntersectionInterval(interval.tIn * scale, interval.tOut * scale, in, out));
+      }
+    }
+    if (count > 1) {
+      Collections.sort(result, (a, b) -> Double.compare(a.tIn, b.tIn));
+    }
+    return result;
+  }
+
+  private Intersection toWorld(Intersection hit, Ray ray, double scale, int o) {
+    if (hit == null) return null;
+    double t = hit.getDistance() * scale;
+    return new Hit(ray.pointAtParameter(t), toWorldNormal(placements, o, hit.getNormal()), t, o / STRIDE);
+  }
+
+  /**
+   * Normal of the copy placed nearest the point. Hits from
+   * {@link #intersectClosest} already carry the right copy's normal.
+   */
+  @Override
+  public Vector3 getNormalAt(Point3 point) {
+    int nearest = 0;
+    double nearestDistance = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < count; i++) {
+      int o = i * STRIDE + 12;
+      double dx = point.x - placements[o];
+      double dy = point.y - placements[o + 1];
+      double dz = point.z - placements[o + 2];
+      double distance = dx * dx + dy * dy + dz * dz;
+      if (distance < nearestDistance) {
+        nearestDistance = distance;
+        nearest = i;
+      }
+    }
+    int o = nearest * STRIDE;
+    return toWorldNormal(placements, o, prototype.getNormalAt(toLocalPoint(placements, o, point)));
+  }
+
+  /**
+   * The prototype's material unless the set was given its own.
+   */
+  @Override
+  public Material getMaterial() {
+    return material != null ? material : prototype.getMaterial();
+  }
+
+  @Override
+  public void setMaterial(Material material) {
+    this.material = material;
+  }
+
+  /**
+   * Moves the whole set; every copy keeps its place relative to the others.
+   */
+  @Override
+  public void setTransform(Matrix4 transform) {
+    Matrix4 inverse = transform.inverse();
+    if (inverse == null) {
+      throw new IllegalArgumentException("Instance transform is not invertible: " + transform);
+    }
+    Matrix4 change = transform.multiply(inverseTransform);
+    Matrix4 undo = this.transform.multiply(inverse);
+    for (int i = 0; i < count; i++) {
+      int o = i * STRIDE + 12;
+      Point3 position = change.transformPoint(new Point3(placements[o], placements[o + 1], placements[o + 2]));
+      store(i, inverseOf(i).multiply(undo), position);
+    }
+    this.transform = new Matrix4(transform);
+    this.inverseTransform = inverse;
+  }
+
+  @Override
+  public Matrix4 getTransform() {
+    return transform;
+  }
+
+  @Override
+  public Matrix4 getInverseTransform() {
+    return inverseTransform;
+  }
+
+  @Override
+  public String toString() {
+    return "InstanceSet[" + count + " x " + prototype.getClass().getSimpleName() + "]";
+  }
+
+  /**
+   * A hit on one copy.
+   */
+  public final class Hit extends Intersection {
+    private final int index;
+
+    private Hit(Point3 point, Vector3 normal, double distance, int index) {
+      super(point, normal, distance, InstanceSet.this);
+      this.index = index;
+    }
+
+    public int getInstanceIndex() {
+      return index;
+    }
+
+    /**
+     * What a material gives to setObjectTransform for the hit copy: the
+     * prototype's inverse transform taken through the copy's placement,
+     * as the parser passes a shape's inverse transform for its own material.
+     */
+    public Matrix4 getObjectTransform() {
+      return prototype.getInverseTransform().multiply(inverseOf(index));
+    }
+  }
+
+}
@@ -0,0 +1,19 @@
+package net.elena.murat.shape;
+
+import net.elena.murat.math.Matrix4;
+
+/**
+ * One placement of a shared prototype shape: an {@link InstanceSet}
+ * holding a single copy, placed by the set's transform. The instance only
+ * holds its own transform, applied on top of the prototype's, and shares
+ * the prototype's geometry and material.
+ */
+public class ShapeInstance extends InstanceSet {
+
+  public ShapeInstance(EMShape prototype, Matrix4 transform) {
+    super(prototype);
+    add(Matrix4.identity());
+    setTransform(transform);
+  }
+
+}
@@ -184,4 +184,7 @@ public class Letter3D implements EMShape {
   @Override public Matrix4 getTransform() { return new Matrix4(transform); }
   @Override public Matrix4 getInverseTransform() { return new Matrix4(inverseTransform); }
   
+  public int getVertexCount() { return mesh.vertices.size(); }
+  public int getFaceCount() { return mesh.faces.size(); }
+  
 }
@@ -195,7 +195,10 @@ public final class ColorUtil {
     return new Color(r, g, b, a);
   }
   
-  private static float acesToneMap(float x) {
+  /**
+   * ACES filmic curve (Narkowicz fit), result in 0..1
+   */
+  public static float acesToneMap(float x) {
     float a = 2.51f;
     float b = 0.03f;
     float c = 2.43f;
@@ -0,0 +1,460 @@
+package net.elena.murat.util;
+
+/**
+ * Allocation-free noise functions on primitive coordinates.
+ * <p>
+ * All functions are static, thread-safe and return values in [-1, 1]
+ * unless stated otherwise. {@link #perlin(double, double, double)} gives
+ * exactly the same values as the classic improved noise but floors each
+ * coordinate once, reuses the permutation row lookups and evaluates the
+ * gradients from tables instead of branches.
+ * The batch variants fill a {@code double[]} for many points at once,
+ * with the points stored interleaved as x0, y0, z0, x1, y1, z1, ...
+ * </p>
+ */
+public final class FastNoise {
+
+  private FastNoise() {}
+
+  private static final int[] PERM = new int[512];
+
+  static {
+    int[] p = { 151,160,137,91,90,15,131,13,201,95,96,53,194,233,7,225,
+      140,36,103,30,69,142,8,99,37,240,21,10,23,190,6,148,247,120,234,75,0,26,197,62,94,252,219,203,117,
+      35,11,32,57,177,33,88,237,149,56,87,174,20,125,136,171,168,68,175,74,165,71,134,139,48,27,166,77,
+      146,158,231,83,111,229,122,60,211,133,230,220,105,92,41,55,46,245,40,244,102,143,54,65,25,63,161,
+      1,216,80,73,209,76,132,187,208,89,18,169,200,196,135,130,116,188,159,86,164,100,109,198,173,186,3,
+      64,52,217,226,250,124,123,5,202,38,147,118,126,255,82,85,212,207,206,59,227,47,16,58,17,182,189,
+      28,42,223,183,170,213,119,248,152,2,44,154,163,70,221,153,101,155,167,43,172,9,129,22,39,253,19,98,
+      108,110,79,113,224,232,178,185,112,104,218,246,97,228,251,34,242,193,238,210,144,12,191,179,162,241,
+      81,51,145,235,249,14,239,107,49,192,214,31,181,199,106,157,184,84,204,176,115,121,50,45,127,4,150,
+    254,138,236,205,93,222,114,67,29,24,72,243,141,128,195,78,66,215,61,156,180 };
+
+    System.arraycopy(p, 0, PERM, 0, 256);
+    System.arraycopy(p, 0, PERM, 256, 256);
+  }
+
+  // Improved-noise gradients as coefficient tables: grad(h, x, y, z) is
+  // GX[h]*x + GY[h]*y + GZ[h]*z, which avoids the unpredictable branches
+  // of the classic selector and gives the same values.
+  private static final double[] GX = new double[256];
+  private static final double[] GY = new double[256];
+  private static final double[] GZ = new double[256];
+
+  static {
+    for (int i = 0; i < 256; i++) {
+      int h = i & 15;
+      double[] c = new double[3];
+      // u and v pick two distinct axes, exactly as in the classic grad
+      int uAxis = h < 8 ? 0 : 1;
+      int vAxis = h < 4 ? 1 : (h == 12 || h == 14) ? 0 : 2;
+      c[uAxis] = (h & 1) == 0 ? 1.0 : -1.0;
+      c[vAxis] = (h & 2) == 0 ? 1.0 : -1.0;
+      GX[i] = c[0];
+      GY[i] = c[1];
+      GZ[i] = c[2];
+    }
+  }
+
+  // Simplex skew factors for 3D
+  private static final double F3 = 1.0 / 3.0;
+  private static final double G3 = 1.0 / 6.0;
+
+  private static final int[][] GRAD3 = {
+    {1,1,0},{-1,1,0},{1,-1,0},{-1,-1,0},
+    {1,0,1},{-1,0,1},{1,0,-1},{-1,0,-1},
+    {0,1,1},{0,-1,1},{0,1,-1},{0,-1,-1}
+  };
+
+  // --- Perlin ---
+
+  /**
+   * 3D gradient (Perlin) noise.
+   */
+  public static double perlin(double x, double y, double z) {
+    int fx = fastFloor(x);
+    int fy = fastFloor(y);
+    int fz = fastFloor(z);
+
+    double xf = x - fx;
+    double yf = y - fy;
+    double zf = z - fz;
+
+    int xi = fx & 255;
+    int yi = fy & 255;
+    int zi = fz & 255;
+
+    double u = fade(xf);
+    double v = fade(yf);
+    double w = fade(zf);
+
+    int a = PERM[xi] + yi;
+    int b = PERM[xi + 1] + yi;
+    int aa = PERM[a] + zi;
+    int ab = PERM[a + 1] + zi;
+    int ba = PERM[b] + zi;
+    int bb = PERM[b + 1] + zi;
+
+    double x1 = lerp(grad(PERM[aa], xf, yf, zf), grad(PERM[ba], xf - 1, yf, zf), u);
+    double x2 = lerp(grad(PERM[ab], xf, yf - 1, zf), grad(PERM[bb], xf - 1, yf - 1, zf), u);
+    double y1 = lerp(x1, x2, v);
+
+    x1 = lerp(grad(PERM[aa + 1], xf, yf, zf - 1), grad(PERM[ba + 1], xf - 1, yf, zf - 1), u);
+    x2 = lerp(grad(PERM[ab + 1], xf, yf - 1, zf - 1), grad(PERM[bb + 1], xf - 1, yf - 1, zf - 1), u);
+    double y2 = lerp(x1, x2, v);
+
+    return lerp(y1, y2, w);
+  }
+
+  /**
+   * 2D Perlin noise; equal to perlin(x, y, 0) but evaluates only the
+   * z = 0 face of the cell.
+   */
+  public static double perlin(double x, double y) {
+    int fx = fastFloor(x);
+    int fy = fastFloor(y);
+
+    double xf = x - fx;
+    double yf = y - fy;
+
+    int xi = fx & 255;
+    int yi = fy & 255;
+
+    double u = fade(xf);
+    double v = fade(yf);
+
+    int a = PERM[xi] + yi;
+    int b = PERM[xi + 1] + yi;
+
+    double x1 = lerp(grad(PERM[PERM[a]], xf, yf, 0), grad(PERM[PERM[b]], xf - 1, yf, 0), u);
+    double x2 = lerp(grad(PERM[PERM[a + 1]], xf, yf - 1, 0), grad(PERM[PERM[b + 1]], xf - 1, yf - 1, 0), u);
+    return lerp(x1, x2, v);
+  }
+
+  // --- Value noise ---
+
+  /**
+   * 3D value noise: smoothly interpolated random values on the integer lattice.
+   */
+  public static double value(double x, double y, double z) {
+    int fx = fastFloor(x);
+    int fy = fastFloor(y);
+    int fz = fastFloor(z);
+
+    double u = fade(x - fx);
+    double v = fade(y - fy);
+    double w = fade(z - fz);
+
+    int xi = fx & 255;
+    int yi = fy & 255;
+    int zi = fz & 255;
+
+    int a = PERM[xi] + yi;
+    int b = PERM[xi + 1] + yi;
+    int aa = PERM[a] + zi;
+    int ab = PERM[a + 1] + zi;
+    int ba = PERM[b] + zi;
+    int bb = PERM[b + 1] + zi;
+
+    double x1 = lerp(lattice(PERM[aa]), lattice(PERM[ba]), u);
+    double x2 = lerp(lattice(PERM[ab]), lattice(PERM[bb]), u);
+    double y1 = lerp(x1, x2, v);
+
+    x1 = lerp(lattice(PERM[aa + 1]), lattice(PERM[ba + 1]), u);
+    x2 = lerp(lattice(PERM[ab + 1]), lattice(PERM[bb + 1]), u);
+    double y2 = lerp(x1, x2, v);
+
+    return lerp(y1, y2, w);
+  }
+
+  // --- Simplex ---
+
+  /**
+   * 3D simplex noise (Gustavson's reference formulation), scaled to about [-1, 1].
+   */
+  public static double simplex(double x, double y, double z) {
+    double s = (x + y + z) * F3;
+    int i = fastFloor(x + s);
+    int j = fastFloor(y + s);
+    int k = fastFloor(z + s);
+    double t = (i + j + k) * G3;
+    double x0 = x - (i - t);
+    double y0 = y - (j - t);
+    double z0 = z - (k - t);
+
+    int i1, j1, k1;
+    int i2, j2, k2;
+    if (x0 >= y0) {
+      if (y0 >= z0) {
+        i1 = 1; j1 = 0; k1 = 0; i2 = 1; j2 = 1; k2 = 0;
+        } else if (x0 >= z0) {
+        i1 = 1; j1 = 0; k1 = 0; i2 = 1; j2 = 0; k2 = 1;
+        } else {
+        i1 = 0; j1 = 0; k1 = 1; i2 = 1; j2 = 0; k2 = 1;
+      }
+      } else {
+      if (y0 < z0) {
+        i1 = 0; j1 = 0; k1 = 1; i2 = 0; j2 = 1; k2 = 1;
+        } else if (x0 < z0) {
+        i1 = 0; j1 = 1; k1 = 0; i2 = 0; j2 = 1; k2 = 1;
+        } else {
+        i1 = 0; j1 = 1; k1 = 0; i2 = 1; j2 = 1; k2 = 0;
+      }
+    }
+
+    double x1 = x0 - i1 + G3;
+    double y1 = y0 - j1 + G3;
+    double z1 = z0 - k1 + G3;
+    double x2 = x0 - i2 + 2.0 * G3;
+    double y2 = y0 - j2 + 2.0 * G3;
+    double z2 = z0 - k2 + 2.0 * G3;
+    double x3 = x0 - 1.0 + 3.0 * G3;
+    double y3 = y0 - 1.0 + 3.0 * G3;
+    double z3 = z0 - 1.0 + 3.0 * G3;
+
+    int ii = i & 255;
+    int jj = j & 255;
+    int kk = k & 255;
+
+    double n = simplexCorner(PERM[ii + PERM[jj + PERM[kk]]], x0, y0, z0)
+    + simplexCorner(PERM[ii + i1 + PERM[jj + j1 + PERM[kk + k1]]], x1, y1, z1)
+    + simplexCorner(PERM[ii + i2 + PERM[jj + j2 + PERM[kk + k2]]], x2, y2, z2)
+    + simplexCorner(PERM[ii + 1 + PERM[jj + 1 + PERM[kk + 1]]], x3, y3, z3);
+
+    return 32.0 * n;
+  }
+
+  private static double simplexCorner(int hash, double x, double y, double z) {
+    double t = 0.6 - x * x - y * y - z * z;
+    if (t < 0) return 0.0;
+    int[] g = GRAD3[hash % 12];
+    t *= t;
+    return t * t * (g[0] * x + g[1] * y + g[2] * z);
+  }
+
+  // --- Worley ---
+
+  /**
+   * 3D Worley (cellular) noise: distance to the nearest feature point,
+   * one point per unit cell. Returns a value in [0, about 1.5].
+   */
+  public static double worley(double x, double y, double z) {
+    int cx = fastFloor(x);
+    int cy = fastFloor(y);
+    int cz = fastFloor(z);
+    double best = Double.MAX_VALUE;
+
+    for (int dz = -1; dz <= 1; dz++) {
+      for (int dy = -1; dy <= 1; dy++) {
+        for (int dx = -1; dx <= 1; dx++) {
+          int h = hash(cx + dx, cy + dy, cz + dz);
+          double px = cx + dx + (h & 1023) / 1023.0;
+          double py = cy + dy + ((h >>> 10) & 1023) / 1023.0;
+          double pz = cz + dz + ((h >>> 20) & 1023) / 1023.0;
+          double ex = px - x;
+          double ey = py - y;
+          double ez = pz - z;
+          double d = ex * ex + ey * ey + ez * ez;
+          if (d < best) best = d;
+        }
+      }
+    }
+    return Math.sqrt(best);
+  }
+
+  // --- Fractal sums ---
+
+  /**
+   * Fractal Brownian motion over Perlin noise, normalized by the total
+   * amplitude.
+   */
+  public static double fbm(double x, double y, double z, int octaves, double lacunarity, double gain) {
+    double sum = 0.0;
+    double amplitude = 1.0;
+    double total = 0.0;
+    double freq = 1.0;
+
+    for (int i = 0; i < octaves; i++) {
+      sum += amplitude * perlin(x * freq, y * freq, z * freq);
+      total += amplitude;
+      amplitude *= gain;
+      freq *= lacunarity;
+    }
+    return total > 0.0 ? sum / total : 0.0;
+  }
+
+  /**
+   * Turbulence: normalized sum of |perlin| with doubling frequency and
+   * halving amplitude. Same values as {@link NoiseUtil#turbulence}.
+   * Returns a value in [0, 1].
+   */
+  public static double turbulence(double x, double y, double z, int octaves) {
+    double value = 0.0;
+    double size = 1.0;
+    double totalAmplitude = 0.0;
+    double amplitude = 1.0;
+
+    for (int i = 0; i < octaves; i++) {
+      value += amplitude * Math.abs(perlin(x / size, y / size, z / size));
+      totalAmplitude += amplitude;
+      amplitude *= 0.5;
+      size *= 0.5;
+    }
+    return value / totalAmplitude;
+  }
+
+  // --- Material patterns ---
+  // Bit for bit the functions these materials were written with, so scenes
+  // made with them keep their look.
+
+  /**
+   * Sum of sine and cosine waves of HotCopperMaterial, in (-1, 1).
+   */
+  public static double copperWaves(double x, double y, double z) {
+    double value = Math.sin(x * 0.472) + Math.cos(y * 0.683) + Math.sin(z * 0.291);
+    value += Math.cos(x * 1.732 + y * 0.846) * 0.6;
+    value += Math.sin(y * 1.357 + z * 2.173) * 0.3;
+    return value % 1.0;
+  }
+
+  /**
+   * Sum of sine waves of VikingMetalMaterial, in (-1, 1).
+   */
+  public static double vikingWaves(double x, double y, double z) {
+    double value = Math.sin(x * 0.431) + Math.sin(y * 0.723) + Math.sin(z * 0.327);
+    value += Math.sin(x * 1.531 + y * 0.927) * 0.5;
+    value += Math.sin(y * 1.231 + z * 1.627) * 0.25;
+    return value % 1.0;
+  }
+
+  /**
+   * Shader-style hash of one coordinate: the fractional part of
+   * sin(v) * scale, in [0, 1).
+   */
+  public static double sineHash(double v, double scale) {
+    return fract(Math.sin(v) * scale);
+  }
+
+  /**
+   * As {@link #sineHash} with the cosine.
+   */
+  public static double cosineHash(double v, double scale) {
+    return fract(Math.cos(v) * scale);
+  }
+
+  /**
+   * A weighted sum of the coordinates cut to an int and mapped to [0, 1];
+   * DewDropMaterial's drop placement.
+   */
+  public static double linearHash(double x, double y, double z) {
+    int hash = (int) (x * 127 + y * 311 + z * 571);
+    return (hash & 0x7FFFFFFF) / 2147483647.0;
+  }
+
+  /**
+   * Gradient noise of MarbleMaterial: the corners of the z = 0 face of the
+   * cell only, hashed by their position instead of the permutation table.
+   */
+  public static double hashedPerlin(double x, double y, double z) {
+    int xi = (int) Math.floor(x) & 255;
+    int yi = (int) Math.floor(y) & 255;
+    int zi = (int) Math.floor(z) & 255;
+
+    x -= Math.floor(x);
+    y -= Math.floor(y);
+    z -= Math.floor(z);
+
+    double u = fade(x);
+    double v = fade(y);
+
+    int a = xi + yi * 256 + zi * 256 * 256;
+    int aa = a % 256;
+    int ab = (a + 1) % 256;
+    int ba = (a + 256) % 256;
+    int bb = (a + 257) % 256;
+
+    double x1 = lerp(grad(aa, x, y, z), grad(ab, x - 1, y, z), u);
+    double x2 = lerp(grad(ba, x, y - 1, z), grad(bb, x - 1, y - 1, z), u);
+    return lerp(x1, x2, v);
+  }
+
+  // --- Batch ---
+
+  /**
+   * Perlin noise for {@code count} interleaved points.
+   * @param xyz point coordinates, 3 per point
+   * @param out receives one value per point
+   */
+  public static void perlin(double[] xyz, double[] out, int count) {
+    for (int i = 0, j = 0; i < count; i++, j += 3) {
+      out[i] = perlin(xyz[j], xyz[j + 1], xyz[j + 2]);
+    }
+  }
+
+  public static void fbm(double[] xyz, double[] out, int count, int octaves, double lacunarity, double gain) {
+    for (int i = 0, j = 0; i < count; i++, j += 3) {
+      out[i] = fbm(xyz[j], xyz[j + 1], xyz[j + 2], octaves, lacunarity, gain);
+    }
+  }
+
+  public static void turbulence(double[] xyz, double[] out, int count, int octaves) {
+    for (int i = 0, j = 0; i < count; i++, j += 3) {
+      out[i] = turbulence(xyz[j], xyz[j + 1], xyz[j + 2], octaves);
+    }
+  }
+
+  public static void simplex(double[] xyz, double[] out, int count) {
+    for (int i = 0, j = 0; i < count; i++, j += 3) {
+      out[i] = simplex(xyz[j], xyz[j + 1], xyz[j + 2]);
+    }
+  }
+
+  public static void worley(double[] xyz, double[] out, int count) {
+    for (int i = 0, j = 0; i < count; i++, j += 3) {
+      out[i] = worley(xyz[j], xyz[j + 1], xyz[j + 2]);
+    }
+  }
+
+  // --- Helpers ---
+
+  /**
+   * Math.floor for values in int range, without the double round trip.
+   */
+  public static int fastFloor(double v) {
+    int i = (int) v;
+    return v < i ? i - 1 : i;
+  }
+
+  /**
+   * Integer lattice hash, well mixed over all 32 bits.
+   */
+  public static int hash(int x, int y, int z) {
+    int h = x * 0x27D4EB2D ^ y * 0x165667B1 ^ z * 0x1B873593;
+    h ^= h >>> 15;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    return h ^ (h >>> 16);
+  }
+
+  private static double fract(double value) {
+    return value - Math.floor(value);
+  }
+
+  private static double lattice(int hash) {
+    return hash / 127.5 - 1.0;
+  }
+
+  private static double fade(double t) {
+    return t * t * t * (t * (t * 6 - 15) + 10);
+  }
+
+  private static double lerp(double a, double b, double t) {
+    return a + t * (b - a);
+  }
+
+  private static double grad(int hash, double x, double y, double z) {
+    return GX[hash] * x + GY[hash] * y + GZ[hash] * z;
+  }
+
+}
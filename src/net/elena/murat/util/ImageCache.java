@@ -0,0 +1,116 @@
+package net.elena.murat.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, least-recently-used cache of decoded images by path.
+ * The size of an image is the size of its pixel buffer; tiled texture
+ * views cost nothing here because their pixels live in the
+ * {@link TileCache}. When the total exceeds the budget the least
+ * recently used images are dropped, so memory no longer grows with
+ * the number of distinct images a process has loaded. An image that
+ * is still referenced by a material stays alive, only the cache lets
+ * go of it. All methods are thread-safe.
+ */
+public final class ImageCache {
+
+  /** Default budget: 512 MB of decoded pixels. */
+  public static final long DEFAULT_CAPACITY_BYTES = 512L * 1024L * 1024L;
+
+  private static final ImageCache SHARED = new ImageCache(DEFAULT_CAPACITY_BYTES);
+
+  private final LinkedHashMap<String, BufferedImage> images;
+  private long capacityBytes;
+  private long sizeBytes = 0L;
+  private long evictions = 0L;
+
+  public ImageCache(long capacityBytes) {
+    this.capacityBytes = Math.max(0L, capacityBytes);
+    this.images = new LinkedHashMap<String, BufferedImage>(64, 0.75f, true);
+  }
+
+  /**
+   * Returns the process-wide cache used by the scene parser.
+   */
+  public static ImageCache shared() {
+    return SHARED;
+  }
+
+  /**
+   * @return the cached image or null on a miss
+   */
+  public synchronized BufferedImage get(String path) {
+    return images.get(path);
+  }
+
+  public synchronized boolean containsKey(String path) {
+    return images.containsKey(path);
+  }
+
+  /**
+   * Caches the image unless the path already has one.
+   * @return the image cached before, or null if this one was added
+   */
+  public synchronized BufferedImage putIfAbsent(String path, BufferedImage image) {
+    BufferedImage old = images.get(path);
+    if (old != null) return old;
+    images.put(path, image);
+    sizeBytes += bytesOf(image);
+    evictToCapacity();
+    return null;
+  }
+
+  public synchronized void clear() {
+    images.clear();
+    sizeBytes = 0L;
+  }
+
+  public synchronized void setCapacityBytes(long capacityBytes) {
+    this.capacityBytes = Math.max(0L, capacityBytes);
+    evictToCapacity();
+  }
+
+  public synchronized long getCapacityBytes() {
+    return capacityBytes;
+  }
+
+  public synchronized long getSizeBytes() {
+    return sizeBytes;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  private void evictToCapacity() {
+    Iterator<Map.Entry<String, BufferedImage>> it = images.entrySet().iterator();
+    // Keep the image just added even if it alone is over budget
+    while (sizeBytes > capacityBytes && images.size() > 1 && it.hasNext()) {
+      Map.Entry<String, BufferedImage> eldest = it.next();
+      sizeBytes -= bytesOf(eldest.getValue());
+      it.remove();
+      evictions++;
+    }
+  }
+
+  /**
+   * Bytes held by an image's pixels.
+   */
+  public static long bytesOf(BufferedImage image) {
+    if (TiledTexture.isTiledView(image)) return 0L;
+    DataBuffer buffer = image.getRaster().getDataBuffer();
+    return (long) buffer.getSize() * buffer.getNumBanks()
+      * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8L;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("ImageCache[images=%d, size=%.1f/%.1f MB, evictions=%d]",
+      images.size(), sizeBytes / 1048576.0, capacityBytes / 1048576.0, evictions);
+  }
+
+}
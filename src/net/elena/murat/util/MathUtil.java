@@ -154,21 +154,10 @@ public final class MathUtil {
   }
   
   /**
-   * 3D Perlin noise (between -1 and 1).
+   * 3D Perlin noise (between -1 and 1), see {@link FastNoise#perlin}.
    */
   public static double perlinNoise(double x, double y, double z) {
-    // Simplified Perlin noise implementation
-    int xi = (int)Math.floor(x) & 255;
-    int yi = (int)Math.floor(y) & 255;
-    int zi = (int)Math.floor(z) & 255;
-    
-    double xf = x - Math.floor(x);
-    double yf = y - Math.floor(y);
-    double zf = z - Math.floor(z);
-    
-    // Actual Perlin noise calculation would go here
-    // For simplicity, returning random value
-    return random(xi + yi * 256 + zi * 65536) * 2 - 1;
+    return FastNoise.perlin(x, y, z);
   }
   
   // --- Special Mathematical Functions ---
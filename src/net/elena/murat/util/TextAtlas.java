@@ -0,0 +1,227 @@
+package net.elena.murat.util;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Shared store of rasterized text textures.
+ * <p>
+ * Text materials describe their texture with a key built from everything
+ * that affects the rasterization (text, font, colors, offsets, size...).
+ * Materials with the same key share one packed ARGB pixel array, so a
+ * string in a given font and color is drawn with {@link Graphics2D} only once.
+ * Entries are reference counted and dropped when the last material
+ * releases them. The atlas itself only holds them weakly, so the raster
+ * of a material that is never disposed is still freed with the material.
+ * </p>
+ */
+public final class TextAtlas {
+
+  private TextAtlas() {}
+
+  /**
+   * Draws the texture content. Called once per distinct key on a cleared
+   * ARGB image of the requested size.
+   */
+  public interface Painter {
+    void paint(Graphics2D g2d, int width, int height);
+  }
+
+  /**
+   * Packed, immutable ARGB pixels of one rasterized texture.
+   */
+  public static final class Raster {
+    private final String key;
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    private int refCount = 0;
+
+    private Raster(String key, int width, int height, int[] pixels) {
+      this.key = key;
+      this.width = width;
+      this.height = height;
+      this.pixels = pixels;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    /**
+     * @return packed ARGB value, same layout as BufferedImage.getRGB
+     */
+    public int getRGB(int x, int y) {
+      return pixels[y * width + x];
+    }
+
+    /**
+     * Returns a copy of the pixels as a new ARGB image.
+     */
+    public BufferedImage toBufferedImage() {
+      BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      image.setRGB(0, 0, width, height, pixels, 0, width);
+      return image;
+    }
+  }
+
+  private static final class Entry extends WeakReference<Raster> {
+    final String key;
+
+    Entry(Raster raster) {
+      super(raster, COLLECTED);
+      this.key = raster.key;
+    }
+  }
+
+  private static final ReferenceQueue<Raster> COLLECTED = new ReferenceQueue<Raster>();
+  private static final Map<String, Entry> ENTRIES = new HashMap<String, Entry>();
+
+  // Unique ids of images used in keys; BufferedImage has identity equality
+  private static final Map<BufferedImage, Long> IMAGE_IDS = new WeakHashMap<BufferedImage, Long>();
+  private static long nextImageId = 1L;
+
+  private static long rasterizations = 0L;
+  private static long sharedHits = 0L;
+
+  /**
+   * Returns the raster for the key, drawing it with the painter if it is
+   * not in the atlas yet. Every call must be balanced by {@link #release}.
+   */
+  public static synchronized Raster acquire(String key, int width, int height, Painter painter) {
+    expungeCollected();
+    String fullKey = width + "x" + height + '\u0000' + key;
+    Entry entry = ENTRIES.get(fullKey);
+    Raster raster = entry != null ? entry.get() : null;
+
+    if (raster == null) {
+      BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      Graphics2D g2d = image.createGraphics();
+      try {
+        painter.paint(g2d, width, height);
+        } finally {
+        g2d.dispose();
+      }
+      // Keep only the backing array; the image wrapper is discarded
+      int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+      raster = new Raster(fullKey, width, height, pixels);
+      ENTRIES.put(fullKey, new Entry(raster));
+      rasterizations++;
+      } else {
+      sharedHits++;
+    }
+
+    raster.refCount++;
+    return raster;
+  }
+
+  /**
+   * Releases one reference; the raster is removed from the atlas when
+   * no material uses it anymore. Null is ignored.
+   */
+  public static synchronized void release(Raster raster) {
+    if (raster == null) return;
+    if (raster.refCount > 0) {
+      raster.refCount--;
+    }
+    Entry entry = ENTRIES.get(raster.key);
+    if (raster.refCount == 0 && entry != null && entry.get() == raster) {
+      ENTRIES.remove(raster.key);
+    }
+  }
+
+  /**
+   * Removes the entries whose rasters were collected without a release.
+   */
+  private static void expungeCollected() {
+    Entry entry;
+    while ((entry = (Entry) COLLECTED.poll()) != null) {
+      if (ENTRIES.get(entry.key) == entry) {
+        ENTRIES.remove(entry.key);
+      }
+    }
+  }
+
+  /**
+   * Builds an atlas key. Colors are keyed by ARGB value, fonts by name,
+   * style and size, images by an id unique to each image object; other
+   * values by toString.
+   */
+  public static synchronized String key(Object... parts) {
+    StringBuilder sb = new StringBuilder(64);
+    for (Object part : parts) {
+      if (part == null) {
+        sb.append("null");
+        } else if (part instanceof Color) {
+        sb.append('#').append(Integer.toHexString(((Color) part).getRGB()));
+        } else if (part instanceof Font) {
+        Font font = (Font) part;
+        sb.append(font.getName()).append(',').append(font.getStyle()).append(',').append(font.getSize2D());
+        } else if (part instanceof BufferedImage) {
+        sb.append("img#").append(imageId((BufferedImage) part));
+        } else {
+        sb.append(part);
+      }
+      sb.append('\u0000');
+    }
+    return sb.toString();
+  }
+
+  private static long imageId(BufferedImage image) {
+    Long id = IMAGE_IDS.get(image);
+    if (id == null) {
+      id = nextImageId++;
+      IMAGE_IDS.put(image, id);
+    }
+    return id;
+  }
+
+  /**
+   * Forgets every entry and resets the counters, so the next acquire of
+   * any key draws it again. Rasters materials still hold stay valid, and
+   * releasing them later is harmless.
+   */
+  public static synchronized void clear() {
+    ENTRIES.clear();
+    while (COLLECTED.poll() != null) {
+      // Their entries are gone already
+    }
+    rasterizations = 0L;
+    sharedHits = 0L;
+  }
+
+  public static synchronized int size() {
+    expungeCollected();
+    return ENTRIES.size();
+  }
+
+  public static synchronized long getRasterizations() {
+    return rasterizations;
+  }
+
+  public static synchronized long getSharedHits() {
+    return sharedHits;
+  }
+
+  public static synchronized long getMemoryBytes() {
+    long bytes = 0L;
+    for (Entry entry : ENTRIES.values()) {
+      Raster raster = entry.get();
+      if (raster != null) bytes += 4L * raster.pixels.length;
+    }
+    return bytes;
+  }
+
+}
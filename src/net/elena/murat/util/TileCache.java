@@ -0,0 +1,203 @@
+package net.elena.murat.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, least-recently-used cache of decoded texture tiles.
+ * Tiles are identified by the owning texture id and the tile index
+ * inside that texture. When the total size of cached tiles exceeds
+ * the configured budget, the least recently used tiles are evicted.
+ * <p>
+ * The cache is split into stripes by key, each with its own lock, LRU
+ * order and an equal share of the budget, so render threads sampling
+ * different tiles rarely wait on each other. Eviction is least recently
+ * used within a stripe. All methods are thread-safe.
+ * </p>
+ */
+public final class TileCache {
+
+  /** Default budget: 256 MB of ARGB pixels. */
+  public static final long DEFAULT_CAPACITY_BYTES = 256L * 1024L * 1024L;
+
+  private static final int STRIPES = 16;
+
+  private static final TileCache SHARED = new TileCache(DEFAULT_CAPACITY_BYTES);
+
+  private final Stripe[] stripes = new Stripe[STRIPES];
+  private volatile long capacityBytes;
+
+  private static final class Stripe {
+    final LinkedHashMap<Long, int[]> tiles = new LinkedHashMap<Long, int[]>(64, 0.75f, true);
+    long capacityBytes;
+    long sizeBytes = 0L;
+    long hits = 0L;
+    long misses = 0L;
+    long evictions = 0L;
+
+    void evictToCapacity() {
+      Iterator<Map.Entry<Long, int[]>> it = tiles.entrySet().iterator();
+      // Always keep at least the most recently used tile
+      while (sizeBytes > capacityBytes && tiles.size() > 1 && it.hasNext()) {
+        Map.Entry<Long, int[]> eldest = it.next();
+        sizeBytes -= bytesOf(eldest.getValue());
+        it.remove();
+        evictions++;
+      }
+    }
+  }
+
+  public TileCache(long capacityBytes) {
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe();
+    }
+    setCapacityBytes(capacityBytes);
+  }
+
+  /**
+   * Returns the process-wide cache used by {@link TiledTexture}.
+   */
+  public static TileCache shared() {
+    return SHARED;
+  }
+
+  public static long key(int textureId, int tileIndex) {
+    return (((long) textureId) << 32) | (tileIndex & 0xFFFFFFFFL);
+  }
+
+  private Stripe stripeFor(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return stripes[(int) (h >>> 60) & (STRIPES - 1)];
+  }
+
+  /**
+   * @return cached tile pixels or null on a miss
+   */
+  public int[] get(long key) {
+    Stripe stripe = stripeFor(key);
+    synchronized (stripe) {
+      int[] tile = stripe.tiles.get(key);
+      if (tile != null) {
+        stripe.hits++;
+        } else {
+        stripe.misses++;
+      }
+      return tile;
+    }
+  }
+
+  public void put(long key, int[] tile) {
+    Stripe stripe = stripeFor(key);
+    synchronized (stripe) {
+      int[] old = stripe.tiles.put(key, tile);
+      if (old != null) {
+        stripe.sizeBytes -= bytesOf(old);
+      }
+      stripe.sizeBytes += bytesOf(tile);
+      stripe.evictToCapacity();
+    }
+  }
+
+  /**
+   * Drops every tile that belongs to the given texture.
+   */
+  public void removeTexture(int textureId) {
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        Iterator<Map.Entry<Long, int[]>> it = stripe.tiles.entrySet().iterator();
+        while (it.hasNext()) {
+          Map.Entry<Long, int[]> e = it.next();
+          if ((int) (e.getKey() >>> 32) == textureId) {
+            stripe.sizeBytes -= bytesOf(e.getValue());
+            it.remove();
+          }
+        }
+      }
+    }
+  }
+
+  public void clear() {
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        stripe.tiles.clear();
+        stripe.sizeBytes = 0L;
+      }
+    }
+  }
+
+  public void setCapacityBytes(long capacityBytes) {
+    this.capacityBytes = Math.max(0L, capacityBytes);
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        stripe.capacityBytes = this.capacityBytes / STRIPES;
+        stripe.evictToCapacity();
+      }
+    }
+  }
+
+  public long getCapacityBytes() {
+    return capacityBytes;
+  }
+
+  public long getSizeBytes() {
+    long total = 0L;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        total += stripe.sizeBytes;
+      }
+    }
+    return total;
+  }
+
+  public long getHits() {
+    long total = 0L;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        total += stripe.hits;
+      }
+    }
+    return total;
+  }
+
+  public long getMisses() {
+    long total = 0L;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        total += stripe.misses;
+      }
+    }
+    return total;
+  }
+
+  public long getEvictions() {
+    long total = 0L;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        total += stripe.evictions;
+      }
+    }
+    return total;
+  }
+
+  private int size() {
+    int total = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        total += stripe.tiles.size();
+      }
+    }
+    return total;
+  }
+
+  private static long bytesOf(int[] tile) {
+    return 16L + 4L * tile.length;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("TileCache[tiles=%d, size=%.1f/%.1f MB, hits=%d, misses=%d, evictions=%d]",
+      size(), getSizeBytes() / 1048576.0, capacityBytes / 1048576.0, getHits(), getMisses(), getEvictions());
+  }
+
+}
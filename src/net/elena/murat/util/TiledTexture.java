@@ -0,0 +1,659 @@
+package net.elena.murat.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntBinaryOperator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Very large image textures stored on disk as square ARGB tiles.
+ * <p>
+ * The file (extension {@code .emtt}) is memory-mapped with
+ * {@link FileChannel#map}, so the operating system pages in only the tiles
+ * that are actually sampled. Decoded tiles are kept in the shared, bounded
+ * {@link TileCache}, which means the heap cost of a texture is limited by
+ * the cache budget and not by the image resolution.
+ * </p>
+ * <p>
+ * File layout (big endian): magic {@code "EMTT"}, version, width, height,
+ * tile size, followed by the tiles in row-major tile order starting at
+ * {@link #HEADER_BYTES}. Every tile holds {@code tileSize * tileSize} ARGB
+ * ints; edge tiles are padded by repeating the last row/column.
+ * </p>
+ * Usage: {@code java net.elena.murat.util.TiledTexture input.png [output.emtt] [tileSize]}
+ */
+public final class TiledTexture {
+
+  public static final String EXTENSION = ".emtt";
+  public static final int DEFAULT_TILE_SIZE = 256;
+  public static final int HEADER_BYTES = 64;
+  /** System property naming the directory for converted textures. */
+  public static final String DIRECTORY_PROPERTY = "elena.tileDir";
+
+  private static final int MAGIC = 0x454D5454; // "EMTT"
+  private static final int VERSION = 1;
+  private static final AtomicInteger NEXT_ID = new AtomicInteger(1);
+
+  // Rows decoded per pass, when a reader's rows cannot be streamed, are limited to roughly this many pixels
+  private static final long CONVERT_BAND_PIXELS = 16L * 1024L * 1024L;
+
+  private final int id;
+  private final String path;
+  private final int width;
+  private final int height;
+  private final int tileSize;
+  private final int tileShift;
+  private final int tilesX;
+  private final int tilesY;
+  private final int tilesPerSegment;
+  private final MappedByteBuffer[] segments;
+  private final TileCache cache;
+
+  // Last tile used by each thread, so the common same-tile lookup writes no shared state.
+  // evict() swaps in a fresh ThreadLocal, so every thread lets go of its last tile.
+  private volatile ThreadLocal<TileRef> lastTile = new ThreadLocal<TileRef>();
+
+  private static final class TileRef {
+    final int index;
+    final int[] pixels;
+
+    TileRef(int index, int[] pixels) {
+      this.index = index;
+      this.pixels = pixels;
+    }
+  }
+
+  private TiledTexture(File file, TileCache cache) throws IOException {
+    this.id = NEXT_ID.getAndIncrement();
+    this.path = file.getPath();
+    this.cache = cache;
+
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+      if (header.getInt(0) != MAGIC) {
+        throw new IOException("Not a tiled texture file: " + path);
+      }
+      if (header.getInt(4) != VERSION) {
+        throw new IOException("Unsupported tiled texture version " + header.getInt(4) + ": " + path);
+      }
+      this.width = header.getInt(8);
+      this.height = header.getInt(12);
+      this.tileSize = header.getInt(16);
+      if (width <= 0 || height <= 0 || Integer.bitCount(tileSize) != 1) {
+        throw new IOException("Corrupt tiled texture header: " + path);
+      }
+      this.tileShift = Integer.numberOfTrailingZeros(tileSize);
+      this.tilesX = (width + tileSize - 1) / tileSize;
+      this.tilesY = (height + tileSize - 1) / tileSize;
+
+      final long tileBytes = 4L * tileSize * tileSize;
+      final long totalTiles = (long) tilesX * tilesY;
+      if (channel.size() < HEADER_BYTES + totalTiles * tileBytes) {
+        throw new IOException("Truncated tiled texture file: " + path);
+      }
+
+      // A single mapping is limited to 2 GB, so split into segments of whole tiles
+      this.tilesPerSegment = (int) Math.max(1L, Integer.MAX_VALUE / tileBytes);
+      int segmentCount = (int) ((totalTiles + tilesPerSegment - 1) / tilesPerSegment);
+      this.segments = new MappedByteBuffer[segmentCount];
+      for (int s = 0; s < segmentCount; s++) {
+        long firstTile = (long) s * tilesPerSegment;
+        long tilesInSegment = Math.min(tilesPerSegment, totalTiles - firstTile);
+        segments[s] = channel.map(FileChannel.MapMode.READ_ONLY,
+          HEADER_BYTES + firstTile * tileBytes, tilesInSegment * tileBytes);
+      }
+    } finally {
+      // The mappings stay valid after the channel is closed
+      raf.close();
+    }
+  }
+
+  /**
+   * Opens a tiled texture using the shared tile cache.
+   */
+  public static TiledTexture open(File file) throws IOException {
+    return new TiledTexture(file, TileCache.shared());
+  }
+
+  public static TiledTexture open(File file, TileCache cache) throws IOException {
+    return new TiledTexture(file, cache);
+  }
+
+  /**
+   * Opens the tiled copy of an ordinary image in the conversion directory,
+   * converting the source first if the copy is missing or older. The
+   * source's own directory is never written to.
+   */
+  public static TiledTexture openOrConvert(File source) throws IOException {
+    File tiled = convertedFileFor(source);
+    if (!tiled.exists() || tiled.lastModified() < source.lastModified()) {
+      File directory = tiled.getParentFile();
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException("Cannot create tiled texture directory " + directory);
+      }
+      System.out.println("Converting " + source + " to tiled texture " + tiled);
+      // Converted under a private name and renamed, so concurrent renders never map a partial file
+      File part = File.createTempFile(tiled.getName(), ".part", directory);
+      try {
+        convert(source, part, DEFAULT_TILE_SIZE);
+        Files.move(part.toPath(), tiled.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        part.delete();
+      }
+    }
+    return open(tiled);
+  }
+
+  /**
+   * Where openOrConvert keeps the tiled copy of an image: the directory
+   * named by the system property {@value #DIRECTORY_PROPERTY}, by default
+   * "elena-tiles" in the temporary directory. The file name carries a hash
+   * of the source's absolute path, so equally named images from different
+   * folders do not share a copy.
+   */
+  public static File convertedFileFor(File source) {
+    String directory = System.getProperty(DIRECTORY_PROPERTY);
+    if (directory == null || directory.trim().isEmpty()) {
+      directory = new File(System.getProperty("java.io.tmpdir"), "elena-tiles").getPath();
+    }
+    String hash = Integer.toHexString(source.getAbsoluteFile().getPath().hashCode());
+    return new File(directory, source.getName() + "-" + hash + EXTENSION);
+  }
+
+  public static boolean isTiledFile(String path) {
+    return path != null && path.toLowerCase().endsWith(EXTENSION);
+  }
+
+  /**
+   * Reads image dimensions from the file header without decoding pixels.
+   * @return {width, height} or null if no reader understands the file
+   */
+  public static int[] readImageSize(File file) throws IOException {
+    ImageInputStream in = ImageIO.createImageInputStream(file);
+    if (in == null) return null;
+    try {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+      if (!readers.hasNext()) return null;
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(in, true, true);
+        return new int[] { reader.getWidth(0), reader.getHeight(0) };
+      } finally {
+        reader.dispose();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Converts a PNG/JPEG (or any ImageIO-readable image) into the tiled format.
+   * The source is decoded once, by a single reader call whose destination
+   * image keeps only the tile row being filled: every completed tile row is
+   * written out and its rows reused, so peak memory is proportional to one
+   * tile row and not to the full image. Readers that deliver rows out of
+   * order (interlaced PNG) are decoded in horizontal bands instead.
+   */
+  public static void convert(File source, File target, int tileSize) throws IOException {
+    checkTileSize(tileSize);
+
+    File partial = new File(target.getPath() + ".part");
+    RandomAccessFile raf = new RandomAccessFile(partial, "rw");
+    try {
+      FileChannel channel = raf.getChannel();
+      if (!convertStreaming(source, channel, tileSize)) {
+        convertInBands(source, channel, tileSize);
+      }
+      channel.force(false);
+    } finally {
+      raf.close();
+    }
+    moveIntoPlace(partial, target);
+  }
+
+  /**
+   * Writes a tiled texture whose ARGB pixels are given by a function of
+   * (x, y), one tile row at a time, so synthetic textures of any size can
+   * be made without holding them in memory.
+   */
+  public static void generate(File target, int width, int height, int tileSize, IntBinaryOperator argb)
+  throws IOException {
+    checkTileSize(tileSize);
+
+    File partial = new File(target.getPath() + ".part");
+    RandomAccessFile raf = new RandomAccessFile(partial, "rw");
+    try {
+      FileChannel channel = raf.getChannel();
+      TileWriter writer = new TileWriter(channel, width, height, tileSize);
+      int[] rows = new int[width * tileSize];
+      for (int y0 = 0; y0 < height; y0 += tileSize) {
+        int bandHeight = Math.min(tileSize, height - y0);
+        for (int y = 0; y < bandHeight; y++) {
+          for (int x = 0; x < width; x++) {
+            rows[y * width + x] = argb.applyAsInt(x, y0 + y);
+          }
+        }
+        writer.writeBand(rows, bandHeight);
+      }
+      channel.force(false);
+    } finally {
+      raf.close();
+    }
+    moveIntoPlace(partial, target);
+  }
+
+  private static void checkTileSize(int tileSize) {
+    if (Integer.bitCount(tileSize) != 1 || tileSize < 16) {
+      throw new IllegalArgumentException("Tile size must be a power of two >= 16: " + tileSize);
+    }
+  }
+
+  private static void moveIntoPlace(File partial, File target) throws IOException {
+    if (target.exists() && !target.delete()) {
+      throw new IOException("Cannot replace tiled texture: " + target);
+    }
+    if (!partial.renameTo(target)) {
+      throw new IOException("Cannot move tiled texture into place: " + target);
+    }
+  }
+
+  /**
+   * Decodes the source once, streaming its rows into tiles.
+   * @return false if the reader's rows cannot be streamed; nothing useful
+   *         has been written then
+   */
+  private static boolean convertStreaming(File source, FileChannel channel, int tileSize) throws IOException {
+    ImageInputStream in = ImageIO.createImageInputStream(source);
+    if (in == null) {
+      throw new IOException("Cannot open image: " + source);
+    }
+    ImageReader reader = null;
+    try {
+      reader = openReader(in, source);
+      final int width = reader.getWidth(0);
+      final int height = reader.getHeight(0);
+
+      Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+      if (types == null || !types.hasNext()) return false;
+      ImageTypeSpecifier type = types.next();
+      SampleModel rowModel = type.getSampleModel(width, tileSize);
+      int stride = scanlineStride(rowModel);
+      if (stride <= 0 || (long) stride * height > Integer.MAX_VALUE) return false;
+
+      RowStream rows = new RowStream(new TileWriter(channel, width, height, tileSize),
+        type.getColorModel(), rowModel, stride, height);
+      ImageReadParam param = reader.getDefaultReadParam();
+      param.setDestination(rows.destination);
+      try {
+        reader.read(0, param);
+        } catch (IOException | RuntimeException e) {
+        // Readers may wrap what the destination throws
+        for (Throwable t = e; t != null; t = t.getCause()) {
+          if (t instanceof RowOrderException) return false;
+          if (t instanceof UncheckedIOException) throw ((UncheckedIOException) t).getCause();
+        }
+        throw e;
+      }
+      rows.finish();
+      return true;
+    } finally {
+      if (reader != null) reader.dispose();
+      in.close();
+    }
+  }
+
+  /**
+   * Decodes the source band by band with source regions. Every band makes
+   * the reader decode the image from its start, so this is only used for
+   * readers whose rows cannot be streamed.
+   */
+  private static void convertInBands(File source, FileChannel channel, int tileSize) throws IOException {
+    ImageInputStream in = ImageIO.createImageInputStream(source);
+    if (in == null) {
+      throw new IOException("Cannot open image: " + source);
+    }
+    ImageReader reader = null;
+    try {
+      reader = openReader(in, source);
+      final int width = reader.getWidth(0);
+      final int height = reader.getHeight(0);
+      final int tilesY = (height + tileSize - 1) / tileSize;
+      TileWriter writer = new TileWriter(channel, width, height, tileSize);
+
+      // Decode several tile rows at once to limit the number of decoder passes
+      int tileRowsPerBand = (int) Math.max(1L, CONVERT_BAND_PIXELS / ((long) width * tileSize));
+
+      for (int bandTileY = 0; bandTileY < tilesY; bandTileY += tileRowsPerBand) {
+        int y0 = bandTileY * tileSize;
+        int bandHeight = Math.min(height - y0, tileRowsPerBand * tileSize);
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new java.awt.Rectangle(0, y0, width, bandHeight));
+        BufferedImage band = reader.read(0, param);
+        int[] rows = band.getRGB(0, 0, width, bandHeight, null, 0, width);
+        band.flush();
+        writer.writeBand(rows, bandHeight);
+      }
+    } finally {
+      if (reader != null) reader.dispose();
+      in.close();
+    }
+  }
+
+  private static ImageReader openReader(ImageInputStream in, File source) throws IOException {
+    Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+    if (!readers.hasNext()) {
+      throw new IOException("No image reader for: " + source);
+    }
+    ImageReader reader = readers.next();
+    reader.setInput(in, false, true);
+    return reader;
+  }
+
+  private static int scanlineStride(SampleModel model) {
+    if (model instanceof ComponentSampleModel) return ((ComponentSampleModel) model).getScanlineStride();
+    if (model instanceof SinglePixelPackedSampleModel) return ((SinglePixelPackedSampleModel) model).getScanlineStride();
+    if (model instanceof MultiPixelPackedSampleModel) return ((MultiPixelPackedSampleModel) model).getScanlineStride();
+    return -1;
+  }
+
+  /**
+   * Writes the header and then rows of ARGB pixels as tiles, in file order.
+   */
+  private static final class TileWriter {
+    private final FileChannel channel;
+    private final int width;
+    private final int tileSize;
+    private final int tilesX;
+    private final int shift;
+    private final int[] tile;
+    private final ByteBuffer tileBuffer;
+    private final IntBuffer tileInts;
+    private long position = HEADER_BYTES;
+
+    TileWriter(FileChannel channel, int width, int height, int tileSize) throws IOException {
+      this.channel = channel;
+      this.width = width;
+      this.tileSize = tileSize;
+      this.tilesX = (width + tileSize - 1) / tileSize;
+      this.shift = Integer.numberOfTrailingZeros(tileSize);
+      this.tile = new int[tileSize * tileSize];
+      this.tileBuffer = ByteBuffer.allocateDirect(4 * tile.length);
+      this.tileInts = tileBuffer.asIntBuffer();
+
+      channel.truncate(0);
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(tileSize);
+      header.clear();
+      channel.write(header, 0);
+    }
+
+    /**
+     * Writes the tiles of bandHeight rows, a whole number of tile rows
+     * except for the last band; edge tiles repeat the last row/column.
+     */
+    void writeBand(int[] rows, int bandHeight) throws IOException {
+      int bandTiles = (bandHeight + tileSize - 1) / tileSize;
+      for (int ty = 0; ty < bandTiles; ty++) {
+        for (int tx = 0; tx < tilesX; tx++) {
+          for (int ly = 0; ly < tileSize; ly++) {
+            int sy = Math.min(ty * tileSize + ly, bandHeight - 1);
+            int rowBase = sy * width;
+            for (int lx = 0; lx < tileSize; lx++) {
+              int sx = Math.min(tx * tileSize + lx, width - 1);
+              tile[(ly << shift) + lx] = rows[rowBase + sx];
+            }
+          }
+          tileInts.clear();
+          tileInts.put(tile);
+          tileBuffer.clear();
+          while (tileBuffer.hasRemaining()) {
+            position += channel.write(tileBuffer, position);
+          }
+        }
+      }
+    }
+  }
+
+  /** Thrown when a reader goes back to a row that was already written out. */
+  private static final class RowOrderException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    RowOrderException() {
+      super(null, null, false, false);
+    }
+  }
+
+  /**
+   * Data of a full-size destination image that keeps only one tile row of
+   * the reader's own pixel layout. When the reader moves past the tile row
+   * it is converted to ARGB and written out, and its storage reused.
+   */
+  private static final class RowStream extends DataBuffer {
+    final BufferedImage destination;
+    private final TileWriter writer;
+    private final int width;
+    private final int height;
+    private final int stride;
+    private final int bandRows;
+    private final DataBuffer band;
+    private final BufferedImage bandImage;
+    private final int[] argb;
+    private int bandY0 = 0;
+
+    RowStream(TileWriter writer, ColorModel colorModel, SampleModel rowModel, int stride, int height) {
+      super(rowModel.getDataType(), stride * height, rowModel.createDataBuffer().getNumBanks());
+      this.writer = writer;
+      this.width = rowModel.getWidth();
+      this.height = height;
+      this.stride = stride;
+      this.bandRows = rowModel.getHeight();
+      this.band = rowModel.createDataBuffer();
+      this.bandImage = new BufferedImage(colorModel, Raster.createWritableRaster(rowModel, band, null),
+        colorModel.isAlphaPremultiplied(), null);
+      this.argb = new int[width * bandRows];
+      SampleModel imageModel = rowModel.createCompatibleSampleModel(width, height);
+      this.destination = new BufferedImage(colorModel, Raster.createWritableRaster(imageModel, this, null),
+        colorModel.isAlphaPremultiplied(), null);
+    }
+
+    @Override
+    public int getElem(int bank, int i) {
+      int row = i / stride;
+      if (row < bandY0 || row >= bandY0 + bandRows) return 0;
+      return band.getElem(bank, i - bandY0 * stride);
+    }
+
+    @Override
+    public void setElem(int bank, int i, int val) {
+      int row = i / stride;
+      if (row < bandY0) {
+        throw new RowOrderException();
+      }
+      while (row >= bandY0 + bandRows) {
+        flush(bandRows);
+      }
+      band.setElem(bank, i - bandY0 * stride, val);
+    }
+
+    void finish() throws IOException {
+      if (bandY0 < height) {
+        try {
+          flush(height - bandY0);
+          } catch (UncheckedIOException e) {
+          throw e.getCause();
+        }
+      }
+    }
+
+    private void flush(int rows) {
+      bandImage.getRGB(0, 0, width, rows, argb, 0, width);
+      try {
+        writer.writeBand(argb, rows);
+        } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      bandY0 += bandRows;
+    }
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getTileSize() {
+    return tileSize;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * Returns the ARGB pixel at (x, y), paging its tile in on demand.
+   */
+  public int getRGB(int x, int y) {
+    if (x < 0 || y < 0 || x >= width || y >= height) {
+      throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds: " + x + "," + y);
+    }
+    int tileIndex = (y >> tileShift) * tilesX + (x >> tileShift);
+    int[] pixels = tile(tileIndex);
+    return pixels[((y & (tileSize - 1)) << tileShift) + (x & (tileSize - 1))];
+  }
+
+  private int[] tile(int tileIndex) {
+    ThreadLocal<TileRef> threadLast = lastTile;
+    TileRef last = threadLast.get();
+    if (last != null && last.index == tileIndex) {
+      return last.pixels;
+    }
+
+    long key = TileCache.key(id, tileIndex);
+    int[] pixels = cache.get(key);
+    if (pixels == null) {
+      pixels = readTile(tileIndex);
+      cache.put(key, pixels);
+    }
+    threadLast.set(new TileRef(tileIndex, pixels));
+    return pixels;
+  }
+
+  private int[] readTile(int tileIndex) {
+    int tileInts = tileSize * tileSize;
+    ByteBuffer segment = segments[tileIndex / tilesPerSegment].duplicate();
+    segment.position((tileIndex % tilesPerSegment) * 4 * tileInts);
+    int[] pixels = new int[tileInts];
+    segment.asIntBuffer().get(pixels);
+    return pixels;
+  }
+
+  /**
+   * Drops this texture's tiles from the cache.
+   */
+  public void evict() {
+    lastTile = new ThreadLocal<TileRef>();
+    cache.removeTexture(id);
+  }
+
+  /**
+   * Wraps the texture as an ARGB {@link BufferedImage} whose pixels are
+   * fetched through the tile cache, so existing materials that call
+   * {@code getRGB} work unchanged. The image is read-only.
+   */
+  public BufferedImage asBufferedImage() {
+    if ((long) width * height > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Texture too large for a BufferedImage view: " + width + "x" + height);
+    }
+    SinglePixelPackedSampleModel sampleModel = new SinglePixelPackedSampleModel(
+      DataBuffer.TYPE_INT, width, height,
+      new int[] { 0x00FF0000, 0x0000FF00, 0x000000FF, 0xFF000000 }
+    );
+    WritableRaster raster = Raster.createWritableRaster(sampleModel, new TileDataBuffer(this), null);
+    return new BufferedImage(ColorModel.getRGBdefault(), raster, false, null);
+  }
+
+  /**
+   * Whether the image is a view made by asBufferedImage().
+   */
+  public static boolean isTiledView(BufferedImage image) {
+    return image.getRaster().getDataBuffer() instanceof TileDataBuffer;
+  }
+
+  private static final class TileDataBuffer extends DataBuffer {
+    private final TiledTexture texture;
+
+    TileDataBuffer(TiledTexture texture) {
+      super(DataBuffer.TYPE_INT, texture.width * texture.height);
+      this.texture = texture;
+    }
+
+    @Override
+    public int getElem(int bank, int i) {
+      return texture.getRGB(i % texture.width, i / texture.width);
+    }
+
+    @Override
+    public void setElem(int bank, int i, int val) {
+      throw new UnsupportedOperationException("Tiled textures are read-only");
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "TiledTexture[" + path + ", " + width + "x" + height + ", tile=" + tileSize + "]";
+  }
+
+  public static void main(String[] args) {
+    if (args.length < 1 || args.length > 3) {
+      System.err.println("Usage: java net.elena.murat.util.TiledTexture <input.png|jpg> [output.emtt] [tileSize]");
+      System.exit(1);
+    }
+
+    File source = new File(args[0]);
+    File target = new File(args.length > 1 ? args[1] : args[0] + EXTENSION);
+    int tileSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_TILE_SIZE;
+
+    try {
+      long start = System.currentTimeMillis();
+      convert(source, target, tileSize);
+      TiledTexture texture = open(target);
+      System.out.println("Converted " + source + " -> " + texture + " in " +
+        (System.currentTimeMillis() - start) + " ms");
+      } catch (IOException e) {
+      System.err.println("Error: " + e.getMessage());
+      e.printStackTrace();
+      System.exit(-1);
+    }
+  }
+
+}